@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Image model for color depth search results and their related information. 
@@ -57,9 +58,28 @@ public class ColorDepthResultImageModel implements ImageModel<ColorDepthMatch, R
         for (ColorDepthMatch match : matches) {
             matchMap.put(match.getImageRef(), match);
         }
-        this.imageMap = DomainUtils.getMapByReference(images);
-        this.sampleMap = DomainUtils.getMapByReference(samples);
-        this.splitInfos = splitInfos;
+        this.imageMap = new ConcurrentHashMap<>();
+        this.sampleMap = new ConcurrentHashMap<>();
+        this.splitInfos = new ConcurrentHashMap<>();
+        addMetadata(images, samples, splitInfos);
+    }
+
+    /**
+     * Adds metadata for matches which were loaded after the model was created.
+     */
+    public void addMetadata(
+            Collection<ColorDepthImage> images,
+            Collection<Sample> samples,
+            Map<String, SplitTypeInfo> splitInfos) {
+        imageMap.putAll(DomainUtils.getMapByReference(images));
+        sampleMap.putAll(DomainUtils.getMapByReference(samples));
+        if (splitInfos != null) {
+            splitInfos.forEach((frag, splitInfo) -> {
+                if (frag != null && splitInfo != null) {
+                    this.splitInfos.put(frag, splitInfo);
+                }
+            });
+        }
     }
 
     public ColorDepthMask getMask() {
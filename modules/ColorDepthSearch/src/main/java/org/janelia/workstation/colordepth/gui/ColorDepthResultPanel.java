@@ -5,6 +5,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import javax.swing.JCheckBox;
@@ -93,7 +95,7 @@ public class ColorDepthResultPanel extends JPanel implements SearchProvider, Pre
     private List<ColorDepthResult> results = new ArrayList<>();
     private ColorDepthResult currResult;
     private String sortCriteria;
-    private ColorDepthSearchResults searchResults;
+    private SearchResults<ColorDepthMatch,Reference> searchResults;
     private final Set<SplitHalfType> selectedSplitTypes = new HashSet<>();
     
     private final ChildSelectionModel<ColorDepthMatch,Reference> selectionModel = new ChildSelectionModel<ColorDepthMatch,Reference>() {
@@ -447,133 +449,41 @@ public class ColorDepthResultPanel extends JPanel implements SearchProvider, Pre
     }
 
     /**
-     * Runs in background thread.
+     * Runs in background thread. Only the first page of results is loaded here, the rest are loaded as they
+     * are needed.
      */
-    private ColorDepthSearchResults prepareResults(List<ColorDepthMatch> maskMatches) throws Exception {
-
-        DomainModel model = DomainMgr.getDomainMgr().getModel();
-
-        // Fetch associated images
-        Set<Reference> imageRefs;
-        if (showMatchedImage.isSelected()) {
-            imageRefs = maskMatches.stream()
-                    .map(m -> m.getMatchingImageRef() != null ? m.getMatchingImageRef() : m.getImageRef())
-                    .collect(Collectors.toSet());
-        } else {
-            imageRefs = maskMatches.stream()
-                    .map(ColorDepthMatch::getImageRef)
-                    .collect(Collectors.toSet());
-        }
-
-        List<ColorDepthImage> images = model.getDomainObjectsAs(ColorDepthImage.class, new ArrayList<>(imageRefs));
-
-        // Fetch associated samples
-        Set<Reference> sampleRefs = new HashSet<>();            
-        for (ColorDepthImage image : images) {
-            log.trace("Will load {}", image.getSampleRef());
-            sampleRefs.add(image.getSampleRef());
-        }
-
-        List<Sample> samples = model.getDomainObjectsAs(Sample.class, new ArrayList<>(sampleRefs));
-        
-        // Fetch split half information
+    private SearchResults<ColorDepthMatch,Reference> prepareResults(List<ColorDepthMatch> maskMatches) throws Exception {
 
+        final DomainModel model = DomainMgr.getDomainMgr().getModel();
         final SageRestClient sageClient = DomainMgr.getDomainMgr().getSageClient();
-        
-        Set<String> frags = new HashSet<>();
-        for (Sample sample : samples) {
-            String frag = SampleUtils.getFragFromLineName(sample.getLine());
-            if (frag == null) {
-                log.warn("Cannot parse fragment from line: {}", sample.getLine());
-            }
-            else {
-                frags.add(frag);
-            }
-        }
 
-        Map<String, SplitTypeInfo> splitInfos = new HashMap<>();
+        // Capture the options, since pages may be loaded after they change
+        final boolean useMatchedImage = showMatchedImage.isSelected();
+        final boolean newOnly = newOnlyCheckbox.isSelected();
+        final Set<SplitHalfType> splitTypes = new HashSet<>(selectedSplitTypes);
+        log.info("selectedSplitTypes: {}",splitTypes);
 
-        try {
-            splitInfos = sageClient.getSplitTypeInfo(frags);
-        }
-        catch (Exception e) {
-            // If split type fails, show an error but keep going
-            FrameworkAccess.handleException("Failed to load AB/DBD split half information", e);
-        }
-        
-        // Create and set image model
-        ColorDepthResultImageModel imageModel = new ColorDepthResultImageModel(mask, maskMatches, images, samples, splitInfos) {
+        // Create and set image model, which is filled in as pages are loaded
+        ColorDepthResultImageModel imageModel = new ColorDepthResultImageModel(mask, maskMatches,
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyMap()) {
             @Override
             protected Reference getUsedImageRef(ColorDepthMatch match) {
-                return showMatchedImage.isSelected() && match.getMatchingImageRef() != null ? match.getMatchingImageRef() : match.getImageRef();
+                return useMatchedImage && match.getMatchingImageRef() != null ? match.getMatchingImageRef() : match.getImageRef();
             }
         };
         resultsPanel.setImageModel(imageModel);
 
-        log.info("selectedSplitTypes: {}",selectedSplitTypes);
-
-        // Filter matches
-        maskMatches = maskMatches.stream()
-                .filter(match -> showMatch(match, imageModel))
-                .filter(match -> {
-                    // Filter by split type. If no split types are selected, then assume the user wants to see everything.
-                    Sample sample = imageModel.getSample(match);
-                    SplitTypeInfo splitTypeInfo = imageModel.getSplitTypeInfo(sample);
-                    
-                    boolean show = true;
-                    
-                    if (selectedSplitTypes.contains(SplitHalfType.AD)) {
-                        if (splitTypeInfo == null || !splitTypeInfo.hasAD()) {
-                            show = false;
-                        }
-                    }
-                    
-                    if (selectedSplitTypes.contains(SplitHalfType.DBD)) {
-                        if (splitTypeInfo == null || !splitTypeInfo.hasDBD()) {
-                            show = false;
-                        }
-                    }
-                    
-                    return show;
-                })
-                .sorted(Comparator.comparing(ColorDepthMatch::getScore).reversed())
-                .collect(Collectors.toList());
-        
-        log.info("Filtered to {} matches which can be displayed", maskMatches.size());
-
-        if (newOnlyCheckbox.isSelected()) {
-            
-            Set<String> filepaths = new HashSet<>();
-            
-            // First determine what was a match in previous results
+        // Determine what was a match in previous results. The images of previous matches are only known if
+        // they are also in the current results, so those are the only ones which can be compared by filepath.
+        Set<Reference> previousImageRefs = new HashSet<>();
+        Set<String> previousFilepaths = ConcurrentHashMap.newKeySet();
+        if (newOnly) {
             int currResultIndex = results.indexOf(currResult);
             for (int i=0; i<currResultIndex; i++) {
                 for(ColorDepthMatch match : results.get(i).getMaskMatches(mask)) {
-                    ColorDepthImage image = imageModel.getImage(match);
-                    if (image!=null) {
-                        filepaths.add(image.getFilepath());
-                    }
+                    previousImageRefs.add(imageModel.getUsedImageRef(match));
                 }
             }
-            
-            // Now filter the current results to show the new matches only
-            List<ColorDepthMatch> filteredMatches = new ArrayList<>();
-            for(ColorDepthMatch match : maskMatches) {
-                ColorDepthImage image = imageModel.getImage(match);
-                if (image!=null) {
-                    if (!filepaths.contains(image.getFilepath())) {
-                        filteredMatches.add(match);
-                    }
-                }
-            }
-            
-            maskMatches = filteredMatches;
-            log.info("Filtered to {} new matches", maskMatches.size());
-        }
-        
-        if (maskMatches.isEmpty()) {
-            // No matches for this mask
-            return null;
         }
 
         Integer resultsPerLine = null;
@@ -583,32 +493,110 @@ public class ColorDepthResultPanel extends JPanel implements SearchProvider, Pre
         catch (NumberFormatException e) {
             log.warn("Illegal results per line value: "+resultsPerLineField.getText());
         }
-        
-        // Group matches by line
-        Map<String,LineMatches> lines = new LinkedHashMap<>();
-        for (ColorDepthMatch match : maskMatches) {
-            ColorDepthImage image = imageModel.getImage(match);
-            Sample sample = imageModel.getSample(match);
-            String line = sample==null ? image.getName() : sample.getLine();
-            LineMatches lineMatches = lines.get(line);
-            if (lineMatches==null) {
-                lineMatches = new LineMatches(line);
-                lines.put(line, lineMatches);
+
+        AtomicBoolean reportedSplitError = new AtomicBoolean();
+
+        StreamingColorDepthSearchResults.ChunkLoader chunkLoader = new StreamingColorDepthSearchResults.ChunkLoader() {
+
+            @Override
+            public List<ColorDepthMatch> load(List<ColorDepthMatch> chunkMatches) throws Exception {
+
+                // Fetch associated images
+                Set<Reference> imageRefs = chunkMatches.stream()
+                        .map(imageModel::getUsedImageRef)
+                        .collect(Collectors.toSet());
+
+                List<ColorDepthImage> images = model.getDomainObjectsAs(ColorDepthImage.class, new ArrayList<>(imageRefs));
+
+                // Fetch associated samples
+                Set<Reference> sampleRefs = new HashSet<>();
+                for (ColorDepthImage image : images) {
+                    if (image.getSampleRef()!=null) {
+                        log.trace("Will load {}", image.getSampleRef());
+                        sampleRefs.add(image.getSampleRef());
+                    }
+                }
+
+                List<Sample> samples = model.getDomainObjectsAs(Sample.class, new ArrayList<>(sampleRefs));
+
+                // Fetch split half information
+                Set<String> frags = new HashSet<>();
+                for (Sample sample : samples) {
+                    String frag = SampleUtils.getFragFromLineName(sample.getLine());
+                    if (frag == null) {
+                        log.warn("Cannot parse fragment from line: {}", sample.getLine());
+                    }
+                    else {
+                        frags.add(frag);
+                    }
+                }
+
+                Map<String, SplitTypeInfo> splitInfos = new HashMap<>();
+
+                try {
+                    splitInfos = sageClient.getSplitTypeInfo(frags);
+                }
+                catch (Exception e) {
+                    // If split type fails, show an error but keep going
+                    if (reportedSplitError.compareAndSet(false, true)) {
+                        FrameworkAccess.handleException("Failed to load AB/DBD split half information", e);
+                    }
+                    else {
+                        log.warn("Failed to load AB/DBD split half information", e);
+                    }
+                }
+
+                imageModel.addMetadata(images, samples, splitInfos);
+
+                for (ColorDepthImage image : images) {
+                    if (previousImageRefs.contains(Reference.createFor(image))) {
+                        previousFilepaths.add(image.getFilepath());
+                    }
+                }
+
+                // Filter matches
+                List<ColorDepthMatch> filteredMatches = chunkMatches.stream()
+                        .filter(match -> showMatch(match, imageModel))
+                        .filter(match -> showSplitTypes(match, imageModel, splitTypes))
+                        .filter(match -> {
+                            if (!newOnly) return true;
+                            // Filter the current results to show the new matches only
+                            ColorDepthImage image = imageModel.getImage(match);
+                            return !previousImageRefs.contains(imageModel.getUsedImageRef(match))
+                                    && !previousFilepaths.contains(image.getFilepath());
+                        })
+                        .collect(Collectors.toList());
+
+                log.debug("Filtered {} matches to {} which can be displayed", chunkMatches.size(), filteredMatches.size());
+                return filteredMatches;
             }
-            lineMatches.addMatch(match);
-        }
-        
-        List<ColorDepthMatch> orderedMatches = new ArrayList<>();
-        for (LineMatches lineMatches : lines.values()) {
-            for (ColorDepthMatch match : lineMatches.getOrderedFilteredMatches(resultsPerLine, imageModel)) {
-                orderedMatches.add(match);
+
+            @Override
+            public String getLine(ColorDepthMatch match) {
+                Sample sample = imageModel.getSample(match);
+                return sample==null ? imageModel.getImage(match).getName() : sample.getLine();
+            }
+
+            @Override
+            public Long getSampleId(ColorDepthMatch match) {
+                ColorDepthImage image = imageModel.getImage(match);
+                return image.getSampleRef()==null ? null : image.getSampleRef().getTargetId();
             }
+        };
+
+        // Matches are sorted by score, and grouped by line as pages are loaded
+        StreamingColorDepthSearchResults streamingResults = new StreamingColorDepthSearchResults(maskMatches, chunkLoader, resultsPerLine);
+        ResultPage<ColorDepthMatch,Reference> firstPage = streamingResults.getPage(0);
+
+        if (firstPage.getNumPageResults()==0) {
+            // No matches for this mask
+            return null;
         }
 
-        log.info("Filtered to {} matches, allowing {} results per line, and no duplicate samples", orderedMatches.size(), resultsPerLine);
-        return new ColorDepthSearchResults(orderedMatches);
+        log.info("Loaded first page of {} matches, allowing {} results per line, and no duplicate samples", firstPage.getNumPageResults(), resultsPerLine);
+        return streamingResults;
     }
-    
+
     public void showNothing() {
         removeAll();
         updateUI();
@@ -663,57 +651,28 @@ public class ColorDepthResultPanel extends JPanel implements SearchProvider, Pre
         return true;
     }
 
-    private class LineMatches {
-        
-        private String line;
-        private List<ColorDepthMatch> matches = new ArrayList<>();
-        
-        LineMatches(String line) {
-            this.line = line;
-        }
-        
-        public void addMatch(ColorDepthMatch match) {
-            matches.add(match);
-        }
-        
-        public List<ColorDepthMatch> getOrderedFilteredMatches(Integer resultsPerLine, ColorDepthResultImageModel imageModel) {
-
-            log.debug("Getting matches for line {} with {} max results", line, resultsPerLine);
-            
-            Set<Long> seenSamples = new HashSet<>();
-            List<ColorDepthMatch> orderedMatches = new ArrayList<>();
-            for (ColorDepthMatch match : matches) {
-                ColorDepthImage image = imageModel.getImage(match);
-                if (image.getSampleRef() == null) {
-                    orderedMatches.add(match);
-                    continue;
-                }
+    private boolean showSplitTypes(ColorDepthMatch match, ColorDepthResultImageModel imageModel, Set<SplitHalfType> splitTypes) {
+        // Filter by split type. If no split types are selected, then assume the user wants to see everything.
+        Sample sample = imageModel.getSample(match);
+        SplitTypeInfo splitTypeInfo = imageModel.getSplitTypeInfo(sample);
 
-                String matchStr = String.format("%s@ch%s - %2.2f",
-                        image.getSampleRef(), image.getChannelNumber(), match.getScorePercent());
+        boolean show = true;
 
-                if (seenSamples.contains(image.getSampleRef().getTargetId())) {
-                    // Only show top hit for each sample
-                    log.debug("  Skipping duplicate sample: {}", matchStr);
-                    continue;
-                }
+        if (splitTypes.contains(SplitHalfType.AD)) {
+            if (splitTypeInfo == null || !splitTypeInfo.hasAD()) {
+                show = false;
+            }
+        }
 
-                if (resultsPerLine!=null && orderedMatches.size() >= resultsPerLine) {
-                    // Got enough matches
-                    log.debug("  Skipping line: {}", matchStr);
-                    continue;
-                }
-                
-                log.debug("  Adding match: {}", matchStr);
-                orderedMatches.add(match);
-                
-                seenSamples.add(image.getSampleRef().getTargetId());
+        if (splitTypes.contains(SplitHalfType.DBD)) {
+            if (splitTypeInfo == null || !splitTypeInfo.hasDBD()) {
+                show = false;
             }
-            
-            return orderedMatches;   
         }
+
+        return show;
     }
-    
+
     @Override
     public String getSortField() {
         return sortCriteria;
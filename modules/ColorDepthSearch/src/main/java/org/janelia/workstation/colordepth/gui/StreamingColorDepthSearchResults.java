@@ -0,0 +1,307 @@
+package org.janelia.workstation.colordepth.gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.model.domain.Reference;
+import org.janelia.model.domain.gui.cdmip.ColorDepthMatch;
+import org.janelia.workstation.core.model.search.SearchResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Color depth search results which are materialized one page at a time. The matches are sorted by score up
+ * front, and then walked in chunks. Only the matches in each chunk are passed to the chunk loader, which fetches
+ * their metadata and filters them, so the first page can be shown without loading anything about the rest.
+ * Once a page has been loaded, the next one is prefetched in the background.
+ *
+ * Matches are grouped by line as they are walked. A line is held back until the chunk after the one it first
+ * appeared in has been walked, so that lines which have several close scores are shown together, like in
+ * {@link ColorDepthSearchResults}. Matches for a line which are found after it has been shown are placed
+ * where they are found, as long as the line still has room for them.
+ */
+public class StreamingColorDepthSearchResults implements SearchResults<ColorDepthMatch,Reference> {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingColorDepthSearchResults.class);
+
+    private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("ColorDepthPagePrefetch-%d")
+            .setDaemon(true).build());
+
+    /**
+     * Loads what is needed to show a chunk of matches.
+     */
+    public interface ChunkLoader {
+
+        /**
+         * Fetches the metadata for the given matches.
+         * @return the matches which can be shown, in the same order
+         */
+        List<ColorDepthMatch> load(List<ColorDepthMatch> matches) throws Exception;
+
+        /**
+         * @return the line of a match which was returned by load
+         */
+        String getLine(ColorDepthMatch match);
+
+        /**
+         * @return id of the sample of a match which was returned by load, or null if it is not bound to a sample
+         */
+        Long getSampleId(ColorDepthMatch match);
+    }
+
+    private final List<ColorDepthMatch> sortedMatches;
+    private final ChunkLoader chunkLoader;
+    private final Integer resultsPerLine;
+    private final int chunkSize;
+
+    // Walking state, guarded by this
+    private int nextMatchIndex = 0;
+    private int chunkIndex = 0;
+    private final Map<String, LineMatches> lines = new LinkedHashMap<>();
+    private final Map<String, LineMatches> heldLines = new LinkedHashMap<>();
+    private final ArrayDeque<ColorDepthMatch> ready = new ArrayDeque<>();
+
+    private final List<ColorDepthResultPage> pages = new CopyOnWriteArrayList<>();
+    private volatile long numLoadedResults = 0;
+    private volatile long numTotalResults = 0;
+    private volatile boolean walked = false;
+
+    /**
+     * @param matches all the matches for the mask, in any order
+     * @param chunkLoader fetches metadata for the matches and filters them
+     * @param resultsPerLine most matches to show for each line, or null to show all of them
+     */
+    public StreamingColorDepthSearchResults(Collection<ColorDepthMatch> matches, ChunkLoader chunkLoader, Integer resultsPerLine) {
+        this(matches, chunkLoader, resultsPerLine, PAGE_SIZE);
+    }
+
+    StreamingColorDepthSearchResults(Collection<ColorDepthMatch> matches, ChunkLoader chunkLoader, Integer resultsPerLine, int chunkSize) {
+        this.sortedMatches = new ArrayList<>();
+        for (ColorDepthMatch match : matches) {
+            if (match != null) {
+                sortedMatches.add(match);
+            }
+        }
+        sortedMatches.sort(Comparator.comparing(ColorDepthMatch::getScore).reversed());
+        this.chunkLoader = chunkLoader;
+        this.resultsPerLine = resultsPerLine;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int getNumLoadedPages() {
+        return pages.size();
+    }
+
+    @Override
+    public int getNumTotalPages() {
+        if (walked) {
+            return (int)Math.ceil((double)numTotalResults / (double)PAGE_SIZE);
+        }
+        // There is at least one more result, or walking would be finished
+        return pages.size() + 1;
+    }
+
+    @Override
+    public long getNumLoadedResults() {
+        return numLoadedResults;
+    }
+
+    /**
+     * Until all the matches have been walked, this is the number of results found so far.
+     */
+    @Override
+    public long getNumTotalResults() {
+        return numTotalResults;
+    }
+
+    @Override
+    public boolean hasMoreResults() {
+        return getNumLoadedPages()<getNumTotalPages();
+    }
+
+    @Override
+    public boolean isAllLoaded() {
+        return !hasMoreResults();
+    }
+
+    @Override
+    public List<ColorDepthResultPage> getPages() {
+        return pages;
+    }
+
+    /**
+     * Returns the given page, loading it and any pages before it if necessary. An empty page is returned if
+     * there are no results at all.
+     */
+    @Override
+    public ColorDepthResultPage getPage(int page) throws Exception {
+        if (page<0) {
+            return null;
+        }
+        ColorDepthResultPage resultPage = page<pages.size() ? pages.get(page) : loadPage(page);
+        if (resultPage!=null) {
+            prefetch(page+1);
+        }
+        return resultPage;
+    }
+
+    private synchronized ColorDepthResultPage loadPage(int page) throws Exception {
+        while (pages.size()<=page) {
+            if (walked && ready.isEmpty() && !pages.isEmpty()) {
+                return null;
+            }
+            // Walk past the end of the page to find out if there is another one, so that the page count is known
+            while (ready.size()<=PAGE_SIZE && !walked) {
+                walkNextChunk();
+            }
+            List<ColorDepthMatch> pageMatches = new ArrayList<>();
+            while (pageMatches.size()<PAGE_SIZE && !ready.isEmpty()) {
+                pageMatches.add(ready.removeFirst());
+            }
+            updateNumTotalResults(pageMatches.size());
+            pages.add(new ColorDepthResultPage(pageMatches, numTotalResults));
+            numLoadedResults += pageMatches.size();
+            log.debug("Loaded page {} with {} results, {} matches walked", pages.size()-1, pageMatches.size(), nextMatchIndex);
+        }
+        return pages.get(page);
+    }
+
+    private void prefetch(int page) {
+        if (page<pages.size() || page>=getNumTotalPages()) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                loadPage(page);
+            }
+            catch (Exception e) {
+                // The page will be loaded again when it is needed
+                log.warn("Could not prefetch color depth result page {}", page, e);
+            }
+        });
+    }
+
+    private void walkNextChunk() throws Exception {
+
+        int end = Math.min(nextMatchIndex + chunkSize, sortedMatches.size());
+        List<ColorDepthMatch> chunk = sortedMatches.subList(nextMatchIndex, end);
+        // Nothing is changed until the chunk is loaded, so that it can be retried
+        List<ColorDepthMatch> shownMatches = chunk.isEmpty() ? chunk : chunkLoader.load(new ArrayList<>(chunk));
+        nextMatchIndex = end;
+
+        for (ColorDepthMatch match : shownMatches) {
+            String line = chunkLoader.getLine(match);
+            LineMatches lineMatches = lines.get(line);
+            if (lineMatches==null) {
+                lineMatches = new LineMatches(line, chunkIndex);
+                lines.put(line, lineMatches);
+                heldLines.put(line, lineMatches);
+            }
+            if (lineMatches.addMatch(match, chunkLoader.getSampleId(match)) && lineMatches.released) {
+                ready.add(match);
+            }
+        }
+
+        if (nextMatchIndex>=sortedMatches.size()) {
+            releaseLines(Integer.MAX_VALUE);
+            walked = true;
+            log.info("Walked {} matches for {} lines", sortedMatches.size(), lines.size());
+        }
+        else {
+            releaseLines(chunkIndex - 1);
+        }
+        chunkIndex++;
+    }
+
+    /**
+     * Moves the held lines which first appeared in the given chunk or before it to the ready queue.
+     */
+    private void releaseLines(int lastChunkIndex) {
+        for (Iterator<LineMatches> i = heldLines.values().iterator(); i.hasNext(); ) {
+            LineMatches lineMatches = i.next();
+            if (lineMatches.firstChunkIndex>lastChunkIndex) {
+                // Lines are held in the order they appeared
+                break;
+            }
+            ready.addAll(lineMatches.matches);
+            lineMatches.released = true;
+            i.remove();
+        }
+    }
+
+    private void updateNumTotalResults(int numTakenResults) {
+        long numHeldResults = 0;
+        for (LineMatches lineMatches : heldLines.values()) {
+            numHeldResults += lineMatches.matches.size();
+        }
+        this.numTotalResults = numLoadedResults + numTakenResults + ready.size() + numHeldResults;
+    }
+
+    public boolean updateIfFound(ColorDepthMatch match) {
+
+        boolean updated = false;
+        for(final ColorDepthResultPage page : getPages()) {
+            final ColorDepthMatch pageObject = page.getObjectById(match.getImageRef());
+            if (pageObject!=null) {
+                page.updateObject(match);
+                updated = true;
+            }
+        }
+
+        return updated;
+    }
+
+    private class LineMatches {
+
+        private final String line;
+        private final int firstChunkIndex;
+        private final List<ColorDepthMatch> matches = new ArrayList<>();
+        private final Set<Long> seenSamples = new HashSet<>();
+        private int numMatches = 0;
+        private boolean released = false;
+
+        LineMatches(String line, int firstChunkIndex) {
+            this.line = line;
+            this.firstChunkIndex = firstChunkIndex;
+        }
+
+        /**
+         * Adds the match unless its sample was already shown, or the line is full.
+         * @return true if the match was added
+         */
+        boolean addMatch(ColorDepthMatch match, Long sampleId) {
+            if (sampleId!=null) {
+                if (seenSamples.contains(sampleId)) {
+                    // Only show top hit for each sample
+                    log.debug("  Skipping duplicate sample {} in line {}", sampleId, line);
+                    return false;
+                }
+                if (resultsPerLine!=null && numMatches >= resultsPerLine) {
+                    // Got enough matches
+                    return false;
+                }
+                seenSamples.add(sampleId);
+            }
+            numMatches++;
+            if (!released) {
+                matches.add(match);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.janelia.workstation.colordepth.gui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.janelia.model.domain.Reference;
+import org.janelia.model.domain.gui.cdmip.ColorDepthMatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StreamingColorDepthSearchResults} class.
+ */
+public class StreamingColorDepthSearchResultsTest {
+
+    private final List<ColorDepthMatch> matches = new ArrayList<>();
+    private final Map<ColorDepthMatch, String> lines = new HashMap<>();
+    private final Map<ColorDepthMatch, Long> sampleIds = new HashMap<>();
+    private final Map<ColorDepthMatch, String> names = new HashMap<>();
+
+    /**
+     * Shows every match, with the line and sample it was created with.
+     */
+    private class FakeChunkLoader implements StreamingColorDepthSearchResults.ChunkLoader {
+
+        private int numLoadedMatches = 0;
+
+        @Override
+        public List<ColorDepthMatch> load(List<ColorDepthMatch> chunk) throws Exception {
+            numLoadedMatches += chunk.size();
+            return chunk;
+        }
+
+        @Override
+        public String getLine(ColorDepthMatch match) {
+            return lines.get(match);
+        }
+
+        @Override
+        public Long getSampleId(ColorDepthMatch match) {
+            return sampleIds.get(match);
+        }
+    }
+
+    private void addMatch(String line, Long sampleId, int score) {
+        ColorDepthMatch match = new ColorDepthMatch();
+        match.setImageRef(Reference.createFor("ColorDepthImage", (long) matches.size() + 1));
+        match.setScore(score);
+        matches.add(match);
+        lines.put(match, line);
+        sampleIds.put(match, sampleId);
+        names.put(match, line + score);
+    }
+
+    private List<String> getNames(List<ColorDepthMatch> pageMatches) {
+        List<String> pageNames = new ArrayList<>();
+        for (ColorDepthMatch match : pageMatches) {
+            pageNames.add(names.get(match));
+        }
+        return pageNames;
+    }
+
+    @Test
+    public void linesAreHeldBackAcrossChunks() throws Exception {
+        // Chunks of two: [A100, B99] [A98, C97] [D96, A95]
+        addMatch("A", 1L, 100);
+        addMatch("B", 2L, 99);
+        addMatch("A", 3L, 98);
+        addMatch("C", 4L, 97);
+        addMatch("D", 5L, 96);
+        addMatch("A", 6L, 95);
+        StreamingColorDepthSearchResults results = new StreamingColorDepthSearchResults(matches, new FakeChunkLoader(), null, 2);
+        // A98 joins A100 from the chunk after it, and A95 is placed where it was found once A was shown
+        Assert.assertEquals(
+                "[A100, A98, B99, A95, C97, D96]",
+                getNames(results.getPage(0).getObjects()).toString());
+    }
+
+    @Test
+    public void linesAreLimitedAndDuplicateSamplesSkipped() throws Exception {
+        addMatch("A", 1L, 100);
+        addMatch("A", 1L, 99);
+        addMatch("A", 2L, 98);
+        addMatch("A", 3L, 97);
+        // Matches without a sample are always shown
+        addMatch("B", null, 96);
+        addMatch("B", null, 95);
+        addMatch("B", null, 94);
+        StreamingColorDepthSearchResults results = new StreamingColorDepthSearchResults(matches, new FakeChunkLoader(), 2, 3);
+        Assert.assertEquals(
+                "[A100, A98, B96, B95, B94]",
+                getNames(results.getPage(0).getObjects()).toString());
+        Assert.assertEquals(5, results.getNumTotalResults());
+        Assert.assertTrue(results.isAllLoaded());
+    }
+
+    @Test
+    public void totalPagesAreKnownOnceWalked() throws Exception {
+        int numMatches = 1200;
+        for (int i = 0; i < numMatches; i++) {
+            addMatch("L" + i, (long) i, numMatches - i);
+        }
+        // Keep the prefetch of the second page from walking on while the first page is checked
+        Thread testThread = Thread.currentThread();
+        CountDownLatch prefetchGate = new CountDownLatch(1);
+        FakeChunkLoader chunkLoader = new FakeChunkLoader() {
+            @Override
+            public List<ColorDepthMatch> load(List<ColorDepthMatch> chunk) throws Exception {
+                if (Thread.currentThread() != testThread) {
+                    prefetchGate.await();
+                }
+                return super.load(chunk);
+            }
+        };
+        StreamingColorDepthSearchResults results = new StreamingColorDepthSearchResults(matches, chunkLoader, null, 100);
+
+        Assert.assertEquals(StreamingColorDepthSearchResults.PAGE_SIZE, results.getPage(0).getObjects().size());
+        Assert.assertTrue(chunkLoader.numLoadedMatches < numMatches);
+        Assert.assertEquals(1, results.getNumLoadedPages());
+        Assert.assertEquals(2, results.getNumTotalPages());
+        Assert.assertTrue(results.hasMoreResults());
+        Assert.assertTrue(results.getNumTotalResults() < numMatches);
+
+        prefetchGate.countDown();
+        Assert.assertEquals(StreamingColorDepthSearchResults.PAGE_SIZE, results.getPage(1).getObjects().size());
+        Assert.assertEquals(200, results.getPage(2).getObjects().size());
+        Assert.assertEquals(numMatches, chunkLoader.numLoadedMatches);
+        Assert.assertEquals(3, results.getNumTotalPages());
+        Assert.assertEquals(numMatches, results.getNumTotalResults());
+        Assert.assertTrue(results.isAllLoaded());
+        Assert.assertNull(results.getPage(3));
+    }
+}
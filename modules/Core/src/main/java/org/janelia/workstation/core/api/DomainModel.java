@@ -31,7 +31,9 @@ import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.model.*;
 import org.janelia.workstation.core.model.search.DomainObjectResultPage;
 import org.janelia.workstation.core.model.search.DomainObjectSearchResults;
+import org.janelia.workstation.core.util.CoalescingBatchLoader;
 import org.janelia.workstation.core.util.ColorDepthUtils;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.perf4j.LoggingStopWatch;
 import org.perf4j.StopWatch;
 import org.slf4j.Logger;
@@ -39,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -69,6 +72,12 @@ public class DomainModel {
     private static final Logger log = LoggerFactory.getLogger(DomainModel.class);
     private static final boolean TIMER = log.isDebugEnabled();
 
+    // Objects missing from the cache are fetched in batches of at most this many, several at a time
+    private static final int FETCH_BATCH_SIZE = ConsoleProperties.getInt("console.domain.fetchBatchSize", 500);
+    private static final int FETCH_THREADS = ConsoleProperties.getInt("console.domain.fetchThreads", 4);
+    // Lookups from different threads within this many milliseconds are fetched together
+    private static final long FETCH_WINDOW_MILLIS = 10;
+
     private final Object modelLock = new Object();
 
     private final DomainFacade domainFacade;
@@ -78,6 +87,9 @@ public class DomainModel {
     private final WorkspaceFacade workspaceFacade;
 
     private final Cache<Reference, DomainObject> objectCache;
+    private final CoalescingBatchLoader<Reference, DomainObject> objectLoader;
+    private final AtomicLong objectCacheHits = new AtomicLong();
+    private final AtomicLong objectCacheMisses = new AtomicLong();
     private Map<Reference, Workspace> workspaceCache;
     private Map<Reference, Ontology> ontologyCache;
     private Map<Reference, LineRelease> releaseCache;
@@ -113,6 +125,10 @@ public class DomainModel {
                 if (containerCache != null) containerCache.remove(id);
             }
         }).build();
+
+        this.objectLoader = new CoalescingBatchLoader<>("DomainObjectLoader",
+                refs -> DomainUtils.getMapByReference(domainFacade.getDomainObjects(refs)),
+                FETCH_BATCH_SIZE, FETCH_WINDOW_MILLIS, FETCH_THREADS);
     }
 
     /**
@@ -358,13 +374,15 @@ public class DomainModel {
         DomainObject domainObject = objectCache.getIfPresent(ref);
         if (domainObject != null) {
             log.debug("getEntityById: returning cached domain object {}", DomainUtils.identify(domainObject));
+            objectCacheHits.incrementAndGet();
             return (T) domainObject;
         }
+        objectCacheMisses.incrementAndGet();
         if (SwingUtilities.isEventDispatchThread()) {
             log.warn("getDomainObject called on EDT for {} which cannot be found in the cache.", ref);
             return null;
         }
-        return putOrUpdate((T) loadDomainObject(ref));
+        return putOrUpdate((T) objectLoader.get(ref));
     }
 
     public List<DomainObject> getDomainObjects(List<Reference> references) throws Exception {
@@ -423,13 +441,14 @@ public class DomainModel {
             }
         }
 
+        objectCacheHits.addAndGet(map.size());
+        objectCacheMisses.addAndGet(unsatisfiedRefs.size());
+
         if (!unsatisfiedRefs.isEmpty()) {
-            List<DomainObject> objects = domainFacade.getDomainObjects(unsatisfiedRefs);
-            List<T> classObjects = new ArrayList<>();
-            for (DomainObject domainObject : objects) {
-                classObjects.add((T) domainObject);
+            // Shares fetches with any other threads looking up the same objects
+            for (Map.Entry<Reference, DomainObject> entry : objectLoader.getAll(unsatisfiedRefs).entrySet()) {
+                map.put(entry.getKey(), (T) entry.getValue());
             }
-            map.putAll(DomainUtils.getMapByReference(classObjects));
         }
 
         unsatisfiedRefs.clear();
@@ -447,9 +466,24 @@ public class DomainModel {
         List<T> canonicalObjects = putOrUpdate(domainObjects, false);
         if (TIMER) if (TIMER) w.stop("getDomainObjects(references)");
         log.debug("getDomainObjects: returning {} objects ({} unsatisfied)", canonicalObjects.size(), unsatisfiedRefs.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Object cache: {}", getObjectCacheStatistics());
+        }
         return canonicalObjects;
     }
 
+    /**
+     * @return hit rate of the object cache, and how many lookups were shared between threads
+     */
+    public String getObjectCacheStatistics() {
+        long hits = objectCacheHits.get();
+        long misses = objectCacheMisses.get();
+        double hitRate = hits + misses == 0 ? 1.0 : (double) hits / (hits + misses);
+        return String.format("%.1f%% hit rate (%d hits, %d misses), %d fetched in %d batches, %d shared with concurrent lookups",
+                hitRate * 100, hits, misses,
+                objectLoader.getRequestedCount(), objectLoader.getBatchCount(), objectLoader.getJoinedCount());
+    }
+
     public <T extends DomainObject> T getDomainObject(Class<T> domainClass, Long id) throws Exception {
         List<T> list = getDomainObjects(domainClass, Collections.singletonList(id));
         return list.isEmpty() ? null : list.get(0);
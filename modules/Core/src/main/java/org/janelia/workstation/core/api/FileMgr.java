@@ -17,6 +17,8 @@ import org.janelia.jacsstorage.clients.api.JadeStorageService;
 import org.janelia.workstation.core.api.http.HttpClientProxy;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ConsolePropsLoaded;
+import org.janelia.workstation.core.filecache.RangeNotSupportedException;
+import org.janelia.workstation.core.filecache.RangedFileProxy;
 import org.janelia.workstation.core.filecache.StorageClientMgr;
 import org.janelia.workstation.core.filecache.WebDavFileKeyProxyMapper;
 import org.janelia.workstation.core.filecache.WebDavUploader;
@@ -51,6 +53,7 @@ public class FileMgr {
     private int webdavMaxTotalConnections;
     private StorageClientMgr storageClientMgr;
     private LocalFileCache<WebdavCachedFileKey> webdavLocalFileCache;
+    private WebDavFileKeyProxyMapper webdavProxyMapper;
 
     private FileMgr() {
     }
@@ -71,10 +74,11 @@ public class FileMgr {
                 managerParams.setMaxTotalConnections(webdavMaxTotalConnections);
                 HttpClientProxy httpClient = new HttpClientProxy(new HttpClient(mgr));
                 storageClientMgr = new StorageClientMgr(webdavBaseUrl, httpClient);
+                webdavProxyMapper = new WebDavFileKeyProxyMapper(httpClient, storageClientMgr);
                 webdavLocalFileCache = new LocalFileCache<>(
                         LocalCacheMgr.getInstance().getLocalFileCacheStorage(),
                         DEFAULT_FILE_CACHE_CONCURRENCY,
-                        new WebDavFileKeyProxyMapper(httpClient, storageClientMgr),
+                        webdavProxyMapper,
                         Executors.newFixedThreadPool(4,
                                 new ThreadFactoryBuilder()
                                         .setNameFormat("CacheEvictor-%d")
@@ -111,6 +115,20 @@ public class FileMgr {
         return webdavLocalFileCache.getCachedFileEntry(new WebdavCachedFileKey(standardPath), forceRefresh);
     }
 
+    /**
+     * Returns an uncached proxy for the specified standard path which can read
+     * ranges of the remote content, for downloading large files in segments.
+     *
+     * @param standardPath the standard system path for the file.
+     *
+     * @return a ranged proxy, or null if the file is not on WebDAV storage. Storage which
+     * ignores ranges is only found out when a range is read, see {@link RangeNotSupportedException}.
+     */
+    public RangedFileProxy getRangedFile(String standardPath) throws FileNotFoundException {
+        FileProxy fileProxy = webdavProxyMapper.getProxyFromKey(new WebdavCachedFileKey(standardPath));
+        return fileProxy instanceof RangedFileProxy ? (RangedFileProxy) fileProxy : null;
+    }
+
     /**
      * Open an input stream for the specified standard path.
      *
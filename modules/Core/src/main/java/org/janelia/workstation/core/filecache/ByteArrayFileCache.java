@@ -0,0 +1,143 @@
+package org.janelia.workstation.core.filecache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.janelia.filecacheutils.FileKey;
+import org.janelia.filecacheutils.FileProxy;
+import org.janelia.filecacheutils.LocalFileCache;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps content which was produced in memory, like downloaded chunks or scaled images, in the local file
+ * cache storage, where it counts against the capacity and is evicted together with the other cached files.
+ *
+ * The local file cache only stores what it reads through its key mapper, so content is written by reading
+ * it through the cache while the mapper can find it in memory. Keys which are not being written are not
+ * mapped to anything, so they are only found once they are on disk.
+ *
+ * @param <K> the keys, which also decide where the files go in the storage
+ */
+public class ByteArrayFileCache<K extends FileKey> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ByteArrayFileCache.class);
+
+    private final LocalFileCacheStorage storage;
+    private final LocalFileCache<K> fileCache;
+    // Content being written, which the file cache reads through the key mapper
+    private final Map<K, ByteArrayFileProxy> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * @param storage local file cache storage for the files
+     * @param concurrency number of files which may be written at the same time
+     * @param evictionExecutor runs the eviction of the least recently used files
+     * @param writeExecutor runs the writes to the storage
+     */
+    public ByteArrayFileCache(LocalFileCacheStorage storage, int concurrency,
+                              ExecutorService evictionExecutor, ExecutorService writeExecutor) {
+        this.storage = storage;
+        this.fileCache = new LocalFileCache<>(
+                storage,
+                concurrency,
+                fileKey -> {
+                    ByteArrayFileProxy fileProxy = pendingWrites.get(fileKey);
+                    if (fileProxy == null) {
+                        throw new FileNotFoundException("Not in the local file cache: " + fileKey.getLocalPath(storage));
+                    }
+                    return fileProxy;
+                },
+                evictionExecutor,
+                writeExecutor
+        );
+    }
+
+    /**
+     * @return the cached content, which the caller must close, or null if it is not in the cache
+     */
+    public InputStream openContentStream(K fileKey) throws IOException {
+        // Check first, so that a miss does not go through the key mapper
+        if (!Files.exists(fileKey.getLocalPath(storage))) {
+            return null;
+        }
+        try {
+            return fileCache.getCachedFileEntry(fileKey, false).openContentStream(false);
+        } catch (FileNotFoundException e) {
+            // Evicted since it was checked
+            LOG.trace("Evicted from the local file cache: {}", fileKey.getLocalPath(storage));
+            return null;
+        }
+    }
+
+    /**
+     * Stores the content in the cache.
+     *
+     * @param fileId identifies the content in the messages of the cache
+     */
+    public void write(K fileKey, String fileId, byte[] content) throws IOException {
+        try {
+            pendingWrites.put(fileKey, new ByteArrayFileProxy(fileId, content));
+            // Reading the entry through the cache is what stores it
+            FileProxy fileProxy = fileCache.getCachedFileEntry(fileKey, true);
+            try (InputStream input = fileProxy.openContentStream(false)) {
+                if (input != null) {
+                    byte[] buffer = new byte[8192];
+                    while (input.read(buffer) >= 0) {
+                        // Drain the stream
+                    }
+                }
+            }
+        } finally {
+            pendingWrites.remove(fileKey);
+        }
+    }
+
+    private static class ByteArrayFileProxy implements FileProxy {
+
+        private final String fileId;
+        private final byte[] content;
+
+        ByteArrayFileProxy(String fileId, byte[] content) {
+            this.fileId = fileId;
+            this.content = content;
+        }
+
+        @Override
+        public String getFileId() {
+            return fileId;
+        }
+
+        @Override
+        public Long estimateSizeInBytes(boolean alwaysCheck) {
+            return (long) content.length;
+        }
+
+        @Override
+        public InputStream openContentStream(boolean alwaysDownload) {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public File getLocalFile(boolean alwaysDownload) {
+            return null;
+        }
+
+        @Override
+        public boolean exists(boolean alwaysCheck) {
+            return true;
+        }
+
+        @Override
+        public boolean deleteProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.janelia.workstation.core.filecache;
+
+/**
+ * Thrown when a range of a file was requested, but the storage ignored the Range header
+ * and answered with the whole content.
+ */
+public class RangeNotSupportedException extends WebDavException {
+
+    public RangeNotSupportedException(String message,
+                                      int statusCode) {
+        super(message, statusCode);
+    }
+
+}
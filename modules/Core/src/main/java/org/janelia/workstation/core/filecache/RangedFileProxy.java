@@ -0,0 +1,22 @@
+package org.janelia.workstation.core.filecache;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+import org.janelia.filecacheutils.FileProxy;
+
+/**
+ * A file proxy which can read part of the remote content, so that large files
+ * can be fetched in several segments at once, or resumed after a failure.
+ */
+public interface RangedFileProxy extends FileProxy {
+
+    /**
+     * @param offset first byte to read
+     * @param length number of bytes to read
+     * @return a stream over exactly that range of the content
+     * @throws RangeNotSupportedException if the storage answers with the whole content instead
+     */
+    InputStream openContentStream(long offset, long length) throws FileNotFoundException;
+
+}
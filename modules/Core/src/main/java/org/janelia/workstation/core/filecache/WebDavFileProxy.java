@@ -7,12 +7,11 @@ import java.io.InputStream;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.httpclient.methods.GetMethod;
-import org.janelia.filecacheutils.FileProxy;
 import org.janelia.workstation.core.api.http.HttpClientProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class WebDavFileProxy implements FileProxy {
+public class WebDavFileProxy implements RangedFileProxy {
     private static final int WBEDAV_SO_TIMEOUT_INMILLIS = 180000;
     private static final Logger LOG = LoggerFactory.getLogger(WebDavFileProxy.class);
 
@@ -65,6 +64,47 @@ public class WebDavFileProxy implements FileProxy {
         }
     }
 
+    @Override
+    public InputStream openContentStream(long offset, long length) throws FileNotFoundException {
+        GetMethod httpGet;
+        try {
+            httpGet = new GetMethod(webDavFile.getRemoteFileUrl());
+            httpGet.getParams().setSoTimeout(WBEDAV_SO_TIMEOUT_INMILLIS);
+            httpGet.setRequestHeader("Range", "bytes=" + offset + "-" + (offset + length - 1));
+        } catch (Exception e) {
+            LOG.error("Could not create GET method for {}", webDavFile.getRemoteFileUrl(), e);
+            webDavFile.handleError(e);
+            throw new IllegalStateException(e);
+        }
+        try {
+            final int responseCode = httpClientProxy.executeMethod(httpGet);
+            if (responseCode == HttpServletResponse.SC_OK) {
+                // the storage ignored the range, drop the connection rather than read the whole file
+                LOG.info("GET {} bytes {}-{} returned the whole file", webDavFile.getRemoteFileUrl(), offset, offset + length - 1);
+                httpGet.abort();
+                httpGet.releaseConnection();
+                throw new RangeNotSupportedException("GET " + webDavFile.getRemoteFileUrl() + " ignored the range", responseCode);
+            }
+            if (responseCode != HttpServletResponse.SC_PARTIAL_CONTENT) {
+                LOG.error("GET {} bytes {}-{} returned {}", webDavFile.getRemoteFileUrl(), offset, offset + length - 1, responseCode);
+                throw new WebDavException("GET " + webDavFile.getRemoteFileUrl() + " bytes " + offset + "-" + (offset + length - 1), responseCode);
+            }
+            LOG.trace("GET {} bytes {}-{} returned {}", webDavFile.getRemoteFileUrl(), offset, offset + length - 1, responseCode);
+            return httpGet.getResponseBodyAsStream();
+        } catch (RangeNotSupportedException e) {
+            throw e;
+        } catch (WebDavException e) {
+            webDavFile.handleError(e);
+            httpGet.releaseConnection();
+            throw e;
+        } catch (Exception e) {
+            LOG.error("GET {} error", webDavFile.getRemoteFileUrl(), e);
+            webDavFile.handleError(e);
+            httpGet.releaseConnection();
+            throw new WebDavException("failed to open " + webDavFile.getRemoteFileUrl(), e);
+        }
+    }
+
     @Override
     public File getLocalFile(boolean alwaysDownload) {
         return null;
@@ -0,0 +1,241 @@
+package org.janelia.workstation.core.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads values by key in batches, on behalf of any number of threads. Keys which are already being loaded
+ * for another caller are not requested again, but wait for the same result. New keys are collected for a
+ * short window, so that the lookups of concurrent callers go out together, and then split into batches of
+ * limited size which are loaded in parallel.
+ *
+ * @param <K> key type, which must implement equals and hashCode
+ * @param <V> value type
+ */
+public class CoalescingBatchLoader<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(CoalescingBatchLoader.class);
+
+    /**
+     * Loads a batch of values.
+     */
+    public interface BatchFunction<K, V> {
+
+        /**
+         * @return the values which were found, by key. Keys which are missing from the map have no value.
+         */
+        Map<K, V> load(List<K> keys) throws Exception;
+    }
+
+    private final BatchFunction<K, V> batchFunction;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService loadExecutor;
+
+    // Keys which are being loaded, or waiting to be
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    // Keys waiting for the current window to close
+    private List<K> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final AtomicLong joinedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * @param name used to name the loading threads
+     * @param batchFunction loads each batch
+     * @param maxBatchSize most keys to load in one batch
+     * @param windowMillis how long to collect keys before loading them
+     * @param threads how many batches may be loaded at once
+     */
+    public CoalescingBatchLoader(String name, BatchFunction<K, V> batchFunction, int maxBatchSize, long windowMillis, int threads) {
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(name + "-window")
+                .setDaemon(true).build());
+        this.loadExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .setDaemon(true).build());
+    }
+
+    /**
+     * Loads the values for the given keys, blocking until they are all available.
+     *
+     * @return the values which were found, by key
+     * @throws Exception the first error thrown while loading a batch with any of the keys
+     */
+    public Map<K, V> getAll(Collection<K> keys) throws Exception {
+
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        List<K> newKeys = new ArrayList<>();
+        for (K key : keys) {
+            if (key == null || futures.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing == null) {
+                futures.put(key, future);
+                newKeys.add(key);
+            }
+            else {
+                futures.put(key, existing);
+            }
+        }
+        requestedCount.addAndGet(newKeys.size());
+        joinedCount.addAndGet(futures.size() - newKeys.size());
+
+        enqueue(newKeys);
+
+        Map<K, V> values = new HashMap<>();
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            V value;
+            try {
+                value = entry.getValue().get();
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            if (value != null) {
+                values.put(entry.getKey(), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Loads the value for a single key, blocking until it is available. Unlike {@link #getAll(Collection)},
+     * a key which is not already being loaded is sent to the batch function right away rather than waiting
+     * for the window to close, because a lone caller has nothing to gain from waiting.
+     *
+     * @return the value, or null if none was found
+     * @throws Exception the error thrown while loading the key
+     */
+    public V get(K key) throws Exception {
+        if (key == null) {
+            return null;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            requestedCount.incrementAndGet();
+            submit(Collections.singletonList(key));
+        }
+        else {
+            joinedCount.incrementAndGet();
+            future = existing;
+        }
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of keys which were sent to the batch function
+     */
+    public long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    /**
+     * @return number of keys which joined a load already in flight for another caller
+     */
+    public long getJoinedCount() {
+        return joinedCount.get();
+    }
+
+    /**
+     * @return number of batches loaded
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    private synchronized void enqueue(List<K> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        pending.addAll(keys);
+        while (pending.size() >= maxBatchSize) {
+            // Full batches do not need to wait for the window
+            List<K> batch = new ArrayList<>(pending.subList(0, maxBatchSize));
+            pending = new ArrayList<>(pending.subList(maxBatchSize, pending.size()));
+            submit(batch);
+        }
+        if (!pending.isEmpty() && !flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        flushScheduled = false;
+        if (!pending.isEmpty()) {
+            submit(pending);
+            pending = new ArrayList<>();
+        }
+    }
+
+    private void submit(List<K> batch) {
+        batchCount.incrementAndGet();
+        loadExecutor.execute(() -> load(batch));
+    }
+
+    private void load(List<K> batch) {
+        log.debug("Loading batch of {} keys", batch.size());
+        Map<K, V> values;
+        try {
+            values = batchFunction.load(batch);
+        }
+        catch (Throwable e) {
+            for (K key : batch) {
+                CompletableFuture<V> future = inFlight.remove(key);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+        for (K key : batch) {
+            // Later requests for this key will load it again
+            CompletableFuture<V> future = inFlight.remove(key);
+            if (future != null) {
+                future.complete(values == null ? null : values.get(key));
+            }
+        }
+    }
+}
@@ -1,47 +1,281 @@
 package org.janelia.workstation.core.util;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.janelia.filecacheutils.FileKey;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
+import org.janelia.workstation.core.api.LocalPreferenceMgr;
+import org.janelia.workstation.core.filecache.ByteArrayFileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * An constrained-size image cache with an LRU eviction policy.
+ * An image cache with two tiers. The memory tier is limited by the number of bytes in the decoded pixels,
+ * and evicts the least recently used images first. Images which are expensive to produce, like scaled
+ * thumbnails, can also be put in the disk tier, where they are kept as PNG files in the local file cache
+ * storage, and count against its capacity. Full size images do not need the disk tier, because the files
+ * they are read from are already in the local file cache.
  *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public class ImageCache {
 
-    private static final int MAX_NUM_IMAGES = 500; // 500 images total
-    private final Cache<String, BufferedImage> cache;
+    private static final Logger log = LoggerFactory.getLogger(ImageCache.class);
+
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+    // Images in the disk tier are kept in this directory of the local file cache
+    private static final String DISK_TIER_DIR = ".image-cache";
+    private static final String DISK_TIER_FORMAT = "png";
+    private static final int DISK_TIER_CONCURRENCY = 4;
+
+    private volatile Cache<String, BufferedImage> cache;
+    private volatile long maxBytes;
+    // Statistics of memory tiers which were replaced when the budget changed
+    private CacheStats previousStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private final ByteArrayFileCache<ImageFileKey> diskCache;
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
 
     public ImageCache() {
-        this(MAX_NUM_IMAGES);
+        this(DEFAULT_MAX_BYTES, null);
     }
 
-    public ImageCache(int size) {
-        this.cache = CacheBuilder.newBuilder()
-                .concurrencyLevel(16)
-                .maximumSize(size)
-                .softValues()
+    /**
+     * @param maxBytes memory budget for the decoded pixels
+     * @param diskStorage local file cache storage for the disk tier, or null to keep images only in memory
+     */
+    public ImageCache(long maxBytes, LocalFileCacheStorage diskStorage) {
+        this.maxBytes = maxBytes;
+        this.cache = buildCache(maxBytes);
+        if (diskStorage != null) {
+            this.diskCache = new ByteArrayFileCache<>(
+                    diskStorage,
+                    DISK_TIER_CONCURRENCY,
+                    Executors.newFixedThreadPool(1,
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("ImageCacheEvictor-%d")
+                                    .setDaemon(true).build()),
+                    Executors.newFixedThreadPool(DISK_TIER_CONCURRENCY,
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("ImageCacheWriter-%d")
+                                    .setDaemon(true).build())
+            );
+        }
+        else {
+            this.diskCache = null;
+        }
+    }
+
+    private static Cache<String, BufferedImage> buildCache(long maxBytes) {
+        return CacheBuilder.newBuilder()
+                // The weight limit is split between segments, so one segment keeps the whole budget for any image
+                .concurrencyLevel(1)
+                // Weights are in kilobytes, so that a single weight cannot overflow
+                .maximumWeight(Math.max(1, maxBytes / 1024))
+                .weigher((String identifier, BufferedImage image) -> (int) Math.max(1, getSizeInBytes(image) / 1024))
+                .recordStats()
                 .build();
     }
 
+    /**
+     * @return the number of bytes taken by the pixels of the given image
+     */
+    public static long getSizeInBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    /**
+     * Changes the memory budget. Images are evicted as needed to fit the new budget.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (this.maxBytes == maxBytes) {
+            return;
+        }
+        Cache<String, BufferedImage> oldCache = cache;
+        Cache<String, BufferedImage> newCache = buildCache(maxBytes);
+        newCache.putAll(oldCache.asMap());
+        this.previousStats = previousStats.plus(oldCache.stats());
+        this.maxBytes = maxBytes;
+        this.cache = newCache;
+        oldCache.invalidateAll();
+        log.info("Image cache memory budget is now {} bytes", maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
     public boolean contains(String identifier) {
         return cache.getIfPresent(identifier) != null;
     }
 
+    /**
+     * Returns the image from memory, or failing that, from the disk tier.
+     */
     public BufferedImage get(String identifier) {
-        return cache.getIfPresent(identifier);
+        BufferedImage image = cache.getIfPresent(identifier);
+        if (image == null && diskCache != null) {
+            image = readFromDisk(identifier);
+            if (image != null) {
+                cache.put(identifier, image);
+            }
+        }
+        return image;
     }
 
     public BufferedImage put(String identifier, BufferedImage image) {
+        return put(identifier, image, false);
+    }
+
+    /**
+     * @param persist also write the image to the disk tier, if there is one
+     */
+    public BufferedImage put(String identifier, BufferedImage image, boolean persist) {
         if (image==null) return null;
         cache.put(identifier, image);
+        if (persist && diskCache != null) {
+            writeToDisk(identifier, image);
+        }
         return image;
     }
 
+    /**
+     * Clears the memory tier. Images in the disk tier are removed along with the rest of the local file cache.
+     */
     public void invalidateAll() {
         cache.invalidateAll();
     }
+
+    /**
+     * @return statistics for the memory tier since it was created
+     */
+    public synchronized CacheStats getMemoryStats() {
+        return previousStats.plus(cache.stats());
+    }
+
+    /**
+     * @return the number of bytes of decoded pixels in the memory tier
+     */
+    public long getMemoryUsedBytes() {
+        long bytes = 0;
+        for (BufferedImage image : cache.asMap().values()) {
+            bytes += getSizeInBytes(image);
+        }
+        return bytes;
+    }
+
+    public long getMemoryImageCount() {
+        return cache.size();
+    }
+
+    /**
+     * @return number of memory misses which were found in the disk tier
+     */
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return number of memory misses which were not in the disk tier either
+     */
+    public long getDiskMissCount() {
+        return diskMisses.get();
+    }
+
+    private boolean isDiskTierAvailable() {
+        return LocalPreferenceMgr.getInstance().isCacheAvailable();
+    }
+
+    private BufferedImage readFromDisk(String identifier) {
+        if (!isDiskTierAvailable()) {
+            return null;
+        }
+        try (InputStream input = diskCache.openContentStream(new ImageFileKey(identifier))) {
+            BufferedImage image = input == null ? null : ImageIO.read(input);
+            if (image != null) {
+                diskHits.incrementAndGet();
+                return image;
+            }
+        }
+        catch (Exception e) {
+            log.warn("Could not read {} from the disk cache", identifier, e);
+        }
+        diskMisses.incrementAndGet();
+        return null;
+    }
+
+    private void writeToDisk(String identifier, BufferedImage image) {
+        if (!isDiskTierAvailable()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, DISK_TIER_FORMAT, output)) {
+                log.debug("Cannot write image of type {} to the disk cache: {}", image.getType(), identifier);
+                return;
+            }
+            diskCache.write(new ImageFileKey(identifier), identifier, output.toByteArray());
+        }
+        catch (Exception e) {
+            log.warn("Could not write {} to the disk cache", identifier, e);
+        }
+    }
+
+    private static class ImageFileKey implements FileKey {
+
+        private final String identifier;
+
+        ImageFileKey(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public Path getLocalPath(LocalFileCacheStorage localFileCacheStorage) {
+            String hash = Hashing.sha256().hashString(identifier, StandardCharsets.UTF_8).toString();
+            return localFileCacheStorage.getLocalFileCacheDir()
+                    .resolve(DISK_TIER_DIR)
+                    .resolve(hash.substring(0, 2))
+                    .resolve(hash + "." + DISK_TIER_FORMAT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ImageFileKey that = (ImageFileKey) o;
+
+            return new EqualsBuilder()
+                    .append(identifier, that.identifier)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(identifier)
+                    .toHashCode();
+        }
+    }
 }
@@ -0,0 +1,323 @@
+package org.janelia.workstation.core.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.janelia.workstation.core.filecache.RangeNotSupportedException;
+import org.janelia.workstation.core.filecache.RangedFileProxy;
+import org.janelia.workstation.core.filecache.WebDavException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads one file from a ranged proxy in fixed size segments, into a ".part" file
+ * next to the destination. Finished segments are recorded in a ".part.segments" file,
+ * so a download which fails or is cancelled picks up where it left off the next time.
+ * Different segments may be downloaded concurrently.
+ *
+ * If the storage turns out to ignore ranges, the whole file is copied in one stream from
+ * the first byte instead, by whichever segment finds out first.
+ */
+public class ResumableDownload {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableDownload.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 32L * 1024 * 1024;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int STATE_MAGIC = 0x52444c31; // "RDL1"
+
+    private final RangedFileProxy source;
+    private final long length;
+    private final long segmentSize;
+    private final int segmentCount;
+    private final File destination;
+    private final File partFile;
+    private final File stateFile;
+    private final BitSet completed;
+    private final AtomicLong completedBytes = new AtomicLong();
+    private final Object wholeDownloadLock = new Object();
+    private FileChannel channel;
+
+    public ResumableDownload(RangedFileProxy source, long length, File destination, long segmentSize) {
+        this.source = source;
+        this.length = length;
+        this.segmentSize = segmentSize;
+        this.segmentCount = (int) ((length + segmentSize - 1) / segmentSize);
+        this.destination = destination;
+        this.partFile = new File(destination.getPath() + ".part");
+        this.stateFile = new File(destination.getPath() + ".part.segments");
+        this.completed = new BitSet(segmentCount);
+    }
+
+    /**
+     * Opens the part file, and reads which segments an earlier attempt already finished.
+     */
+    public synchronized void open() throws IOException {
+        final File destinationDir = destination.getParentFile();
+        if (destinationDir != null && !destinationDir.exists()) {
+            Files.createDirectories(destinationDir.toPath());
+        }
+        if (!readState()) {
+            completed.clear();
+            Files.deleteIfExists(partFile.toPath());
+        }
+        channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!completed.isEmpty() && channel.size() < getSegmentEnd(completed.length() - 1)) {
+            log.warn("Part file {} is shorter than its finished segments, starting over", partFile);
+            completed.clear();
+        }
+        long bytes = 0;
+        for (int segment = completed.nextSetBit(0); segment >= 0; segment = completed.nextSetBit(segment + 1)) {
+            bytes += getSegmentEnd(segment) - getSegmentStart(segment);
+        }
+        completedBytes.set(bytes);
+        if (bytes > 0) {
+            log.info("Resuming download of {} to {} with {} of {} bytes already done", source.getFileId(), destination, bytes, length);
+        }
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes in finished segments
+     */
+    public long getCompletedBytes() {
+        return completedBytes.get();
+    }
+
+    public synchronized List<Integer> getPendingSegments() {
+        List<Integer> pending = new ArrayList<>();
+        for (int segment = completed.nextClearBit(0); segment < segmentCount; segment = completed.nextClearBit(segment + 1)) {
+            pending.add(segment);
+        }
+        return pending;
+    }
+
+    public synchronized boolean isComplete() {
+        return completed.cardinality() == segmentCount;
+    }
+
+    /**
+     * Downloads one segment. A failed connection is retried a few times, starting
+     * from the last byte written. If the storage ignores ranges, the whole file is
+     * downloaded instead.
+     *
+     * @param progress told how many more bytes were written, as they are written
+     */
+    public void downloadSegment(int segment, LongConsumer progress) throws IOException {
+        final long end = getSegmentEnd(segment);
+        long position = getSegmentStart(segment);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        int attempt = 0;
+        while (position < end) {
+            try (InputStream input = source.openContentStream(position, end - position)) {
+                position = copy(input, position, end, buffer, progress);
+            }
+            catch (RangeNotSupportedException e) {
+                downloadWhole(progress);
+                return;
+            }
+            catch (ClosedByInterruptException | InterruptedIOException e) {
+                throw e;
+            }
+            catch (IOException | WebDavException e) {
+                retryAfter(e, ++attempt, position);
+            }
+        }
+        markCompleted(segment);
+    }
+
+    /**
+     * Copies the whole content in one stream from the first byte, unless another
+     * segment already did. A failed connection starts over from the first byte,
+     * and the bytes written again are not reported to the progress again.
+     */
+    private void downloadWhole(LongConsumer progress) throws IOException {
+        synchronized (wholeDownloadLock) {
+            if (isComplete()) {
+                return;
+            }
+            log.info("Storage of {} ignores ranges, downloading it in one stream", source.getFileId());
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            // Furthest position any attempt reached, which is how much was reported
+            AtomicLong reported = new AtomicLong();
+            int attempt = 0;
+            while (true) {
+                AtomicLong position = new AtomicLong();
+                try (InputStream input = source.openContentStream(true)) {
+                    if (input == null) {
+                        throw new FileNotFoundException("Could not open " + source.getFileId());
+                    }
+                    copy(input, 0, length, buffer, bytes -> {
+                        long reached = position.addAndGet(bytes);
+                        if (reached > reported.get()) {
+                            progress.accept(reached - reported.getAndSet(reached));
+                        }
+                    });
+                    break;
+                }
+                catch (ClosedByInterruptException | InterruptedIOException e) {
+                    throw e;
+                }
+                catch (IOException | WebDavException e) {
+                    retryAfter(e, ++attempt, 0);
+                }
+            }
+            markAllCompleted();
+        }
+    }
+
+    /**
+     * Copies the input to the part file, from the given position up to the end.
+     *
+     * @return the position reached, which is the end
+     */
+    private long copy(InputStream input, long position, long end, ByteBuffer buffer, LongConsumer progress) throws IOException {
+        ReadableByteChannel inputChannel = Channels.newChannel(input);
+        while (position < end) {
+            buffer.clear();
+            if (buffer.remaining() > end - position) {
+                buffer.limit((int) (end - position));
+            }
+            int bytesRead = inputChannel.read(buffer);
+            if (bytesRead < 0) {
+                throw new EOFException("Content of " + source.getFileId() + " ended at byte " + position + ", expected " + end);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            progress.accept(bytesRead);
+        }
+        return position;
+    }
+
+    /**
+     * Rethrows the error once the attempts are used up, otherwise waits before the next attempt.
+     */
+    private void retryAfter(Exception e, int attempt, long position) throws IOException {
+        if (attempt >= MAX_ATTEMPTS) {
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+        log.warn("Retrying download of {} from byte {} after error: {}", source.getFileId(), position, e.getMessage());
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + source.getFileId());
+        }
+    }
+
+    /**
+     * Moves the finished part file to the destination, replacing any file already there.
+     */
+    public synchronized void finish() throws IOException {
+        if (!isComplete()) {
+            throw new IllegalStateException("Cannot finish " + destination + " with " + getPendingSegments().size() + " segments left");
+        }
+        channel.close();
+        Files.move(partFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(stateFile.toPath());
+    }
+
+    /**
+     * Closes the part file, leaving it and its state in place for a later attempt.
+     */
+    public synchronized void close() {
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                log.warn("Error closing {}", partFile, e);
+            }
+        }
+    }
+
+    private long getSegmentStart(int segment) {
+        return segment * segmentSize;
+    }
+
+    private long getSegmentEnd(int segment) {
+        return Math.min(length, (segment + 1) * segmentSize);
+    }
+
+    private synchronized void markCompleted(int segment) throws IOException {
+        completed.set(segment);
+        completedBytes.addAndGet(getSegmentEnd(segment) - getSegmentStart(segment));
+        writeState();
+    }
+
+    private synchronized void markAllCompleted() throws IOException {
+        completed.set(0, segmentCount);
+        completedBytes.set(length);
+        writeState();
+    }
+
+    /**
+     * @return true if there is saved state for this same source content
+     */
+    private boolean readState() throws IOException {
+        if (!stateFile.exists() || !partFile.exists()) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(stateFile.toPath()))) {
+            if (input.readInt() != STATE_MAGIC
+                    || input.readLong() != length
+                    || input.readLong() != segmentSize
+                    || !input.readUTF().equals(String.valueOf(source.getFileId()))) {
+                log.info("Discarding partial download of {}, which was for different content", destination);
+                return false;
+            }
+            byte[] bits = new byte[input.readInt()];
+            input.readFully(bits);
+            completed.clear();
+            completed.or(BitSet.valueOf(bits));
+            return true;
+        }
+        catch (EOFException e) {
+            log.warn("Discarding truncated download state {}", stateFile);
+            return false;
+        }
+    }
+
+    private void writeState() throws IOException {
+        Path temp = new File(stateFile.getPath() + ".tmp").toPath();
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(temp))) {
+            byte[] bits = completed.toByteArray();
+            output.writeInt(STATE_MAGIC);
+            output.writeLong(length);
+            output.writeLong(segmentSize);
+            output.writeUTF(String.valueOf(source.getFileId()));
+            output.writeInt(bits.length);
+            output.write(bits);
+        }
+        Files.move(temp, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -12,6 +12,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.io.IOUtils;
 import org.janelia.filecacheutils.FileProxy;
 import org.janelia.workstation.core.api.FileMgr;
+import org.janelia.workstation.core.filecache.RangedFileProxy;
 import org.janelia.workstation.core.options.OptionConstants;
 import org.janelia.workstation.core.workers.BackgroundWorker;
 import org.janelia.workstation.core.workers.IndeterminateProgressMonitor;
@@ -445,6 +446,16 @@ public class Utils {
             throw new IOException("Unable to open " + destination.getAbsolutePath() + " for writing.");
         }
 
+        boolean decompress = standardPath.endsWith(EXTENSION_BZ2) && !destination.getName().endsWith(EXTENSION_BZ2);
+        if (alwaysDownload && !decompress) {
+            RangedFileProxy rangedProxy = FileMgr.getFileMgr().getRangedFile(standardPath);
+            Long length = rangedProxy == null ? null : rangedProxy.estimateSizeInBytes(true);
+            if (length != null) {
+                copyRangedURLToFile(rangedProxy, length, destination, worker, hasProgress);
+                return;
+            }
+        }
+
         InputStream input;
         FileProxy fileProxy = FileMgr.getFileMgr().getFile(standardPath, false);
 
@@ -453,8 +464,7 @@ public class Utils {
         int estimatedCompressionFactor;
         InputStream fileProxyStream = fileProxy.openContentStream(alwaysDownload);
         try {
-            if (standardPath.endsWith(EXTENSION_BZ2) &&
-                    (!destination.getName().endsWith(EXTENSION_BZ2))) {
+            if (decompress) {
                 input = new BZip2CompressorInputStream(fileProxyStream, true);
                 log.info("Using BZip2CompressorInputStream to decompress while streaming");
                 estimatedCompressionFactor = 3;
@@ -488,6 +498,49 @@ public class Utils {
         }
     }
 
+    /**
+     * Downloads the file a segment at a time into a part file, so that a later
+     * call for the same destination resumes where a failed one stopped.
+     */
+    private static void copyRangedURLToFile(RangedFileProxy rangedProxy, long length, File destination,
+                                            SimpleWorker worker, boolean hasProgress) throws Exception {
+        log.info("Copying {} to {} in resumable segments", rangedProxy.getFileId(), destination);
+        final BackgroundWorker backgroundWorker = hasProgress && worker instanceof BackgroundWorker ? (BackgroundWorker) worker : null;
+        final String backgroundStatus = backgroundWorker == null || backgroundWorker.getStatus() == null
+                ? "Copying file - "
+                : backgroundWorker.getStatus() + " - ";
+        ResumableDownload download = new ResumableDownload(rangedProxy, length, destination, ResumableDownload.DEFAULT_SEGMENT_SIZE);
+        try {
+            download.open();
+            final long startTime = System.currentTimeMillis();
+            final long resumedBytes = download.getCompletedBytes();
+            final long[] bytesWritten = { 0, 0 }; // total, and total at the last status update
+            for (int segment : download.getPendingSegments()) {
+                if (worker != null) {
+                    worker.throwExceptionIfCancelled();
+                }
+                download.downloadSegment(segment, (long bytes) -> {
+                    bytesWritten[0] += bytes;
+                    if (hasProgress && worker != null && bytesWritten[0] - bytesWritten[1] > TEN_MEGABYTES) {
+                        bytesWritten[1] = bytesWritten[0];
+                        worker.setProgress(resumedBytes + bytesWritten[0], length);
+                        if (backgroundWorker != null) {
+                            final long elapsedTime = System.currentTimeMillis() - startTime;
+                            TransferSpeed speed = new TransferSpeed(elapsedTime, bytesWritten[0]);
+                            String message = String.format("Wrote %.2f %s (%.2f MB/s)",
+                                    speed.getAmountWritten(), speed.getAmountUnits(), speed.getMbps());
+                            backgroundWorker.setStatus(backgroundStatus + message);
+                        }
+                    }
+                });
+            }
+            download.finish();
+            log.info("Finished copy {} bytes ({} resumed) from {} to {}", length, resumedBytes, rangedProxy.getFileId(), destination);
+        } finally {
+            download.close();
+        }
+    }
+
     public static void copyFileToFile(File source, File destination, SimpleWorker worker, boolean hasProgress) throws Exception {
         if (worker != null) {
             worker.throwExceptionIfCancelled();
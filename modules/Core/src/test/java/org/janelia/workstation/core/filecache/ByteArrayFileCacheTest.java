@@ -0,0 +1,100 @@
+package org.janelia.workstation.core.filecache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import com.google.common.io.ByteStreams;
+import org.janelia.filecacheutils.FileKey;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
+import org.janelia.filecacheutils.LocalFileCacheStorageBuilder;
+import org.janelia.it.jacs.model.TestCategories;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ByteArrayFileCache} class.
+ */
+@Category(TestCategories.FastTests.class)
+public class ByteArrayFileCacheTest {
+
+    private Path cacheDir;
+    private LocalFileCacheStorage storage;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("byte-array-file-cache");
+        storage = new LocalFileCacheStorageBuilder()
+                .withCacheDir(cacheDir)
+                .withCapacityInKB(1024)
+                .build();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        try (Stream<Path> paths = Files.walk(cacheDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String read(ByteArrayFileCache<NamedFileKey> fileCache, String name) throws IOException {
+        try (InputStream input = fileCache.openContentStream(new NamedFileKey(name))) {
+            return input == null ? null : new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void contentIsOnlyFoundOnceWritten() throws Exception {
+        ByteArrayFileCache<NamedFileKey> fileCache = new ByteArrayFileCache<>(storage, 1, executor, executor);
+        assertNull(read(fileCache, "a"));
+
+        fileCache.write(new NamedFileKey("a"), "a", "first".getBytes(StandardCharsets.UTF_8));
+        assertTrue(Files.exists(new NamedFileKey("a").getLocalPath(storage)));
+        assertEquals("first", read(fileCache, "a"));
+        assertNull(read(fileCache, "b"));
+    }
+
+    @Test
+    public void contentIsFoundByAnotherCacheOnTheSameStorage() throws Exception {
+        new ByteArrayFileCache<NamedFileKey>(storage, 1, executor, executor)
+                .write(new NamedFileKey("a"), "a", "content".getBytes(StandardCharsets.UTF_8));
+        assertEquals("content", read(new ByteArrayFileCache<>(storage, 1, executor, executor), "a"));
+    }
+
+    private static class NamedFileKey implements FileKey {
+
+        private final String name;
+
+        NamedFileKey(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Path getLocalPath(LocalFileCacheStorage localFileCacheStorage) {
+            return localFileCacheStorage.getLocalFileCacheDir().resolve("test").resolve(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NamedFileKey && name.equals(((NamedFileKey) o).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.janelia.workstation.core.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CoalescingBatchLoader} class.
+ */
+public class CoalescingBatchLoaderTest {
+
+    private final Map<Integer, AtomicInteger> loadCounts = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Loads the square of each key, except for negative keys which have no value.
+     */
+    private Map<Integer, Integer> loadSquares(List<Integer> keys) throws InterruptedException {
+        batchSizes.add(keys.size());
+        Thread.sleep(20);
+        Map<Integer, Integer> values = new HashMap<>();
+        for (Integer key : keys) {
+            loadCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            if (key >= 0) {
+                values.put(key, key * key);
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void concurrentCallersShareLoads() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", this::loadSquares, 1000, 50, 4);
+        int callers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Map<Integer, Integer>>> futures = new ArrayList<>();
+            for (int c = 0; c < callers; c++) {
+                // Each caller overlaps with its neighbours
+                List<Integer> keys = new ArrayList<>();
+                for (int key = c * 10; key < c * 10 + 30; key++) {
+                    keys.add(key);
+                }
+                futures.add(executor.submit((Callable<Map<Integer, Integer>>) () -> {
+                    start.await();
+                    return loader.getAll(keys);
+                }));
+            }
+            start.countDown();
+            for (Future<Map<Integer, Integer>> future : futures) {
+                Map<Integer, Integer> values = future.get();
+                Assert.assertEquals(30, values.size());
+                for (Map.Entry<Integer, Integer> entry : values.entrySet()) {
+                    Assert.assertEquals(entry.getKey() * entry.getKey(), (int) entry.getValue());
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        for (AtomicInteger count : loadCounts.values()) {
+            Assert.assertEquals(1, count.get());
+        }
+        Assert.assertEquals(100, loadCounts.size());
+        Assert.assertEquals(100, loader.getRequestedCount());
+        Assert.assertEquals(8 * 30 - 100, loader.getJoinedCount());
+    }
+
+    @Test
+    public void largeRequestsAreSplit() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", this::loadSquares, 100, 10, 4);
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; key < 250; key++) {
+            keys.add(key);
+        }
+        Assert.assertEquals(250, loader.getAll(keys).size());
+        Assert.assertEquals(3, loader.getBatchCount());
+        for (int size : batchSizes) {
+            Assert.assertTrue(size <= 100);
+        }
+    }
+
+    @Test
+    public void missingKeysHaveNoValue() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", this::loadSquares, 100, 10, 1);
+        Map<Integer, Integer> values = loader.getAll(Arrays.asList(3, -1, null, 3));
+        Assert.assertEquals(1, values.size());
+        Assert.assertEquals(9, (int) values.get(3));
+        // Finished keys are loaded again when asked for again
+        loader.getAll(Collections.singletonList(3));
+        Assert.assertEquals(2, loadCounts.get(3).get());
+    }
+
+    @Test
+    public void singleKeysDoNotWaitForTheWindow() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", this::loadSquares, 100, 10000, 1);
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(16, (int) loader.get(4));
+        Assert.assertNull(loader.get(-4));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(2, loader.getBatchCount());
+    }
+
+    @Test
+    public void singleKeysJoinLoadsInFlight() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", this::loadSquares, 100, 50, 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<Integer, Integer>> batch = executor.submit(() -> loader.getAll(Arrays.asList(1, 2, 3)));
+            while (loader.getRequestedCount() < 3) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(4, (int) loader.get(2));
+            Assert.assertEquals(3, batch.get().size());
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, loadCounts.get(2).get());
+        Assert.assertEquals(1, loader.getJoinedCount());
+        Assert.assertEquals(1, loader.getBatchCount());
+    }
+
+    @Test
+    public void errorsReachEveryCaller() throws Exception {
+        CoalescingBatchLoader<Integer, Integer> loader = new CoalescingBatchLoader<>("Test", keys -> {
+            throw new IOException("Server unavailable");
+        }, 100, 10, 1);
+        try {
+            loader.getAll(Arrays.asList(1, 2));
+            Assert.fail("Expected the load to fail");
+        }
+        catch (IOException e) {
+            Assert.assertEquals("Server unavailable", e.getMessage());
+        }
+    }
+}
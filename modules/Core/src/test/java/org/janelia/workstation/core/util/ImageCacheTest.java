@@ -0,0 +1,62 @@
+package org.janelia.workstation.core.util;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the memory tier of the {@link ImageCache} class.
+ */
+public class ImageCacheTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void sizeOfDecodedPixels() {
+        Assert.assertEquals(100 * 50 * 4, ImageCache.getSizeInBytes(new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB)));
+        Assert.assertEquals(100 * 50 * 2, ImageCache.getSizeInBytes(new BufferedImage(100, 50, BufferedImage.TYPE_USHORT_GRAY)));
+        Assert.assertEquals(100 * 50 * 3, ImageCache.getSizeInBytes(new BufferedImage(100, 50, BufferedImage.TYPE_3BYTE_BGR)));
+    }
+
+    @Test
+    public void largeImageEvictsOnlyWhatItNeeds() {
+        ImageCache imageCache = new ImageCache(8 * MB, null);
+        for (int i = 0; i < 100; i++) {
+            // 16 KB each
+            imageCache.put("thumbnail" + i, new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB));
+        }
+        // 4 MB each, so only one fits next to the thumbnails
+        imageCache.put("mip1", new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNotNull(imageCache.get("thumbnail" + i));
+        }
+        imageCache.put("mip2", new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB));
+
+        Assert.assertTrue(imageCache.getMemoryUsedBytes() <= 8 * MB);
+        Assert.assertFalse(imageCache.contains("mip1"));
+        Assert.assertTrue(imageCache.contains("mip2"));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(imageCache.contains("thumbnail" + i));
+        }
+        Assert.assertEquals(1, imageCache.getMemoryStats().evictionCount());
+    }
+
+    @Test
+    public void shrinkBudget() {
+        ImageCache imageCache = new ImageCache(8 * MB, null);
+        for (int i = 0; i < 6; i++) {
+            imageCache.put("mip" + i, new BufferedImage(512, 512, BufferedImage.TYPE_INT_ARGB));
+        }
+        Assert.assertEquals(6, imageCache.getMemoryImageCount());
+        Assert.assertNotNull(imageCache.get("mip0"));
+        Assert.assertNull(imageCache.get("missing"));
+
+        imageCache.setMaxBytes(2 * MB);
+        Assert.assertTrue(imageCache.getMemoryUsedBytes() <= 2 * MB);
+        Assert.assertEquals(2 * MB, imageCache.getMaxBytes());
+        // Statistics carry over from before the change
+        Assert.assertEquals(1, imageCache.getMemoryStats().hitCount());
+        Assert.assertEquals(1, imageCache.getMemoryStats().missCount());
+    }
+}
@@ -0,0 +1,260 @@
+package org.janelia.workstation.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.janelia.workstation.core.filecache.RangeNotSupportedException;
+import org.janelia.workstation.core.filecache.RangedFileProxy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResumableDownload} class.
+ */
+public class ResumableDownloadTest {
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    private byte[] content;
+    private File destination;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[10 * SEGMENT_SIZE + 123];
+        new Random(7).nextBytes(content);
+        destination = new File(Files.createTempDirectory("resumable").toFile(), "nested/file.lsm");
+    }
+
+    @Test
+    public void downloadSegmentsConcurrently() throws Exception {
+        ResumableDownload download = new ResumableDownload(new ByteArrayProxy(content, -1), content.length, destination, SEGMENT_SIZE);
+        download.open();
+        List<Integer> pending = download.getPendingSegments();
+        Assert.assertEquals(11, pending.size());
+
+        AtomicLong written = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Future<?> future : executor.invokeAll(pending.stream()
+                    .map(segment -> (Callable<Void>) () -> {
+                        download.downloadSegment(segment, written::addAndGet);
+                        return null;
+                    })
+                    .collect(Collectors.toList()))) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(download.isComplete());
+        download.finish();
+        Assert.assertEquals(content.length, written.get());
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertFalse(new File(destination.getPath() + ".part").exists());
+        Assert.assertFalse(new File(destination.getPath() + ".part.segments").exists());
+    }
+
+    @Test
+    public void resumeAfterFailure() throws Exception {
+        // Every stream of the broken proxy fails after this many bytes
+        ByteArrayProxy brokenProxy = new ByteArrayProxy(content, 5 * SEGMENT_SIZE + 10);
+        ResumableDownload download = new ResumableDownload(brokenProxy, content.length, destination, 2 * SEGMENT_SIZE);
+        download.open();
+        int segment = 0;
+        try {
+            for (; segment < 6; segment++) {
+                download.downloadSegment(segment, bytes -> {});
+            }
+            Assert.fail("Expected the download to fail");
+        } catch (IOException e) {
+            // segment 2 starts past the point where the proxy fails
+            Assert.assertEquals(2, segment);
+        } finally {
+            download.close();
+        }
+        Assert.assertFalse(destination.exists());
+
+        ByteArrayProxy proxy = new ByteArrayProxy(content, -1);
+        ResumableDownload resumed = new ResumableDownload(proxy, content.length, destination, 2 * SEGMENT_SIZE);
+        resumed.open();
+        Assert.assertEquals(4 * SEGMENT_SIZE, resumed.getCompletedBytes());
+        for (int pending : resumed.getPendingSegments()) {
+            resumed.downloadSegment(pending, bytes -> {});
+        }
+        resumed.finish();
+        Assert.assertEquals(content.length - 4 * SEGMENT_SIZE, proxy.bytesServed.get());
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void discardStateForDifferentContent() throws Exception {
+        ResumableDownload download = new ResumableDownload(new ByteArrayProxy(content, -1), content.length, destination, SEGMENT_SIZE);
+        download.open();
+        download.downloadSegment(0, bytes -> {});
+        download.close();
+
+        byte[] shorter = new byte[content.length - 1];
+        ResumableDownload other = new ResumableDownload(new ByteArrayProxy(shorter, -1), shorter.length, destination, SEGMENT_SIZE);
+        other.open();
+        Assert.assertEquals(0, other.getCompletedBytes());
+        Assert.assertEquals(11, other.getPendingSegments().size());
+        other.close();
+    }
+
+    @Test
+    public void downloadWholeFileWhenRangesAreIgnored() throws Exception {
+        RangeIgnoringProxy proxy = new RangeIgnoringProxy(content);
+        ResumableDownload download = new ResumableDownload(proxy, content.length, destination, SEGMENT_SIZE);
+        download.open();
+        List<Integer> pending = download.getPendingSegments();
+
+        AtomicLong written = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Future<?> future : executor.invokeAll(pending.stream()
+                    .map(segment -> (Callable<Void>) () -> {
+                        download.downloadSegment(segment, written::addAndGet);
+                        return null;
+                    })
+                    .collect(Collectors.toList()))) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(download.isComplete());
+        download.finish();
+        // one segment copies the whole file, the others find it done
+        Assert.assertEquals(1, proxy.wholeStreams.get());
+        Assert.assertEquals(content.length, written.get());
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertFalse(new File(destination.getPath() + ".part.segments").exists());
+    }
+
+    @Test
+    public void retryWholeFileWithoutReportingBytesTwice() throws Exception {
+        // Large enough that bytes are reported before the first whole stream fails part way,
+        // after which the copy starts over from the first byte
+        byte[] large = new byte[1024 * 1024 + 123];
+        new Random(7).nextBytes(large);
+        RangeIgnoringProxy proxy = new RangeIgnoringProxy(large, 600 * 1000);
+        ResumableDownload download = new ResumableDownload(proxy, large.length, destination, 100 * SEGMENT_SIZE);
+        download.open();
+        AtomicLong written = new AtomicLong();
+        download.downloadSegment(0, written::addAndGet);
+        Assert.assertTrue(download.isComplete());
+        download.finish();
+        Assert.assertEquals(2, proxy.wholeStreams.get());
+        Assert.assertEquals(large.length, written.get());
+        Assert.assertArrayEquals(large, Files.readAllBytes(destination.toPath()));
+    }
+
+    /**
+     * Serves ranges of a byte array, optionally failing once a stream gets past the given offset.
+     */
+    private static class ByteArrayProxy implements RangedFileProxy {
+        private final byte[] content;
+        private final long failAt;
+        private final AtomicLong bytesServed = new AtomicLong();
+
+        ByteArrayProxy(byte[] content, long failAt) {
+            this.content = content;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public InputStream openContentStream(long offset, long length) {
+            final long[] position = { offset };
+            return new FilterInputStream(new ByteArrayInputStream(content, (int) offset, (int) length)) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (failAt >= 0 && position[0] >= failAt) {
+                        throw new IOException("Connection reset");
+                    }
+                    int n = super.read(b, off, failAt >= 0 ? (int) Math.min(len, failAt - position[0]) : len);
+                    if (n > 0) {
+                        position[0] += n;
+                        bytesServed.addAndGet(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public String getFileId() {
+            return "test-" + content.length;
+        }
+
+        @Override
+        public Long estimateSizeInBytes(boolean alwaysCheck) {
+            return (long) content.length;
+        }
+
+        @Override
+        public InputStream openContentStream(boolean alwaysDownload) throws FileNotFoundException {
+            return openContentStream(0, content.length);
+        }
+
+        @Override
+        public File getLocalFile(boolean alwaysDownload) {
+            return null;
+        }
+
+        @Override
+        public boolean exists(boolean alwaysCheck) {
+            return true;
+        }
+
+        @Override
+        public boolean deleteProxy() {
+            return false;
+        }
+    }
+
+    /**
+     * Answers every range request with the whole content, like storage which ignores the Range header,
+     * optionally failing the first whole stream once it gets past the given offset.
+     */
+    private static class RangeIgnoringProxy extends ByteArrayProxy {
+        private final AtomicInteger wholeStreams = new AtomicInteger();
+        private final ByteArrayProxy firstStreamProxy;
+
+        RangeIgnoringProxy(byte[] content) {
+            this(content, -1);
+        }
+
+        RangeIgnoringProxy(byte[] content, long firstStreamFailAt) {
+            super(content, -1);
+            this.firstStreamProxy = new ByteArrayProxy(content, firstStreamFailAt);
+        }
+
+        @Override
+        public InputStream openContentStream(long offset, long length) {
+            throw new RangeNotSupportedException("GET test ignored the range", 200);
+        }
+
+        @Override
+        public InputStream openContentStream(boolean alwaysDownload) throws FileNotFoundException {
+            if (wholeStreams.incrementAndGet() == 1) {
+                return firstStreamProxy.openContentStream(0, estimateSizeInBytes(true));
+            }
+            return super.openContentStream(0, estimateSizeInBytes(true));
+        }
+    }
+}
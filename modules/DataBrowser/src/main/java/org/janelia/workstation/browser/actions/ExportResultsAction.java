@@ -164,7 +164,9 @@ public class ExportResultsAction<T,S> extends AbstractAction {
                     numProcessed++;
                     progress.setProgress((int) numProcessed, (int) numFound);
                 }
-    
+
+                // Results which are loaded lazily may find more as their pages are loaded
+                numFound = searchResults.getNumTotalResults();
                 if (numProcessed >= numFound) {
                     break;
                 }
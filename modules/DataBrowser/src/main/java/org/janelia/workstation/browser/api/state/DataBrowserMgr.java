@@ -9,6 +9,8 @@ import com.google.common.eventbus.Subscribe;
 import org.janelia.model.security.util.PermissionTemplate;
 import org.janelia.workstation.browser.gui.components.DomainListViewManager;
 import org.janelia.workstation.browser.gui.components.DomainListViewTopComponent;
+import org.janelia.workstation.browser.gui.options.BrowserOptions;
+import org.janelia.workstation.core.api.LocalCacheMgr;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ApplicationClosing;
 import org.janelia.workstation.core.model.RecentFolder;
@@ -33,6 +35,7 @@ public class DataBrowserMgr {
     public static final String ADD_TO_RESULTSET_HISTORY = "ADD_TO_RESULTSET_HISTORY";
     public static final int MAX_ADD_TO_ROOT_HISTORY = 5;
     private static final String AUTO_SHARE_TEMPLATE = "Browser.AutoShareTemplate";
+    private static final long MB = 1024 * 1024;
 
     // Singleton
     private static DataBrowserMgr instance;
@@ -45,12 +48,14 @@ public class DataBrowserMgr {
     }
 
     private final Map<TopComponent,NavigationHistory> navigationHistoryMap = new HashMap<>();
-    private final ImageCache imageCache = new ImageCache();
+    private final ImageCache imageCache;
     private PermissionTemplate autoShareTemplate;
 
 
     private DataBrowserMgr() {
         this.autoShareTemplate = (PermissionTemplate) FrameworkAccess.getModelProperty(AUTO_SHARE_TEMPLATE);
+        this.imageCache = new ImageCache(BrowserOptions.getInstance().getImageCacheMegabytes() * MB,
+                LocalCacheMgr.getInstance().getLocalFileCacheStorage());
     }
 
     public ImageCache getImageCache() {
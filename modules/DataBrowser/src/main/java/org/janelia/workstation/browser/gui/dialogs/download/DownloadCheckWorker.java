@@ -0,0 +1,115 @@
+package org.janelia.workstation.browser.gui.dialogs.download;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.core.workers.SimpleWorker;
+
+/**
+ * Checks items against the files already in their target directories, on several threads.
+ * Items which were not downloaded before are added as soon as they are checked, and the
+ * rest are kept for the user to decide about once all are checked.
+ *
+ * Downloads wait for more items until finishAdding is called, so it is called once however
+ * the check ends, including when it is cancelled and neither hadSuccess nor hadError runs.
+ */
+abstract class DownloadCheckWorker extends SimpleWorker {
+
+    private final List<DownloadFileItem> toCheck;
+    private final int threadCount;
+    private final List<Map.Entry<DownloadFileItem,String>> alreadyDownloaded = new ArrayList<>();
+    private boolean finishedAdding;
+
+    DownloadCheckWorker(List<DownloadFileItem> toCheck, int threadCount) {
+        this.toCheck = toCheck;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return the name of a complete earlier download of this item, or null if there is none
+     */
+    protected abstract String findDownloadedFile(DownloadFileItem downloadItem) throws Exception;
+
+    protected abstract void addDownload(DownloadFileItem downloadItem);
+
+    /**
+     * Called once no more items will be added.
+     */
+    protected abstract void finishAdding();
+
+    @Override
+    protected void doStuff() throws Exception {
+
+        ExecutorService checkExecutor = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("DownloadCheck-%d")
+                        .setDaemon(true).build());
+        try {
+            CompletionService<Map.Entry<DownloadFileItem,String>> checks = new ExecutorCompletionService<>(checkExecutor);
+            for(DownloadFileItem downloadItem : toCheck) {
+                checks.submit(() -> new AbstractMap.SimpleImmutableEntry<>(
+                        downloadItem, findDownloadedFile(downloadItem)));
+            }
+
+            for(int i=0; i<toCheck.size(); i++) {
+                if (isCancelled()) return;
+                Map.Entry<DownloadFileItem,String> checked;
+                try {
+                    checked = checks.take().get();
+                }
+                catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                }
+                if (checked.getValue()==null) {
+                    addDownload(checked.getKey());
+                }
+                else {
+                    // This file was already downloaded
+                    alreadyDownloaded.add(checked);
+                }
+                setProgress(i+1, toCheck.size());
+            }
+        }
+        finally {
+            checkExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    protected void done() {
+        try {
+            super.done();
+        }
+        finally {
+            // Cancelled and disregarded workers skip hadSuccess and hadError
+            finishAddingOnce();
+        }
+    }
+
+    /**
+     * Lets the downloads finish, unless that was already done. Subclasses call this from hadSuccess
+     * once they have added any of the already downloaded items, and from hadError.
+     */
+    protected void finishAddingOnce() {
+        if (!finishedAdding) {
+            finishedAdding = true;
+            finishAdding();
+        }
+    }
+
+    /**
+     * @return the checked items which were downloaded before, with the names of their earlier downloads
+     */
+    protected List<Map.Entry<DownloadFileItem,String>> getAlreadyDownloaded() {
+        return alreadyDownloaded;
+    }
+}
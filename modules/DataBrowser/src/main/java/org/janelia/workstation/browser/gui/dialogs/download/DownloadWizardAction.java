@@ -3,22 +3,16 @@ package org.janelia.workstation.browser.gui.dialogs.download;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
-import java.util.stream.Collectors;
 
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
@@ -28,7 +22,6 @@ import javax.swing.ProgressMonitor;
 import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 
-import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.janelia.workstation.core.util.Progress;
 
@@ -66,7 +59,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.LinkedHashMultiset;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 
 /**
@@ -86,6 +78,7 @@ public final class DownloadWizardAction implements ActionListener {
     private Map<ArtifactDescriptor,Multiset<FileType>> artifactFileCounts;
     private static final Semaphore COPY_SEMAPHORE = new Semaphore(MAX_CONCURRENT_DOWNLOADS);
     private static final int MAX_BROWSE_FILES = 10;
+    private static final int MAX_CONCURRENT_CHECKS = 8;
     private Integer applyToAllChoice;
     private int numBrowseFileAttempts = 0;
     
@@ -409,97 +402,71 @@ public final class DownloadWizardAction implements ActionListener {
         }
     }
 
-    private int totalToCheck = 0;
-    private Queue<DownloadFileItem> toCheck = new LinkedList<>();
-    private List<DownloadFileItem> toDownload = new LinkedList<>();
-    
+    private final TargetDirectoryIndex targetDirectoryIndex = new TargetDirectoryIndex();
+
     private void download(List<DownloadFileItem> downloadItems) {
         ActivityLogHelper.logUserAction("DownloadWizardAction.beginDownload");
 
+        List<DownloadFileItem> toCheck = new ArrayList<>();
         for(DownloadFileItem item : downloadItems) {
             if (item.getSourceFile()!=null) {
                 toCheck.add(item);
             }
         }
         
-        totalToCheck = toCheck.size();
-        continueAlreadyDownloadedChecks();
+        checkAndDownload(toCheck);
     }
     
-    private void continueAlreadyDownloadedChecks() {
-
-        log.info("continueAlreadyDownloadedChecks({} items to check, {} items to download)", toCheck.size(), toDownload.size());
+    /**
+     * Checks the items against the files already in their target directories, on several threads.
+     * Items which were not downloaded before start downloading as soon as they are checked. Once
+     * all are checked, the user is asked about each of the rest. 
+     */
+    private void checkAndDownload(List<DownloadFileItem> toCheck) {
+
+        log.info("checkAndDownload({} items to check, with a max of {} concurrent transfers)", toCheck.size(), MAX_CONCURRENT_DOWNLOADS);
         
-        SimpleWorker worker = new SimpleWorker() {
+        final FileDownloadWorker downloadWorker = new FileDownloadWorker(COPY_SEMAPHORE);
+        
+        DownloadCheckWorker worker = new DownloadCheckWorker(toCheck, MAX_CONCURRENT_CHECKS) {
             
-            private DownloadFileItem downloadItem;
-            private String filename;
+            @Override
+            protected String findDownloadedFile(DownloadFileItem downloadItem) throws Exception {
+                return targetDirectoryIndex.findDownloadedFile(downloadItem);
+            }
             
             @Override
-            protected void doStuff() throws Exception {
-                
-                // Check all files to see if they have already been downloaded
-                while (!toCheck.isEmpty()) {
-                    downloadItem = toCheck.remove();
-                    setProgress(totalToCheck - toCheck.size(), totalToCheck);
-                    
-                    filename = getAlreadyDownloadedFilename(downloadItem);
-                    if (filename!=null) {
-                        // This file was already download
-                        if (applyToAllChoice != null) {
-                            if (evaluateRedownloadOption(downloadItem, applyToAllChoice)) {
-                                toDownload.add(downloadItem);
-                            }
-                        }
-                        else {
-                            // Break out and finish this worker, so that the user can be prompted
-                            break;
-                        }
-                    }
-                    else {
-                        toDownload.add(downloadItem);
-                    }
-                    
-                    if (applyToAllChoice != null) {
-                        if (applyToAllChoice==1) {
-                            // Just download the rest
-                            toDownload.addAll(toCheck);
-                            toCheck.clear();
-                        }
-                    }
-                }
+            protected void addDownload(DownloadFileItem downloadItem) {
+                downloadWorker.addDownload(downloadItem);
+            }
+            
+            @Override
+            protected void finishAdding() {
+                downloadWorker.finishAdding();
             }
             
             @Override
             protected void hadSuccess() {
 
-                if (filename!=null) {
-                    if (askUserToRedownload(downloadItem, filename, !toCheck.isEmpty())) {
-                        toDownload.add(downloadItem);
-                    }
-                    continueAlreadyDownloadedChecks();
-                }
-                else {
-                    if (!toDownload.isEmpty()) {
-                     
-                        log.info("Will download {} items with a max of {} workers", toDownload.size(), MAX_CONCURRENT_DOWNLOADS);
-                        
-                        // Start a worker for each concurrent download
-                        int sublistSize = (int)Math.ceil((double)toDownload.size() / (double)MAX_CONCURRENT_DOWNLOADS);
-                        for(List<DownloadFileItem> sublist : Lists.partition(toDownload, sublistSize)) {
-                            FileDownloadWorker worker = new FileDownloadWorker(sublist, COPY_SEMAPHORE);
-                            worker.startDownload();
+                List<Map.Entry<DownloadFileItem,String>> alreadyDownloaded = getAlreadyDownloaded();
+                if (!isCancelled()) {
+                    for(int i=0; i<alreadyDownloaded.size(); i++) {
+                        Map.Entry<DownloadFileItem,String> downloaded = alreadyDownloaded.get(i);
+                        if (askUserToRedownload(downloaded.getKey(), downloaded.getValue(), i < alreadyDownloaded.size()-1)) {
+                            downloadWorker.addDownload(downloaded.getKey());
                         }
-                        
-                    }
-                    else {
-                        JOptionPane.showMessageDialog(FrameworkAccess.getMainFrame(), "There are no downloads to start.", "Nothing to do", JOptionPane.PLAIN_MESSAGE);
                     }
                 }
+                finishAddingOnce();
+                
+                if (downloadWorker.getAddedCount()==0 && !isCancelled()) {
+                    JOptionPane.showMessageDialog(FrameworkAccess.getMainFrame(), "There are no downloads to start.", "Nothing to do", JOptionPane.PLAIN_MESSAGE);
+                }
             }
             
             @Override
             protected void hadError(Throwable error) {
+                finishAddingOnce();
                 FrameworkAccess.handleException(error);
             }
             
@@ -510,38 +477,6 @@ public final class DownloadWizardAction implements ActionListener {
         
     }
     
-    private Map<Path,List<Path>> listCache = new HashMap<>();
-
-    private String getAlreadyDownloadedFilename(DownloadFileItem downloadItem) throws IOException {
-
-        final Path targetDir = downloadItem.getTargetFile().getParent();
-        
-        List<Path> files = listCache.get(targetDir);
-        if (files==null && Files.exists(targetDir)) {
-            files = Files.list(targetDir).collect(Collectors.toList());
-            listCache.put(targetDir, files);
-        }
-
-        if (files==null) {
-            // No files found
-            return null;
-        }
-        
-        final String targetExtension = downloadItem.getTargetExtension();
-        final String targetName = downloadItem.getTargetFile().getFileName().toString();
-        final String basename = Utils.getBasename(targetName).replaceAll("#","");
-
-        // Find the first matching file
-        for(Path file : files) {
-            String name = file.getFileName().toString();
-            if (name.startsWith(basename) && name.endsWith(targetExtension)) {
-                return name;
-            }
-        }
-        
-        return null;
-    }
-    
     private boolean askUserToRedownload(DownloadFileItem downloadItem, String fileName, boolean showApplyToAll) {
 
         Integer chosenOptionIndex = applyToAllChoice;
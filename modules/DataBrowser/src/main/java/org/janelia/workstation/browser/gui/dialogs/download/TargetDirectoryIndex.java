@@ -0,0 +1,92 @@
+package org.janelia.workstation.browser.gui.dialogs.download;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import org.janelia.workstation.core.util.Utils;
+
+/**
+ * Names of the files already in each download target directory. Each directory is
+ * listed once, the first time it is needed, and lookups from many threads share
+ * the listing.
+ */
+class TargetDirectoryIndex {
+
+    // Suffix of the files kept next to a download which has not finished
+    private static final String PART_SUFFIX = ".part";
+
+    private final ConcurrentMap<Path, NavigableSet<String>> directories = new ConcurrentHashMap<>();
+
+    /**
+     * @return the name of a complete earlier download of this item, or null if there is none
+     */
+    String findDownloadedFile(DownloadFileItem downloadItem) throws IOException {
+
+        final Path targetDir = downloadItem.getTargetFile().getParent();
+        NavigableSet<String> names = getNames(targetDir);
+        if (names.isEmpty()) {
+            return null;
+        }
+
+        final String targetExtension = downloadItem.getTargetExtension();
+        final String targetName = downloadItem.getTargetFile().getFileName().toString();
+        final String basename = Utils.getBasename(targetName).replaceAll("#","");
+
+        // Names which start with the basename sort together, from the basename itself onwards
+        for (String name : names.tailSet(basename, true)) {
+            if (!name.startsWith(basename)) {
+                break;
+            }
+            if (name.endsWith(targetExtension) && isComplete(targetDir, names, name)) {
+                return name;
+            }
+        }
+
+        return null;
+    }
+
+    private NavigableSet<String> getNames(Path dir) throws IOException {
+        try {
+            return directories.computeIfAbsent(dir, d -> {
+                try (Stream<Path> files = Files.list(d)) {
+                    NavigableSet<String> names = new TreeSet<>();
+                    files.forEach(file -> names.add(file.getFileName().toString()));
+                    return Collections.unmodifiableNavigableSet(names);
+                }
+                catch (NoSuchFileException e) {
+                    return Collections.emptyNavigableSet();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * An empty file, or one with a part file beside it, was interrupted and should be downloaded again.
+     */
+    private boolean isComplete(Path dir, NavigableSet<String> names, String name) throws IOException {
+        if (names.contains(name + PART_SUFFIX)) {
+            return false;
+        }
+        try {
+            return Files.size(dir.resolve(name)) > 0;
+        }
+        catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+}
@@ -502,6 +502,9 @@ public abstract class PaginatedResultsPanel<T,S> extends JPanel implements FindC
 
             @Override
             protected void hadSuccess() {
+                // Results which are loaded lazily may only know how many pages there are as they are loaded
+                numPages = searchResults.getNumTotalPages();
+                updatePagingStatus();
                 final ArrayList<S> selectedRefs = new ArrayList<>(selectionModel.getSelectedIds());
                 log.trace("Got selected refs: {}",selectedRefs);
                 updateResultsView(() -> {
@@ -37,8 +37,10 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
     private List<Decorator> decorators;
     
     // State
-    private BufferedImage maxSizeImage;
+    private BufferedImage levelImage;
+    private int levelWidth;
     private int displaySize;
+    private int loadPriority;
     private boolean viewable = false;
     private LoadImageWorker loadWorker;
     
@@ -58,11 +60,22 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
 
     public boolean cancelLoad() {
         if (loadWorker != null && !loadWorker.isDone()) {
-            return loadWorker.cancel(true);
+            return loadWorker.cancelInImagePool();
         }
         return false;
     }
 
+    /**
+     * Set the order in which this button's image is loaded, relative to the other buttons. Lower values are
+     * loaded first. If the image is already queued for loading, it is moved to its new place in the queue.
+     */
+    public void setLoadPriority(int loadPriority) {
+        this.loadPriority = loadPriority;
+        if (loadWorker != null && !loadWorker.isDone()) {
+            loadWorker.reprioritize(loadPriority);
+        }
+    }
+
     @Override
     public void setImageSize(int width, int height) {
         super.setImageSize(width, height);
@@ -76,16 +89,21 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         
         if (width>0 && height>0) {
             
+            this.displaySize = width;
+            
             if (viewable) {
-                if (maxSizeImage == null) {
-                    // Must be currently loading, in which case this method will get called again when the loading is done
+                if (levelImage == null) {
+                    // Must be currently loading, in which case the image will be scaled to the new size when the loading is done
                 }
                 else {
-                    imagePanel.setImage(Utils.getScaledImageByWidth(maxSizeImage, width));
+                    imagePanel.setImage(Utils.getScaledImageByWidth(levelImage, width));
+                    if (LoadImageWorker.getLevelWidth(width) > levelWidth) {
+                        // Show the smaller level scaled up until the larger one is loaded
+                        loadImage();
+                    }
                 }
             }
     
-            this.displaySize = width;
             invalidate();
         }
     }
@@ -107,79 +125,22 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         if (imageFilename != null) {
             if (wantViewable) {
                 if (!this.viewable) {
-
-                    log.trace("LoadImageWorker: {}",imageFilename);
-                    
-                    loadWorker = new LoadImageWorker(imageFilename, displaySize) {
-
-                        @Override
-                        protected void hadSuccess() {
-
-                            log.trace("Load complete: {}",imageFilename);
-                                                        
-                            if (isCancelled()) {
-                                log.debug("Load was cancelled");
-                                return;
-                            }
-
-                            setDisplaySize(getNewDisplaySize());
-
-                            BufferedImage image = getNewMaxSizeImage();
-                            setMaxSizeImage(image);
-                            registerAspectRatio(image.getWidth(), image.getHeight());
-
-                            BufferedImage scaledImage = getNewScaledImage();
-                            if (scaledImage == null) {
-                                log.warn("Scaled image is null: {}",imageFilename);
-                                return;
-                            }
-
-                            imagePanel.setImage(scaledImage);
-                            setMainComponent(imagePanel);
-
-                            loadWorker = null;
-                        }
-
-                        @Override
-                        protected void hadError(Throwable error) {
-                            
-                            String errorType;
-                            if (error instanceof FileNotFoundException) {
-                                log.warn("File not found: " + imageFilename);
-                                errorType = "File not found";
-                            }
-                            else if (error.getCause() != null && (error.getCause() instanceof FormatException)) {
-                                log.warn("Image format not supported for: " + imageFilename, error);
-                                errorType = "Image format not supported";
-                            }
-                            else {
-                                log.warn("Image could not be loaded: " + imageFilename, error);
-                                errorType = "Image could not be loaded";
-                            }
-
-                            BufferedImage image = Icons.getImage("file_error.png");
-                            imagePanel.setImage(image);
-                            imagePanel.setText(errorType, Color.red);
-                            setMainComponent(imagePanel);
-                            
-                            loadWorker = null;
-                        }
-                    };
-                    
-                    loadWorker.executeInImagePool();
+                    this.viewable = true;
+                    if (levelImage == null || LoadImageWorker.getLevelWidth(displaySize) > levelWidth) {
+                        loadImage();
+                    }
                 }
             }
             else {
                 if (!this.viewable) {
                     return;
                 }
-                if (loadWorker != null && !loadWorker.isDone()) {
-                    loadWorker.cancel(true);
-                    loadWorker = null;
-                }
+                // Scrolled out of view before it was loaded, so let the images in view go first
+                cancelLoad();
+                loadWorker = null;
                 if (isUnloadImages()) {
                     // Clear all references to the image data so that it can be cleared out of memory
-                    maxSizeImage = null;
+                    levelImage = null;
                     imagePanel.setImage(null);
                     // Show the loading label until the image needs to be loaded again
                     setMainComponent(loadingLabel);
@@ -189,23 +150,88 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         this.viewable = wantViewable;
     }
 
-    private boolean isUnloadImages() {
-        return BrowserOptions.getInstance().isUnloadImages();
-    }
+    private void loadImage() {
+
+        log.trace("LoadImageWorker: {}",imageFilename);
+
+        // Only the latest load is needed
+        cancelLoad();
+
+        loadWorker = new LoadImageWorker(imageFilename, displaySize) {
+
+            @Override
+            protected void hadSuccess() {
+
+                log.trace("Load complete: {}",imageFilename);
+
+                if (isCancelled()) {
+                    log.debug("Load was cancelled");
+                    return;
+                }
+
+                BufferedImage image = getNewMaxSizeImage();
+                if (image == null) {
+                    log.warn("Image is null: {}",imageFilename);
+                    loadDone(this);
+                    return;
+                }
+                setLevelImage(image, LoadImageWorker.getLevelWidth(getNewDisplaySize()));
+                registerAspectRatio(image.getWidth(), image.getHeight());
+
+                // The display size may have changed while loading
+                BufferedImage scaledImage = getNewDisplaySize() == displaySize ? getNewScaledImage() 
+                        : Utils.getScaledImageByWidth(image, displaySize);
+
+                imagePanel.setImage(scaledImage);
+                setMainComponent(imagePanel);
 
-    private BufferedImage getMaxSizeImage() {
-        return maxSizeImage;
+                loadDone(this);
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                
+                String errorType;
+                if (error instanceof FileNotFoundException) {
+                    log.warn("File not found: " + imageFilename);
+                    errorType = "File not found";
+                }
+                else if (error.getCause() != null && (error.getCause() instanceof FormatException)) {
+                    log.warn("Image format not supported for: " + imageFilename, error);
+                    errorType = "Image format not supported";
+                }
+                else {
+                    log.warn("Image could not be loaded: " + imageFilename, error);
+                    errorType = "Image could not be loaded";
+                }
+
+                BufferedImage image = Icons.getImage("file_error.png");
+                imagePanel.setImage(image);
+                imagePanel.setText(errorType, Color.red);
+                setMainComponent(imagePanel);
+                
+                loadDone(this);
+            }
+        };
+
+        loadWorker.setPriority(loadPriority);
+        loadWorker.executeInImagePool();
     }
-    
-    private void setMaxSizeImage(BufferedImage maxSizeImage) {
-        if (viewable && maxSizeImage != null) {
-            this.maxSizeImage = maxSizeImage;
+
+    private void loadDone(LoadImageWorker worker) {
+        if (loadWorker == worker) {
+            loadWorker = null;
         }
     }
 
-    private void setDisplaySize(int displaySize) {
-        if (displaySize>0) {
-            this.displaySize = displaySize;
+    private boolean isUnloadImages() {
+        return BrowserOptions.getInstance().isUnloadImages();
+    }
+
+    private void setLevelImage(BufferedImage levelImage, int levelWidth) {
+        if (viewable && levelImage != null) {
+            this.levelImage = levelImage;
+            this.levelWidth = levelWidth;
         }
     }
 
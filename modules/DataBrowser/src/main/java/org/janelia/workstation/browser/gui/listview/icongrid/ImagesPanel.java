@@ -682,6 +682,8 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
                 if (buttonsPanel.getColumns() == 1) {
                     viewRect.setSize(viewRect.width, viewRect.height + 100);
                 }
+                // Images in the viewport are loaded in the order they appear, and the rest are cancelled
+                int loadPriority = 0;
                 for (AnnotatedImageButton<T,S> button : buttons.values()) {
                     if (loadUnloadImagesInterrupt.get()) {
                         log.trace("loadUnloadImages interrupted");
@@ -690,6 +692,9 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
                     try {
                         boolean wantViewable = viewRect.intersects(button.getBounds());
                         log.trace("viewRect.intersects(({}) = {}",button.getBounds(),wantViewable);
+                        if (wantViewable && button instanceof DynamicImageButton) {
+                            ((DynamicImageButton<T,S>) button).setLoadPriority(loadPriority++);
+                        }
                         button.setViewable(wantViewable);
                     }
                     catch (Exception e) {
@@ -2,12 +2,13 @@ package org.janelia.workstation.browser.gui.listview.icongrid;
 
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
-import java.util.concurrent.ExecutorService;
+import java.util.Comparator;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Stopwatch;
 
@@ -27,6 +28,13 @@ import org.slf4j.LoggerFactory;
  * thread supports being canceled.
  * if an ImageCache has been set with setImageCache then this method will look there first.
  *
+ * When a display size is given, the worker produces a thumbnail instead of keeping the full image. The
+ * thumbnail is scaled to a "level", the next power of two at or above the display size, so that small size
+ * changes can be served by rescaling the thumbnail. Levels are kept in both tiers of the ImageCache.
+ *
+ * Workers run in a bounded pool which takes the lowest priority value first (see setPriority), so that
+ * the images currently in view are loaded before the rest.
+ *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public abstract class LoadImageWorker extends SimpleWorker {
@@ -39,6 +47,12 @@ public abstract class LoadImageWorker extends SimpleWorker {
     private static final int numWorkerThreads = ConsoleProperties.getInt(LOAD_IMAGE_WORKER_THREADS_PROPERTY, 10);
     private static final boolean useCacheBehind = ConsoleProperties.getBoolean(CACHE_BEHIND_PROPERTY, true);
 
+    // Smallest thumbnail level, in pixels wide
+    private static final int MIN_LEVEL_WIDTH = 64;
+
+    // Breaks ties between workers of equal priority, so that they run in the order they were queued
+    private static final AtomicLong sequencer = new AtomicLong();
+
     static {
         if (log.isDebugEnabled()) {
             log.debug("Using {} image loading threads.", numWorkerThreads);
@@ -53,6 +67,8 @@ public abstract class LoadImageWorker extends SimpleWorker {
 
     private final String imageFilename;
     private final Integer displaySize;
+    private volatile int priority;
+    private volatile long sequence;
     
     private BufferedImage maxSizeImage;
     private BufferedImage scaledImage;
@@ -69,6 +85,60 @@ public abstract class LoadImageWorker extends SimpleWorker {
 
     @Override
     protected void doStuff() throws Exception {
+        if (displaySize != null && displaySize>0) {
+            loadThumbnail();
+        }
+        else {
+            loadFullImage();
+        }
+    }
+
+    /**
+     * Loads the thumbnail level for the display size, from memory, local disk, or the full image.
+     */
+    private void loadThumbnail() throws Exception {
+
+        int levelWidth = getLevelWidth(displaySize);
+        String levelKey = getLevelKey(imageFilename, levelWidth);
+
+        ImageCache imageCache = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        if (imageCache != null) {
+            this.maxSizeImage = imageCache.get(levelKey);
+            if (maxSizeImage != null) {
+                rescaleToDisplaySize();
+                return;
+            }
+        }
+
+        if (isCancelled()) {
+            return;
+        }
+        BufferedImage fullImage = imageCache == null ? null : imageCache.get(imageFilename);
+        if (fullImage == null) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            try (InputStream imageStream = FileMgr.getFileMgr().openFileInputStream(imageFilename, false)) {
+                fullImage = Utils.readImageFromInputStream(imageStream, FilenameUtils.getExtension(imageFilename));
+            }
+            log.info("Took {} ms to load {}", stopwatch.elapsed(TimeUnit.MILLISECONDS), imageFilename);
+        }
+        if (fullImage == null || isCancelled()) {
+            return;
+        }
+        if (fullImage.getWidth() > levelWidth) {
+            this.maxSizeImage = Utils.getScaledImageByWidth(fullImage, levelWidth);
+        }
+        else {
+            this.maxSizeImage = fullImage;
+        }
+
+        if (imageCache != null) {
+            // Levels are kept on disk as well, so they do not need to be scaled again
+            imageCache.put(levelKey, maxSizeImage, true);
+        }
+        rescaleToDisplaySize();
+    }
+
+    private void loadFullImage() throws Exception {
 
         ImageCache imageCache = DataBrowserMgr.getDataBrowserMgr().getImageCache();
         if (imageCache != null) {
@@ -107,7 +177,7 @@ public abstract class LoadImageWorker extends SimpleWorker {
     }
 
     private void rescaleToDisplaySize() {
-        if (displaySize != null && displaySize>0) {
+        if (displaySize != null && displaySize>0 && displaySize != maxSizeImage.getWidth()) {
             this.scaledImage = Utils.getScaledImageByWidth(maxSizeImage, displaySize);
         }
         else {
@@ -115,6 +185,9 @@ public abstract class LoadImageWorker extends SimpleWorker {
         }
     }
     
+    /**
+     * @return the largest image loaded, which is the thumbnail level if a display size was given
+     */
     protected BufferedImage getNewMaxSizeImage() {
         return maxSizeImage;
     }
@@ -127,11 +200,55 @@ public abstract class LoadImageWorker extends SimpleWorker {
         return displaySize;
     }
 
+    /**
+     * @return the width of the thumbnail level which is loaded for the given display width
+     */
+    public static int getLevelWidth(int displaySize) {
+        int levelWidth = MIN_LEVEL_WIDTH;
+        while (levelWidth < displaySize) {
+            levelWidth *= 2;
+        }
+        return levelWidth;
+    }
+
+    private static String getLevelKey(String imageFilename, int levelWidth) {
+        return imageFilename + "#level" + levelWidth;
+    }
+
+    /**
+     * Lower values are loaded first. Must be set before the worker is queued, or use reprioritize.
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Moves a worker which is still waiting in the image pool to its new place in the queue.
+     * Workers which have already started are left alone.
+     */
+    public void reprioritize(int priority) {
+        if (this.priority == priority) {
+            return;
+        }
+        if (getWorkersExecutorService().remove(this)) {
+            this.priority = priority;
+            executeInImagePool();
+        }
+    }
+
+    /**
+     * Cancels the worker, and takes it out of the image pool queue if it has not started yet.
+     */
+    public boolean cancelInImagePool() {
+        getWorkersExecutorService().remove(this);
+        return cancel(true);
+    }
+
     /**
      * Adapted from SimpleWorker so that we can use a separate thread pool and customize the number of threads
      */
-    private static ExecutorService executorService;
-    private static synchronized ExecutorService getWorkersExecutorService() {
+    private static ThreadPoolExecutor executorService;
+    private static synchronized ThreadPoolExecutor getWorkersExecutorService() {
         if (executorService == null) {
             //this creates daemon threads.
             ThreadFactory threadFactory = new ThreadFactory() {
@@ -146,14 +263,19 @@ public abstract class LoadImageWorker extends SimpleWorker {
 
             executorService = new ThreadPoolExecutor(numWorkerThreads, numWorkerThreads,
                             10L, TimeUnit.MINUTES,
-                            new LinkedBlockingQueue<Runnable>(),
+                            new PriorityBlockingQueue<>(100, QUEUE_ORDER),
                             threadFactory);
         }
 
         return executorService;
     }
 
+    private static final Comparator<Runnable> QUEUE_ORDER = Comparator
+            .comparingInt((Runnable r) -> r instanceof LoadImageWorker ? ((LoadImageWorker) r).priority : 0)
+            .thenComparingLong(r -> r instanceof LoadImageWorker ? ((LoadImageWorker) r).sequence : 0);
+
     public void executeInImagePool() {
+        this.sequence = sequencer.incrementAndGet();
         getWorkersExecutorService().execute(this);
     }
 }
@@ -20,6 +20,11 @@ public class BrowserOptions {
     public static final String SHOW_ANNOTATION_TABLES_PROPERTY = "SessionMgr.ShowAnnotationTablesProperty";
     public static final String ANNOTATION_TABLES_HEIGHT_PROPERTY = "SessionMgr.AnnotationTablesHeightProperty";
     public static final String SHOW_SEARCH_HERE = "SessionMgr.ShowSearchHereProperty";
+    public static final String IMAGE_CACHE_MEGABYTES_PROPERTY = "SessionMgr.ImageCacheMegabytesProperty";
+
+    public static final int DEFAULT_IMAGE_CACHE_MEGABYTES = 512;
+    public static final int MIN_IMAGE_CACHE_MEGABYTES = 64;
+    public static final int MAX_IMAGE_CACHE_MEGABYTES = 16384;
 
     private static BrowserOptions instance;
 
@@ -90,6 +95,17 @@ public class BrowserOptions {
         log.info("Set annotation tables = {}", value);
     }
 
+    public int getImageCacheMegabytes() {
+        return FrameworkAccess.getModelProperty(IMAGE_CACHE_MEGABYTES_PROPERTY, DEFAULT_IMAGE_CACHE_MEGABYTES);
+    }
+
+    public void setImageCacheMegabytes(int value) {
+        int oldVal = getImageCacheMegabytes();
+        if (oldVal == value) return;
+        FrameworkAccess.setModelProperty(IMAGE_CACHE_MEGABYTES_PROPERTY, value);
+        log.info("Set image cache megabytes = {}", value);
+    }
+
     public boolean isShowSearchHere() {
         return FrameworkAccess.getModelProperty(SHOW_SEARCH_HERE, Boolean.FALSE);
     }
@@ -4,12 +4,18 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 
 import javax.swing.JCheckBox;
+import javax.swing.JLabel;
 import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import com.google.common.cache.CacheStats;
+import org.janelia.workstation.browser.api.state.DataBrowserMgr;
 import org.janelia.workstation.browser.gui.listview.icongrid.ImagesPanel;
 import org.janelia.workstation.common.gui.support.GroupedKeyValuePanel;
+import org.janelia.workstation.core.util.ImageCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,6 +23,8 @@ final class BrowserOptionsPanel extends javax.swing.JPanel {
 
     private static final Logger log = LoggerFactory.getLogger(BrowserOptionsPanel.class);
 
+    private static final long MB = 1024 * 1024;
+
     private final BrowserOptionsPanelController controller;
     private final GroupedKeyValuePanel mainPanel;
 
@@ -26,6 +34,7 @@ final class BrowserOptionsPanel extends javax.swing.JPanel {
     private JCheckBox allowDuplicateAnnotations;
     private JCheckBox showAnnotationTables;
     private JSlider annotationTableHeight;
+    private JSpinner imageCacheSpinner;
 
     DocumentListener listener = new DocumentListener() {
         @Override
@@ -130,6 +139,28 @@ final class BrowserOptionsPanel extends javax.swing.JPanel {
         annotationTableHeight.setValue(BrowserOptions.getInstance().getAnnotationTableHeight());
 
         mainPanel.addItem("Annotation table height", annotationTableHeight);
+
+        // Image cache
+
+        mainPanel.addSeparator("Image Cache");
+
+        imageCacheSpinner = new JSpinner(new SpinnerNumberModel(BrowserOptions.DEFAULT_IMAGE_CACHE_MEGABYTES,
+                BrowserOptions.MIN_IMAGE_CACHE_MEGABYTES, BrowserOptions.MAX_IMAGE_CACHE_MEGABYTES, 64));
+        imageCacheSpinner.setMaximumSize(new Dimension(200, 100));
+        imageCacheSpinner.setValue(BrowserOptions.getInstance().getImageCacheMegabytes());
+        imageCacheSpinner.addChangeListener((e) -> {
+            controller.changed();
+        });
+
+        mainPanel.addItem("Memory for images (MB)", imageCacheSpinner);
+
+        ImageCache imageCache = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        CacheStats stats = imageCache.getMemoryStats();
+        mainPanel.addItem("Memory usage", new JLabel(String.format("%d images, %d MB (%.0f%% hit rate, %d evicted)",
+                imageCache.getMemoryImageCount(), imageCache.getMemoryUsedBytes() / MB,
+                stats.hitRate() * 100, stats.evictionCount())));
+        mainPanel.addItem("Local disk", new JLabel(String.format("%d images loaded, %d not found",
+                imageCache.getDiskHitCount(), imageCache.getDiskMissCount())));
     }
 
     void store() {
@@ -139,6 +170,9 @@ final class BrowserOptionsPanel extends javax.swing.JPanel {
         BrowserOptions.getInstance().setDuplicateAnnotationAllowed(allowDuplicateAnnotations.isSelected());
         BrowserOptions.getInstance().setShowAnnotationTables(showAnnotationTables.isSelected());
         BrowserOptions.getInstance().setAnnotationTableHeight(annotationTableHeight.getValue());
+        int imageCacheMegabytes = (Integer) imageCacheSpinner.getValue();
+        BrowserOptions.getInstance().setImageCacheMegabytes(imageCacheMegabytes);
+        DataBrowserMgr.getDataBrowserMgr().getImageCache().setMaxBytes(imageCacheMegabytes * MB);
     }
 
     boolean valid() {
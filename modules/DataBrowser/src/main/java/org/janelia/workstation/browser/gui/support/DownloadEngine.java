@@ -0,0 +1,413 @@
+package org.janelia.workstation.browser.gui.support;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.browser.gui.dialogs.download.DownloadFileItem;
+import org.janelia.workstation.core.api.FileMgr;
+import org.janelia.workstation.core.filecache.RangedFileProxy;
+import org.janelia.workstation.core.util.ResumableDownload;
+import org.janelia.workstation.core.util.Utils;
+import org.janelia.workstation.core.workers.BackgroundWorker;
+import org.janelia.workstation.integration.util.FrameworkAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a set of files with a fixed number of threads, which all take work from
+ * one shared queue. Files too large for one segment are split, and threads finish the
+ * segments of files already started before starting new ones, so a few large files
+ * at the end of the list are fetched by every thread instead of one.
+ *
+ * Files are written to part files which are resumed the next time the same file is
+ * downloaded, if a download fails or is cancelled.
+ */
+public class DownloadEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadEngine.class);
+
+    private static final long STATUS_INTERVAL_MILLIS = 1000;
+    private static final double ONE_MEGABYTE = 1024 * 1024;
+
+    // Segments of started files run before any file which has not started
+    private static final int SEGMENT_PRIORITY = 0;
+    private static final int FILE_PRIORITY = 1;
+
+    private final Semaphore copySemaphore;
+    private final long segmentSize;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong taskSequence = new AtomicLong();
+    private final Set<FileDownload> openDownloads = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger successCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger startedFileCount = new AtomicInteger();
+    private final AtomicInteger sizedFileCount = new AtomicInteger();
+    private final AtomicLong sizedFileBytes = new AtomicLong();
+    private final AtomicLong resumedBytes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile boolean cancelled;
+
+    /**
+     * @param threadCount number of files or segments to download at once
+     * @param copySemaphore permits shared with other downloads, each file or segment holds one while transferring
+     */
+    public DownloadEngine(int threadCount, Semaphore copySemaphore) {
+        this(threadCount, copySemaphore, ResumableDownload.DEFAULT_SEGMENT_SIZE);
+    }
+
+    DownloadEngine(int threadCount, Semaphore copySemaphore, long segmentSize) {
+        this.copySemaphore = copySemaphore;
+        this.segmentSize = segmentSize;
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("DownloadEngine-%d")
+                        .setDaemon(true).build());
+    }
+
+    /**
+     * Downloads all the items, and returns when every one has either finished or failed.
+     * The worker's progress and status show the combined throughput and estimated time left.
+     *
+     * @throws CancellationException if the worker is cancelled
+     */
+    public void download(List<DownloadFileItem> downloadItems, BackgroundWorker worker) {
+        Feed feed = new Feed();
+        for (DownloadFileItem downloadItem : downloadItems) {
+            feed.add(downloadItem);
+        }
+        feed.close();
+        download(feed, worker);
+    }
+
+    /**
+     * Downloads items as they arrive in the feed, and returns once the feed is closed
+     * and every item has either finished or failed.
+     *
+     * @throws CancellationException if the worker is cancelled
+     */
+    public void download(Feed feed, BackgroundWorker worker) {
+        final long startTime = System.currentTimeMillis();
+        long nextStatusTime = startTime + STATUS_INTERVAL_MILLIS;
+        int fileCount = 0;
+        try {
+            while (true) {
+                if (worker.isCancelled()) {
+                    throw new CancellationException();
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextStatusTime) {
+                    updateStatus(worker, fileCount, !feed.isClosed(), now - startTime);
+                    nextStatusTime = now + STATUS_INTERVAL_MILLIS;
+                }
+                DownloadFileItem downloadItem = feed.poll(Math.max(1, nextStatusTime - now));
+                if (downloadItem != null) {
+                    fileCount++;
+                    executor.execute(new FileTask(downloadItem));
+                }
+                else if (feed.isClosedAndEmpty() && successCount.get() + errorCount.get() == fileCount) {
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            log.error("Download of {} files was interrupted", fileCount);
+            throw new CancellationException();
+        }
+        finally {
+            cancelled = true;
+            executor.shutdownNow();
+            for (FileDownload fileDownload : openDownloads) {
+                fileDownload.download.close();
+            }
+        }
+        log.info("Downloaded {} files ({} failed), {} bytes in {} ms, {} bytes resumed from earlier attempts",
+                successCount.get(), errorCount.get(), bytesWritten.get(), System.currentTimeMillis() - startTime, resumedBytes.get());
+    }
+
+    public int getSuccessCount() {
+        return successCount.get();
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    private void updateStatus(BackgroundWorker worker, int fileCount, boolean moreToCome, long elapsedMillis) {
+        int finishedCount = successCount.get() + errorCount.get();
+        long doneBytes = resumedBytes.get() + bytesWritten.get();
+        // Files which have not started yet are assumed to be of average size
+        int sizedCount = sizedFileCount.get();
+        long totalBytes = sizedCount == 0 ? 0
+                : sizedFileBytes.get() + (sizedFileBytes.get() / sizedCount) * Math.max(0, fileCount - startedFileCount.get());
+        double mbps = elapsedMillis == 0 ? 0 : bytesWritten.get() / ONE_MEGABYTE / (elapsedMillis / 1000.0);
+        StringBuilder status = new StringBuilder();
+        status.append(String.format("%d of %d%s files, %s of %s (%.1f MB/s",
+                finishedCount, fileCount, moreToCome ? "+" : "", formatBytes(doneBytes), formatBytes(totalBytes), mbps));
+        if (mbps > 0 && totalBytes > doneBytes) {
+            status.append(", ").append(formatSeconds((long) ((totalBytes - doneBytes) / ONE_MEGABYTE / mbps))).append(" left");
+        }
+        status.append(')');
+        worker.setStatus(status.toString());
+        if (totalBytes > 0) {
+            worker.setProgress(Math.min(doneBytes, totalBytes), totalBytes);
+        }
+        else {
+            worker.setProgress(finishedCount, fileCount);
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1024 * ONE_MEGABYTE) {
+            return String.format("%.2f GB", bytes / (1024 * ONE_MEGABYTE));
+        }
+        return String.format("%.1f MB", bytes / ONE_MEGABYTE);
+    }
+
+    private static String formatSeconds(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%d h %d min", seconds / 3600, (seconds % 3600) / 60);
+        }
+        if (seconds >= 60) {
+            return String.format("%d min %d s", seconds / 60, seconds % 60);
+        }
+        return seconds + " s";
+    }
+
+    private void startFile(DownloadFileItem downloadItem) throws Exception {
+        final String remoteFile = downloadItem.getSourceFile();
+        final File localFile = downloadItem.getTargetFile().toFile();
+        startedFileCount.incrementAndGet();
+        boolean decompress = remoteFile.endsWith(Utils.EXTENSION_BZ2) && !localFile.getName().endsWith(Utils.EXTENSION_BZ2);
+        RangedFileProxy rangedProxy = decompress ? null : FileMgr.getFileMgr().getRangedFile(remoteFile);
+        Long length = rangedProxy == null ? null : rangedProxy.estimateSizeInBytes(true);
+        if (length == null) {
+            // Decompressed streams, and storage without range reads, are copied in one piece
+            log.debug("Copying {} to {} in one stream", remoteFile, localFile);
+            try {
+                Utils.copyURLToFile(remoteFile, localFile, null, false, true);
+            }
+            catch (Exception e) {
+                // a partial stream copy cannot be resumed
+                if (localFile.exists() && localFile.delete()) {
+                    log.warn("Deleted partially downloaded file: {}", localFile);
+                }
+                throw e;
+            }
+            bytesWritten.addAndGet(localFile.length());
+            sizedFileBytes.addAndGet(localFile.length());
+            sizedFileCount.incrementAndGet();
+            fileFinished(downloadItem, null);
+            return;
+        }
+
+        ResumableDownload download = new ResumableDownload(rangedProxy, length, localFile, segmentSize);
+        download.open();
+        sizedFileBytes.addAndGet(length);
+        sizedFileCount.incrementAndGet();
+        resumedBytes.addAndGet(download.getCompletedBytes());
+
+        List<Integer> pendingSegments = download.getPendingSegments();
+        FileDownload fileDownload = new FileDownload(downloadItem, download, pendingSegments.size());
+        if (pendingSegments.isEmpty()) {
+            completeFile(fileDownload);
+            return;
+        }
+        openDownloads.add(fileDownload);
+        for (int i = 1; i < pendingSegments.size(); i++) {
+            executor.execute(new SegmentTask(fileDownload, pendingSegments.get(i)));
+        }
+        downloadSegment(fileDownload, pendingSegments.get(0));
+    }
+
+    private void downloadSegment(FileDownload fileDownload, int segment) {
+        if (fileDownload.error == null && !cancelled) {
+            try {
+                fileDownload.download.downloadSegment(segment, bytesWritten::addAndGet);
+            }
+            catch (Exception e) {
+                fileDownload.error = e;
+            }
+        }
+        if (fileDownload.remainingSegments.decrementAndGet() == 0) {
+            completeFile(fileDownload);
+        }
+    }
+
+    private void completeFile(FileDownload fileDownload) {
+        openDownloads.remove(fileDownload);
+        Exception error = fileDownload.error;
+        if (error == null) {
+            try {
+                fileDownload.download.finish();
+            }
+            catch (Exception e) {
+                error = e;
+            }
+        }
+        fileDownload.download.close();
+        fileFinished(fileDownload.downloadItem, error);
+    }
+
+    private void fileFinished(DownloadFileItem downloadItem, Exception error) {
+        if (error == null) {
+            successCount.incrementAndGet();
+        }
+        else if (cancelled) {
+            log.info("Download of {} stopped by cancellation", downloadItem.getTargetFile());
+            errorCount.incrementAndGet();
+        }
+        else {
+            errorCount.incrementAndGet();
+            if (error instanceof FileNotFoundException) {
+                log.error("File not found for download: {}", downloadItem.getTargetFile().getFileName());
+            }
+            else {
+                // fail quietly, the number of failures is shown in the final status,
+                // and the part file is kept so that downloading again resumes
+                FrameworkAccess.handleExceptionQuietly(error);
+            }
+        }
+    }
+
+    /**
+     * Items to download, which may still be arriving while earlier ones download.
+     */
+    public static class Feed {
+        private final LinkedBlockingQueue<DownloadFileItem> queue = new LinkedBlockingQueue<>();
+        private volatile boolean closed;
+
+        public void add(DownloadFileItem downloadItem) {
+            if (closed) {
+                throw new IllegalStateException("Cannot add to a closed download feed");
+            }
+            queue.add(downloadItem);
+        }
+
+        /**
+         * Marks the end of the items.
+         */
+        public void close() {
+            closed = true;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        boolean isClosedAndEmpty() {
+            // items are only added before closing, so once closed the queue can only shrink
+            return closed && queue.isEmpty();
+        }
+
+        DownloadFileItem poll(long timeoutMillis) throws InterruptedException {
+            return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A file whose segments are being downloaded.
+     */
+    private static class FileDownload {
+        private final DownloadFileItem downloadItem;
+        private final ResumableDownload download;
+        private final AtomicInteger remainingSegments;
+        private volatile Exception error;
+
+        FileDownload(DownloadFileItem downloadItem, ResumableDownload download, int segmentCount) {
+            this.downloadItem = downloadItem;
+            this.download = download;
+            this.remainingSegments = new AtomicInteger(segmentCount);
+        }
+    }
+
+    /**
+     * Work in the shared queue, ordered by priority, then by when it was queued.
+     */
+    private abstract class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        private final int priority;
+        private final long sequence = taskSequence.getAndIncrement();
+
+        QueuedTask(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            try {
+                copySemaphore.acquire();
+            }
+            catch (InterruptedException e) {
+                return; // cancelled
+            }
+            try {
+                transfer();
+            }
+            finally {
+                copySemaphore.release();
+            }
+        }
+
+        protected abstract void transfer();
+    }
+
+    private class FileTask extends QueuedTask {
+        private final DownloadFileItem downloadItem;
+
+        FileTask(DownloadFileItem downloadItem) {
+            super(FILE_PRIORITY);
+            this.downloadItem = downloadItem;
+        }
+
+        @Override
+        protected void transfer() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                startFile(downloadItem);
+            }
+            catch (Exception e) {
+                fileFinished(downloadItem, e);
+            }
+        }
+    }
+
+    private class SegmentTask extends QueuedTask {
+        private final FileDownload fileDownload;
+        private final int segment;
+
+        SegmentTask(FileDownload fileDownload, int segment) {
+            super(SEGMENT_PRIORITY);
+            this.fileDownload = fileDownload;
+            this.segment = segment;
+        }
+
+        @Override
+        protected void transfer() {
+            downloadSegment(fileDownload, segment);
+        }
+    }
+}
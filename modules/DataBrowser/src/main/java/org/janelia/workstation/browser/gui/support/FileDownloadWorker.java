@@ -1,12 +1,11 @@
 package org.janelia.workstation.browser.gui.support;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -25,6 +24,7 @@ import org.janelia.it.jacs.model.tasks.TaskParameter;
 import org.janelia.workstation.browser.gui.dialogs.download.DownloadFileItem;
 import org.janelia.workstation.common.gui.support.DesktopApi;
 import org.janelia.workstation.core.api.StateMgr;
+import org.janelia.workstation.core.options.DownloadOptions;
 import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.core.workers.BackgroundWorker;
 import org.janelia.workstation.core.workers.NamedBackgroundWorker;
@@ -48,6 +48,9 @@ public class FileDownloadWorker {
     private final Collection<DownloadFileItem> downloadItems;
     private final Semaphore copySemaphore;
     private Multiset<String> parentDirs = HashMultiset.create();
+    private final List<DownloadFileItem> streamedTransfers = Collections.synchronizedList(new ArrayList<>());
+    private DownloadEngine.Feed transferFeed;
+    private int addedCount;
 
     public FileDownloadWorker(Collection<DownloadFileItem> downloadItems, Semaphore copySemaphore) {
         this.downloadItems = downloadItems;
@@ -58,33 +61,24 @@ public class FileDownloadWorker {
         this(Arrays.asList(downloadItem), copySemaphore);
     }
 
+    /**
+     * Starts downloading items as they are added with addDownload, until finishAdding is called.
+     * Items which need conversion start right away, and direct transfers share one worker.
+     */
+    public FileDownloadWorker(Semaphore copySemaphore) {
+        this(new ArrayList<>(), copySemaphore);
+    }
+
     public void startDownload() {
 
         List<DownloadFileItem> toConvertOnServer = new ArrayList<>();
         List<DownloadFileItem> toTransfer = new ArrayList<>();
 
         for (DownloadFileItem downloadItem : downloadItems) {
-            String targetExtension = downloadItem.getTargetExtension();
-            String sourceFilePath = downloadItem.getSourceFile();
-
             String parentDir = downloadItem.getTargetFile().getParent().toString();
             parentDirs.add(parentDir);
 
-            boolean convertOnServer = true;
-            if (!downloadItem.isSplitChannels()) {
-                if (sourceFilePath.endsWith(targetExtension)) {
-                    // no conversion needed, simply transfer the file
-                    convertOnServer = false;
-                }
-                // Stream decompression is very slow now. 7.24MB/s when I last tested on Mac. 
-                // We can rely on server-side decompression until this can be addressed.
-//                else if (Utils.EXTENSION_LSM.equals(targetExtension)) {
-//                    // Just need to convert bz2 to lsm, which we can do locally
-//                    convertOnServer = false;
-//                }
-            }
-
-            if (convertOnServer) {
+            if (isConvertOnServer(downloadItem)) {
                 toConvertOnServer.add(downloadItem);
             } else {
                 toTransfer.add(downloadItem);
@@ -100,165 +94,203 @@ public class FileDownloadWorker {
         }
 
         for (DownloadFileItem downloadItem : toConvertOnServer) {
+            startConversion(downloadItem);
+        }
 
-            try {
-                String objectName = downloadItem.getDomainObject().getName();
-                String targetExtension = downloadItem.getTargetExtension();
-                String sourceFilePath = downloadItem.getSourceFile();
+        if (!toTransfer.isEmpty()) {
+            DownloadEngine.Feed feed = new DownloadEngine.Feed();
+            for (DownloadFileItem downloadItem : toTransfer) {
+                feed.add(downloadItem);
+            }
+            feed.close();
+            startTransfer(feed, toTransfer);
+        }
+    }
 
-                log.info("Converting {} to {} (splitChannels={})", sourceFilePath, targetExtension, downloadItem.isSplitChannels());
+    /**
+     * Starts downloading the item, while more items may still be added.
+     */
+    public synchronized void addDownload(DownloadFileItem downloadItem) {
+        String parentDir = downloadItem.getTargetFile().getParent().toString();
+        parentDirs.add(parentDir);
 
-                HashSet<TaskParameter> taskParameters = new HashSet<>();
-                taskParameters.add(new TaskParameter("filepath", sourceFilePath, null));
-                taskParameters.add(new TaskParameter("output extension", targetExtension, null));
-                taskParameters.add(new TaskParameter("chan spec", downloadItem.getChanspec(), null));
-                if (downloadItem.isSplitChannels()) {
-                    taskParameters.add(new TaskParameter("split channels", "true", null));
-                }
+        if (isConvertOnServer(downloadItem)) {
+            startConversion(downloadItem);
+        } else {
+            streamedTransfers.add(downloadItem);
+            if (transferFeed == null) {
+                transferFeed = new DownloadEngine.Feed();
+                startTransfer(transferFeed, streamedTransfers);
+            }
+            transferFeed.add(downloadItem);
+        }
+        addedCount++;
+    }
 
-                Task task = StateMgr.getStateMgr().submitJob("ConsoleSplitAndConvert", "Convert: " + objectName, taskParameters);
+    /**
+     * Lets the transfer worker finish once the items added so far are downloaded.
+     */
+    public synchronized void finishAdding() {
+        log.info("Added {} files to download, {} of them transferred directly", addedCount, streamedTransfers.size());
+        if (transferFeed != null) {
+            transferFeed.close();
+        }
+    }
 
-                String workerName = "Converting and downloading " + downloadItem.getTargetFile().getFileName();
+    public synchronized int getAddedCount() {
+        return addedCount;
+    }
 
-                TaskMonitoringWorker taskWorker = new TaskMonitoringWorker(task.getObjectId()) {
+    private boolean isConvertOnServer(DownloadFileItem downloadItem) {
+        String targetExtension = downloadItem.getTargetExtension();
+        String sourceFilePath = downloadItem.getSourceFile();
 
-                    @Override
-                    public void doStuff() throws Exception {
+        boolean convertOnServer = true;
+        if (!downloadItem.isSplitChannels()) {
+            if (sourceFilePath.endsWith(targetExtension)) {
+                // no conversion needed, simply transfer the file
+                convertOnServer = false;
+            }
+            // Stream decompression is very slow now. 7.24MB/s when I last tested on Mac. 
+            // We can rely on server-side decompression until this can be addressed.
+//            else if (Utils.EXTENSION_LSM.equals(targetExtension)) {
+//                // Just need to convert bz2 to lsm, which we can do locally
+//                convertOnServer = false;
+//            }
+        }
+        return convertOnServer;
+    }
 
-                        setName(workerName);
-                        setStatus("Queueing job on compute cluster");
+    private void startConversion(DownloadFileItem downloadItem) {
 
-                        super.doStuff();
+        try {
+            String objectName = downloadItem.getDomainObject().getName();
+            String targetExtension = downloadItem.getTargetExtension();
+            String sourceFilePath = downloadItem.getSourceFile();
 
-                        throwExceptionIfCancelled();
+            log.info("Converting {} to {} (splitChannels={})", sourceFilePath, targetExtension, downloadItem.isSplitChannels());
 
-                        // Since there is no way to log task output vars, we use a convention where the last message
-                        // will contain the output files.
-                        String resultFiles = null;
-                        Task task = getTask();
-                        List<TaskMessage> messages = new ArrayList<>(task.getMessages());
-                        if (!messages.isEmpty()) {
-                            messages.sort((o1, o2) -> o2.getMessageId().compareTo(o1.getMessageId()));
-                            resultFiles = messages.get(0).getMessage();
-                        }
+            HashSet<TaskParameter> taskParameters = new HashSet<>();
+            taskParameters.add(new TaskParameter("filepath", sourceFilePath, null));
+            taskParameters.add(new TaskParameter("output extension", targetExtension, null));
+            taskParameters.add(new TaskParameter("chan spec", downloadItem.getChanspec(), null));
+            if (downloadItem.isSplitChannels()) {
+                taskParameters.add(new TaskParameter("split channels", "true", null));
+            }
 
-                        throwExceptionIfCancelled();
+            Task task = StateMgr.getStateMgr().submitJob("ConsoleSplitAndConvert", "Convert: " + objectName, taskParameters);
 
-                        if (resultFiles == null) {
-                            throw new Exception("No result files generated");
-                        }
+            String workerName = "Converting and downloading " + downloadItem.getTargetFile().getFileName();
 
-                        setStatus("Downloading converted files");
+            TaskMonitoringWorker taskWorker = new TaskMonitoringWorker(task.getObjectId()) {
 
-                        // Copy the files to the local drive
-                        String[] pathAndFiles = resultFiles.split(":");
-                        String path = pathAndFiles[0];
-                        String[] filePaths = pathAndFiles[1].split(",");
-                        for (String filePath : filePaths) {
-                            String remoteFile = path + "/" + filePath;
-                            String targetFile = downloadItem.getTargetFile().toString();
+                @Override
+                public void doStuff() throws Exception {
 
-                            String channelSuffix = getChannelSuffix(filePath);
-                            if (channelSuffix != null) {
-                                targetFile = targetFile.replaceAll("#", channelSuffix);
-                            }
+                    setName(workerName);
+                    setStatus("Queueing job on compute cluster");
 
-                            File localFile = new File(targetFile);
-                            copyFile(remoteFile, localFile, this, true, true);
-                        }
+                    super.doStuff();
 
-                        throwExceptionIfCancelled();
-                        setName(workerName.replace("Converting and downloading", "Successfully downloaded"));
+                    throwExceptionIfCancelled();
+
+                    // Since there is no way to log task output vars, we use a convention where the last message
+                    // will contain the output files.
+                    String resultFiles = null;
+                    Task task = getTask();
+                    List<TaskMessage> messages = new ArrayList<>(task.getMessages());
+                    if (!messages.isEmpty()) {
+                        messages.sort((o1, o2) -> o2.getMessageId().compareTo(o1.getMessageId()));
+                        resultFiles = messages.get(0).getMessage();
                     }
 
-                    @Override
-                    public Callable<Void> getSuccessCallback() {
-                        return getDownloadSuccessCallback();
+                    throwExceptionIfCancelled();
+
+                    if (resultFiles == null) {
+                        throw new Exception("No result files generated");
                     }
-                };
 
-                taskWorker.executeWithEvents();
-            } catch (Exception e) {
-                FrameworkAccess.handleExceptionQuietly(e);
-            }
-        }
+                    setStatus("Downloading converted files");
 
-        if (!toTransfer.isEmpty()) {
-            NamedBackgroundWorker transferWorker = new NamedBackgroundWorker() {
+                    // Copy the files to the local drive
+                    String[] pathAndFiles = resultFiles.split(":");
+                    String path = pathAndFiles[0];
+                    String[] filePaths = pathAndFiles[1].split(",");
+                    for (String filePath : filePaths) {
+                        String remoteFile = path + "/" + filePath;
+                        String targetFile = downloadItem.getTargetFile().toString();
 
-                @Override
-                public void doStuff() {
-
-                    int errors = 0;
-                    int success = 0;
-                    int i = 0;
-
-                    setName(createName(toTransfer));
-
-                    for (DownloadFileItem downloadItem : toTransfer) {
-                        String filename = downloadItem.getTargetFile().getFileName().toString();
-                        try {
-                            log.debug("Starting download of {} to {}", downloadItem.getSourceExtension(), downloadItem.getTargetExtension());
-                            setName("Downloading file " + (i + 1) + " of " + toTransfer.size());
-                            // For 2d files, we pass in a null worker here because we may be downloading a lot of small files, and if that's the case, 
-                            // the rapid-fire events generated by the download would overwhelm the GUI.
-                            transferAndConvertLocallyAsNeeded(downloadItem, this, downloadItem.is3d(), true);
-                            success++;
-                        } catch (Exception e) {
-                            errors++;
-                            // If any error occurred during download, we need to delete the file which was being downloaded
-                            cleanFile(downloadItem.getTargetFile().toFile());
-                            if (e instanceof FileNotFoundException) {
-                                log.error("File not found for download: {}", filename);
-                            } else if (e instanceof CancellationException) {
-                                log.error("Download of {} was cancelled because of previous cancellation exception: {}", filename, e.getMessage());
-                                throw (CancellationException) e;
-                            } else if (e instanceof InterruptedException || e instanceof ClosedByInterruptException) {
-                                log.error("Download of {} was cancelled because of previous interrupt exception: {}", filename, e.getMessage());
-                                throw new CancellationException();
-                            } else {
-                                // fail quietly and do not popup any exceptions dialog for the background task
-                                // the number of failures will be show in the final status
-                                FrameworkAccess.handleExceptionQuietly(e);
-                            }
+                        String channelSuffix = getChannelSuffix(filePath);
+                        if (channelSuffix != null) {
+                            targetFile = targetFile.replaceAll("#", channelSuffix);
                         }
 
-                        setProgress(i++, toTransfer.size());
+                        File localFile = new File(targetFile);
+                        copyFile(remoteFile, localFile, this, true, true);
                     }
 
-                    setName("Download " + toTransfer.size() + " items");
-                    if (success == 0) {
-                        setFinalStatus("Failed to download any of the selected items.");
-                    } else if (errors > 0) {
-                        setFinalStatus("Successfully downloaded " + success + " items. Failed to download " + errors + " items.");
-                    } else {
-                        setName(createName(toTransfer).replace("Download", "Successfully downloaded"));
-                    }
+                    throwExceptionIfCancelled();
+                    setName(workerName.replace("Converting and downloading", "Successfully downloaded"));
                 }
 
                 @Override
                 public Callable<Void> getSuccessCallback() {
                     return getDownloadSuccessCallback();
                 }
-
-                private void cleanFile(File file) {
-                    try {
-                        if (file.exists()) {
-                            if (file.delete()) {
-                                log.warn("Deleted partially downloaded file: {}", file);
-                            }
-                        }
-                    } catch (Exception e) {
-                        FrameworkAccess.handleExceptionQuietly("Error removing partially downloaded file", e);
-                    }
-                }
             };
 
-            transferWorker.setName(createName(toTransfer));
-            transferWorker.executeWithEvents();
+            taskWorker.executeWithEvents();
+        } catch (Exception e) {
+            FrameworkAccess.handleExceptionQuietly(e);
         }
     }
 
+    /**
+     * Starts one worker which downloads every item in the feed.
+     *
+     * @param toTransfer the items added to the feed so far, for naming the worker
+     */
+    private void startTransfer(DownloadEngine.Feed feed, List<DownloadFileItem> toTransfer) {
+        NamedBackgroundWorker transferWorker = new NamedBackgroundWorker() {
+
+            @Override
+            public void doStuff() {
+
+                setName(createName(toTransfer));
+
+                // Progress is reported for all files together, so that many small files
+                // do not generate rapid-fire events which would overwhelm the GUI.
+                DownloadEngine engine = new DownloadEngine(
+                        DownloadOptions.getInstance().getNumConcurrentDownloads(), copySemaphore);
+                try {
+                    engine.download(feed, this);
+                } catch (CancellationException e) {
+                    log.error("Download of {} items was cancelled, partial files are kept for resuming", toTransfer.size());
+                    throw e;
+                }
+
+                int success = engine.getSuccessCount();
+                int errors = engine.getErrorCount();
+                setName("Download " + toTransfer.size() + " items");
+                if (success == 0) {
+                    setFinalStatus("Failed to download any of the selected items.");
+                } else if (errors > 0) {
+                    setFinalStatus("Successfully downloaded " + success + " items. Failed to download " + errors + " items.");
+                } else {
+                    setName(createName(toTransfer).replace("Download", "Successfully downloaded"));
+                }
+            }
+
+            @Override
+            public Callable<Void> getSuccessCallback() {
+                return getDownloadSuccessCallback();
+            }
+        };
+
+        transferWorker.setName(createName(toTransfer));
+        transferWorker.executeWithEvents();
+    }
+
     private String createName(List<DownloadFileItem> toTransfer) {
         if (toTransfer.size() == 1) {
             return "Download " + toTransfer.get(0).getTargetFile().getFileName().toString();
@@ -276,15 +308,6 @@ public class FileDownloadWorker {
         return null;
     }
 
-    private void transferAndConvertLocallyAsNeeded(DownloadFileItem downloadItem, BackgroundWorker worker, boolean hasProgress, boolean alwaysDownload) throws Exception {
-        final String remoteFile = downloadItem.getSourceFile();
-        final Path localFile = downloadItem.getTargetFile();
-        log.debug("Transferring {} to {}", remoteFile, localFile);
-        if (worker != null) worker.throwExceptionIfCancelled();
-        copyFile(remoteFile, localFile.toFile(), worker, hasProgress, alwaysDownload);
-        if (worker != null) worker.throwExceptionIfCancelled();
-    }
-
     private void copyFile(String remoteFile, File localFile, BackgroundWorker worker, boolean hasProgress, boolean alwaysDownload) throws Exception {
         if (hasProgress && worker != null) {
             worker.setProgress(0, 100);
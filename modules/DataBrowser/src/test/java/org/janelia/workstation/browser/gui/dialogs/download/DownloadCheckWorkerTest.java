@@ -0,0 +1,145 @@
+package org.janelia.workstation.browser.gui.dialogs.download;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.janelia.workstation.browser.gui.support.DownloadEngine;
+import org.janelia.workstation.core.workers.BackgroundWorker;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DownloadCheckWorker} class against a {@link DownloadEngine} which is waiting for its items.
+ */
+public class DownloadCheckWorkerTest {
+
+    private final DownloadEngine.Feed feed = new DownloadEngine.Feed();
+    private final AtomicInteger finishCount = new AtomicInteger();
+
+    private static class TransferWorker extends BackgroundWorker {
+        @Override
+        public String getName() {
+            return "Transfer";
+        }
+
+        @Override
+        protected void doStuff() throws Exception {
+        }
+    }
+
+    private abstract class FeedCheckWorker extends DownloadCheckWorker {
+
+        FeedCheckWorker(List<DownloadFileItem> toCheck) {
+            super(toCheck, 2);
+        }
+
+        @Override
+        protected void addDownload(DownloadFileItem downloadItem) {
+            feed.add(downloadItem);
+        }
+
+        @Override
+        protected void finishAdding() {
+            finishCount.incrementAndGet();
+            feed.close();
+        }
+
+        @Override
+        protected void hadSuccess() {
+            finishAddingOnce();
+        }
+
+        @Override
+        protected void hadError(Throwable error) {
+            finishAddingOnce();
+        }
+    }
+
+    /**
+     * Starts downloading the feed, and returns a latch which is released once the download returns.
+     */
+    private CountDownLatch startTransfer() {
+        CountDownLatch transferDone = new CountDownLatch(1);
+        Thread transferThread = new Thread(() -> {
+            new DownloadEngine(1, new Semaphore(1)).download(feed, new TransferWorker());
+            transferDone.countDown();
+        });
+        transferThread.setDaemon(true);
+        transferThread.start();
+        return transferDone;
+    }
+
+    private static DownloadFileItem createItem(int index) {
+        return new DownloadFileItem(Collections.emptyList(), null, index);
+    }
+
+    @Test
+    public void cancellingDuringTheCheckFinishesTheDownload() throws Exception {
+        DownloadFileItem downloadedItem = createItem(0);
+        DownloadFileItem slowItem = createItem(1);
+        CountDownLatch slowCheckStarted = new CountDownLatch(1);
+        CountDownLatch firstItemChecked = new CountDownLatch(1);
+
+        DownloadCheckWorker checkWorker = new FeedCheckWorker(Arrays.asList(downloadedItem, slowItem)) {
+            @Override
+            protected String findDownloadedFile(DownloadFileItem downloadItem) throws Exception {
+                if (downloadItem == slowItem) {
+                    slowCheckStarted.countDown();
+                    // Never finishes on its own
+                    new CountDownLatch(1).await();
+                }
+                return "earlier.tif";
+            }
+
+            @Override
+            public void setProgress(long curr, long total) {
+                super.setProgress(curr, total);
+                firstItemChecked.countDown();
+            }
+        };
+
+        CountDownLatch transferDone = startTransfer();
+        checkWorker.execute();
+        Assert.assertTrue(slowCheckStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(firstItemChecked.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(feed.isClosed());
+
+        checkWorker.cancel(true);
+        Assert.assertTrue("Download did not finish after the check was cancelled", transferDone.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(feed.isClosed());
+        Assert.assertEquals(1, finishCount.get());
+    }
+
+    @Test
+    public void failedCheckFinishesTheDownloadOnce() throws Exception {
+        CountDownLatch errorHandled = new CountDownLatch(1);
+
+        DownloadCheckWorker checkWorker = new FeedCheckWorker(Collections.singletonList(createItem(0))) {
+            @Override
+            protected String findDownloadedFile(DownloadFileItem downloadItem) throws Exception {
+                throw new IllegalStateException("Cannot list the target directory");
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                super.hadError(error);
+                errorHandled.countDown();
+            }
+        };
+
+        CountDownLatch transferDone = startTransfer();
+        checkWorker.execute();
+        Assert.assertTrue(errorHandled.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(transferDone.await(10, TimeUnit.SECONDS));
+        // done() runs after hadError, on the same thread, so wait for it before counting
+        SwingUtilities.invokeAndWait(() -> { });
+        Assert.assertEquals(1, finishCount.get());
+    }
+}
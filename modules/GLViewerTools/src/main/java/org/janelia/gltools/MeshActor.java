@@ -9,6 +9,7 @@ import org.janelia.geometry3d.Matrix4;
 import com.jogamp.common.nio.Buffers;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -20,6 +21,7 @@ import org.janelia.geometry3d.AbstractCamera;
 import org.janelia.geometry3d.ConstVector;
 import org.janelia.geometry3d.CompositeObject3d;
 import org.janelia.geometry3d.Edge;
+import org.janelia.geometry3d.PackedMeshGeometry;
 import org.janelia.geometry3d.Vertex;
 import org.janelia.gltools.MeshFloatVbo.VertexAttribute;
 
@@ -32,6 +34,8 @@ import org.janelia.gltools.MeshFloatVbo.VertexAttribute;
 public class MeshActor extends BasicGL3Actor
 {
     protected final MeshGeometry geometry;
+    // When set, vertices come from this packed mesh, and geometry stays empty
+    private final PackedMeshGeometry packedGeometry;
     protected final Material material;
     private String name;
     
@@ -45,6 +49,9 @@ public class MeshActor extends BasicGL3Actor
     // Intermediate list of actual vbo vertex index for all triangles
     private final List<VertexIndex> triangleVertices = new ArrayList<>();
     private final List<VertexIndex> edgeVertices = new ArrayList<>();
+    // Packed mode keeps the same indices in primitive arrays
+    private int[] packedTriangleIndices = new int[0];
+    private int[] packedEdgeIndices = new int[0];
     private int vboTriangleIndices = 0;
     protected int vboTriangleAdjacencyIndices = 0;
     private int vboParticleIndices = 0;
@@ -62,6 +69,7 @@ public class MeshActor extends BasicGL3Actor
     public MeshActor(MeshGeometry geometry, Material material, CompositeObject3d parent) {
         super(parent);
         this.geometry = geometry;
+        this.packedGeometry = null;
         this.material = material;
         
         // All materials use positions, right?
@@ -82,15 +90,61 @@ public class MeshActor extends BasicGL3Actor
         initializeAttributes();
     }
 
+    /**
+     * Displays a packed mesh, whose vertex buffer is filled straight from its
+     * attribute arrays. getGeometry() returns an empty MeshGeometry for such actors.
+     */
+    public MeshActor(PackedMeshGeometry packedGeometry, Material material, CompositeObject3d parent) {
+        super(parent);
+        this.geometry = new MeshGeometry();
+        this.packedGeometry = packedGeometry;
+        this.material = material;
+        
+        useNormals = material.usesNormals();
+        
+        packedGeometry.addObserver(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                geometryIsDirty = true;
+            }
+        });
+        
+        initializeAttributes();
+    }
+
+    private int getMeshVertexCount() {
+        if (packedGeometry != null)
+            return packedGeometry.getVertexCount();
+        return geometry.size();
+    }
+
+    private int getMeshTriangleCount() {
+        if (packedGeometry != null)
+            return packedGeometry.getTriangleCount();
+        return geometry.getTriangles().size();
+    }
+
     private void initializeAttributes() {
         if (vertexBufferObject != null) {
             // System.out.println("Vbo already allocated");
             return;
         }
-        if (geometry.size() < 1) {
+        if (getMeshVertexCount() < 1) {
             // System.out.println("Geometry has no points");
             return;
         }
+        if (packedGeometry != null) {
+            // Same order as PackedMeshGeometry.interleave()
+            List<VertexAttribute> attributes = new ArrayList<>();
+            attributes.add(new VertexAttribute("position", PackedMeshGeometry.POSITION_SIZE));
+            if (useNormals)
+                attributes.add(new VertexAttribute("normal", PackedMeshGeometry.NORMAL_SIZE));
+            if (packedGeometry.hasVertexColors())
+                attributes.add(new VertexAttribute("color", PackedMeshGeometry.COLOR_SIZE));
+            vertexBufferObject = new MeshFloatVbo(attributes);
+            populateVbos();
+            return;
+        }
         // Finalize vertex attributes
         List<VertexAttribute> attributes = new ArrayList<VertexAttribute>();
         Vertex vertex = geometry.getVertex(0);
@@ -116,11 +170,46 @@ public class MeshActor extends BasicGL3Actor
         return geometry;
     }
 
+    /**
+     * @return the packed mesh shown by this actor, or null if it shows a MeshGeometry
+     */
+    public PackedMeshGeometry getPackedGeometry() {
+        return packedGeometry;
+    }
+
     public Material getMaterial() {
         return material;
     }
 
+    private void populatePackedVbos() {
+        // Flat shading needs a separate copy of each vertex, for each triangle it is on
+        PackedMeshGeometry source = packedGeometry;
+        if (material.hasPerFaceAttributes())
+            source = packedGeometry.toFlatShaded();
+        if (source.getVertexCount() < 1)
+            return;
+        vertexBufferObject.setData(
+                source.interleave(useNormals, source.hasVertexColors()),
+                source.getVertexCount());
+        
+        triangleIndexCount = 3 * source.getTriangleCount();
+        packedTriangleIndices = Arrays.copyOf(source.getTriangleIndices(), triangleIndexCount);
+        
+        // Edges keep the original vertex indices
+        if (edgeIndexCount > 0 || packedGeometry.getEdgeCount() > 0)
+            edgeIndicesAreDirty = true;
+        edgeIndexCount = 2 * packedGeometry.getEdgeCount();
+        packedEdgeIndices = Arrays.copyOf(packedGeometry.getEdgeIndices(), edgeIndexCount);
+        
+        particleIndicesAreDirty = true;
+        geometryIsDirty = false;
+    }
+
     private void populateVbos() {
+        if (packedGeometry != null) {
+            populatePackedVbos();
+            return;
+        }
         // Compute normals
         if (useNormals) {
             if (material.hasPerFaceAttributes()) {
@@ -240,13 +329,20 @@ public class MeshActor extends BasicGL3Actor
     private void initTriangleIndices(GL3 gl) {
         if (vboTriangleIndices > 0)
             return; // already initialized
-        int faceCount = geometry.getTriangles().size();
+        int faceCount = getMeshTriangleCount();
         if (faceCount < 1) {
             return;
         }
-        IntBuffer indices = Buffers.newDirectIntBuffer(triangleVertices.size());
-        for (VertexIndex vix : triangleVertices)
-            indices.put(vix.vboIndex);
+        IntBuffer indices;
+        if (packedGeometry != null) {
+            indices = Buffers.newDirectIntBuffer(triangleIndexCount);
+            indices.put(packedTriangleIndices, 0, triangleIndexCount);
+        }
+        else {
+            indices = Buffers.newDirectIntBuffer(triangleVertices.size());
+            for (VertexIndex vix : triangleVertices)
+                indices.put(vix.vboIndex);
+        }
         indices.flip();
 
         IntBuffer vbos = IntBuffer.allocate(1);
@@ -277,13 +373,20 @@ public class MeshActor extends BasicGL3Actor
     
     private void refreshEdgeIndices(GL3 gl)
     {        
-        int edgeCount = geometry.getEdges().size();
+        int edgeCount = edgeIndexCount / 2;
         if (edgeCount < 1) {
             return;
         }
-        IntBuffer indices = Buffers.newDirectIntBuffer(edgeVertices.size());
-        for (VertexIndex vix : edgeVertices)
-            indices.put(vix.vboIndex);
+        IntBuffer indices;
+        if (packedGeometry != null) {
+            indices = Buffers.newDirectIntBuffer(edgeIndexCount);
+            indices.put(packedEdgeIndices, 0, edgeIndexCount);
+        }
+        else {
+            indices = Buffers.newDirectIntBuffer(edgeVertices.size());
+            for (VertexIndex vix : edgeVertices)
+                indices.put(vix.vboIndex);
+        }
         indices.flip();
         gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vboEdgeIndices);
         gl.glBufferData(
@@ -310,7 +413,7 @@ public class MeshActor extends BasicGL3Actor
 
     
     private void refreshParticleIndices(GL3 gl) {
-        particleIndexCount = geometry.getVertexCount();
+        particleIndexCount = getMeshVertexCount();
         if (particleIndexCount < 1)
             return;
         IntBuffer indices = Buffers.newDirectIntBuffer(particleIndexCount);
@@ -331,13 +434,22 @@ public class MeshActor extends BasicGL3Actor
     {
         if (vboTriangleAdjacencyIndices > 0)
             return; // already initialized
-        int faceCount = geometry.getTriangles().size();
+        int faceCount = getMeshTriangleCount();
         if (faceCount < 1) {
             return;
         }
         triangleAdjacencyIndexCount = 6 * faceCount;
         IntBuffer indices = Buffers.newDirectIntBuffer(triangleAdjacencyIndexCount);
         
+        List<VertexIndex> triangleVertices = this.triangleVertices;
+        if (packedGeometry != null) {
+            // Adjacency is rare enough to build the index objects on demand
+            int[] meshIndices = packedGeometry.getTriangleIndices();
+            triangleVertices = new ArrayList<>(triangleIndexCount);
+            for (int t = 0; t < triangleIndexCount; ++t)
+                triangleVertices.add(new VertexIndex(meshIndices[t], packedTriangleIndices[t]));
+        }
+        
         // TODO
         AdjacencyEdgeSet edges = new AdjacencyEdgeSet();
         // First pass populates AdjacencyEdgeSet data structure
@@ -387,7 +499,7 @@ public class MeshActor extends BasicGL3Actor
             return;
         super.display(gl, camera, parentModelViewMatrix); // display child objects
         
-        if (geometry.size() < 1)
+        if (getMeshVertexCount() < 1)
             return; // nothing to display
         
         if (geometryIsDirty) {
@@ -3,7 +3,7 @@ package org.janelia.gltools;
 
 import com.jogamp.common.nio.Buffers;
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.media.opengl.GL3;
 import org.slf4j.Logger;
@@ -21,7 +21,8 @@ public class MeshFloatVbo implements GL3Resource
     private int vboHandle = 0;
     private VertexAttribute[] attributes;
     //
-    private final List<Float> floatStorage = new ArrayList<>();
+    private float[] floatStorage = new float[64];
+    private int floatCount = 0;
     private boolean verticesNeedUpload = true;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     
@@ -40,10 +41,10 @@ public class MeshFloatVbo implements GL3Resource
     }
     
     public void clear() {
-        if (floatStorage.size() < 1)
+        if (floatCount < 1)
             return; // already clear
         vertexCount = 0;
-        floatStorage.clear();
+        floatCount = 0;
         verticesNeedUpload = true;
     }
     
@@ -57,19 +58,38 @@ public class MeshFloatVbo implements GL3Resource
     }
     
     public void append(float value) {
-        floatStorage.add(value);
+        ensureCapacity(floatCount + 1);
+        floatStorage[floatCount++] = value;
         // System.out.println("vbo " + this + ", float " + value);
         verticesNeedUpload = true;
     }
     
     public void append(float[] values) {
-        for (float f : values)
-            append(f);
+        ensureCapacity(floatCount + values.length);
+        System.arraycopy(values, 0, floatStorage, floatCount, values.length);
+        floatCount += values.length;
+        verticesNeedUpload = true;
+    }
+
+    /**
+     * Replaces the contents with already interleaved vertex attributes.
+     * The array is used as is, not copied.
+     */
+    public void setData(float[] interleavedValues, int vertexCount) {
+        floatStorage = interleavedValues;
+        floatCount = interleavedValues.length;
+        this.vertexCount = vertexCount;
+        verticesNeedUpload = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (floatStorage.length < capacity)
+            floatStorage = Arrays.copyOf(floatStorage, Math.max(capacity, 2 * floatStorage.length));
     }
     
     @Override
     public void dispose(GL3 gl) {
-        if (floatStorage.size() > 0)
+        if (floatCount > 0)
             verticesNeedUpload = true;
         if (vboHandle == 0)
             return;
@@ -87,7 +107,7 @@ public class MeshFloatVbo implements GL3Resource
         gl.glGenBuffers(1, vbos, 0);
         vboHandle = vbos[0];
         // logger.info("creating vboHandle " + vboHandle);
-        if (floatStorage.size() > 0)
+        if (floatCount > 0)
             verticesNeedUpload = true;
     }
     
@@ -99,13 +119,11 @@ public class MeshFloatVbo implements GL3Resource
         // logger.info("binding vboHandle " + vboHandle);
         gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vboHandle);
         if (verticesNeedUpload) {
-            FloatBuffer floatBuffer = Buffers.newDirectFloatBuffer(
-                    floatStorage.size());
-            for (float f : floatStorage)
-                floatBuffer.put(f);
+            FloatBuffer floatBuffer = Buffers.newDirectFloatBuffer(floatCount);
+            floatBuffer.put(floatStorage, 0, floatCount);
             floatBuffer.flip();
             gl.glBufferData(GL3.GL_ARRAY_BUFFER,
-                floatStorage.size() * Buffers.SIZEOF_FLOAT,
+                floatCount * Buffers.SIZEOF_FLOAT,
                 floatBuffer,
                 GL3.GL_STATIC_DRAW);
             verticesNeedUpload = false;
@@ -126,6 +144,10 @@ public class MeshFloatVbo implements GL3Resource
         return vertexCount;
     }
 
+    int getFloatCount() {
+        return floatCount;
+    }
+
     public static class VertexAttribute {
         private String attributeName = "position";
         private int componentCount = 3;
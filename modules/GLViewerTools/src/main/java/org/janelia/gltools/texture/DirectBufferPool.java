@@ -0,0 +1,94 @@
+package org.janelia.gltools.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+
+/**
+ * Keeps released direct buffers for reuse, so that textures of the same size which are loaded and dropped
+ * over and over do not each allocate native memory. Buffers are only reused at their exact capacity, which
+ * suits volume blocks, since most blocks of a data set have the same size.
+ */
+public class DirectBufferPool {
+
+    private static final long MB = 1024 * 1024;
+
+    // Shared by the texture loaders, so that memory released by one kind of block can be reused by another
+    private static final DirectBufferPool sharedPool = new DirectBufferPool(
+            ConsoleProperties.getLong("console.texturePoolMegabytes", 768) * MB);
+
+    /**
+     * @return the pool shared by all the volume texture loaders
+     */
+    public static DirectBufferPool getSharedPool() {
+        return sharedPool;
+    }
+
+    private final long maxPooledBytes;
+    private final Map<Integer, Deque<ByteBuffer>> freeBuffers = new HashMap<>();
+    private long pooledBytes = 0;
+    private long allocatedBytes = 0;
+    private long reusedBytes = 0;
+
+    /**
+     * @param maxPooledBytes most bytes kept in released buffers; buffers released beyond that are left to the
+     * garbage collector
+     */
+    public DirectBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return a direct buffer in native byte order, positioned at zero, with the given capacity and limit.
+     * Its content is undefined.
+     */
+    public synchronized ByteBuffer acquire(int capacity) {
+        Deque<ByteBuffer> buffers = freeBuffers.get(capacity);
+        ByteBuffer buffer = buffers == null ? null : buffers.poll();
+        if (buffer != null) {
+            pooledBytes -= capacity;
+            reusedBytes += capacity;
+            buffer.clear();
+            // The last user may have changed the byte order
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+        allocatedBytes += capacity;
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (pooledBytes + capacity > maxPooledBytes) {
+            return;
+        }
+        freeBuffers.computeIfAbsent(capacity, c -> new ArrayDeque<>()).push(buffer);
+        pooledBytes += capacity;
+    }
+
+    /**
+     * @return bytes of native memory allocated by this pool so far
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return bytes handed out again from released buffers so far
+     */
+    public synchronized long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+}
@@ -0,0 +1,153 @@
+package org.janelia.gltools.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes single channel 16-bit voxels straight into the memory a Texture3d uploads from, without going through
+ * Java2D rasters. Each voxel also goes into every mipmap level which samples it, so the mipmaps are complete
+ * as soon as the last voxel is written.
+ *
+ * The mipmaps sample the same voxels as those which Texture3d computes for loaded raster slices.
+ */
+public class ShortTexture3dBuilder {
+
+    private static final int NOT_SAMPLED = -1;
+
+    private final DirectBufferPool bufferPool;
+    private final int[][] levelSizes; // width, height, depth of each level
+    private final ByteBuffer[] levelBytes;
+    private final ShortBuffer[] levelShorts;
+    // For each level after the first, and each voxel coordinate of the first level, the coordinate it has in that level
+    private final int[][] levelX;
+    private final int[][] levelY;
+    private final int[][] levelZ;
+
+    /**
+     * @param bufferPool supplies the memory of all levels, which goes back to it when the texture is disposed
+     */
+    public ShortTexture3dBuilder(int width, int height, int depth, DirectBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+
+        List<int[]> sizes = new ArrayList<>();
+        int[] size = {width, height, depth};
+        sizes.add(size);
+        while (size[0] > 1 || size[1] > 1 || size[2] > 1) {
+            size = new int[] {Math.max(size[0] / 2, 1), Math.max(size[1] / 2, 1), Math.max(size[2] / 2, 1)};
+            sizes.add(size);
+        }
+        levelSizes = sizes.toArray(new int[0][]);
+
+        levelBytes = new ByteBuffer[levelSizes.length];
+        levelShorts = new ShortBuffer[levelSizes.length];
+        for (int level = 0; level < levelSizes.length; level++) {
+            int[] s = levelSizes[level];
+            levelBytes[level] = bufferPool.acquire(2 * s[0] * s[1] * s[2]);
+            levelShorts[level] = levelBytes[level].asShortBuffer();
+        }
+
+        levelX = sampledCoordinates(0);
+        levelY = sampledCoordinates(1);
+        levelZ = sampledCoordinates(2);
+    }
+
+    /**
+     * Uses the same sample position as the mipmap filter of Texture3d, which picks the voxel at the center of
+     * each output voxel.
+     */
+    private int[][] sampledCoordinates(int axis) {
+        int[][] coordinates = new int[levelSizes.length][];
+        int[] firstLevelCoordinate = new int[levelSizes[0][axis]]; // first level coordinate sampled by each voxel
+        for (int i = 0; i < firstLevelCoordinate.length; i++) {
+            firstLevelCoordinate[i] = i;
+        }
+        for (int level = 1; level < levelSizes.length; level++) {
+            int inputSize = levelSizes[level - 1][axis];
+            int outputSize = levelSizes[level][axis];
+            int[] levelCoordinate = new int[levelSizes[0][axis]];
+            Arrays.fill(levelCoordinate, NOT_SAMPLED);
+            int[] sampled = new int[outputSize];
+            for (int o = 0; o < outputSize; o++) {
+                int input;
+                if (inputSize == 1) {
+                    input = 0;
+                } else {
+                    float fractionalOut = (o + 0.5f) / outputSize;
+                    input = (int) (fractionalOut * inputSize);
+                }
+                sampled[o] = firstLevelCoordinate[input];
+                levelCoordinate[sampled[o]] = o;
+            }
+            coordinates[level] = levelCoordinate;
+            firstLevelCoordinate = sampled;
+        }
+        return coordinates;
+    }
+
+    public int getWidth() {
+        return levelSizes[0][0];
+    }
+
+    public int getHeight() {
+        return levelSizes[0][1];
+    }
+
+    public int getDepth() {
+        return levelSizes[0][2];
+    }
+
+    /**
+     * Sets every voxel of every level, for parts of the volume that will not be written otherwise.
+     */
+    public void fill(short value) {
+        for (ShortBuffer shorts : levelShorts) {
+            for (int i = 0; i < shorts.capacity(); i++) {
+                shorts.put(i, value);
+            }
+        }
+    }
+
+    /**
+     * Sets one voxel, where x varies fastest in the texture, then y, then z.
+     */
+    public void put(int x, int y, int z, short value) {
+        int[] size = levelSizes[0];
+        levelShorts[0].put(x + size[0] * (y + size[1] * z), value);
+        for (int level = 1; level < levelSizes.length; level++) {
+            int lx = levelX[level][x];
+            int ly = levelY[level][y];
+            int lz = levelZ[level][z];
+            if (lx == NOT_SAMPLED || ly == NOT_SAMPLED || lz == NOT_SAMPLED) {
+                return; // coarser levels only sample voxels which this one does
+            }
+            size = levelSizes[level];
+            levelShorts[level].put(lx + size[0] * (ly + size[1] * lz), value);
+        }
+    }
+
+    /**
+     * @return the texture, with its mipmaps, which owns the memory of the voxels from now on
+     */
+    public Texture3d build() {
+        Texture3d texture = new Texture3d();
+        texture.adoptShortVoxels(levelSizes[0], levelBytes[0], bufferPool);
+        for (int level = 1; level < levelSizes.length; level++) {
+            Texture3d mipmap = new Texture3d();
+            mipmap.adoptShortVoxels(levelSizes[level], levelBytes[level], bufferPool);
+            texture.addMipmap(mipmap, level);
+        }
+        return texture;
+    }
+
+    /**
+     * Gives the memory back to the pool, for a texture which will not be built after all.
+     */
+    public void release() {
+        for (ByteBuffer bytes : levelBytes) {
+            bufferPool.release(bytes);
+        }
+    }
+}
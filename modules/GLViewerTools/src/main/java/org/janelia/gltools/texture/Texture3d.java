@@ -10,11 +10,10 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.media.opengl.GL3;
 
@@ -43,13 +42,16 @@ public class Texture3d extends BasicTexture implements GL3Resource {
 
     private static final ActivityLogHelper activityLog = ActivityLogHelper.getInstance();
     
-    private static final ScheduledThreadPoolExecutor scheduledThreadPoolExecutor=new ScheduledThreadPoolExecutor(6);
+    // Slice loading and mipmap filtering are split into tasks of at least this many voxels
+    private static final int MIN_VOXELS_PER_TASK = 1 << 16;
+    private static final ForkJoinPool loaderPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     protected int height = 0;
     protected int depth = 0;
     private int pixelBufferObject = 0;
     private byte[] pixelBytes;
-    private short[] shortBytes;
+    // Owns the pixels, when they were written straight into pooled memory
+    private DirectBufferPool pixelBufferPool;
 
     public Texture3d() {
         textureTarget = GL3.GL_TEXTURE_3D;
@@ -64,6 +66,26 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         int[] pbos = {pixelBufferObject};
         gl.glDeleteBuffers(1, pbos, 0);
         pixelBufferObject = 0;
+        if (pixelBufferPool != null) {
+            releasePooledPixels();
+            // Nothing is left to upload again
+            width = height = depth = 0;
+        }
+    }
+
+    @Override
+    public void deallocateRam() {
+        releasePooledPixels();
+        super.deallocateRam();
+    }
+
+    private void releasePooledPixels() {
+        if (pixelBufferPool != null) {
+            pixelBufferPool.release(pixels);
+            pixelBufferPool = null;
+            pixels = null;
+            shortPixels = null;
+        }
     }
 
     @Override
@@ -105,6 +127,25 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         return Math.max(width, Math.max(height, depth));
     }
 
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return a read only view of the voxels of the base level, in x, y, z order with x varying fastest,
+     * or null once they are no longer in memory
+     */
+    public ByteBuffer getPixels() {
+        if (pixels == null) {
+            return null;
+        }
+        return pixels.asReadOnlyBuffer().order(pixels.order());
+    }
+
     /**
      * Loads the given tiff stack into memory and returns true. If the load is not completed for any reason,
      * this method returns false.
@@ -206,6 +247,31 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         }
     }
 
+    /**
+     * Takes over single channel 16-bit voxels which are already in texture layout, from ShortTexture3dBuilder.
+     */
+    void adoptShortVoxels(int[] size, ByteBuffer voxels, DirectBufferPool bufferPool) {
+        width = size[0];
+        height = size[1];
+        depth = size[2];
+        numberOfComponents = 1;
+        bytesPerIntensity = 2;
+        type = GL3.GL_UNSIGNED_SHORT;
+        format = GL3.GL_RED;
+        internalFormat = GL3.GL_R16;
+        pixels = voxels;
+        pixels.rewind();
+        shortPixels = pixels.asShortBuffer();
+        pixelBytes = null;
+        pixelBufferPool = bufferPool;
+        needsUpload = true;
+    }
+
+    void addMipmap(Texture3d mipmap, int level) {
+        mipmap.mipMapLevel = level;
+        mipmaps.add(mipmap);
+    }
+
     private void allocatePixels() {
         int byteCount = numberOfComponents * bytesPerIntensity * width * height * depth;
         pixelBytes = new byte[byteCount];
@@ -266,79 +332,14 @@ public class Texture3d extends BasicTexture implements GL3Resource {
 
         if (bytesPerIntensity<2) { // 8-bit
             pixels.rewind();
-            if (depth<6) {
-                LoadStackZSlice8bit loadStackZSlice8bit=new LoadStackZSlice8bit(0,depth,pixels,raster,depth,height,width,numberOfComponents);
-                loadStackZSlice8bit.run();
-            } else {
-                List<Future> threadList=new ArrayList<>();
-                for (int z=0;z<depth;) {
-                    int remainingZ=depth-z;
-                    int zCount=3;
-                    if (remainingZ<zCount) {
-                        zCount=remainingZ;
-                    }
-                    LoadStackZSlice8bit loadStackZSlice8bit=new LoadStackZSlice8bit(z,zCount,pixels,raster,depth,height,width,numberOfComponents);
-                    threadList.add(scheduledThreadPoolExecutor.submit(loadStackZSlice8bit));
-                    z+=zCount;
-                }
-                int doneCount = 0;
-                long startTime = new Date().getTime();
-                while (doneCount < threadList.size()) {
-                    long currentTime = new Date().getTime();
-                    if (currentTime - startTime > 30000) {
-                        LOG.error("loadStack() exceeded max thread pool wait time");
-                        break;
-                    }
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (Exception ex) {
-                    }
-                    doneCount = 0;
-                    for (Future f : threadList) {
-                        if (f.isDone()) doneCount++;
-                    }
-                }
-            }
+            forEachSliceRange(depth, height * width * numberOfComponents, (zStart, zEnd) ->
+                    new LoadStackZSlice8bit(zStart, zEnd - zStart, pixels, raster, depth, height, width, numberOfComponents).run());
             pixels.flip();
         } else { // 16-bit
             shortPixels=pixels.asShortBuffer();
             shortPixels.rewind();
-            if (depth<6) {
-                LoadStackZSlice16bit loadStackZSlice16bit=new LoadStackZSlice16bit(0,depth,shortPixels,raster,depth,height,width,numberOfComponents);
-                loadStackZSlice16bit.run();
-            } else {
-                List<Future> threadList=new ArrayList<>();
-                for (int z=0;z<depth;) {
-                    int remainingZ=depth-z;
-                    int zCount=3;
-                    if (remainingZ<zCount) {
-                        zCount=remainingZ;
-                    }
-                    LoadStackZSlice16bit loadStackZSlice16bit=new LoadStackZSlice16bit(z,zCount,shortPixels,raster,depth,height,width,numberOfComponents);
-                    threadList.add(scheduledThreadPoolExecutor.submit(loadStackZSlice16bit));
-                    //loadStackZSlice16bit.run();
-                    z+=zCount;
-                }
-                int doneCount = 0;
-                long startTime = new Date().getTime();
-                while (doneCount < threadList.size()) {
-                    long currentTime = new Date().getTime();
-                    if (currentTime - startTime > 30000) {
-                        LOG.error("loadStack() exceeded max thread pool wait time");
-                        break;
-                    }
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (Exception ex) {
-                    }
-                    doneCount = 0;
-                    for (Future f : threadList) {
-                        if (f.isDone()) doneCount++;
-                    }
-                }
-            }
+            forEachSliceRange(depth, height * width * numberOfComponents, (zStart, zEnd) ->
+                    new LoadStackZSlice16bit(zStart, zEnd - zStart, shortPixels, raster, depth, height, width, numberOfComponents).run());
             shortPixels.flip();
         }
         pixels.rewind();
@@ -352,6 +353,69 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         needsUpload = true;
     }
 
+    /**
+     * Runs work over the slices [0, depth) on the shared loader pool, and returns when all of it is done.
+     * Volumes too small to be worth splitting are handled on the calling thread.
+     * @throws CancellationException if the calling thread is interrupted while waiting
+     */
+    static void forEachSliceRange(int depth, int voxelsPerSlice, SliceRangeWork work) {
+        int grain = Math.max(1, MIN_VOXELS_PER_TASK / Math.max(1, voxelsPerSlice));
+        if (depth <= grain) {
+            work.run(0, depth);
+            return;
+        }
+        SliceRangeTask task = new SliceRangeTask(work, 0, depth, grain, null);
+        loaderPool.execute(task);
+        try {
+            task.get();
+        } catch (InterruptedException ex) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while loading texture slices");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Loading texture slices failed", cause);
+        }
+    }
+
+    interface SliceRangeWork {
+        void run(int zStart, int zEnd);
+    }
+
+    private static class SliceRangeTask extends RecursiveAction {
+        private final SliceRangeWork work;
+        private final int zStart, zEnd, grain;
+        private final SliceRangeTask root;
+
+        SliceRangeTask(SliceRangeWork work, int zStart, int zEnd, int grain, SliceRangeTask root) {
+            this.work = work;
+            this.zStart = zStart;
+            this.zEnd = zEnd;
+            this.grain = grain;
+            this.root = root == null ? this : root;
+        }
+
+        @Override
+        protected void compute() {
+            if (root.isCancelled()) {
+                return;
+            }
+            if (zEnd - zStart <= grain) {
+                work.run(zStart, zEnd);
+                return;
+            }
+            int zMiddle = (zStart + zEnd) >>> 1;
+            invokeAll(new SliceRangeTask(work, zStart, zMiddle, grain, root),
+                    new SliceRangeTask(work, zMiddle, zEnd, grain, root));
+        }
+    }
+
     private static class LoadStackZSlice8bit implements Runnable {
         int zStart, zCount, depth, height, width, numberOfComponents;
         ByteBuffer pixels;
@@ -424,11 +488,11 @@ public class Texture3d extends BasicTexture implements GL3Resource {
     private void computeMipmaps() {
         mipmaps.clear();
         PerformanceTimer timer = new PerformanceTimer();
-        Texture3d mipmap = createMipmapUsingMaxFilter();
+        Texture3d mipmap = createMipmapBySampling();
         while (mipmap != null) {
             LOG.trace("Creating mipmap took {} ms", timer.reportMsAndRestart());
             mipmaps.add(mipmap);
-            mipmap = mipmap.createMipmapUsingMaxFilter();
+            mipmap = mipmap.createMipmapBySampling();
         }
     }
 
@@ -438,35 +502,12 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         depth = rhs.depth;
     }
 
-    private static int secondLargestIntensity(int[] samples, int sampleCount) {
-        if (sampleCount == 1)
-            return samples[0];
-
-        int best, second;
-        if (samples[0] > samples[1]) {
-            best = samples[0];
-            second = samples[1];
-        }
-        else {
-            best = samples[1];
-            second = samples[0];
-        }
-
-        for (int i = 2; i < sampleCount; ++i) {
-            if (samples[i] <= second) continue;
-            if (samples[i] > best) {
-                second = best;
-                best = samples[i];
-            }
-            else {
-                second = samples[i];
-            }
-        }
-
-        return second;
-    }
-
-    private Texture3d createMipmapUsingMaxFilter() {
+    /**
+     * Creates the next smaller mipmap level. Each output voxel takes the input voxel at its center: the max
+     * filter footprint used here before was half an input voxel wide, which always rounded down to that one voxel.
+     * @return the mipmap, or null if this level is already a single voxel
+     */
+    Texture3d createMipmapBySampling() {
         // Check whether smaller mipmap is possible
         if ( (width <= 1) && (height <= 1) && (depth <= 1) )
             return null; // already smallest possible texture
@@ -481,282 +522,55 @@ public class Texture3d extends BasicTexture implements GL3Resource {
 
         result.allocatePixels();
 
-        ByteBuffer bytesIn = pixels;
+        // Read the voxels in place, whatever the position and limit left on the pixels
+        ByteBuffer bytesIn = pixels.duplicate().order(pixels.order());
+        bytesIn.clear();
+        ShortBuffer shortsIn = bytesIn.asShortBuffer();
         ByteBuffer bytesOut = result.pixels;
-        ShortBuffer shortsIn = pixels.asShortBuffer();
         ShortBuffer shortsOut = result.pixels.asShortBuffer();
 
-        // New way - TODO - output oriented, with kernel
-        float [] halfInputDeltaUvw = new float[] { // normalized inter-pixel distance of input texture
-                0.5f/width, 0.5f/height, 0.5f/depth // Not useful for s
-        };
-        shortsOut.rewind();
-        bytesOut.rewind();
-
+        int[] zIn = sampledInputCoordinates(depth, result.depth);
+        int[] yIn = sampledInputCoordinates(height, result.height);
+        int[] xIn = sampledInputCoordinates(width, result.width);
         int HWN = height * width * numberOfComponents;
         int WN = width * numberOfComponents;
+        int RHWN = result.height * result.width * numberOfComponents;
 
-        short[] shortArr=null;
-        byte[] byteArr=null;
-
-        if (bytesPerIntensity>1) {
-            if (shortBytes==null) {
-                int length = pixelBytes.length / 2;
-                shortBytes = new short[length];
-                for (int i=0;i<length;i++) {
-                    int o=i*2;
-                    shortBytes[i]=(short)(((pixelBytes[o] & 0xff) | (pixelBytes[o+1] & 0xff) << 8) & 0xffff);
-                }
-            }
-            shortArr=shortBytes;
-        } else {
-            byteArr=pixelBytes;
-        }
-
-        // Outer loops over output texture voxels
-        int zh1=(int)(halfInputDeltaUvw[2]*depth);
-        int yh1=(int)(halfInputDeltaUvw[1]*height);
-        int xh1=(int)(halfInputDeltaUvw[0]*width);
-
-        if (result.depth<8) {
-            MipMapMaxFilterZSlice zRunnable = new MipMapMaxFilterZSlice(0, result.depth, zh1, yh1, xh1, HWN, WN, result, depth,
-                    width, height, numberOfComponents, shortArr, byteArr, bytesPerIntensity, shortsOut, bytesOut);
-            zRunnable.run();
-            return result;
-        } else {
-            List<Future> threadList = new ArrayList<>();
-            for (int z = 0; z < result.depth; ) {
-                int zCount = 4;
-                int zRemaining = result.depth - z;
-                if (zRemaining < zCount) {
-                    zCount = zRemaining;
-                }
-                MipMapMaxFilterZSlice zRunnable = new MipMapMaxFilterZSlice(z, zCount, zh1, yh1, xh1, HWN, WN, result, depth,
-                        width, height, numberOfComponents, shortArr, byteArr, bytesPerIntensity, shortsOut, bytesOut);
-                threadList.add(scheduledThreadPoolExecutor.submit(zRunnable));
-                z += zCount;
-            }
-            int doneCount = 0;
-            long startTime = new Date().getTime();
-            while (doneCount < threadList.size()) {
-                long currentTime = new Date().getTime();
-                if (currentTime - startTime > 30000) {
-                    LOG.error("createMipmapUsingMaxFilter() exceeded max thread pool wait time");
-                    break;
-                }
-                try {
-                    Thread.sleep(10);
-                } catch (Exception ex) {
-                }
-                doneCount = 0;
-                for (Future f : threadList) {
-                    if (f.isDone()) doneCount++;
-                }
-            }
-            return result;
-        }
-    }
-
-    private static class MipMapMaxFilterZSlice implements Runnable {
-
-        final int IGNORE_VALUE=Integer.MIN_VALUE;
-
-        int z, zCount, zh1, yh1, xh1, HWN, WN, depth, height, width, numberOfComponents, bytesPerIntensity;
-        Texture3d result;
-        short[] shortArr;
-        byte[] byteArr;
-        ShortBuffer shortsOut;
-        ByteBuffer bytesOut;
-
-        int [] zIn = new int [2];
-        int [] yIn = new int [2];
-        int [] xIn = new int [2];
-
-        int [] samples = new int [8];
-
-        MipMapMaxFilterZSlice(int z, int zCount, int zh1, int yh1, int xh1, int HWN, int WN, Texture3d result, int depth,
-                              int width, int height, int numberOfComponents, short[] shortArr, byte[] byteArr,
-                              int bytesPerIntensity, ShortBuffer shortsOut, ByteBuffer bytesOut) {
-            this.z=z;
-            this.zCount=zCount;
-            this.zh1=zh1;
-            this.yh1=yh1;
-            this.xh1=xh1;
-            this.HWN=HWN;
-            this.WN=WN;
-            this.result=result;
-            this.depth=depth;
-            this.width=width;
-            this.height=height;
-            this.numberOfComponents=numberOfComponents;
-            this.shortArr=shortArr;
-            this.byteArr=byteArr;
-            this.bytesPerIntensity=bytesPerIntensity;
-            this.shortsOut=shortsOut;
-            this.bytesOut=bytesOut;
-        }
-
-        public void run() {
-
-            int zMax = z + zCount;
-
-            int RHWC=result.height*result.width*numberOfComponents;
-
-            while (z < zMax) {
-
-                int outputIndex = z * RHWC;
-
-                if (depth == 1) {
-                    zIn[0] = 0;
-                    xIn[1] = IGNORE_VALUE;
-                } else {
-                    float fractionalZOut = (z + 0.5f) / result.depth;
-                    int zf1 = (int) (fractionalZOut * depth);
-                    zIn[0] = (zf1 - zh1) * HWN;
-                    zIn[1] = (zf1 + zh1) * HWN;
-                    if (zIn[0] == zIn[1]) zIn[1] = IGNORE_VALUE;
-                }
+        forEachSliceRange(result.depth, RHWN, (zStart, zEnd) -> {
+            for (int z = zStart; z < zEnd; ++z) {
+                int outputIndex = z * RHWN;
                 for (int y = 0; y < result.height; ++y) {
-                    if (height == 1) {
-                        yIn[0] = 0;
-                        yIn[1] = IGNORE_VALUE;
-                    } else {
-                        float fractionalYOut = (y + 0.5f) / result.height;
-                        int yf1 = (int) (fractionalYOut * height);
-                        yIn[0] = (yf1 - yh1) * WN;
-                        yIn[1] = (yf1 + yh1) * WN;
-                        if (yIn[0] == yIn[1]) yIn[1] = IGNORE_VALUE;
-                    }
+                    int ZYWN = zIn[z] * HWN + yIn[y] * WN;
                     for (int x = 0; x < result.width; ++x) {
-                        if (width == 1) {
-                            xIn[0] = 0;
-                            xIn[1] = IGNORE_VALUE;
-                        } else {
-                            float fractionalXOut = (x + 0.5f) / result.width;
-                            int xf1 = (int) (fractionalXOut * width);
-                            xIn[0] = (xf1 - xh1);
-                            xIn[1] = (xf1 + xh1);
-                            if (xIn[0] == xIn[1]) xIn[1] = IGNORE_VALUE;
-                        }
-                        int sampleCount = 0;
-
-                        if (numberOfComponents == 1) {
-
-                            if (shortArr != null) {
-
-                                // Inner loops over input texture voxels
-                                for (int iz : zIn) {
-                                    if (iz != IGNORE_VALUE) {
-                                        for (int iy : yIn) {
-                                            if (iy != IGNORE_VALUE) {
-                                                int ZYWN = iy + iz;
-                                                for (int ix : xIn) {
-                                                    if (ix != IGNORE_VALUE) {
-                                                        int offset = ZYWN + ix;
-                                                        samples[sampleCount++] = shortArr[offset];
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-
-                            } else {
-
-                                // Inner loops over input texture voxels
-                                for (int iz : zIn) {
-                                    if (iz != IGNORE_VALUE) {
-                                        for (int iy : yIn) {
-                                            if (iy != IGNORE_VALUE) {
-                                                int ZYWN = iy + iz;
-                                                for (int ix : xIn) {
-                                                    if (ix != IGNORE_VALUE) {
-                                                        int offset = ZYWN + ix;
-                                                        samples[sampleCount++] = byteArr[offset] & 0xff;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-
-                            int maxIntensity = secondLargestIntensity(samples, sampleCount);
-
+                        int inputIndex = ZYWN + xIn[x] * numberOfComponents;
+                        for (int c = 0; c < numberOfComponents; ++c) {
                             if (bytesPerIntensity > 1) {
-                                shortsOut.put(outputIndex, (short) (maxIntensity & 0xffff));
+                                shortsOut.put(outputIndex++, shortsIn.get(inputIndex + c));
                             } else {
-                                bytesOut.put(outputIndex, (byte) (maxIntensity & 0xff));
-                            }
-
-                            outputIndex++;
-
-                        } else {
-
-                            for (int c = 0; c < numberOfComponents; ++c) {
-
-                                if (shortArr != null) {
-
-                                    // Inner loops over input texture voxels
-                                    for (int iz : zIn) {
-                                        if (iz != IGNORE_VALUE) {
-                                            for (int iy : yIn) {
-                                                if (iy != IGNORE_VALUE) {
-                                                    int ZYWN = iy + iz;
-                                                    for (int ix : xIn) {
-                                                        if (ix != IGNORE_VALUE) {
-                                                            int offset = ZYWN
-                                                                    + ix * numberOfComponents
-                                                                    + c;
-                                                            samples[sampleCount++] = shortArr[offset];
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                } else {
-
-                                    // Inner loops over input texture voxels
-                                    for (int iz : zIn) {
-                                        if (iz != IGNORE_VALUE) {
-                                            for (int iy : yIn) {
-                                                if (iy != IGNORE_VALUE) {
-                                                    int ZYWN = iy + iz;
-                                                    for (int ix : xIn) {
-                                                        if (ix != IGNORE_VALUE) {
-                                                            int offset = ZYWN
-                                                                    + ix * numberOfComponents
-                                                                    + c;
-                                                            samples[sampleCount++] = byteArr[offset] & 0xff;
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                }
-
-                                int maxIntensity = secondLargestIntensity(samples, sampleCount);
-
-                                if (bytesPerIntensity > 1) {
-                                    shortsOut.put(outputIndex, (short) (maxIntensity & 0xffff));
-                                } else {
-                                    bytesOut.put(outputIndex, (byte) (maxIntensity & 0xff));
-                                }
-
-                                outputIndex++;
-
+                                bytesOut.put(outputIndex++, bytesIn.get(inputIndex + c));
                             }
-
                         }
                     }
                 }
-                z++;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return for each output coordinate, the input coordinate at the center of that output voxel
+     */
+    private static int[] sampledInputCoordinates(int inputSize, int outputSize) {
+        int[] sampled = new int[outputSize];
+        for (int o = 0; o < outputSize; ++o) {
+            if (inputSize == 1) {
+                sampled[o] = 0;
+            } else {
+                float fractionalOut = (o + 0.5f) / outputSize;
+                sampled[o] = (int) (fractionalOut * inputSize);
             }
         }
+        return sampled;
     }
 
     private RenderedImage[] renderedImagesFromTiffStack(InputStream stackStream) throws IOException {
@@ -0,0 +1,165 @@
+package org.janelia.gltools;
+
+import java.util.Arrays;
+import org.janelia.geometry3d.MeshGeometry;
+import org.janelia.geometry3d.PackedMeshGeometry;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.geometry3d.Vertex;
+import org.janelia.it.jacs.model.TestCategories;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Compares PackedMeshGeometry with MeshGeometry, for correctness of the packed
+ * vertex buffer layout and for memory and time spent building vertex buffers.
+ */
+public class PackedMeshGeometryTest {
+
+    private static final int GRID_SIZE = 1000; // one million vertices
+
+    /**
+     * Interleaved packed attributes match the per-vertex layout MeshActor builds from a MeshGeometry.
+     */
+    @Test
+    public void testInterleaveMatchesMeshGeometryLayout() {
+        System.out.println("interleave");
+        MeshGeometry mesh = createGrid(new MeshGeometry(), 4);
+        mesh.computeVertexNormals();
+        PackedMeshGeometry packed = PackedMeshGeometry.fromMeshGeometry(mesh);
+
+        MeshFloatVbo expected = new MeshFloatVbo(new MeshFloatVbo.VertexAttribute[0]);
+        float[] expectedValues = new float[0];
+        for (int i = 0; i < mesh.getVertexCount(); ++i) {
+            Vertex v = mesh.getVertex(i);
+            float[] position = v.getPosition().toArray();
+            float[] normal = v.getVectorAttribute("normal").toNewArray();
+            expected.append(position);
+            expected.append(normal);
+            expectedValues = concat(expectedValues, position, normal);
+        }
+        float[] interleaved = packed.interleave(true, false);
+        assertArrayEquals(expectedValues, interleaved, 1e-6f);
+
+        MeshFloatVbo actual = new MeshFloatVbo(new MeshFloatVbo.VertexAttribute[0]);
+        actual.setData(interleaved, packed.getVertexCount());
+        assertEquals(mesh.getVertexCount(), actual.getVertexCount());
+        assertEquals(expected.getFloatCount(), actual.getFloatCount());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        System.out.println("round trip");
+        PackedMeshGeometry packed = createGrid(4);
+        packed.addEdge(0, 1);
+        packed.addEdge(0, 15);
+        MeshGeometry mesh = packed.toMeshGeometry();
+        assertEquals(packed.getVertexCount(), mesh.getVertexCount());
+        assertEquals(packed.getTriangleCount(), mesh.getTriangles().size());
+        // Only the edges added here, and not the outlines of the triangles
+        assertEquals(packed.getEdgeCount(), mesh.getEdges().size());
+        PackedMeshGeometry again = PackedMeshGeometry.fromMeshGeometry(mesh);
+        assertEquals(packed.getEdgeCount(), again.getEdgeCount());
+        assertArrayEquals(new int[] {0, 1, 0, 15}, Arrays.copyOf(again.getEdgeIndices(), 2 * again.getEdgeCount()));
+        assertArrayEquals(packed.interleave(false, false), again.interleave(false, false), 0.0f);
+
+        // The outlines of the quads of a MeshGeometry are kept as they are
+        MeshGeometry quads = createGrid(new MeshGeometry(), 4);
+        assertEquals(24, quads.getEdges().size());
+        assertEquals(quads.getEdges(), PackedMeshGeometry.fromMeshGeometry(quads).toMeshGeometry().getEdges());
+    }
+
+    @Test
+    public void testFlatShaded() {
+        System.out.println("flat shaded");
+        PackedMeshGeometry flat = createGrid(3).toFlatShaded();
+        assertEquals(3 * flat.getTriangleCount(), flat.getVertexCount());
+        float[] vertices = flat.interleave(true, false);
+        // the grid lies in the z=0 plane, so every normal points along z
+        for (int v = 0; v < flat.getVertexCount(); ++v)
+            assertEquals(1.0f, Math.abs(vertices[6 * v + 5]), 1e-5f);
+    }
+
+    /**
+     * Reports bytes per vertex and vertex buffer build time for a large mesh, both ways.
+     * Needs close to a gigabyte of heap, so it only runs with the prototype tests.
+     */
+    @Test
+    @Category(TestCategories.PrototypeTests.class)
+    public void testLargeMeshFootprint() {
+        System.out.println("large mesh footprint");
+        long before = usedMemory();
+        MeshGeometry mesh = createGrid(new MeshGeometry(), GRID_SIZE);
+        long meshBytes = usedMemory() - before;
+
+        long start = System.nanoTime();
+        MeshFloatVbo meshVbo = new MeshFloatVbo(new MeshFloatVbo.VertexAttribute[0]);
+        for (int i = 0; i < mesh.getVertexCount(); ++i)
+            meshVbo.append(mesh.getVertex(i).getPosition().toArray());
+        long meshMillis = (System.nanoTime() - start) / 1000000;
+        int vertexCount = mesh.getVertexCount();
+        mesh = null;
+        meshVbo = null;
+
+        before = usedMemory();
+        PackedMeshGeometry packed = createGrid(GRID_SIZE);
+        long packedBytes = usedMemory() - before;
+
+        start = System.nanoTime();
+        MeshFloatVbo packedVbo = new MeshFloatVbo(new MeshFloatVbo.VertexAttribute[0]);
+        packedVbo.setData(packed.interleave(false, false), packed.getVertexCount());
+        long packedMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(String.format("MeshGeometry: %d bytes/vertex, vbo data in %d ms",
+                meshBytes / vertexCount, meshMillis));
+        System.out.println(String.format("PackedMeshGeometry: %d bytes/vertex (%d bytes/vertex stored), vbo data in %d ms",
+                packedBytes / vertexCount, packed.getStorageBytes() / vertexCount, packedMillis));
+        assertEquals(vertexCount, packedVbo.getVertexCount());
+    }
+
+    private static MeshGeometry createGrid(MeshGeometry mesh, int size) {
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                mesh.add(new Vertex(new Vector3(x, y, 0)));
+            }
+        }
+        for (int y = 0; y < size - 1; ++y) {
+            for (int x = 0; x < size - 1; ++x) {
+                int v = y * size + x;
+                mesh.addFace(new int[] {v, v + 1, v + size + 1, v + size});
+            }
+        }
+        return mesh;
+    }
+
+    private static PackedMeshGeometry createGrid(int size) {
+        PackedMeshGeometry mesh = new PackedMeshGeometry(size * size, 2 * (size - 1) * (size - 1));
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                mesh.addVertex(x, y, 0);
+            }
+        }
+        for (int y = 0; y < size - 1; ++y) {
+            for (int x = 0; x < size - 1; ++x) {
+                int v = y * size + x;
+                mesh.addFace(new int[] {v, v + 1, v + size + 1, v + size});
+            }
+        }
+        return mesh;
+    }
+
+    private static float[] concat(float[] values, float[] position, float[] normal) {
+        float[] result = Arrays.copyOf(values, values.length + position.length + normal.length);
+        System.arraycopy(position, 0, result, values.length, position.length);
+        System.arraycopy(normal, 0, result, values.length + position.length, normal.length);
+        return result;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
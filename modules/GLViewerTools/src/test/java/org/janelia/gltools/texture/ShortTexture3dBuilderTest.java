@@ -0,0 +1,91 @@
+package org.janelia.gltools.texture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ShortBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares textures written with ShortTexture3dBuilder to textures loaded from raster slices.
+ */
+public class ShortTexture3dBuilderTest {
+
+    @Test
+    public void testMatchesRasterSlices() {
+        System.out.println("matchesRasterSlices");
+        // Even, odd and flat sizes take different paths through the mipmap filter
+        int[][] sizes = {{16, 16, 16}, {13, 7, 5}, {9, 1, 12}};
+        for (int[] size : sizes) {
+            Texture3d expected = loadFromRasterSlices(size[0], size[1], size[2]);
+            DirectBufferPool pool = new DirectBufferPool(1 << 20);
+            ShortTexture3dBuilder builder = new ShortTexture3dBuilder(size[0], size[1], size[2], pool);
+            for (int z = 0; z < size[2]; z++) {
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        builder.put(x, y, z, intensity(x, y, z));
+                    }
+                }
+            }
+            Texture3d actual = builder.build();
+            assertSameVoxels(expected, actual);
+            assertEquals(expected.mipmaps.size(), actual.mipmaps.size());
+            for (int level = 0; level < expected.mipmaps.size(); level++) {
+                Texture3d expectedMipmap = (Texture3d) expected.mipmaps.get(level);
+                Texture3d actualMipmap = (Texture3d) actual.mipmaps.get(level);
+                assertEquals(expectedMipmap.mipMapLevel, actualMipmap.mipMapLevel);
+                assertSameVoxels(expectedMipmap, actualMipmap);
+            }
+        }
+    }
+
+    @Test
+    public void testBuffersAreReused() {
+        System.out.println("buffersAreReused");
+        DirectBufferPool pool = new DirectBufferPool(1 << 20);
+        new ShortTexture3dBuilder(8, 8, 8, pool).release();
+        long allocated = pool.getAllocatedBytes();
+        new ShortTexture3dBuilder(8, 8, 8, pool).release();
+        assertEquals(allocated, pool.getAllocatedBytes());
+        assertEquals(allocated, pool.getReusedBytes());
+    }
+
+    private static short intensity(int x, int y, int z) {
+        return (short) (x * 7919 + y * 104729 + z * 1299709);
+    }
+
+    private static Texture3d loadFromRasterSlices(int width, int height, int depth) {
+        Raster[] slices = new Raster[depth];
+        BufferedImage image = null;
+        for (int z = 0; z < depth; z++) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+            WritableRaster raster = image.getRaster();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    raster.setSample(x, y, 0, intensity(x, y, z) & 0xffff);
+                }
+            }
+            slices[z] = raster;
+        }
+        Texture3d texture = new Texture3d();
+        assertTrue(texture.loadRasterSlices(slices, image.getColorModel()));
+        return texture;
+    }
+
+    private static void assertSameVoxels(Texture3d expected, Texture3d actual) {
+        assertEquals(expected.width, actual.width);
+        assertEquals(expected.height, actual.height);
+        assertEquals(expected.depth, actual.depth);
+        assertEquals(expected.format, actual.format);
+        assertEquals(expected.internalFormat, actual.internalFormat);
+        assertEquals(expected.type, actual.type);
+        ShortBuffer expectedShorts = expected.pixels.asShortBuffer();
+        ShortBuffer actualShorts = actual.pixels.asShortBuffer();
+        int count = expected.width * expected.height * expected.depth;
+        for (int i = 0; i < count; i++) {
+            assertEquals("voxel " + i, expectedShorts.get(i), actualShorts.get(i));
+        }
+    }
+}
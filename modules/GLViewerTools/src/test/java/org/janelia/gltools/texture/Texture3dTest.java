@@ -0,0 +1,122 @@
+package org.janelia.gltools.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the mipmaps of Texture3d, and the slice ranges they are computed on.
+ */
+public class Texture3dTest {
+
+    // Enough voxels per slice that every slice is a task of its own
+    private static final int LARGE_SLICE = 1 << 16;
+
+    private static short intensity(int x, int y, int z, int c) {
+        return (short) (x + 10 * y + 100 * z + 1000 * c);
+    }
+
+    @Test
+    public void testTwoChannelMipmap() {
+        System.out.println("twoChannelMipmap");
+        Texture3d texture = new Texture3d();
+        texture.width = 6;
+        texture.height = 5;
+        texture.depth = 3;
+        texture.numberOfComponents = 2;
+        texture.bytesPerIntensity = 2;
+        texture.pixels = ByteBuffer.allocate(2 * 2 * 6 * 5 * 3).order(ByteOrder.nativeOrder());
+        ShortBuffer shorts = texture.pixels.asShortBuffer();
+        for (int z = 0; z < 3; z++) {
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < 6; x++) {
+                    for (int c = 0; c < 2; c++) {
+                        shorts.put(intensity(x, y, z, c));
+                    }
+                }
+            }
+        }
+
+        Texture3d mipmap = texture.createMipmapBySampling();
+        assertEquals(3, mipmap.width);
+        assertEquals(2, mipmap.height);
+        assertEquals(1, mipmap.depth);
+        assertEquals(2, mipmap.numberOfComponents);
+        assertEquals(1, mipmap.mipMapLevel);
+        // Each output voxel is the input voxel at its center, with the channels kept together
+        ShortBuffer mipmapShorts = mipmap.pixels.asShortBuffer();
+        int i = 0;
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 3; x++) {
+                for (int c = 0; c < 2; c++) {
+                    assertEquals("voxel " + x + "," + y + " channel " + c,
+                            intensity(2 * x + 1, 2 * y + 1, 1, c), mipmapShorts.get(i++));
+                }
+            }
+        }
+
+        Texture3d smallest = mipmap.createMipmapBySampling();
+        assertEquals(1, smallest.width * smallest.height * smallest.depth);
+        assertNull(smallest.createMipmapBySampling());
+    }
+
+    @Test
+    public void testWorkerExceptionIsRethrown() {
+        System.out.println("workerExceptionIsRethrown");
+        IllegalStateException failure = new IllegalStateException("slice 40");
+        try {
+            Texture3d.forEachSliceRange(64, LARGE_SLICE, (zStart, zEnd) -> {
+                if (zStart <= 40 && 40 < zEnd) {
+                    throw failure;
+                }
+            });
+            fail("the failure of a slice was not rethrown");
+        } catch (IllegalStateException ex) {
+            // A failure on a pool thread comes back as a copy made on the calling thread, caused by the original
+            assertTrue(String.valueOf(ex), ex == failure || ex.getCause() == failure);
+        }
+    }
+
+    @Test
+    public void testInterruptCancels() throws Exception {
+        System.out.println("interruptCancels");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread loader = new Thread(() -> {
+            try {
+                Texture3d.forEachSliceRange(64, LARGE_SLICE, (zStart, zEnd) -> {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Throwable ex) {
+                thrown.set(ex);
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        }, "Texture3dTestLoader");
+        try {
+            loader.start();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            loader.interrupt();
+            loader.join(10000);
+            assertFalse(loader.isAlive());
+            assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof CancellationException);
+            // The interrupt is kept for the caller to see
+            assertTrue(interrupted.get());
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -75,6 +75,13 @@ implements Collection<Vertex>, ObservableInterface
     }
     
     public int addFace(Face face) {
+        return addFace(face, true);
+    }
+
+    /**
+     * @param addEdges whether to also add the outline of the face to the edges
+     */
+    int addFace(Face face, boolean addEdges) {
         List<Integer> v = face.getVertices();
         faces.add(face);
         // Triangles
@@ -83,6 +90,8 @@ implements Collection<Vertex>, ObservableInterface
             this.triangles.add(new Triangle(
                     v.get(0), v.get(i-1), v.get(i)));
         }
+        if (!addEdges)
+            return faces.size() - 1;
         // Edges
         for (int i = 1; i < v.size(); ++i)
             this.edges.add(new Edge(v.get(i-1), v.get(i)));
@@ -0,0 +1,250 @@
+package org.janelia.geometry3d;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Directory of parsed meshes in a binary form that loads with a few bulk reads.
+ *
+ * Entries are keyed by the absolute path of the source file, and are stale
+ * once the size or modification time of the source changes.
+ *
+ * The directory is bounded in bytes. An entry's modification time is its last
+ * use, and the least recently used entries are deleted once a put goes over the
+ * budget. Entries are read into heap buffers rather than mapped, so that no file
+ * stays open and an entry can always be replaced or deleted.
+ */
+public class PackedMeshCache {
+    private static final int MAGIC = 0x48534D50; // "PMSH", little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+
+    private static final int HAS_NORMALS = 1;
+    private static final int HAS_COLORS = 2;
+    private static final int HAS_DEFAULT_COLOR = 4;
+
+    private static final String ENTRY_SUFFIX = ".mesh";
+    private static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024 * 1024;
+    // Fraction of the budget kept after trimming, so that not every put has to trim
+    private static final double TRIM_LOW_WATER_MARK = 0.75;
+
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    public PackedMeshCache(Path cacheDir) {
+        this(cacheDir, DEFAULT_MAX_BYTES);
+    }
+
+    public PackedMeshCache(Path cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached mesh for this source file, or null if there is none, or it is out of date
+     */
+    public PackedMeshGeometry get(Path source) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        Path entry = getEntryPath(source);
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+                return null;
+            ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    return null; // truncated while reading
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            if (buffer.getLong() != attributes.size()
+                    || buffer.getLong() != attributes.lastModifiedTime().toMillis())
+                return null;
+            int vertexCount = buffer.getInt();
+            int triangleCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            int flags = buffer.getInt();
+            int defaultColor = buffer.getInt();
+            buffer.getInt(); // padding
+            long expectedSize = HEADER_BYTES + 4L * (
+                    PackedMeshGeometry.POSITION_SIZE * (long) vertexCount
+                    + ((flags & HAS_NORMALS) != 0 ? PackedMeshGeometry.NORMAL_SIZE * (long) vertexCount : 0)
+                    + ((flags & HAS_COLORS) != 0 ? PackedMeshGeometry.COLOR_SIZE * (long) vertexCount : 0)
+                    + 3L * triangleCount + 2L * edgeCount);
+            if (expectedSize != size)
+                return null; // truncated entry
+            float[] positions = readFloats(buffer, PackedMeshGeometry.POSITION_SIZE * vertexCount);
+            float[] normals = (flags & HAS_NORMALS) != 0
+                    ? readFloats(buffer, PackedMeshGeometry.NORMAL_SIZE * vertexCount) : null;
+            float[] colors = (flags & HAS_COLORS) != 0
+                    ? readFloats(buffer, PackedMeshGeometry.COLOR_SIZE * vertexCount) : null;
+            int[] triangleIndices = readInts(buffer, 3 * triangleCount);
+            int[] edgeIndices = readInts(buffer, 2 * edgeCount);
+            PackedMeshGeometry result = new PackedMeshGeometry(positions, normals, colors, vertexCount,
+                    triangleIndices, triangleCount, edgeIndices, edgeCount);
+            if ((flags & HAS_DEFAULT_COLOR) != 0)
+                result.setDefaultColor(new Color(defaultColor, true));
+            touch(entry);
+            return result;
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the mesh parsed from this source file, replacing any earlier entry.
+     */
+    public void put(Path source, PackedMeshGeometry mesh) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        int vertexCount = mesh.getVertexCount();
+        int triangleCount = mesh.getTriangleCount();
+        int edgeCount = mesh.getEdgeCount();
+        float[] normals = mesh.getNormals();
+        float[] colors = mesh.getColors();
+        Color defaultColor = mesh.getDefaultColor();
+        int flags = (normals != null ? HAS_NORMALS : 0)
+                | (colors != null ? HAS_COLORS : 0)
+                | (defaultColor != null ? HAS_DEFAULT_COLOR : 0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(attributes.size())
+                .putLong(attributes.lastModifiedTime().toMillis())
+                .putInt(vertexCount)
+                .putInt(triangleCount)
+                .putInt(edgeCount)
+                .putInt(flags)
+                .putInt(defaultColor != null ? defaultColor.getRGB() : 0)
+                .putInt(0);
+        header.flip();
+
+        Files.createDirectories(cacheDir);
+        Path entry = getEntryPath(source);
+        Path temp = Files.createTempFile(cacheDir, entry.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                writeFloats(channel, mesh.getPositions(), PackedMeshGeometry.POSITION_SIZE * vertexCount);
+                if (normals != null)
+                    writeFloats(channel, normals, PackedMeshGeometry.NORMAL_SIZE * vertexCount);
+                if (colors != null)
+                    writeFloats(channel, colors, PackedMeshGeometry.COLOR_SIZE * vertexCount);
+                writeInts(channel, mesh.getTriangleIndices(), 3 * triangleCount);
+                writeInts(channel, mesh.getEdgeIndices(), 2 * edgeCount);
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        trim(entry);
+    }
+
+    /**
+     * Deletes the least recently used entries, other than the one just stored, once the
+     * directory is over budget.
+     */
+    private void trim(Path keep) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long totalBytes = 0;
+        try (Stream<Path> paths = Files.list(cacheDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    continue;
+                try {
+                    BasicFileAttributes entryAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    entries.add(path);
+                    attributes.put(path, entryAttributes);
+                    totalBytes += entryAttributes.size();
+                } catch (NoSuchFileException ex) {
+                    // removed by another thread or process
+                }
+            }
+        }
+        if (totalBytes <= maxBytes)
+            return;
+        entries.sort(Comparator.comparing(path -> attributes.get(path).lastModifiedTime()));
+        long targetBytes = (long) (maxBytes * TRIM_LOW_WATER_MARK);
+        for (Path path : entries) {
+            if (totalBytes <= targetBytes)
+                break;
+            if (path.equals(keep))
+                continue;
+            Files.deleteIfExists(path);
+            totalBytes -= attributes.get(path).size();
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // only affects which entries are trimmed first
+        }
+    }
+
+    Path getEntryPath(Path source) {
+        String key = source.toAbsolutePath().normalize().toString();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest)
+                name.append(String.format("%02x", b));
+            return cacheDir.resolve(name.append(ENTRY_SUFFIX).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // every Java platform supports SHA-1
+        }
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int count) {
+        float[] result = new float[count];
+        buffer.asFloatBuffer().get(result);
+        buffer.position(buffer.position() + 4 * count);
+        return result;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + 4 * count);
+        return result;
+    }
+
+    private static void writeFloats(FileChannel channel, float[] values, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(values, 0, count);
+        writeFully(channel, buffer);
+    }
+
+    private static void writeInts(FileChannel channel, int[] values, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(values, 0, count);
+        writeFully(channel, buffer);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,468 @@
+package org.janelia.geometry3d;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Observer;
+
+/**
+ * Triangle mesh stored as packed primitive arrays, one per attribute.
+ *
+ * MeshGeometry keeps a Vertex object per vertex, each with its own attribute maps,
+ * and boxed vertex indices per triangle, which costs hundreds of bytes per vertex.
+ * Here a vertex is a few floats in each attribute array, and the arrays can be
+ * interleaved for upload to a vertex buffer in one pass.
+ *
+ * Supports positions, vertex normals and RGBA colors; use MeshGeometry for meshes
+ * with other vertex attributes.
+ */
+public class PackedMeshGeometry implements ObservableInterface {
+
+    public static final int POSITION_SIZE = 3;
+    public static final int NORMAL_SIZE = 3;
+    public static final int COLOR_SIZE = 4;
+
+    private float[] positions = new float[POSITION_SIZE * 16];
+    private float[] normals = null; // null until set or computed
+    private float[] colors = null; // null until set
+    private int[] triangleIndices = new int[3 * 16];
+    private int[] edgeIndices = new int[0];
+    private int vertexCount = 0;
+    private int triangleCount = 0;
+    private int edgeCount = 0;
+    private Color defaultColor = null;
+
+    private final Box3 boundingBox = new Box3();
+    private boolean boundingBoxIsDirty = false;
+
+    private final ComposableObservable observable = new ComposableObservable();
+
+    public PackedMeshGeometry() {
+    }
+
+    public PackedMeshGeometry(int expectedVertexCount, int expectedTriangleCount) {
+        positions = new float[POSITION_SIZE * Math.max(1, expectedVertexCount)];
+        triangleIndices = new int[3 * Math.max(1, expectedTriangleCount)];
+    }
+
+    /**
+     * Takes ownership of already filled arrays; normals and colors may be null.
+     */
+    PackedMeshGeometry(float[] positions, float[] normals, float[] colors, int vertexCount,
+            int[] triangleIndices, int triangleCount, int[] edgeIndices, int edgeCount) {
+        this.positions = positions;
+        this.normals = normals;
+        this.colors = colors;
+        this.vertexCount = vertexCount;
+        this.triangleIndices = triangleIndices;
+        this.triangleCount = triangleCount;
+        this.edgeIndices = edgeIndices;
+        this.edgeCount = edgeCount;
+        this.boundingBoxIsDirty = true;
+    }
+
+    /**
+     * Packs the positions, normals and "color" attributes of a MeshGeometry, along
+     * with its triangles and edges. Other vertex attributes are not carried over.
+     */
+    public static PackedMeshGeometry fromMeshGeometry(MeshGeometry mesh) {
+        int count = mesh.getVertexCount();
+        PackedMeshGeometry result = new PackedMeshGeometry(count, mesh.getTriangles().size());
+        boolean hasNormals = mesh.hasVertexNormals();
+        boolean hasColors = count > 0 && mesh.getVertex(0).hasAttribute("color");
+        for (int i = 0; i < count; ++i) {
+            Vertex v = mesh.getVertex(i);
+            Vector3 p = v.getPosition();
+            result.addVertex(p.getX(), p.getY(), p.getZ());
+            if (hasNormals) {
+                ConstVector n = v.getVectorAttribute("normal");
+                result.setNormal(i, n.get(0), n.get(1), n.get(2));
+            }
+            if (hasColors) {
+                ConstVector c = v.getVectorAttribute("color");
+                result.setColor(i, c.get(0), c.get(1), c.get(2), c.size() > 3 ? c.get(3) : 1.0f);
+            }
+        }
+        for (Triangle t : mesh.getTriangles()) {
+            result.addTriangle(t.getVertexIndex(0), t.getVertexIndex(1), t.getVertexIndex(2));
+        }
+        for (Edge e : mesh.getEdges()) {
+            result.addEdge(e.get(0), e.get(1));
+        }
+        result.setDefaultColor(mesh.getDefaultColor());
+        return result;
+    }
+
+    /**
+     * Unpacks into a MeshGeometry, for code that works with Vertex objects. The mesh
+     * has the edges of this one, and not the outlines of the triangles as well.
+     */
+    public MeshGeometry toMeshGeometry() {
+        MeshGeometry result = new MeshGeometry();
+        result.setDefaultColor(defaultColor);
+        for (int i = 0; i < vertexCount; ++i) {
+            int p = POSITION_SIZE * i;
+            Vertex v = result.addVertex(positions[p], positions[p + 1], positions[p + 2]);
+            if (normals != null) {
+                v.setAttribute("normal", new Vector3(normals[p], normals[p + 1], normals[p + 2]));
+            }
+            if (colors != null) {
+                int c = COLOR_SIZE * i;
+                v.setAttribute("color", new Vector4(colors[c], colors[c + 1], colors[c + 2], colors[c + 3]));
+            }
+        }
+        for (int t = 0; t < triangleCount; ++t) {
+            result.addFace(new Face(new int[] {triangleIndices[3 * t], triangleIndices[3 * t + 1], triangleIndices[3 * t + 2]}), false);
+        }
+        for (int e = 0; e < edgeCount; ++e) {
+            result.addEdge(edgeIndices[2 * e], edgeIndices[2 * e + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the new vertex
+     */
+    public int addVertex(float x, float y, float z) {
+        positions = ensureCapacity(positions, POSITION_SIZE * (vertexCount + 1));
+        int p = POSITION_SIZE * vertexCount;
+        positions[p] = x;
+        positions[p + 1] = y;
+        positions[p + 2] = z;
+        if (normals != null) {
+            normals = ensureCapacity(normals, positions.length);
+        }
+        if (colors != null) {
+            colors = ensureCapacity(colors, COLOR_SIZE * (positions.length / POSITION_SIZE));
+        }
+        setChanged();
+        return vertexCount++;
+    }
+
+    public void setNormal(int vertexIndex, float x, float y, float z) {
+        if (normals == null) {
+            normals = new float[positions.length];
+        }
+        int p = NORMAL_SIZE * vertexIndex;
+        normals[p] = x;
+        normals[p + 1] = y;
+        normals[p + 2] = z;
+        setChanged();
+    }
+
+    public void setColor(int vertexIndex, float red, float green, float blue, float alpha) {
+        if (colors == null) {
+            // vertices without a color so far are opaque white
+            colors = new float[COLOR_SIZE * (positions.length / POSITION_SIZE)];
+            Arrays.fill(colors, 1.0f);
+        }
+        int c = COLOR_SIZE * vertexIndex;
+        colors[c] = red;
+        colors[c + 1] = green;
+        colors[c + 2] = blue;
+        colors[c + 3] = alpha;
+        setChanged();
+    }
+
+    public int addTriangle(int a, int b, int c) {
+        triangleIndices = ensureCapacity(triangleIndices, 3 * (triangleCount + 1));
+        int t = 3 * triangleCount;
+        triangleIndices[t] = a;
+        triangleIndices[t + 1] = b;
+        triangleIndices[t + 2] = c;
+        setChanged();
+        return triangleCount++;
+    }
+
+    /**
+     * Adds a polygon as a fan of triangles, like MeshGeometry.addFace(), but
+     * without adding its outline edges; use addEdge() for those.
+     */
+    public void addFace(int[] indices) {
+        for (int i = 2; i < indices.length; ++i) {
+            addTriangle(indices[0], indices[i - 1], indices[i]);
+        }
+    }
+
+    public int addEdge(int a, int b) {
+        edgeIndices = ensureCapacity(edgeIndices, 2 * (edgeCount + 1));
+        edgeIndices[2 * edgeCount] = a;
+        edgeIndices[2 * edgeCount + 1] = b;
+        setChanged();
+        return edgeCount++;
+    }
+
+    public void clear() {
+        boolean changed = vertexCount > 0 || triangleCount > 0 || edgeCount > 0;
+        vertexCount = 0;
+        triangleCount = 0;
+        edgeCount = 0;
+        normals = null;
+        colors = null;
+        boundingBox.clear();
+        if (changed)
+            setChanged();
+    }
+
+    /**
+     * Computes vertex normals as the sum of the normals of the triangles around each
+     * vertex, weighted by the angle at that vertex, as in MeshGeometry.
+     */
+    public void computeVertexNormals() {
+        float[] result = new float[positions.length];
+        float[] sideLengths = new float[3];
+        float[] normal = new float[3];
+        for (int t = 0; t < triangleCount; ++t) {
+            if (!triangleNormal(t, normal))
+                continue; // degenerate triangle
+            for (int i = 0; i < 3; ++i) {
+                sideLengths[i] = distance(triangleIndices[3 * t + (i + 1) % 3], triangleIndices[3 * t + (i + 2) % 3]);
+            }
+            for (int i = 0; i < 3; ++i) {
+                // cosine law
+                float a = sideLengths[i];
+                float b = sideLengths[(i + 1) % 3];
+                float c = sideLengths[(i + 2) % 3];
+                float angle = (float) Math.acos((b * b + c * c - a * a) / (2 * b * c));
+                int p = NORMAL_SIZE * triangleIndices[3 * t + i];
+                result[p] += angle * normal[0];
+                result[p + 1] += angle * normal[1];
+                result[p + 2] += angle * normal[2];
+            }
+        }
+        for (int p = 0; p < NORMAL_SIZE * vertexCount; p += NORMAL_SIZE) {
+            float length = (float) Math.sqrt(result[p] * result[p] + result[p + 1] * result[p + 1] + result[p + 2] * result[p + 2]);
+            if (length > 0) {
+                result[p] /= length;
+                result[p + 1] /= length;
+                result[p + 2] /= length;
+            }
+        }
+        normals = result;
+        setChanged();
+    }
+
+    /**
+     * Creates a copy with separate vertices for each triangle, with normals
+     * perpendicular to the triangle, for flat shading. Edges keep their original
+     * vertex indices.
+     */
+    public PackedMeshGeometry toFlatShaded() {
+        PackedMeshGeometry result = new PackedMeshGeometry(3 * triangleCount, triangleCount);
+        float[] normal = new float[3];
+        for (int t = 0; t < triangleCount; ++t) {
+            if (!triangleNormal(t, normal))
+                Arrays.fill(normal, 0);
+            int first = result.vertexCount;
+            for (int i = 0; i < 3; ++i) {
+                int v = triangleIndices[3 * t + i];
+                int p = POSITION_SIZE * v;
+                int r = result.addVertex(positions[p], positions[p + 1], positions[p + 2]);
+                result.setNormal(r, normal[0], normal[1], normal[2]);
+                if (colors != null) {
+                    int c = COLOR_SIZE * v;
+                    result.setColor(r, colors[c], colors[c + 1], colors[c + 2], colors[c + 3]);
+                }
+            }
+            result.addTriangle(first, first + 1, first + 2);
+        }
+        for (int e = 0; e < edgeCount; ++e) {
+            result.addEdge(edgeIndices[2 * e], edgeIndices[2 * e + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Interleaves the vertex attributes as position, then normal, then color,
+     * in the layout of a vertex buffer.
+     *
+     * @return the interleaved attributes, vertexCount * getFloatsPerVertex(...) floats long
+     */
+    public float[] interleave(boolean includeNormals, boolean includeColors) {
+        if (includeNormals && normals == null)
+            computeVertexNormals();
+        int stride = getFloatsPerVertex(includeNormals, includeColors);
+        float[] result = new float[stride * vertexCount];
+        int out = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            System.arraycopy(positions, POSITION_SIZE * v, result, out, POSITION_SIZE);
+            out += POSITION_SIZE;
+            if (includeNormals) {
+                System.arraycopy(normals, NORMAL_SIZE * v, result, out, NORMAL_SIZE);
+                out += NORMAL_SIZE;
+            }
+            if (includeColors) {
+                System.arraycopy(colors, COLOR_SIZE * v, result, out, COLOR_SIZE);
+                out += COLOR_SIZE;
+            }
+        }
+        return result;
+    }
+
+    public static int getFloatsPerVertex(boolean includeNormals, boolean includeColors) {
+        return POSITION_SIZE
+                + (includeNormals ? NORMAL_SIZE : 0)
+                + (includeColors ? COLOR_SIZE : 0);
+    }
+
+    public Box3 getBoundingBox() {
+        if (boundingBoxIsDirty) {
+            boundingBox.clear();
+            Vector3 v = new Vector3(0, 0, 0);
+            for (int p = 0; p < POSITION_SIZE * vertexCount; p += POSITION_SIZE) {
+                v.set(positions[p], positions[p + 1], positions[p + 2]);
+                boundingBox.include(v);
+            }
+            boundingBoxIsDirty = false;
+        }
+        return boundingBox;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public boolean hasVertexNormals() {
+        return normals != null;
+    }
+
+    public boolean hasVertexColors() {
+        return colors != null;
+    }
+
+    public Color getDefaultColor() {
+        return defaultColor;
+    }
+
+    public void setDefaultColor(Color defaultColor) {
+        this.defaultColor = defaultColor;
+    }
+
+    /**
+     * @return the backing array, at least 3 * getVertexCount() long; do not modify
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return the backing array, at least 3 * getTriangleCount() long; do not modify
+     */
+    public int[] getTriangleIndices() {
+        return triangleIndices;
+    }
+
+    /**
+     * @return the backing array, at least 2 * getEdgeCount() long; do not modify
+     */
+    public int[] getEdgeIndices() {
+        return edgeIndices;
+    }
+
+    float[] getNormals() {
+        return normals;
+    }
+
+    float[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @return bytes held by the attribute and index arrays
+     */
+    public long getStorageBytes() {
+        long floats = positions.length
+                + (normals == null ? 0 : normals.length)
+                + (colors == null ? 0 : colors.length);
+        long ints = triangleIndices.length + edgeIndices.length;
+        return 4 * (floats + ints);
+    }
+
+    // Same convention as MeshGeometry.computeTriangleNormal()
+    private boolean triangleNormal(int triangle, float[] normal) {
+        int p1 = POSITION_SIZE * triangleIndices[3 * triangle];
+        int p2 = POSITION_SIZE * triangleIndices[3 * triangle + 1];
+        int p3 = POSITION_SIZE * triangleIndices[3 * triangle + 2];
+        float ax = positions[p2] - positions[p3];
+        float ay = positions[p2 + 1] - positions[p3 + 1];
+        float az = positions[p2 + 2] - positions[p3 + 2];
+        float bx = positions[p2] - positions[p1];
+        float by = positions[p2 + 1] - positions[p1 + 1];
+        float bz = positions[p2 + 2] - positions[p1 + 2];
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0)
+            return false;
+        normal[0] = nx / length;
+        normal[1] = ny / length;
+        normal[2] = nz / length;
+        return true;
+    }
+
+    private float distance(int v1, int v2) {
+        int p1 = POSITION_SIZE * v1;
+        int p2 = POSITION_SIZE * v2;
+        float dx = positions[p1] - positions[p2];
+        float dy = positions[p1 + 1] - positions[p2 + 1];
+        float dz = positions[p1 + 2] - positions[p2 + 2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static float[] ensureCapacity(float[] array, int capacity) {
+        if (array.length >= capacity)
+            return array;
+        return Arrays.copyOf(array, Math.max(capacity, array.length + (array.length >> 1)));
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (array.length >= capacity)
+            return array;
+        return Arrays.copyOf(array, Math.max(capacity, array.length + (array.length >> 1)));
+    }
+
+    @Override
+    public void setChanged() {
+        boundingBoxIsDirty = true;
+        observable.setChanged();
+    }
+
+    @Override
+    public boolean hasChanged() {
+        return observable.hasChanged();
+    }
+
+    @Override
+    public void notifyObservers() {
+        observable.notifyObservers();
+    }
+
+    @Override
+    public void notifyObservers(Object arg) {
+        observable.notifyObservers(arg);
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        observable.addObserver(observer);
+    }
+
+    @Override
+    public void deleteObserver(Observer observer) {
+        observable.deleteObserver(observer);
+    }
+
+    @Override
+    public void deleteObservers() {
+        observable.deleteObservers();
+    }
+
+}
@@ -1,106 +1,385 @@
 package org.janelia.geometry3d;
 
 import java.awt.Color;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.apache.commons.lang.ArrayUtils;
+import java.util.stream.IntStream;
 
 /**
+ * Reads triangle meshes from Wavefront OBJ files.
+ *
+ * Lines are tokenized byte by byte, straight into primitive arrays. Large files
+ * are split into line-aligned chunks, which are parsed in parallel and then
+ * joined. Vertex positions and faces are read; vertex normals and texture
+ * coordinates are ignored.
  *
  * @author brunsc
  */
 public class WavefrontObjLoader {
-    static public MeshGeometry load(InputStream objFile) throws IOException 
+    // Files are split into chunks of at least this size for parallel parsing
+    private static final int MIN_CHUNK_BYTES = 4 * 1024 * 1024;
+
+    // e.g. "# Compartment color: 0xFF7080"
+    private static final Pattern COLOR_PATTERN = Pattern.compile("^.*\\bcolor\\b.*\\b(0x[0-9A-F]{6})\\b.*", Pattern.CASE_INSENSITIVE);
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    static public MeshGeometry load(InputStream objFile) throws IOException
+    {
+        MeshGeometry result = loadPacked(objFile).toMeshGeometry();
+        // OBJ faces have no separate edges, so outline the triangles, as MeshGeometry.addFace() does
+        for (Triangle t : result.getTriangles()) {
+            for (int i = 0; i < 3; ++i)
+                result.addEdge(t.getVertexIndex(i), t.getVertexIndex((i + 1) % 3));
+        }
+        return result;
+    }
+
+    static public PackedMeshGeometry loadPacked(InputStream objFile) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = objFile.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        return parse(ByteBuffer.wrap(bytes.toByteArray()), MIN_CHUNK_BYTES);
+    }
+
+    /**
+     * Memory maps the file, rather than copying it onto the heap.
+     */
+    static public PackedMeshGeometry loadPacked(Path objFile) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(objFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("OBJ file too large to load: " + objFile);
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), MIN_CHUNK_BYTES);
+        }
+    }
+
+    static PackedMeshGeometry parse(ByteBuffer data, int minChunkBytes) throws IOException
+    {
+        int size = data.limit();
+        int chunkCount = Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors(),
+                size / minChunkBytes));
+        // Move each chunk boundary forward, to the start of the next line
+        int[] starts = new int[chunkCount + 1];
+        starts[chunkCount] = size;
+        for (int c = 1; c < chunkCount; ++c) {
+            int start = Math.max(starts[c - 1], (int) ((long) size * c / chunkCount));
+            while (start < size && data.get(start - 1) != '\n')
+                start++;
+            starts[c] = start;
+        }
+
+        Chunk[] chunks = new Chunk[chunkCount];
+        try {
+            IntStream range = IntStream.range(0, chunkCount);
+            if (chunkCount > 1)
+                range = range.parallel();
+            range.forEach(c -> {
+                chunks[c] = new Chunk(data, starts[c], starts[c + 1]);
+                try {
+                    chunks[c].parse();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return join(chunks);
+    }
+
+    private static PackedMeshGeometry join(Chunk[] chunks) throws IOException
     {
-        MeshGeometry result = new MeshGeometry();
-
-        Pattern commentPattern = Pattern.compile("^\\s*#.*");
-        
-        // e.g. "# Compartment color: 0xFF7080"
-        Pattern colorPattern = Pattern.compile("^.*\\bcolor\\b.*\\b(0x[0-9A-F]{6})\\b.*", Pattern.CASE_INSENSITIVE);
-        Pattern vertexPattern = Pattern.compile("^\\s*v\\s+(\\S+)\\s+(\\S+)\\s+(\\S+)(?:\\s+(\\S+))?.*");
-        Pattern normalPattern = Pattern.compile("^\\s*vn\\s+(\\S+)\\s+(\\S+)\\s+(\\S+).*");
-        Pattern facePattern = Pattern.compile("^\\s*f((?:\\s+[0-9/]+)+).*");
-        Pattern faceVertexPattern = Pattern.compile("\\s*([0-9]+)(?:/([0-9]*))?(?:/([0-9]*))?");
-        
-        List<Vector3> vertexNormals = new ArrayList<>();
-        
-        BufferedReader in = new BufferedReader(new InputStreamReader(objFile));
-        String line;
-        Matcher matcher;
-        while((line = in.readLine()) != null) {
-            
-            matcher = vertexPattern.matcher(line);
-            if (matcher.matches()) {  
-                float x = Float.parseFloat(matcher.group(1));
-                float y = Float.parseFloat(matcher.group(2));
-                float z = Float.parseFloat(matcher.group(3));
-                float w = 1.0f;
-                String ws = matcher.group(4);
-                if ( (ws != null) && (ws.length() > 0) ) {
-                    w = Float.parseFloat(ws);
+        int vertexCount = 0;
+        int indexCount = 0;
+        Color defaultColor = null;
+        for (Chunk chunk : chunks) {
+            vertexCount += chunk.vertexCount;
+            indexCount += chunk.indexCount;
+            if (chunk.defaultColor != null)
+                defaultColor = chunk.defaultColor; // the last color comment wins
+        }
+        float[] positions = new float[3 * vertexCount];
+        int[] indices = new int[indexCount];
+        int vertexOffset = 0;
+        int indexOffset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.positions, 0, positions, 3 * vertexOffset, 3 * chunk.vertexCount);
+            System.arraycopy(chunk.indices, 0, indices, indexOffset, chunk.indexCount);
+            // Negative indices count back from the vertices read so far
+            for (int r = 0; r < chunk.relativeCount; ++r)
+                indices[indexOffset + chunk.relativeIndices[r]] += vertexOffset;
+            vertexOffset += chunk.vertexCount;
+            indexOffset += chunk.indexCount;
+        }
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount)
+                throw new IOException("OBJ face refers to missing vertex " + (index + 1));
+        }
+        PackedMeshGeometry result = new PackedMeshGeometry(
+                positions, null, null, vertexCount,
+                indices, indexCount / 3, new int[0], 0);
+        result.setDefaultColor(defaultColor);
+        return result;
+    }
+
+    /**
+     * Vertices and triangles from a line-aligned range of the file.
+     */
+    private static class Chunk {
+        private final ByteBuffer data;
+        private final int end;
+        private int cursor;
+
+        private float[] positions = new float[3 * 1024];
+        private int vertexCount = 0;
+        private int[] indices = new int[3 * 1024];
+        private int indexCount = 0;
+        // Positions in indices of entries relative to this chunk's first vertex
+        private int[] relativeIndices = new int[16];
+        private int relativeCount = 0;
+        private int[] polygon = new int[16];
+        private Color defaultColor = null;
+
+        Chunk(ByteBuffer data, int start, int end) {
+            this.data = data;
+            this.cursor = start;
+            this.end = end;
+        }
+
+        void parse() throws IOException {
+            while (cursor < end) {
+                skipSpaces();
+                if (cursor >= end)
+                    break;
+                byte b = data.get(cursor);
+                if (b == 'v' && isSpace(cursor + 1)) {
+                    cursor++;
+                    parseVertex();
+                }
+                else if (b == 'f' && isSpace(cursor + 1)) {
+                    cursor++;
+                    parseFace();
+                }
+                else if (b == '#') {
+                    parseComment();
+                }
+                skipLine();
+            }
+        }
+
+        private void parseVertex() throws IOException {
+            float x = nextFloat();
+            float y = nextFloat();
+            float z = nextFloat();
+            skipSpaces();
+            if (cursor < end && isNumberStart(data.get(cursor))) {
+                float w = nextFloat();
+                x /= w;
+                y /= w;
+                z /= w;
+            }
+            if (positions.length < 3 * (vertexCount + 1))
+                positions = Arrays.copyOf(positions, 2 * positions.length);
+            int p = 3 * vertexCount;
+            positions[p] = x;
+            positions[p + 1] = y;
+            positions[p + 2] = z;
+            vertexCount++;
+        }
+
+        private void parseFace() throws IOException {
+            int polygonSize = 0;
+            while (true) {
+                skipSpaces();
+                if (cursor >= end || !isNumberStart(data.get(cursor)))
+                    break;
+                int index = nextInt();
+                if (index == 0)
+                    throw new IOException("Invalid OBJ vertex index 0 at byte " + cursor);
+                // skip texture coordinate and normal indices, e.g. "3/1/2"
+                while (cursor < end && !isSpace(cursor) && !isEndOfLine(data.get(cursor)))
+                    cursor++;
+                if (polygonSize == polygon.length)
+                    polygon = Arrays.copyOf(polygon, 2 * polygon.length);
+                polygon[polygonSize++] = index;
+            }
+            // Decompose face into a fan of triangles, like MeshGeometry.addFace()
+            for (int i = 2; i < polygonSize; ++i) {
+                addIndex(polygon[0]);
+                addIndex(polygon[i - 1]);
+                addIndex(polygon[i]);
+            }
+        }
+
+        private void addIndex(int objIndex) {
+            if (indices.length == indexCount)
+                indices = Arrays.copyOf(indices, 2 * indices.length);
+            if (objIndex > 0) {
+                indices[indexCount++] = objIndex - 1;
+                return;
+            }
+            // Relative to the latest vertex; fixed up once earlier chunks are counted
+            if (relativeIndices.length == relativeCount)
+                relativeIndices = Arrays.copyOf(relativeIndices, 2 * relativeIndices.length);
+            relativeIndices[relativeCount++] = indexCount;
+            indices[indexCount++] = vertexCount + objIndex;
+        }
+
+        private void parseComment() {
+            int lineEnd = cursor;
+            while (lineEnd < end && !isEndOfLine(data.get(lineEnd)))
+                lineEnd++;
+            byte[] bytes = new byte[lineEnd - cursor];
+            for (int i = 0; i < bytes.length; ++i)
+                bytes[i] = data.get(cursor + i);
+            Matcher colorMatcher = COLOR_PATTERN.matcher(new String(bytes, StandardCharsets.US_ASCII));
+            if (colorMatcher.matches()) {
+                defaultColor = Color.decode(colorMatcher.group(1));
+            }
+        }
+
+        private int nextInt() throws IOException {
+            skipSpaces();
+            boolean negative = false;
+            byte b = cursor < end ? data.get(cursor) : 0;
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                cursor++;
+            }
+            int start = cursor;
+            long value = 0;
+            while (cursor < end && isDigit(b = data.get(cursor))) {
+                value = 10 * value + (b - '0');
+                if (value > Integer.MAX_VALUE)
+                    throw new IOException("OBJ index out of range at byte " + start);
+                cursor++;
+            }
+            if (cursor == start)
+                throw new IOException("Expected an integer in OBJ file at byte " + start);
+            return (int) (negative ? -value : value);
+        }
+
+        private float nextFloat() throws IOException {
+            skipSpaces();
+            int start = cursor;
+            boolean negative = false;
+            byte b = cursor < end ? data.get(cursor) : 0;
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                cursor++;
+            }
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean hasDigits = false;
+            while (cursor < end && isDigit(b = data.get(cursor))) {
+                hasDigits = true;
+                if (significantDigits < 18) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    if (mantissa > 0)
+                        significantDigits++;
+                }
+                else {
+                    exponent++;
                 }
-                result.addVertex(x/w, y/w, z/w);
-                continue;
+                cursor++;
             }
-            
-            matcher = commentPattern.matcher(line);
-            if (matcher.matches()) {
-                String g1 = matcher.group(0);
-                Matcher colorMatcher = colorPattern.matcher(line);
-                if (colorMatcher.matches()) {
-                    String hexColor = colorMatcher.group(1);
-                    Color color = Color.decode(hexColor);
-                    if (color != null) {
-                        result.setDefaultColor(color);
+            if (cursor < end && data.get(cursor) == '.') {
+                cursor++;
+                while (cursor < end && isDigit(b = data.get(cursor))) {
+                    hasDigits = true;
+                    if (significantDigits < 18) {
+                        mantissa = 10 * mantissa + (b - '0');
+                        exponent--;
+                        if (mantissa > 0)
+                            significantDigits++;
                     }
+                    cursor++;
                 }
-                continue; // skip comment lines
             }
-            
-            matcher = normalPattern.matcher(line);
-            if (matcher.matches()) {  
-                float x = Float.parseFloat(matcher.group(1));
-                float y = Float.parseFloat(matcher.group(2));
-                float z = Float.parseFloat(matcher.group(3));
-                vertexNormals.add(new Vector3(x, y, z));
-                continue;
+            if (hasDigits && cursor < end && (data.get(cursor) == 'e' || data.get(cursor) == 'E')) {
+                cursor++;
+                exponent += nextInt();
             }
+            if (!hasDigits || (cursor < end && !isSpace(cursor) && !isEndOfLine(data.get(cursor)))) {
+                // Not plain decimal notation, e.g. "nan" or "inf"
+                return parseToken(start);
+            }
+            double value = mantissa;
+            if (exponent < 0 && exponent >= -22)
+                value /= POWERS_OF_TEN[-exponent];
+            else if (exponent > 0 && exponent <= 22)
+                value *= POWERS_OF_TEN[exponent];
+            else if (exponent != 0)
+                value *= Math.pow(10, exponent);
+            return (float) (negative ? -value : value);
+        }
 
-            matcher = facePattern.matcher(line);
-            if (matcher.matches()) {
-                String whole = matcher.group(0);
-                
-                List<Integer> faceVertices = new ArrayList<>();
-                
-                String vertices = matcher.group(1);
-                matcher = faceVertexPattern.matcher(vertices);
-                while (matcher.find()) {
-                    int vertexIx = Integer.parseInt(matcher.group(1)) - 1;
-                    faceVertices.add(vertexIx);
-                    String texCoord = matcher.group(2);
-                    String normal = matcher.group(3); // TODO:
-                }
-                assert(faceVertices.size() >= 3);
-                Integer[] f0 = new Integer[faceVertices.size()];
-                faceVertices.toArray(f0);
-                int[] face = ArrayUtils.toPrimitive(f0);
-                result.addFace(face);
-                continue;
+        private float parseToken(int start) throws IOException {
+            cursor = start;
+            while (cursor < end && !isSpace(cursor) && !isEndOfLine(data.get(cursor)))
+                cursor++;
+            byte[] bytes = new byte[cursor - start];
+            for (int i = 0; i < bytes.length; ++i)
+                bytes[i] = data.get(start + i);
+            String token = new String(bytes, StandardCharsets.US_ASCII);
+            try {
+                return Float.parseFloat(token);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid number \"" + token + "\" in OBJ file at byte " + start, ex);
             }
-            
         }
-        
-        // TODO: handle vertex normals
-        
-        
-        return result;
+
+        private void skipSpaces() {
+            while (cursor < end && isSpace(cursor))
+                cursor++;
+        }
+
+        private void skipLine() {
+            while (cursor < end && data.get(cursor) != '\n')
+                cursor++;
+            cursor++;
+        }
+
+        private boolean isSpace(int position) {
+            if (position >= end)
+                return false;
+            byte b = data.get(position);
+            return b == ' ' || b == '\t';
+        }
+
+        private static boolean isEndOfLine(byte b) {
+            return b == '\n' || b == '\r';
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static boolean isNumberStart(byte b) {
+            return isDigit(b) || b == '-' || b == '+' || b == '.';
+        }
     }
 }
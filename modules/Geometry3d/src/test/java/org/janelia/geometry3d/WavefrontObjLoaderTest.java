@@ -0,0 +1,127 @@
+package org.janelia.geometry3d;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WavefrontObjLoaderTest {
+
+    private static final String CUBE_CORNER =
+            "# Compartment color: 0xFF7080\n"
+            + "o corner\n"
+            + "v 0 0 0\n"
+            + "v 1.5 0 0\r\n"
+            + "v 0 -2.5e-1 0 2\n"
+            + "vn 0 0 1\n"
+            + "\tv  0 0 +1.0\n"
+            + "f 1 2 3\n"
+            + "f 1/1/1 3//1 4 2\n"
+            + "f -4 -3 -1\n";
+
+    @Test
+    public void testLoadPacked() throws Exception {
+        System.out.println("loadPacked");
+        PackedMeshGeometry mesh = WavefrontObjLoader.loadPacked(
+                new ByteArrayInputStream(CUBE_CORNER.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(4, mesh.getVertexCount());
+        assertEquals(4, mesh.getTriangleCount());
+        assertArrayEquals(new float[] {0, 0, 0, 1.5f, 0, 0, 0, -0.125f, 0, 0, 0, 1},
+                Arrays.copyOf(mesh.getPositions(), 12), 1e-7f);
+        assertArrayEquals(new int[] {0, 1, 2, 0, 2, 3, 0, 3, 1, 0, 1, 3},
+                Arrays.copyOf(mesh.getTriangleIndices(), 12));
+        assertEquals(new Color(0xFF7080), mesh.getDefaultColor());
+    }
+
+    /**
+     * Parsing in several chunks gives the same mesh as parsing in one.
+     */
+    @Test
+    public void testChunkedParse() throws Exception {
+        System.out.println("chunked parse");
+        StringBuilder obj = new StringBuilder();
+        int size = 50;
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                obj.append("v ").append(0.1 * x).append(' ').append(-0.01 * y).append(" 3.25\n");
+            }
+        }
+        for (int y = 0; y < size - 1; ++y) {
+            for (int x = 0; x < size - 1; ++x) {
+                int v = y * size + x + 1;
+                obj.append("f ").append(v).append(' ').append(v + 1).append(' ')
+                        .append(v + size + 1).append(' ').append(v + size).append('\n');
+            }
+        }
+        obj.append("f -1 -2 -3\n");
+        byte[] bytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+        PackedMeshGeometry whole = WavefrontObjLoader.parse(ByteBuffer.wrap(bytes), Integer.MAX_VALUE);
+        PackedMeshGeometry chunked = WavefrontObjLoader.parse(ByteBuffer.wrap(bytes), 1000);
+        assertEquals(size * size, chunked.getVertexCount());
+        assertEquals(2 * (size - 1) * (size - 1) + 1, chunked.getTriangleCount());
+        assertArrayEquals(whole.interleave(false, false), chunked.interleave(false, false), 0.0f);
+        assertArrayEquals(
+                Arrays.copyOf(whole.getTriangleIndices(), 3 * whole.getTriangleCount()),
+                Arrays.copyOf(chunked.getTriangleIndices(), 3 * chunked.getTriangleCount()));
+        assertEquals(0.1f * 7, chunked.getPositions()[3 * 7], 1e-6f);
+    }
+
+    @Test
+    public void testMeshCache() throws Exception {
+        System.out.println("mesh cache");
+        Path dir = Files.createTempDirectory("meshcache");
+        Path objFile = dir.resolve("corner.obj");
+        Files.write(objFile, CUBE_CORNER.getBytes(StandardCharsets.US_ASCII));
+        PackedMeshCache cache = new PackedMeshCache(dir.resolve("cache"));
+        assertNull(cache.get(objFile));
+
+        PackedMeshGeometry mesh = WavefrontObjLoader.loadPacked(objFile);
+        mesh.computeVertexNormals();
+        cache.put(objFile, mesh);
+        PackedMeshGeometry cached = cache.get(objFile);
+        assertNotNull(cached);
+        assertEquals(mesh.getTriangleCount(), cached.getTriangleCount());
+        assertArrayEquals(mesh.interleave(true, false), cached.interleave(true, false), 0.0f);
+        assertEquals(mesh.getDefaultColor(), cached.getDefaultColor());
+
+        // a changed source file makes the cached copy stale
+        Files.write(objFile, (CUBE_CORNER + "v 2 2 2\n").getBytes(StandardCharsets.US_ASCII));
+        assertNull(cache.get(objFile));
+    }
+
+    @Test
+    public void testMeshCacheTrimsLeastRecentlyUsed() throws Exception {
+        System.out.println("mesh cache trimming");
+        Path dir = Files.createTempDirectory("meshcache");
+        Path[] objFiles = new Path[3];
+        for (int i = 0; i < objFiles.length; ++i) {
+            objFiles[i] = dir.resolve("corner" + i + ".obj");
+            Files.write(objFiles[i], CUBE_CORNER.getBytes(StandardCharsets.US_ASCII));
+        }
+        PackedMeshGeometry mesh = WavefrontObjLoader.loadPacked(objFiles[0]);
+        PackedMeshCache sizing = new PackedMeshCache(dir.resolve("sizing"));
+        sizing.put(objFiles[0], mesh);
+        long entryBytes = Files.size(sizing.getEntryPath(objFiles[0]));
+
+        // room for two entries and most of a third
+        PackedMeshCache cache = new PackedMeshCache(dir.resolve("cache"), 3 * entryBytes - 1);
+        cache.put(objFiles[0], mesh);
+        cache.put(objFiles[1], mesh);
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(cache.getEntryPath(objFiles[0]), FileTime.fromMillis(now - 2000000));
+        Files.setLastModifiedTime(cache.getEntryPath(objFiles[1]), FileTime.fromMillis(now - 1000000));
+        assertNotNull(cache.get(objFiles[0])); // now the most recently used
+
+        cache.put(objFiles[2], mesh);
+        assertNotNull(cache.get(objFiles[0]));
+        assertNull(cache.get(objFiles[1]));
+        assertNotNull(cache.get(objFiles[2]));
+    }
+
+}
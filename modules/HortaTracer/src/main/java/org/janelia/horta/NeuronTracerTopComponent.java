@@ -30,7 +30,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -74,8 +73,8 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jogamp.opengl.util.awt.AWTGLReadBufferUtil;
 import org.apache.commons.lang.StringUtils;
 import org.janelia.geometry3d.Matrix4;
-import org.janelia.geometry3d.MeshGeometry;
 import org.janelia.geometry3d.ObservableInterface;
+import org.janelia.geometry3d.PackedMeshGeometry;
 import org.janelia.geometry3d.PerspectiveCamera;
 import org.janelia.geometry3d.Quaternion;
 import org.janelia.geometry3d.Rotation;
@@ -83,7 +82,6 @@ import org.janelia.geometry3d.Vantage;
 import org.janelia.geometry3d.Vector3;
 import org.janelia.geometry3d.Vector4;
 import org.janelia.geometry3d.Viewport;
-import org.janelia.geometry3d.WavefrontObjLoader;
 import org.janelia.gltools.GL3Actor;
 import org.janelia.gltools.MeshActor;
 import org.janelia.gltools.MultipassRenderer;
@@ -961,7 +959,7 @@ public final class NeuronTracerTopComponent extends TopComponent
             meshMap.remove(meshActor.getMeshName());
         }
         for (TmObjectMesh mesh : meshMap.values()) {
-            MeshGeometry meshGeometry;
+            PackedMeshGeometry meshGeometry;
             try {
                 // when users share workspaces, sometimes object meshes 
                 //  can't be loaded by everyone who sees the workspace;
@@ -970,7 +968,7 @@ public final class NeuronTracerTopComponent extends TopComponent
                     logger.info("unable to load mesh {} from path {}", mesh.getName(), mesh.getPathToObjFile());
                     continue;
                 }
-                meshGeometry = WavefrontObjLoader.load(Files.newInputStream(Paths.get(mesh.getPathToObjFile())));
+                meshGeometry = ObjMeshLoader.loadObjMesh(Paths.get(mesh.getPathToObjFile()));
                 TransparentEnvelope material = new TransparentEnvelope();
                 Color color = meshGeometry.getDefaultColor();
                 if (color != null) {
@@ -1074,6 +1072,7 @@ public final class NeuronTracerTopComponent extends TopComponent
 
         this.setLayout(new BorderLayout());
         sceneWindow = new SceneWindow(vantage, CameraType.PERSPECTIVE);
+        TetVolumeActor.getInstance().setHortaCamera((PerspectiveCamera) sceneWindow.getCamera());
 
         // associateLookup(Lookups.singleton(vantage)); // ONE item in lookup
         // associateLookup(Lookups.fixed(vantage, brightnessModel)); // TWO items in lookup
@@ -1506,6 +1505,22 @@ public final class NeuronTracerTopComponent extends TopComponent
                                     redrawNow();
                                 }
                             }));
+
+                    strategyMenu.add(new JRadioButtonMenuItem(
+                            new AbstractAction("Multi-resolution view") {
+                                {
+                                    putValue(Action.SELECTED_KEY,
+                                            volumeState.blockStrategy == 2);
+                                }
+
+                                @Override
+                                public void actionPerformed(ActionEvent e) {
+                                    volumeState.blockStrategy = 2;
+                                    TetVolumeActor.getInstance().changeStrategy(VolumeMipMaterial.VolumeState.BLOCK_STRATEGY_SCREEN_SPACE_ERROR);
+                                    getNeuronMPRenderer().setIntensityBufferDirty();
+                                    redrawNow();
+                                }
+                            }));
                 }
 
                 if (sceneWindow != null) {
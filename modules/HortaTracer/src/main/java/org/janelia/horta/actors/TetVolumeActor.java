@@ -75,6 +75,7 @@ public class TetVolumeActor extends BasicGL3Actor implements DepthSlabClipper {
     private final KtxTileCache dynamicTiles = new KtxTileCache(null);
     private BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> chooser;
     private final BlockDisplayUpdater<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> blockDisplayUpdater;
+    private PerspectiveCamera hortaCamera;
     private final Collection<GL3Resource> obsoleteActors = new ArrayList<>();
 
     // Singleton actor has private constructor
@@ -93,7 +94,7 @@ public class TetVolumeActor extends BasicGL3Actor implements DepthSlabClipper {
         colorMapTexture.setGenerateMipmaps(false);
         colorMapTexture.setMinFilter(GL3.GL_LINEAR);
         colorMapTexture.setMagFilter(GL3.GL_LINEAR);
-        chooser = new OctreeDisplayBlockChooser();
+        chooser = createChooser(volumeState.blockStrategy);
         blockDisplayUpdater = new BlockDisplayUpdater<>(chooser);
         initBlockStrategy(chooser);
         blockDisplayUpdater.getDisplayChangeObservable().addObserver(new Observer() {
@@ -107,16 +108,23 @@ public class TetVolumeActor extends BasicGL3Actor implements DepthSlabClipper {
     }
 
     public void changeStrategy(int strategy) {
-        if (strategy == VolumeState.BLOCK_STRATEGY_OCTTREE) {
-            chooser = new OctreeDisplayBlockChooser();
-        } else if (strategy == VolumeState.BLOCK_STRATEGY_FINEST_8_MAX){
-            chooser = new Finest8DisplayBlockChooser();
-        }
+        chooser = createChooser(strategy);
         LOG.info ("New strategy is {}",chooser);
         clearAllBlocks();
         initBlockStrategy(chooser);
     }
 
+    private BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> createChooser(int strategy) {
+        if (strategy == VolumeState.BLOCK_STRATEGY_OCTTREE) {
+            return new OctreeDisplayBlockChooser();
+        } else if (strategy == VolumeState.BLOCK_STRATEGY_FINEST_8_MAX) {
+            return new Finest8DisplayBlockChooser();
+        }
+        ScreenSpaceErrorBlockChooser screenSpaceErrorChooser = new ScreenSpaceErrorBlockChooser();
+        screenSpaceErrorChooser.setCamera(hortaCamera);
+        return screenSpaceErrorChooser;
+    }
+
     private void initBlockStrategy(BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> chooser) {
         dynamicTiles.setBlockStrategy(chooser);
         blockDisplayUpdater.setBlockChooser(chooser);
@@ -138,6 +146,16 @@ public class TetVolumeActor extends BasicGL3Actor implements DepthSlabClipper {
     public void setHortaVantage(Vantage vantage) {
         blockDisplayUpdater.setVantage(vantage);
     }
+
+    /**
+     * The camera tells the block chooser what is in view, and how large the voxels appear.
+     */
+    public void setHortaCamera(PerspectiveCamera camera) {
+        this.hortaCamera = camera;
+        if (chooser instanceof ScreenSpaceErrorBlockChooser) {
+            ((ScreenSpaceErrorBlockChooser) chooser).setCamera(camera);
+        }
+    }
     
     public void setKtxTileSource(KtxOctreeBlockTileSource source) {
         dynamicTiles.setSource(source);
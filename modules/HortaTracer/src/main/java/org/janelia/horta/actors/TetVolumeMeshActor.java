@@ -227,6 +227,21 @@ implements SortableBlockActor, SortableBlockActorSource
         return cachedResolution;
     }
 
+    /**
+     * @return bytes of texture data held for this block
+     */
+    public long getSizeInBytes() {
+        return ktxData.getSizeInBytes();
+    }
+
+    /**
+     * Returns the mipmap buffers for reuse. Call only after dispose(), since the
+     * texture cannot be uploaded again afterwards.
+     */
+    public void releaseMipmaps() {
+        ktxData.releaseMipmaps();
+    }
+
     private static class TetVolumeMeshGeometry extends MeshGeometry {
 
         TetVolumeMeshGeometry(KtxData ktxData)
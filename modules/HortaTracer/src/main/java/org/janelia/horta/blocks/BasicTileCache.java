@@ -132,9 +132,12 @@ public abstract class BasicTileCache<TILE_KEY, TILE_DATA> {
     }
 
     public Collection<TILE_DATA> popObsoleteTiles() {
-        Collection<TILE_DATA> result = new ArrayList<>(obsoleteTiles.values());
-        if (!result.isEmpty()) {
-            obsoleteTiles.clear();
+        Collection<TILE_DATA> result = new ArrayList<>();
+        // remove as we go, so tiles made obsolete meanwhile are kept for the next call
+        Iterator<TILE_DATA> it = obsoleteTiles.values().iterator();
+        while (it.hasNext()) {
+            result.add(it.next());
+            it.remove();
         }
         return result;
     }
@@ -207,10 +210,14 @@ public abstract class BasicTileCache<TILE_KEY, TILE_DATA> {
                 } finally {
                     loadingTiles.remove(key);
                     // figure out if there are tiles we need to remove after successful load of a tile
-                    Map<TILE_KEY, TILE_DATA> obsoleteTiles = blockStrategy.chooseObsoleteTiles(nearVolumeInRam, queuedTiles, (BlockTileKey)key);
-                    if (obsoleteTiles != null) {
-                        for (TILE_KEY key : obsoleteTiles.keySet()) {
-                            nearVolumeInRam.remove(key);
+                    Map<TILE_KEY, TILE_DATA> tilesToRemove = blockStrategy.chooseObsoleteTiles(nearVolumeInRam, queuedTiles, (BlockTileKey)key);
+                    if (tilesToRemove != null) {
+                        for (TILE_KEY key : tilesToRemove.keySet()) {
+                            TILE_DATA removed = nearVolumeInRam.remove(key);
+                            if (removed != null) {
+                                // disposed of later, in the GL thread
+                                obsoleteTiles.put(key, removed);
+                            }
                         }
                     }
                     progress.finish();
@@ -6,6 +6,7 @@ import java.util.Observer;
 import org.janelia.geometry3d.ComposableObservable;
 import org.janelia.geometry3d.ObservableInterface;
 import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.Rotation;
 import org.janelia.geometry3d.Vantage;
 import org.janelia.geometry3d.Vector3;
 import org.janelia.geometry3d.Viewport;
@@ -28,6 +29,7 @@ public class BlockDisplayUpdater<BTK extends BlockTileKey, BTS extends BlockTile
     private BTS blockTileSource;
     private ConstVector3 cachedFocus;
     private float cachedZoom;
+    private Rotation cachedRotation;
     private BlockChooser blockChooser;
     private List<BTK> cachedDesiredBlocks;
     private boolean doAutoUpdate = true;
@@ -72,12 +74,15 @@ public class BlockDisplayUpdater<BTK extends BlockTileKey, BTS extends BlockTile
         if (focus == null) {
             return;
         }
-        if (focus.equals(cachedFocus) && cachedZoom==vantage.getSceneUnitsPerViewportHeight()) {
+        // Rotation matters to choosers which only load what is in view
+        if (focus.equals(cachedFocus) && cachedZoom==vantage.getSceneUnitsPerViewportHeight()
+                && vantage.getRotationInGround().equals(cachedRotation)) {
             return; // short circuit when nothing has changed...
         }
         ConstVector3 previousFocus = cachedFocus;
         cachedFocus = new Vector3(focus);
         cachedZoom = vantage.getSceneUnitsPerViewportHeight();
+        cachedRotation = new Rotation(vantage.getRotationInGround());
         List<BTK> desiredBlocks = getBlockChooser().chooseBlocks(blockTileSource, focus, previousFocus,
                 vantage);
         if (desiredBlocks.equals(cachedDesiredBlocks)) {
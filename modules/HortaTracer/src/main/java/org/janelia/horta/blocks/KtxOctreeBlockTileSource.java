@@ -54,13 +54,21 @@ public class KtxOctreeBlockTileSource implements BlockTileSource<KtxOctreeBlockT
                                 sample.getLargeVolumeKTXFilepath(),
                                 StringUtils.appendIfMissing(sample.getLargeVolumeOctreeFilepath(), "/") + "ktx"),
                         "/");
+        KtxHeader header = loadKtxHeader(new KtxOctreeBlockTileKey(this, Collections.emptyList()));
+        Pair<ConstVector3, Vector3> volumeCorners = getVolumeCorners(sample, header);
+        return init(header, sample.getNumImageryLevels(), volumeCorners.getLeft(), volumeCorners.getRight());
+    }
+
+    /**
+     * Sets up the octree from the header of its root block, and the corners of the volume it covers.
+     */
+    KtxOctreeBlockTileSource init(KtxHeader rootHeader, long zoomLevels, ConstVector3 origin, Vector3 outerCorner) {
         this.rootKey = new KtxOctreeBlockTileKey(this, Collections.emptyList());
-        this.rootHeader = loadKtxHeader(rootKey);
-        this.setZoomLevels(sample.getNumImageryLevels());
+        this.rootHeader = rootHeader;
+        this.setZoomLevels(zoomLevels);
         this.maximumResolution = getKtxResolution(rootHeader);
-        Pair<ConstVector3, Vector3> volumeCorners = getVolumeCorners(sample, rootHeader);
-        this.origin = volumeCorners.getLeft();
-        this.outerCorner = volumeCorners.getRight();
+        this.origin = origin;
+        this.outerCorner = outerCorner;
         return this;
     }
 
@@ -94,7 +102,7 @@ public class KtxOctreeBlockTileSource implements BlockTileSource<KtxOctreeBlockT
     }
 
     private Pair<ConstVector3, Vector3> getVolumeCorners(TmSample sample, KtxHeader ktxHeader) {
-        String cornersString = rootHeader.keyValueMetadata.get("corner_xyzs").trim();
+        String cornersString = ktxHeader.keyValueMetadata.get("corner_xyzs").trim();
         /*
         Example of what the corners string looks like:
         [
@@ -173,6 +181,52 @@ public class KtxOctreeBlockTileSource implements BlockTileSource<KtxOctreeBlockT
         return rootBlockSize.multiplyScalar(1.0f / scale);
     }
 
+    /**
+     * @return size of the largest voxel dimension of the blocks at the given resolution, in scene units
+     */
+    float getVoxelSize(KtxOctreeResolution resolution) {
+        ConstVector3 blockSize = getBlockSize(resolution);
+        return Math.max(blockSize.getX() / rootHeader.pixelWidth,
+                Math.max(blockSize.getY() / rootHeader.pixelHeight, blockSize.getZ() / rootHeader.pixelDepth));
+    }
+
+    /**
+     * All blocks have the same number of voxels, whatever their resolution.
+     */
+    long getBlockVoxelCount() {
+        return (long) rootHeader.pixelWidth * rootHeader.pixelHeight * rootHeader.pixelDepth;
+    }
+
+    /**
+     * @return bytes per voxel of the base mipmap level of the blocks
+     */
+    int getBlockVoxelTypeSize() {
+        return rootHeader.glTypeSize;
+    }
+
+    KtxOctreeBlockTileKey getRootKey() {
+        return rootKey;
+    }
+
+    /**
+     * @return the eight blocks which subdivide the given block, or none if it is at the maximum resolution
+     */
+    List<KtxOctreeBlockTileKey> getChildKeys(KtxOctreeBlockTileKey key) {
+        int maxDepth = getMaximumResolution().getResolution();
+        if (maxDepth == 1 || key.getKeyDepth() >= maxDepth) {
+            // Same as in getBlockKeyAt, a single level octree only has the root block
+            return Collections.emptyList();
+        }
+        List<KtxOctreeBlockTileKey> childKeys = new ArrayList<>();
+        for (int octant = 1; octant <= 8; octant++) {
+            childKeys.add(new KtxOctreeBlockTileKey(this, ImmutableList.<Integer>builder()
+                    .addAll(key.getOctreePath())
+                    .add(octant)
+                    .build()));
+        }
+        return childKeys;
+    }
+
     @Override
     public KtxOctreeBlockTileKey getBlockKeyAt(ConstVector3 focusLocation, BlockTileResolution resolution) {
         BlockTileResolution ktxResolution;
@@ -233,7 +287,7 @@ public class KtxOctreeBlockTileSource implements BlockTileSource<KtxOctreeBlockT
                 .plus(blockOrigin);
     }
 
-    private ConstVector3 getBlockOrigin(KtxOctreeBlockTileKey octreeKey) {
+    ConstVector3 getBlockOrigin(KtxOctreeBlockTileKey octreeKey) {
         Vector3 blockOrigin = new Vector3(origin);
         Vector3 subBlockExtent = outerCorner.minus(origin);
         for (int p : octreeKey.getOctreePath()) {
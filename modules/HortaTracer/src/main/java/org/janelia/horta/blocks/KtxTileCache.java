@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Map;
 import javax.media.opengl.GL3;
 import org.janelia.horta.actors.SortableBlockActor;
+import org.janelia.horta.actors.TetVolumeMeshActor;
 
 /**
  *
@@ -38,6 +39,10 @@ public class KtxTileCache extends BasicTileCache<KtxOctreeBlockTileKey, Sortable
         Collection<SortableBlockActor> obs = popObsoleteTiles();
         for (SortableBlockActor actor : obs) {
             actor.dispose(gl);
+            if (actor instanceof TetVolumeMeshActor) {
+                // the texture is off the GPU, so its mipmap buffers can hold the next block
+                ((TetVolumeMeshActor) actor).releaseMipmaps();
+            }
         }
     }
 
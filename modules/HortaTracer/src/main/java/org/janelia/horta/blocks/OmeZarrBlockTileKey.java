@@ -206,6 +206,10 @@ public class OmeZarrBlockTileKey implements BlockTileKey {
         return voxelSize;
     }
 
+    public int[] getReadShape() {
+        return readShape;
+    }
+
     public int[] getReadOffset() {
         return readOffset;
     }
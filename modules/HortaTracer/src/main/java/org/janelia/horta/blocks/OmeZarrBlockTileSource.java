@@ -11,11 +11,15 @@ import org.janelia.horta.omezarr.JadeZarrStoreProvider;
 import org.janelia.horta.omezarr.OmeZarrJadeReader;
 import org.janelia.horta.omezarr.OmeZarrReaderProgressObserver;
 import org.janelia.horta.omezarr.OmeZarrReaderCompletionObserver;
+import org.janelia.horta.omezarr.ZarrBrickDecoder;
+import org.janelia.horta.omezarr.ZarrChunkCache;
 import org.janelia.jacsstorage.clients.api.JadeStorageAttributes;
 import org.janelia.model.domain.enums.FileType;
 import org.janelia.model.domain.tiledMicroscope.TmSample;
 import org.janelia.workstation.controller.model.color.ImageColorModel;
 import org.janelia.workstation.core.api.FileMgr;
+import org.janelia.workstation.core.api.LocalCacheMgr;
+import org.janelia.workstation.core.api.LocalPreferenceMgr;
 import org.janelia.workstation.geom.BoundingBox3d;
 import org.janelia.workstation.geom.Vec3;
 import org.slf4j.Logger;
@@ -23,6 +27,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
@@ -34,6 +40,8 @@ public class OmeZarrBlockTileSource implements BlockTileSource<OmeZarrBlockTileK
     private final URL originatingSampleURL;
     private String sampleOmeZarrTilesBaseDir;
     private OmeZarrJadeReader reader;
+    private ZarrChunkCache chunkCache;
+    private ZarrBrickDecoder brickDecoder;
     private OmeZarrGroup omeZarrGroup;
 
     private AutoContrastParameters autoContrastParameters = null;
@@ -69,7 +77,14 @@ public class OmeZarrBlockTileSource implements BlockTileSource<OmeZarrBlockTileK
 
         this.reader = null;
 
-        omeZarrGroup = OmeZarrGroup.open(Paths.get(localPath));
+        Path basePath = Paths.get(localPath);
+        this.chunkCache = new ZarrChunkCache(localPath, location -> {
+            Path path = basePath.resolve(location);
+            return Files.exists(path) ? Files.newInputStream(path) : null;
+        }, null);
+        this.brickDecoder = new ZarrBrickDecoder(chunkCache);
+
+        omeZarrGroup = OmeZarrGroup.open(basePath);
 
         return init(progressObserver, completionObserver);
     }
@@ -83,7 +98,10 @@ public class OmeZarrBlockTileSource implements BlockTileSource<OmeZarrBlockTileK
 
         JadeStorageAttributes storageAttributes = new JadeStorageAttributes()
                 .setFromMap(sample.getStorageAttributes());
-        this.reader = new OmeZarrJadeReader(FileMgr.getFileMgr().getStorageService(), this.sampleOmeZarrTilesBaseDir, storageAttributes);
+        this.reader = new OmeZarrJadeReader(FileMgr.getFileMgr().getStorageService(), this.sampleOmeZarrTilesBaseDir, storageAttributes,
+                LocalPreferenceMgr.getInstance().isCacheAvailable() ? LocalCacheMgr.getInstance().getLocalFileCacheStorage() : null);
+        this.chunkCache = reader.getChunkCache();
+        this.brickDecoder = new ZarrBrickDecoder(chunkCache);
 
         omeZarrGroup = OmeZarrGroup.open(new JadeZarrStoreProvider("", reader));
 
@@ -245,7 +263,25 @@ public class OmeZarrBlockTileSource implements BlockTileSource<OmeZarrBlockTileK
     }
 
     public Texture3d loadBrick(OmeZarrBlockTileKey tile) {
-        return tile.loadBrick(useAutoContrast ? autoContrastParameters : null);
+        AutoContrastParameters parameters = useAutoContrast ? autoContrastParameters : null;
+        // Contrast adjustment is only done while building raster slices
+        if (brickDecoder != null && parameters == null) {
+            try {
+                Texture3d texture = brickDecoder.decode(tile.getDataset().getPath(), tile.getReadShape(), tile.getReadOffset());
+                if (texture != null) {
+                    return texture;
+                }
+            } catch (Exception e) {
+                log.warn("Could not decode brick {} directly, reading raster slices instead", tile.getRelativePath(), e);
+            }
+        }
+        if (reader == null) {
+            return tile.loadBrick(parameters);
+        }
+        // The zarr reader asks for the chunks one by one, so they are all requested up front
+        try (ZarrChunkCache.Prefetch ignored = chunkCache.prefetch(tile.getDataset().getPath(), tile.getReadShape(), tile.getReadOffset())) {
+            return tile.loadBrick(parameters);
+        }
     }
 /*
     private void createTileKeysForDataset(OmeZarrDataset dataset, OmeZarrReaderProgressObserver progressReceiver) {
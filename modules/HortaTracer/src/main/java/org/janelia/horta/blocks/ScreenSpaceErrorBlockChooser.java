@@ -0,0 +1,275 @@
+package org.janelia.horta.blocks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.PerspectiveCamera;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.horta.actors.TetVolumeMeshActor;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the blocks to display by walking the octree from the root, and subdividing the blocks inside the
+ * view frustum whose voxels appear larger than a pixel threshold on screen. The blocks with the largest
+ * on screen voxels are subdivided first, until the error is small enough everywhere or the memory budget
+ * is used up, so wide or oblique views get coarser blocks instead of holes.
+ *
+ * While the chosen blocks are streaming in, the blocks already in memory which cover the same space are
+ * kept on display. Where nothing covers a chosen block yet, a coarser ancestor is loaded ahead of it.
+ */
+public class ScreenSpaceErrorBlockChooser implements BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScreenSpaceErrorBlockChooser.class);
+
+    private static final long MB = 1024 * 1024;
+
+    // Largest size of a voxel on screen, in pixels, before finer blocks are wanted
+    private static final float MAX_SCREEN_SPACE_ERROR = ConsoleProperties.getFloat("console.horta.maxScreenSpaceError", 1.0f);
+    // Memory budget for the chosen blocks
+    private static final long MAX_BLOCK_BYTES = ConsoleProperties.getLong("console.horta.blockMemoryMegabytes", 1024) * MB;
+    // How many levels above a chosen block its stand-in is, when nothing covers it yet
+    private static final int FALLBACK_LEVELS = 2;
+
+    private final float maxScreenSpaceError;
+    private final long maxBlockBytes;
+    private volatile PerspectiveCamera camera;
+    private volatile long measuredBlockBytes = 0;
+    private volatile Set<KtxOctreeBlockTileKey> lastChosen;
+    private volatile Set<BlockTileKey> residentTiles = Collections.emptySet();
+
+    public ScreenSpaceErrorBlockChooser() {
+        this(MAX_SCREEN_SPACE_ERROR, MAX_BLOCK_BYTES);
+    }
+
+    ScreenSpaceErrorBlockChooser(float maxScreenSpaceError, long maxBlockBytes) {
+        this.maxScreenSpaceError = maxScreenSpaceError;
+        this.maxBlockBytes = maxBlockBytes;
+    }
+
+    /**
+     * @param camera supplies the field of view and the viewport size. Without one, a default view is assumed.
+     */
+    public void setCamera(PerspectiveCamera camera) {
+        this.camera = camera;
+    }
+
+    @Override
+    public List<KtxOctreeBlockTileKey> chooseBlocks(KtxOctreeBlockTileSource source, ConstVector3 focus, ConstVector3 previousFocus,
+                                                    Vantage vantage) {
+        ViewFrustum frustum = ViewFrustum.of(vantage, camera);
+        long maxBlocks = Math.max(1, maxBlockBytes / getBlockBytes(source));
+
+        // Blocks are subdivided in order of decreasing error, so the budget goes where it is needed most
+        PriorityQueue<Candidate> refinable = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.error).reversed());
+        Set<KtxOctreeBlockTileKey> chosen = new HashSet<>();
+        Candidate root = Candidate.of(source, source.getRootKey(), frustum);
+        if (root == null) {
+            return setChoice(new ArrayList<>(), new ArrayList<>());
+        }
+        chosen.add(root.key);
+        refinable.add(root);
+        while (!refinable.isEmpty()) {
+            Candidate candidate = refinable.poll();
+            if (candidate.error <= maxScreenSpaceError) {
+                break; // no other block needs to be finer either
+            }
+            List<Candidate> children = new ArrayList<>();
+            for (KtxOctreeBlockTileKey childKey : source.getChildKeys(candidate.key)) {
+                Candidate child = Candidate.of(source, childKey, frustum);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+            if (children.isEmpty()) {
+                continue; // at the maximum resolution, or only grazing the frustum
+            }
+            if (chosen.size() - 1 + children.size() > maxBlocks) {
+                continue; // a smaller block may still fit
+            }
+            chosen.remove(candidate.key);
+            for (Candidate child : children) {
+                chosen.add(child.key);
+                refinable.add(child);
+            }
+        }
+
+        // Stand in for chosen blocks which have nothing covering them yet
+        Set<BlockTileKey> resident = residentTiles;
+        Set<List<Integer>> residentAncestorPaths = new HashSet<>();
+        for (BlockTileKey residentKey : resident) {
+            List<Integer> path = ((KtxOctreeBlockTileKey) residentKey).getOctreePath();
+            for (int depth = 0; depth < path.size(); depth++) {
+                residentAncestorPaths.add(path.subList(0, depth));
+            }
+        }
+        Set<KtxOctreeBlockTileKey> fallbacks = new HashSet<>();
+        for (KtxOctreeBlockTileKey key : chosen) {
+            if (resident.contains(key)
+                    || residentAncestorPaths.contains(key.getOctreePath())
+                    || hasAncestorIn(source, key, resident)) {
+                continue;
+            }
+            int fallbackDepth = Math.max(0, key.getKeyDepth() - FALLBACK_LEVELS);
+            if (fallbackDepth < key.getKeyDepth()) {
+                fallbacks.add(new KtxOctreeBlockTileKey(source, key.getOctreePath().subList(0, fallbackDepth)));
+            }
+        }
+        // A stand-in inside another one would not show anything more until the chosen blocks arrive
+        fallbacks.removeIf(key -> hasAncestorIn(source, key, fallbacks));
+
+        // Coarse stand-ins go first, since each one fills the space of many chosen blocks
+        BlockComparator comparator = new BlockComparator(focus);
+        List<KtxOctreeBlockTileKey> sortedFallbacks = new ArrayList<>(fallbacks);
+        sortedFallbacks.sort(comparator);
+        List<KtxOctreeBlockTileKey> sortedChosen = new ArrayList<>(chosen);
+        sortedChosen.sort(comparator);
+        LOG.debug("Chose {} blocks of at most {}, with {} coarser blocks to show until they are loaded",
+                sortedChosen.size(), maxBlocks, sortedFallbacks.size());
+        return setChoice(sortedFallbacks, sortedChosen);
+    }
+
+    private List<KtxOctreeBlockTileKey> setChoice(List<KtxOctreeBlockTileKey> fallbacks, List<KtxOctreeBlockTileKey> chosen) {
+        lastChosen = new HashSet<>(chosen);
+        List<KtxOctreeBlockTileKey> result = new ArrayList<>(fallbacks.size() + chosen.size());
+        result.addAll(fallbacks);
+        result.addAll(chosen);
+        return result;
+    }
+
+    private boolean hasAncestorIn(KtxOctreeBlockTileSource source, KtxOctreeBlockTileKey key, Set<? extends BlockTileKey> keys) {
+        List<Integer> path = key.getOctreePath();
+        for (int depth = path.size() - 1; depth >= 0; depth--) {
+            if (keys.contains(new KtxOctreeBlockTileKey(source, path.subList(0, depth)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A block stays in memory while it is chosen, or while it covers space of a chosen block which
+     * is not loaded yet, either as a coarser block when zooming in or as a finer block when zooming out.
+     */
+    @Override
+    public Map<BlockTileKey, BlockTileData> chooseObsoleteTiles(Map<BlockTileKey, BlockTileData> currentTiles, Map<BlockTileKey, BlockTileData> desiredTiles,
+                                                                BlockTileKey finishedTile) {
+        Object finishedData = currentTiles.get(finishedTile);
+        if (finishedData instanceof TetVolumeMeshActor) {
+            long blockBytes = ((TetVolumeMeshActor) finishedData).getSizeInBytes();
+            if (blockBytes > 0) {
+                measuredBlockBytes = blockBytes;
+            }
+        }
+
+        Map<BlockTileKey, BlockTileData> obsoleteTiles = new HashMap<>();
+        Set<KtxOctreeBlockTileKey> chosen = lastChosen;
+        if (chosen == null) {
+            residentTiles = new HashSet<>(currentTiles.keySet());
+            return obsoleteTiles;
+        }
+
+        // Paths of the chosen blocks which are not loaded yet, and of all their ancestors
+        Set<List<Integer>> missingPaths = new HashSet<>();
+        Set<List<Integer>> missingAncestorPaths = new HashSet<>();
+        for (KtxOctreeBlockTileKey key : chosen) {
+            if (currentTiles.containsKey(key)) {
+                continue;
+            }
+            List<Integer> path = key.getOctreePath();
+            missingPaths.add(path);
+            for (int depth = 0; depth < path.size(); depth++) {
+                missingAncestorPaths.add(path.subList(0, depth));
+            }
+        }
+
+        Set<BlockTileKey> resident = new HashSet<>();
+        for (BlockTileKey tileKey : currentTiles.keySet()) {
+            KtxOctreeBlockTileKey key = (KtxOctreeBlockTileKey) tileKey;
+            if (chosen.contains(key)
+                    || missingAncestorPaths.contains(key.getOctreePath())
+                    || hasMissingAncestor(key, missingPaths)) {
+                resident.add(key);
+            }
+            else {
+                obsoleteTiles.put(key, currentTiles.get(key));
+            }
+        }
+        residentTiles = resident;
+        return obsoleteTiles;
+    }
+
+    private boolean hasMissingAncestor(KtxOctreeBlockTileKey key, Set<List<Integer>> missingPaths) {
+        List<Integer> path = key.getOctreePath();
+        for (int depth = 0; depth < path.size(); depth++) {
+            if (missingPaths.contains(path.subList(0, depth))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getBlockBytes(KtxOctreeBlockTileSource source) {
+        long blockBytes = measuredBlockBytes;
+        if (blockBytes > 0) {
+            return blockBytes;
+        }
+        // Until a block has been loaded, assume a single channel, with a full chain of mipmaps
+        return Math.max(1, source.getBlockVoxelCount() * source.getBlockVoxelTypeSize() * 8 / 7);
+    }
+
+    /**
+     * A block inside the view frustum, with the size of its voxels on screen.
+     */
+    private static class Candidate {
+
+        private final KtxOctreeBlockTileKey key;
+        private final float error;
+
+        /**
+         * @return the candidate for the block, or null if it is outside the view frustum
+         */
+        static Candidate of(KtxOctreeBlockTileSource source, KtxOctreeBlockTileKey key, ViewFrustum frustum) {
+            KtxOctreeResolution resolution = new KtxOctreeResolution(key.getKeyDepth());
+            ConstVector3 boxMin = source.getBlockOrigin(key);
+            ConstVector3 boxMax = new Vector3(source.getBlockSize(resolution)).plus(boxMin);
+            if (!frustum.intersects(boxMin, boxMax)) {
+                return null;
+            }
+            float depth = frustum.getNearestDepth(boxMin, boxMax);
+            return new Candidate(key, frustum.getSizeInPixels(source.getVoxelSize(resolution), depth));
+        }
+
+        private Candidate(KtxOctreeBlockTileKey key, float error) {
+            this.key = key;
+            this.error = error;
+        }
+    }
+
+    // Sort blocks by distance from focus to block centroid
+    private static class BlockComparator implements Comparator<KtxOctreeBlockTileKey> {
+
+        private final ConstVector3 focus;
+
+        BlockComparator(ConstVector3 focus) {
+            this.focus = focus;
+        }
+
+        @Override
+        public int compare(KtxOctreeBlockTileKey block1, KtxOctreeBlockTileKey block2) {
+            ConstVector3 c1 = block1.getCentroid().minus(focus);
+            ConstVector3 c2 = block2.getCentroid().minus(focus);
+            return Float.compare(c1.dot(c1), c2.dot(c2));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.janelia.horta.blocks;
+
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.PerspectiveCamera;
+import org.janelia.geometry3d.Rotation;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.geometry3d.camera.ConstViewSlab;
+
+/**
+ * Snapshot of the volume of space seen by a perspective camera, for deciding which blocks are on screen
+ * and how large their voxels appear.
+ *
+ * Like PerspectiveCamera, the world scale hack of the vantage is applied around the focus before the
+ * rotation, so scene locations are scaled into view space first, where the frustum is a regular one.
+ */
+class ViewFrustum {
+
+    // Used when there is no camera, matching the PerspectiveCamera and Viewport defaults
+    private static final float DEFAULT_FOV_Y_RADIANS = 0.3f;
+    private static final float DEFAULT_Z_NEAR_RELATIVE = 0.5f;
+    private static final float DEFAULT_Z_FAR_RELATIVE = 10.0f;
+    private static final int DEFAULT_VIEWPORT_HEIGHT_PIXELS = 1000;
+
+    private final Vector3 focus;
+    private final Vector3 worldScale;
+    private final float maxWorldScale;
+    private final Vector3 eye;
+    private final Vector3 right;
+    private final Vector3 up;
+    private final Vector3 back;
+    private final float focusDistance;
+    private final float tanHalfFovY;
+    private final float tanHalfFovX;
+    private final float zNear;
+    private final float zFar;
+    private final int viewportHeightPixels;
+
+    /**
+     * @param camera supplies the field of view, viewport and view slab, or null to use the defaults
+     */
+    static ViewFrustum of(Vantage vantage, PerspectiveCamera camera) {
+        if (camera == null) {
+            return new ViewFrustum(vantage, DEFAULT_FOV_Y_RADIANS, 1.0f,
+                    DEFAULT_Z_NEAR_RELATIVE, DEFAULT_Z_FAR_RELATIVE, DEFAULT_VIEWPORT_HEIGHT_PIXELS);
+        }
+        ConstViewSlab slab = camera.getNominalViewSlab();
+        int heightPixels = camera.getViewport().getHeightPixels();
+        return new ViewFrustum(vantage, camera.getFovRadians(), camera.getViewport().getAspect(),
+                slab.getzNearRelative(), slab.getzFarRelative(),
+                heightPixels > 0 ? heightPixels : DEFAULT_VIEWPORT_HEIGHT_PIXELS);
+    }
+
+    ViewFrustum(Vantage vantage, float fovYRadians, float aspect, float zNearRelative, float zFarRelative, int viewportHeightPixels) {
+        Rotation rotation = vantage.getRotationInGround();
+        this.right = rotation.multiply(new Vector3(1, 0, 0));
+        this.up = rotation.multiply(new Vector3(0, 1, 0));
+        this.back = rotation.multiply(new Vector3(0, 0, 1));
+        this.tanHalfFovY = (float) Math.tan(0.5 * fovYRadians);
+        this.tanHalfFovX = tanHalfFovY * aspect;
+        this.focusDistance = 0.5f * vantage.getSceneUnitsPerViewportHeight() / tanHalfFovY;
+        this.focus = new Vector3(vantage.getFocusPosition());
+        this.worldScale = new Vector3(vantage.getWorldScaleHack());
+        this.maxWorldScale = Math.max(Math.abs(worldScale.getX()), Math.max(Math.abs(worldScale.getY()), Math.abs(worldScale.getZ())));
+        this.eye = new Vector3(back).multiplyScalar(focusDistance).plus(focus);
+        this.zNear = zNearRelative * focusDistance;
+        this.zFar = zFarRelative * focusDistance;
+        this.viewportHeightPixels = viewportHeightPixels;
+    }
+
+    /**
+     * Conservative test, which may accept boxes near the corners of the frustum that are just outside of it.
+     *
+     * @return true unless the box is entirely outside one of the six planes of the frustum
+     */
+    boolean intersects(ConstVector3 boxMin, ConstVector3 boxMax) {
+        Vector3 viewMin = toViewSpace(boxMin, boxMax, true);
+        Vector3 viewMax = toViewSpace(boxMin, boxMax, false);
+        boolean allNear = true, allFar = true, allLeft = true, allRight = true, allBelow = true, allAbove = true;
+        for (int c = 0; c < 8; c++) {
+            Vector3 v = new Vector3(
+                    (c & 1) == 0 ? viewMin.getX() : viewMax.getX(),
+                    (c & 2) == 0 ? viewMin.getY() : viewMax.getY(),
+                    (c & 4) == 0 ? viewMin.getZ() : viewMax.getZ())
+                    .minus(eye);
+            float x = v.dot(right);
+            float y = v.dot(up);
+            float depth = -v.dot(back);
+            allNear &= depth < zNear;
+            allFar &= depth > zFar;
+            allLeft &= x < -depth * tanHalfFovX;
+            allRight &= x > depth * tanHalfFovX;
+            allBelow &= y < -depth * tanHalfFovY;
+            allAbove &= y > depth * tanHalfFovY;
+        }
+        return !(allNear || allFar || allLeft || allRight || allBelow || allAbove);
+    }
+
+    /**
+     * @return smallest view depth of any point of the box, but no less than the near clipping plane
+     */
+    float getNearestDepth(ConstVector3 boxMin, ConstVector3 boxMax) {
+        Vector3 viewMin = toViewSpace(boxMin, boxMax, true);
+        Vector3 viewMax = toViewSpace(boxMin, boxMax, false);
+        // The view axis is the only thing that matters for depth, so the closest corner along it is the nearest
+        float depth = 0;
+        for (int i = 0; i < 3; i++) {
+            float b = back.get(i);
+            depth += (b > 0 ? viewMax.get(i) : viewMin.get(i)) * -b;
+        }
+        depth += eye.dot(back);
+        return Math.max(zNear, depth);
+    }
+
+    /**
+     * @param sceneSize size of something in the scene, along its largest dimension
+     * @param depth view depth of the thing
+     * @return the size of the thing on screen, in pixels, at most
+     */
+    float getSizeInPixels(float sceneSize, float depth) {
+        float pixelSize = 2.0f * depth * tanHalfFovY / viewportHeightPixels;
+        return sceneSize * maxWorldScale / pixelSize;
+    }
+
+    /**
+     * @param sx horizontal screen position, from -1 at the left edge to +1 at the right edge
+     * @param sy vertical screen position, from -1 at the bottom edge to +1 at the top edge
+     * @return the scene location shown at that screen position, in the plane of the focus
+     */
+    Vector3 getFocalPlanePoint(float sx, float sy) {
+        Vector3 viewPoint = new Vector3(right).multiplyScalar(sx * focusDistance * tanHalfFovX)
+                .plus(new Vector3(up).multiplyScalar(sy * focusDistance * tanHalfFovY))
+                .plus(new Vector3(back).multiplyScalar(-focusDistance))
+                .plus(eye);
+        Vector3 point = new Vector3(focus);
+        for (int i = 0; i < 3; i++) {
+            point.set(i, focus.get(i) + (viewPoint.get(i) - focus.get(i)) / worldScale.get(i));
+        }
+        return point;
+    }
+
+    /**
+     * @return the low or high corner of the box, once it is scaled around the focus by the world scale hack
+     */
+    private Vector3 toViewSpace(ConstVector3 boxMin, ConstVector3 boxMax, boolean low) {
+        Vector3 corner = new Vector3(focus);
+        for (int i = 0; i < 3; i++) {
+            float a = focus.get(i) + (boxMin.get(i) - focus.get(i)) * worldScale.get(i);
+            float b = focus.get(i) + (boxMax.get(i) - focus.get(i)) * worldScale.get(i);
+            corner.set(i, low ? Math.min(a, b) : Math.max(a, b));
+        }
+        return corner;
+    }
+}
@@ -1,11 +1,16 @@
 package org.janelia.horta.ktx;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.janelia.gltools.texture.DirectBufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,7 +25,7 @@ public class KtxData {
     public final KtxHeader header = new KtxHeader();
     public final List<ByteBuffer> mipmaps = new ArrayList<>();
 
-    private final byte[] unused = new byte[4]; // for bulk reading of unused padding bytes
+    private final ByteBuffer unused = ByteBuffer.allocate(4); // for bulk reading of unused padding bytes
     private final ByteBuffer sizeBuf = ByteBuffer.allocate(4); // to hold binary representation of image size
 
     public void loadStream(InputStream stream) throws IOException, InterruptedException {
@@ -32,53 +37,73 @@ public class KtxData {
             }
             sizeBuf.order(header.byteOrder);
             mipmaps.clear();
+            // For file streams this is the file channel itself, which reads straight into the direct buffers
+            ReadableByteChannel channel = Channels.newChannel(stream);
             for (int m = 0; m < header.numberOfMipmapLevels; ++m) {
-                mipmaps.add(loadOneMipmap(stream, m));
+                mipmaps.add(loadOneMipmap(channel, m));
             }
         }
     }
 
-    private ByteBuffer loadOneMipmap(InputStream stream, int mipmapLevel) throws IOException, InterruptedException {
+    /**
+     * @return bytes held by all the mipmap levels, or 0 once they have been released
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (ByteBuffer mipmap : mipmaps) {
+            size += mipmap.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the mipmap buffers to the shared pool, once they are no longer needed
+     * (e.g. after the texture has been deleted from the GPU).
+     */
+    public void releaseMipmaps() {
+        DirectBufferPool pool = DirectBufferPool.getSharedPool();
+        for (ByteBuffer mipmap : mipmaps) {
+            pool.release(mipmap);
+        }
+        mipmaps.clear();
+    }
+
+    private ByteBuffer loadOneMipmap(ReadableByteChannel channel, int mipmapLevel) throws IOException, InterruptedException {
         int imageSize;
-        int bytesRead;
-        byte[] b;
         try {
-            stream.read(sizeBuf.array());
-            sizeBuf.rewind();
+            sizeBuf.clear();
+            readFully(channel, sizeBuf);
+            sizeBuf.flip();
             imageSize = (int) ((long) sizeBuf.getInt() & 0xffffffffL);
-            // TODO: figure out how to stream straight into the direct buffer
-            // For now, copy into the direct buffer
-            b = new byte[imageSize];
-            bytesRead = stream.read(b, 0, imageSize);
         } catch (Exception e) {
             // this exception most likely occurred because of an interruption
             throw new InterruptedException("Interrupted the loading of mipmap level " + (mipmapLevel + 1));
         }
-        if (bytesRead < 1) {
-            throw new IOException("Error reading bytes for mipmap level " + (mipmapLevel + 1));
-        }
-        while (bytesRead < imageSize) {
-            int moreBytes = stream.read(b, bytesRead, imageSize - bytesRead);
-            if (moreBytes < 1) {
-                throw new IOException("Error reading mipmap number " + mipmapLevel);
-            }
-            bytesRead += moreBytes;
-        }
-        if (bytesRead != imageSize) {
-            throw new IOException("Error reading mipmap number " + mipmapLevel);
-        }
         // Use a DIRECT buffer for later efficient slurping into OpenGL
-        final boolean useDirect = true;
-        ByteBuffer mipmap;
-        if (useDirect) {
-            mipmap = ByteBuffer.allocateDirect(imageSize);
-            mipmap.put(b);
-        } else {
-            mipmap = ByteBuffer.wrap(b);
+        ByteBuffer mipmap = DirectBufferPool.getSharedPool().acquire(imageSize);
+        try {
+            readFully(channel, mipmap);
+            // Each level is padded to a multiple of four bytes
+            unused.clear();
+            unused.limit(3 - ((imageSize + 3) % 4));
+            readFully(channel, unused);
+        } catch (ClosedByInterruptException e) {
+            DirectBufferPool.getSharedPool().release(mipmap);
+            throw new InterruptedException("Interrupted the loading of mipmap level " + (mipmapLevel + 1));
+        } catch (IOException e) {
+            DirectBufferPool.getSharedPool().release(mipmap);
+            throw new IOException("Error reading mipmap number " + mipmapLevel, e);
         }
-        int padding = 3 - ((imageSize + 3) % 4);
-        stream.read(unused, 0, padding);
+        mipmap.rewind();
         return mipmap;
     }
 
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of KTX stream");
+            }
+        }
+    }
+
 }
@@ -2,10 +2,13 @@ package org.janelia.horta.loader;
 
 import java.awt.Color;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import javax.swing.SwingUtilities;
 import org.apache.commons.io.FilenameUtils;
-import org.janelia.geometry3d.MeshGeometry;
+import org.janelia.geometry3d.PackedMeshCache;
+import org.janelia.geometry3d.PackedMeshGeometry;
 import org.janelia.geometry3d.WavefrontObjLoader;
 import org.janelia.gltools.GL3Actor;
 import org.janelia.gltools.MeshActor;
@@ -17,8 +20,11 @@ import org.janelia.model.domain.tiledMicroscope.TmObjectMesh;
 import org.janelia.workstation.controller.ViewerEventBus;
 import org.janelia.workstation.controller.eventbus.MeshCreateEvent;
 import org.janelia.workstation.controller.model.TmModelManager;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.openide.util.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -26,6 +32,10 @@ import org.openide.util.Exceptions;
  */
 public class ObjMeshLoader implements FileTypeLoader
 {
+    private static final Logger log = LoggerFactory.getLogger(ObjMeshLoader.class);
+
+    private static PackedMeshCache meshCache;
+
     private final NeuronTracerTopComponent horta;
 
     public ObjMeshLoader(NeuronTracerTopComponent horta) {
@@ -41,6 +51,36 @@ public class ObjMeshLoader implements FileTypeLoader
         return false;
     }
 
+    /**
+     * Loads an OBJ file, from its binary copy in the local mesh cache when that is up to date.
+     */
+    public static PackedMeshGeometry loadObjMesh(Path objFile) throws IOException {
+        PackedMeshCache cache = getMeshCache();
+        try {
+            PackedMeshGeometry cached = cache.get(objFile);
+            if (cached != null) {
+                log.debug("Loaded mesh {} from cache", objFile);
+                return cached;
+            }
+        } catch (IOException ex) {
+            log.warn("Could not read cached copy of mesh {}", objFile, ex);
+        }
+        PackedMeshGeometry meshGeometry = WavefrontObjLoader.loadPacked(objFile);
+        try {
+            cache.put(objFile, meshGeometry);
+        } catch (IOException ex) {
+            log.warn("Could not cache mesh {}", objFile, ex);
+        }
+        return meshGeometry;
+    }
+
+    private static synchronized PackedMeshCache getMeshCache() {
+        if (meshCache == null)
+            meshCache = new PackedMeshCache(Paths.get(ConsoleProperties.getMeshCacheDir()),
+                    ConsoleProperties.getLong("console.meshCache.megabyteCapacity", 2048) * 1024 * 1024);
+        return meshCache;
+    }
+
     public void saveObjectMesh (String meshName, String filename) {
         TmObjectMesh newObjMesh = new TmObjectMesh(meshName, filename);
         try {
@@ -64,9 +104,12 @@ public class ObjMeshLoader implements FileTypeLoader
         Runnable meshLoadTask = new Runnable() {
             @Override
             public void run() {
-                MeshGeometry meshGeometry;
+                PackedMeshGeometry meshGeometry;
                 try {
-                    meshGeometry = WavefrontObjLoader.load(source.openInputStream());
+                    if (source instanceof FileDataSource)
+                        meshGeometry = loadObjMesh(((FileDataSource)source).getFile().toPath());
+                    else
+                        meshGeometry = WavefrontObjLoader.loadPacked(source.openInputStream());
                     TransparentEnvelope material = new TransparentEnvelope();
                     Color color = meshGeometry.getDefaultColor();
                     if (color != null)
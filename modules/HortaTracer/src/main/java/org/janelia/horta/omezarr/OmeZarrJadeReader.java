@@ -1,6 +1,7 @@
 package org.janelia.horta.omezarr;
 
 import org.apache.commons.lang.StringUtils;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
 import org.janelia.jacsstorage.clients.api.JadeStorageAttributes;
 import org.janelia.jacsstorage.clients.api.JadeStorageService;
 import org.janelia.jacsstorage.clients.api.StorageLocation;
@@ -27,7 +28,17 @@ public class OmeZarrJadeReader {
 
     protected final String basePath;
 
+    protected final ZarrChunkCache chunkCache;
+
     public OmeZarrJadeReader(final JadeStorageService jadeStorage, final String basePath, JadeStorageAttributes storageAttributes) throws IOException {
+        this(jadeStorage, basePath, storageAttributes, null);
+    }
+
+    /**
+     * @param diskStorage local file cache storage for the zarr chunks, or null to download them every time
+     */
+    public OmeZarrJadeReader(final JadeStorageService jadeStorage, final String basePath, JadeStorageAttributes storageAttributes,
+                             LocalFileCacheStorage diskStorage) throws IOException {
         this.jadeStorage = jadeStorage;
         this.basePath = basePath;
         this.storageLocation = jadeStorage.getStorageLocationByPath(basePath, storageAttributes);
@@ -35,13 +46,26 @@ public class OmeZarrJadeReader {
         if (storageLocation == null) {
             throw new IOException("Could not find Jade location for path: " + basePath);
         }
+
+        this.chunkCache = new ZarrChunkCache(basePath, this::getContent, diskStorage);
     }
 
     public String getBasePath() {
         return this.basePath;
     }
 
-    public InputStream getInputStream(String location) {
+    public InputStream getInputStream(String location) throws IOException {
+        return chunkCache.getInputStream(StringUtils.isBlank(location) ? "" : location);
+    }
+
+    /**
+     * @return the cache which the chunks of the datasets are read through, with paths relative to the base path
+     */
+    public ZarrChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    private InputStream getContent(String location) {
         String l = StringUtils.isBlank(location) ? "" : location.replace('\\', '/');
         final String path = URI.create(basePath).resolve(l).toString();
         String relativePath = storageLocation.getRelativePath(path);
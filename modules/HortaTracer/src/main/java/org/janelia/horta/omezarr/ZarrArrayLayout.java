@@ -0,0 +1,161 @@
+package org.janelia.horta.omezarr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Shape, chunking and encoding of a zarr array, from its .zarray file.
+ */
+public class ZarrArrayLayout {
+
+    private final String path;
+    private final long[] shape;
+    private final int[] chunks;
+    private final String dtype;
+    private final Map<String, Object> compressor;
+    private final Number fillValue;
+    private final String order;
+    private final String separator;
+
+    /**
+     * @param path path of the array relative to the store root
+     * @param metadata content of the .zarray file
+     */
+    @SuppressWarnings("unchecked")
+    static ZarrArrayLayout fromMetadata(String path, JsonNode metadata, ObjectMapper objectMapper) {
+        JsonNode shapeNode = metadata.get("shape");
+        JsonNode chunksNode = metadata.get("chunks");
+        long[] shape = new long[shapeNode.size()];
+        int[] chunks = new int[chunksNode.size()];
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = shapeNode.get(i).asLong();
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = chunksNode.get(i).asInt();
+        }
+        JsonNode compressorNode = metadata.get("compressor");
+        Map<String, Object> compressor = compressorNode == null || compressorNode.isNull()
+                ? null
+                : objectMapper.convertValue(compressorNode, Map.class);
+        JsonNode fillValueNode = metadata.get("fill_value");
+        Number fillValue = fillValueNode != null && fillValueNode.isNumber() ? fillValueNode.numberValue() : null;
+        return new ZarrArrayLayout(path, shape, chunks,
+                metadata.path("dtype").asText(""),
+                compressor,
+                fillValue,
+                metadata.path("order").asText("C"),
+                metadata.path("dimension_separator").asText("."));
+    }
+
+    private ZarrArrayLayout(String path, long[] shape, int[] chunks, String dtype, Map<String, Object> compressor,
+                            Number fillValue, String order, String separator) {
+        this.path = path;
+        this.shape = shape;
+        this.chunks = chunks;
+        this.dtype = dtype;
+        this.compressor = compressor;
+        this.fillValue = fillValue;
+        this.order = order;
+        this.separator = separator;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long[] getShape() {
+        return shape;
+    }
+
+    public int[] getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return numpy style type, like "&lt;u2" for little endian unsigned 16-bit integers
+     */
+    public String getDtype() {
+        return dtype;
+    }
+
+    /**
+     * @return numcodecs configuration of the compressor, or null if the chunks are not compressed
+     */
+    public Map<String, Object> getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @return value of the chunks which were never written, or null if it is not defined
+     */
+    public Number getFillValue() {
+        return fillValue;
+    }
+
+    /**
+     * @return "C" if the last dimension varies fastest inside a chunk, or "F" if the first one does
+     */
+    public String getOrder() {
+        return order;
+    }
+
+    /**
+     * @return number of elements in each chunk
+     */
+    public int getChunkElementCount() {
+        int count = 1;
+        for (int c : chunks) {
+            count *= c;
+        }
+        return count;
+    }
+
+    /**
+     * @return indices of all chunks which overlap the region, clipped to the array
+     */
+    public List<long[]> getChunkIndices(int[] readShape, int[] readOffset) {
+        List<long[]> chunkIndices = new ArrayList<>();
+        if (readShape.length == shape.length && readOffset.length == shape.length) {
+            addChunkIndices(readShape, readOffset, 0, new long[shape.length], chunkIndices);
+        }
+        return chunkIndices;
+    }
+
+    private void addChunkIndices(int[] readShape, int[] readOffset, int dimension, long[] chunkIndex, List<long[]> chunkIndices) {
+        if (dimension == shape.length) {
+            chunkIndices.add(chunkIndex.clone());
+            return;
+        }
+        long end = Math.min(shape[dimension], (long) readOffset[dimension] + readShape[dimension]);
+        if (readOffset[dimension] < 0 || end <= readOffset[dimension]) {
+            return;
+        }
+        long first = readOffset[dimension] / chunks[dimension];
+        long last = (end - 1) / chunks[dimension];
+        for (long c = first; c <= last; c++) {
+            chunkIndex[dimension] = c;
+            addChunkIndices(readShape, readOffset, dimension + 1, chunkIndex, chunkIndices);
+        }
+    }
+
+    /**
+     * @return location of the chunk relative to the store root
+     */
+    public String getChunkLocation(long[] chunkIndex) {
+        StringBuilder location = new StringBuilder(path);
+        if (location.length() > 0) {
+            location.append('/');
+        }
+        for (int i = 0; i < chunkIndex.length; i++) {
+            if (i > 0) {
+                location.append(separator);
+            }
+            location.append(chunkIndex[i]);
+        }
+        return location.toString();
+    }
+}
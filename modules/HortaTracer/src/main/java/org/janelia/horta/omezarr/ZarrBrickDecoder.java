@@ -0,0 +1,183 @@
+package org.janelia.horta.omezarr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Map;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+import com.google.common.io.ByteStreams;
+import org.janelia.gltools.texture.DirectBufferPool;
+import org.janelia.gltools.texture.ShortTexture3dBuilder;
+import org.janelia.gltools.texture.Texture3d;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the zarr chunks of a brick straight into texture memory, with its mipmaps, instead of building
+ * Java2D raster slices first and copying those into the texture.
+ *
+ * Only unsigned 16-bit arrays with 5 dimensions (t, c, z, y, x) in C order are decoded this way. The texture
+ * memory comes from a pool, and goes back to it when the texture is disposed.
+ */
+public class ZarrBrickDecoder {
+    private final static Logger log = LoggerFactory.getLogger(ZarrBrickDecoder.class);
+
+    // Reused by each loading thread for the uncompressed chunks
+    private static final ThreadLocal<ChunkBytes> chunkBytes = ThreadLocal.withInitial(ChunkBytes::new);
+
+    private final ZarrChunkCache chunkCache;
+    private final DirectBufferPool bufferPool;
+
+    public ZarrBrickDecoder(ZarrChunkCache chunkCache) {
+        this(chunkCache, DirectBufferPool.getSharedPool());
+    }
+
+    ZarrBrickDecoder(ZarrChunkCache chunkCache, DirectBufferPool bufferPool) {
+        this.chunkCache = chunkCache;
+        this.bufferPool = bufferPool;
+    }
+
+    public DirectBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * @param arrayPath path of the zarr array relative to the store root
+     * @param readShape size of the brick, in t, c, z, y, x order
+     * @param readOffset start of the brick, in t, c, z, y, x order
+     * @return the brick as a texture, or null if the array is not stored in a way this decoder handles
+     */
+    public Texture3d decode(String arrayPath, int[] readShape, int[] readOffset) throws IOException {
+        ZarrArrayLayout layout = chunkCache.getArrayLayout(arrayPath);
+        if (!isSupported(layout, readShape, readOffset)) {
+            return null;
+        }
+        Compressor compressor;
+        try {
+            compressor = createCompressor(layout);
+        } catch (IllegalArgumentException e) {
+            log.debug("Unsupported compressor {} for {}", layout.getCompressor(), arrayPath);
+            return null;
+        }
+        ByteOrder byteOrder = layout.getDtype().startsWith(">") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        short fillValue = layout.getFillValue() == null ? 0 : layout.getFillValue().shortValue();
+
+        ShortTexture3dBuilder builder = new ShortTexture3dBuilder(readShape[4], readShape[3], readShape[2], bufferPool);
+        boolean built = false;
+        try (ZarrChunkCache.Prefetch ignored = chunkCache.prefetch(arrayPath, readShape, readOffset)) {
+            if (!isInsideArray(layout, readShape, readOffset)) {
+                builder.fill(fillValue);
+            }
+            for (long[] chunkIndex : layout.getChunkIndices(readShape, readOffset)) {
+                decodeChunk(layout, compressor, byteOrder, fillValue, chunkIndex, readShape, readOffset, builder);
+            }
+            Texture3d texture = builder.build();
+            built = true;
+            return texture;
+        } finally {
+            if (!built) {
+                builder.release();
+            }
+        }
+    }
+
+    private static boolean isSupported(ZarrArrayLayout layout, int[] readShape, int[] readOffset) {
+        return layout != null
+                && layout.getShape().length == 5
+                && readShape.length == 5
+                && readOffset.length == 5
+                && readShape[0] == 1
+                && readShape[1] == 1
+                && "C".equals(layout.getOrder())
+                && ("<u2".equals(layout.getDtype()) || ">u2".equals(layout.getDtype()));
+    }
+
+    private static boolean isInsideArray(ZarrArrayLayout layout, int[] readShape, int[] readOffset) {
+        for (int i = 0; i < readShape.length; i++) {
+            if (readOffset[i] < 0 || (long) readOffset[i] + readShape[i] > layout.getShape()[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Compressor createCompressor(ZarrArrayLayout layout) {
+        Map<String, Object> properties = layout.getCompressor();
+        if (properties == null) {
+            return null;
+        }
+        return CompressorFactory.create((String) properties.get("id"), properties);
+    }
+
+    private void decodeChunk(ZarrArrayLayout layout, Compressor compressor, ByteOrder byteOrder, short fillValue,
+                             long[] chunkIndex, int[] readShape, int[] readOffset, ShortTexture3dBuilder builder) throws IOException {
+        int[] chunks = layout.getChunks();
+        long[] shape = layout.getShape();
+
+        // Part of the brick covered by the chunk, in array coordinates
+        long[] chunkOrigin = new long[chunks.length];
+        long[] start = new long[chunks.length];
+        long[] end = new long[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            chunkOrigin[i] = chunkIndex[i] * chunks[i];
+            start[i] = Math.max(chunkOrigin[i], readOffset[i]);
+            end[i] = Math.min(Math.min(chunkOrigin[i] + chunks[i], (long) readOffset[i] + readShape[i]), shape[i]);
+        }
+
+        String location = layout.getChunkLocation(chunkIndex);
+        try (InputStream input = chunkCache.getInputStream(location)) {
+            if (input == null) {
+                // Never written, so it holds the fill value
+                for (long z = start[2]; z < end[2]; z++) {
+                    for (long y = start[3]; y < end[3]; y++) {
+                        for (long x = start[4]; x < end[4]; x++) {
+                            builder.put((int) (x - readOffset[4]), (int) (y - readOffset[3]), (int) (z - readOffset[2]), fillValue);
+                        }
+                    }
+                }
+                return;
+            }
+
+            int chunkByteCount = 2 * layout.getChunkElementCount();
+            ChunkBytes bytes = chunkBytes.get();
+            bytes.reset();
+            if (compressor == null) {
+                ByteStreams.copy(input, bytes);
+            } else {
+                compressor.uncompress(input, bytes);
+            }
+            if (bytes.size() < chunkByteCount) {
+                throw new IOException("Chunk " + location + " has " + bytes.size() + " bytes instead of " + chunkByteCount);
+            }
+            ShortBuffer voxels = ByteBuffer.wrap(bytes.getBuffer(), 0, chunkByteCount).order(byteOrder).asShortBuffer();
+
+            // Chunk elements are in t, c, z, y, x order, with x varying fastest
+            long tc = (start[0] - chunkOrigin[0]) * chunks[1] + (start[1] - chunkOrigin[1]);
+            for (long z = start[2]; z < end[2]; z++) {
+                for (long y = start[3]; y < end[3]; y++) {
+                    int row = (int) (((tc * chunks[2] + (z - chunkOrigin[2])) * chunks[3] + (y - chunkOrigin[3])) * chunks[4] - chunkOrigin[4]);
+                    int by = (int) (y - readOffset[3]);
+                    int bz = (int) (z - readOffset[2]);
+                    for (long x = start[4]; x < end[4]; x++) {
+                        builder.put((int) (x - readOffset[4]), by, bz, voxels.get(row + (int) x));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Byte output whose buffer can be read in place, and keeps its capacity when it is reset.
+     */
+    private static class ChunkBytes extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
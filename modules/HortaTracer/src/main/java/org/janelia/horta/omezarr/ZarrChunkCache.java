@@ -0,0 +1,360 @@
+package org.janelia.horta.omezarr;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.janelia.filecacheutils.FileKey;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
+import org.janelia.workstation.core.filecache.ByteArrayFileCache;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads zarr chunks through a persistent cache in the local file cache storage, so regions which were
+ * visited before are not downloaded again. The storage evicts the least recently used files once its
+ * capacity is reached, together with the other cached files.
+ *
+ * The zarr reader asks for the chunks of a brick one at a time, so the chunks are prefetched on a bounded
+ * pool first, and kept in memory until the brick is read. A chunk which is fetched for several bricks at
+ * the same time is only fetched once.
+ *
+ * Metadata files like .zarray and .zattrs are always read from the store.
+ */
+public class ZarrChunkCache {
+    private final static Logger log = LoggerFactory.getLogger(ZarrChunkCache.class);
+
+    private static final String DISK_CACHE_DIR = "omezarr-chunks";
+    private static final int DISK_CACHE_CONCURRENCY = 4;
+
+    private static final int FETCH_THREADS = ConsoleProperties.getInt("console.horta.zarrChunkFetchThreads", 8);
+
+    // Shared by all caches, so that opening many samples does not multiply the connections to the store
+    private static final ExecutorService fetchPool = Executors.newFixedThreadPool(FETCH_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ZarrChunkFetcher-%d")
+                    .setDaemon(true).build());
+    private static final ExecutorService diskEvictionPool = Executors.newFixedThreadPool(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ZarrChunkCacheEvictor-%d")
+                    .setDaemon(true).build());
+    private static final ExecutorService diskWritePool = Executors.newFixedThreadPool(DISK_CACHE_CONCURRENCY,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ZarrChunkCacheWriter-%d")
+                    .setDaemon(true).build());
+
+    /**
+     * Reads a file of the zarr store, relative to the store root.
+     */
+    @FunctionalInterface
+    public interface ContentFetcher {
+        /**
+         * @return the content, or null if there is no such file
+         */
+        InputStream fetch(String location) throws IOException;
+    }
+
+    private final String storeId;
+    private final ContentFetcher fetcher;
+    private final ByteArrayFileCache<ChunkFileKey> diskCache;
+    // Chunks being fetched, or held for a brick which has not been read yet
+    private final Map<String, PinnedChunk> pinnedChunks = new HashMap<>();
+    private final Map<String, ZarrArrayLayout> arrayLayouts = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+
+    /**
+     * @param storeId identifies the store in the disk cache, like the base path of the store
+     * @param fetcher reads the files of the store
+     * @param diskStorage local file cache storage for the chunks, or null to only share chunks in memory
+     */
+    public ZarrChunkCache(String storeId, ContentFetcher fetcher, LocalFileCacheStorage diskStorage) {
+        this.storeId = storeId;
+        this.fetcher = fetcher;
+        if (diskStorage != null) {
+            this.diskCache = new ByteArrayFileCache<>(
+                    diskStorage,
+                    DISK_CACHE_CONCURRENCY,
+                    diskEvictionPool,
+                    diskWritePool
+            );
+        } else {
+            this.diskCache = null;
+        }
+    }
+
+    /**
+     * @param location path of the file relative to the store root
+     * @return the content, or null if there is no such file
+     */
+    public InputStream getInputStream(String location) throws IOException {
+        String normalizedLocation = normalize(location);
+        if (!isChunk(normalizedLocation)) {
+            return fetcher.fetch(normalizedLocation);
+        }
+        CompletableFuture<byte[]> content = pin(normalizedLocation);
+        try {
+            byte[] bytes = join(content);
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        } finally {
+            unpin(normalizedLocation);
+        }
+    }
+
+    /**
+     * Starts fetching all chunks of the array which overlap the region, and keeps them until the
+     * returned prefetch is closed.
+     *
+     * @param arrayPath path of the zarr array relative to the store root
+     * @param readShape size of the region, in the dimension order of the array
+     * @param readOffset start of the region, in the dimension order of the array
+     */
+    public Prefetch prefetch(String arrayPath, int[] readShape, int[] readOffset) {
+        List<String> locations = new ArrayList<>();
+        ZarrArrayLayout layout = getArrayLayout(arrayPath);
+        if (layout != null) {
+            for (long[] chunkIndex : layout.getChunkIndices(readShape, readOffset)) {
+                locations.add(layout.getChunkLocation(chunkIndex));
+            }
+        }
+        for (String location : locations) {
+            pin(location);
+        }
+        return new Prefetch(locations);
+    }
+
+    /**
+     * @param arrayPath path of the zarr array relative to the store root
+     * @return the layout of the array, or null if its .zarray file could not be read
+     */
+    public ZarrArrayLayout getArrayLayout(String arrayPath) {
+        String normalizedPath = normalize(arrayPath);
+        ZarrArrayLayout layout = arrayLayouts.get(normalizedPath);
+        if (layout != null) {
+            return layout;
+        }
+        String metadataLocation = normalizedPath.isEmpty() ? ".zarray" : normalizedPath + "/.zarray";
+        try (InputStream input = fetcher.fetch(metadataLocation)) {
+            if (input == null) {
+                return null;
+            }
+            layout = ZarrArrayLayout.fromMetadata(normalizedPath, objectMapper.readTree(input), objectMapper);
+            arrayLayouts.put(normalizedPath, layout);
+            return layout;
+        } catch (Exception e) {
+            // Chunks are then only read as the brick asks for them
+            log.debug("Could not read the chunk layout of {}", metadataLocation, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return how many chunks were downloaded from the store
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * @return how many chunks were read from the disk cache
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    private CompletableFuture<byte[]> pin(String location) {
+        synchronized (pinnedChunks) {
+            PinnedChunk pinned = pinnedChunks.get(location);
+            if (pinned == null) {
+                pinned = new PinnedChunk(CompletableFuture.supplyAsync(() -> loadChunk(location), fetchPool));
+                pinnedChunks.put(location, pinned);
+            }
+            pinned.pins++;
+            return pinned.content;
+        }
+    }
+
+    private void unpin(String location) {
+        synchronized (pinnedChunks) {
+            PinnedChunk pinned = pinnedChunks.get(location);
+            if (pinned != null && --pinned.pins == 0) {
+                // Failures are not kept either, so the next read tries again
+                pinnedChunks.remove(location);
+            }
+        }
+    }
+
+    private byte[] loadChunk(String location) {
+        byte[] content = readFromDisk(location);
+        if (content != null) {
+            diskHitCount.incrementAndGet();
+            return content;
+        }
+        try (InputStream input = fetcher.fetch(location)) {
+            if (input == null) {
+                // Chunks which were never written are read as the fill value
+                return null;
+            }
+            content = ByteStreams.toByteArray(input);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        fetchCount.incrementAndGet();
+        writeToDisk(location, content);
+        return content;
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> content) throws IOException {
+        try {
+            return content.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private byte[] readFromDisk(String location) {
+        if (diskCache == null) {
+            return null;
+        }
+        try (InputStream input = diskCache.openContentStream(new ChunkFileKey(storeId, location))) {
+            return input == null ? null : ByteStreams.toByteArray(input);
+        } catch (Exception e) {
+            log.warn("Could not read {} from the disk cache", location, e);
+        }
+        return null;
+    }
+
+    private void writeToDisk(String location, byte[] content) {
+        if (diskCache == null) {
+            return;
+        }
+        try {
+            diskCache.write(new ChunkFileKey(storeId, location), location, content);
+        } catch (Exception e) {
+            log.warn("Could not write {} to the disk cache", location, e);
+        }
+    }
+
+    private static String normalize(String location) {
+        String l = location == null ? "" : location.replace('\\', '/');
+        while (l.startsWith("/")) {
+            l = l.substring(1);
+        }
+        return l;
+    }
+
+    private static boolean isChunk(String location) {
+        String name = location.substring(location.lastIndexOf('/') + 1);
+        return !name.isEmpty() && !name.startsWith(".");
+    }
+
+    /**
+     * Chunks kept in memory for a brick. Closing it lets them go, once no other brick needs them.
+     */
+    public class Prefetch implements AutoCloseable {
+
+        private final List<String> locations;
+        private boolean closed = false;
+
+        private Prefetch(List<String> locations) {
+            this.locations = locations;
+        }
+
+        public int getChunkCount() {
+            return locations.size();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (String location : locations) {
+                unpin(location);
+            }
+        }
+    }
+
+    private static class PinnedChunk {
+
+        private final CompletableFuture<byte[]> content;
+        private int pins = 0;
+
+        PinnedChunk(CompletableFuture<byte[]> content) {
+            this.content = content;
+        }
+    }
+
+    private static class ChunkFileKey implements FileKey {
+
+        private final String storeId;
+        private final String location;
+
+        ChunkFileKey(String storeId, String location) {
+            this.storeId = storeId;
+            this.location = location;
+        }
+
+        @Override
+        public Path getLocalPath(LocalFileCacheStorage localFileCacheStorage) {
+            String storeHash = Hashing.sha256().hashString(storeId, StandardCharsets.UTF_8).toString();
+            String chunkHash = Hashing.sha256().hashString(location, StandardCharsets.UTF_8).toString();
+            return localFileCacheStorage.getLocalFileCacheDir()
+                    .resolve(DISK_CACHE_DIR)
+                    .resolve(storeHash.substring(0, 16))
+                    .resolve(chunkHash.substring(0, 2))
+                    .resolve(chunkHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ChunkFileKey that = (ChunkFileKey) o;
+
+            return new EqualsBuilder()
+                    .append(storeId, that.storeId)
+                    .append(location, that.location)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(storeId)
+                    .append(location)
+                    .toHashCode();
+        }
+    }
+}
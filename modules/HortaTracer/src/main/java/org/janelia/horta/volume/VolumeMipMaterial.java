@@ -389,10 +389,11 @@ implements DepthSlabClipper
 
         public static int BLOCK_STRATEGY_FINEST_8_MAX = 0;
         public static int BLOCK_STRATEGY_OCTTREE = 1;
+        public static int BLOCK_STRATEGY_SCREEN_SPACE_ERROR = 2;
         
         public int filteringOrder = FILTER_TRILINEAR;  // 0: NEAREST; 1: TRILINEAR; 2: <not used> 3: TRICUBIC
         public int projectionMode = PROJECTION_MAXIMUM; // 0: Maximum intensity projection; 1: Occluding
-        public int blockStrategy = BLOCK_STRATEGY_OCTTREE;
+        public int blockStrategy = BLOCK_STRATEGY_SCREEN_SPACE_ERROR;
     }
     
 }
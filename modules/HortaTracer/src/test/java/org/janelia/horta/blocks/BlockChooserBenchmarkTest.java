@@ -0,0 +1,257 @@
+package org.janelia.horta.blocks;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.Quaternion;
+import org.janelia.geometry3d.Rotation;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.it.jacs.model.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Replays a recorded camera path through the block choosers, to compare how many blocks they load, how many
+ * of those are off screen, and how much of the view they leave empty. Loading is simulated, a fixed number of
+ * blocks per step in the order the chooser asks for them, so the results only depend on the path, the
+ * octree and the chooser, and not on the network.
+ *
+ * The path is a list of views in block_chooser_path.json, each with a focus, the scene units per viewport
+ * height and a rotation quaternion, over the synthetic octree of {@link ScreenSpaceErrorBlockChooserTest}.
+ */
+public class BlockChooserBenchmarkTest {
+
+    // Camera positions between each pair of recorded views
+    private static final int STEPS_PER_SEGMENT = 10;
+    // Blocks which finish loading between camera positions
+    private static final int LOADS_PER_STEP = 4;
+    // Screen positions along each side which are checked for coverage
+    private static final int COVERAGE_SAMPLES = 16;
+
+    private static final BlockTileData SIMULATED_BLOCK = new BlockTileData() {};
+
+    private final KtxOctreeBlockTileSource source = ScreenSpaceErrorBlockChooserTest.createSource();
+
+    /**
+     * One recorded camera position.
+     */
+    private static class View {
+        private final Vector3 focus;
+        private final float sceneUnitsPerViewportHeight;
+        private final Quaternion rotation;
+
+        View(Vector3 focus, float sceneUnitsPerViewportHeight, Quaternion rotation) {
+            this.focus = focus;
+            this.sceneUnitsPerViewportHeight = sceneUnitsPerViewportHeight;
+            this.rotation = rotation;
+        }
+    }
+
+    /**
+     * Replays the path through each chooser in turn, starting with nothing loaded, so it only runs with the
+     * prototype tests.
+     */
+    @Test
+    @Category(TestCategories.PrototypeTests.class)
+    public void testRecordedPath() throws Exception {
+        List<View> path = readPath("block_chooser_path.json");
+        Map<String, BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource>> choosers = new LinkedHashMap<>();
+        choosers.put("Highest resolution only", new Finest8DisplayBlockChooser());
+        choosers.put("Multi-resolution octree", new OctreeDisplayBlockChooser());
+        choosers.put("Multi-resolution view", new ScreenSpaceErrorBlockChooser());
+        for (Map.Entry<String, BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource>> entry : choosers.entrySet()) {
+            Result result = replay(entry.getKey(), entry.getValue(), path);
+            System.out.println(result);
+            Assert.assertEquals(1 + (path.size() - 1) * STEPS_PER_SEGMENT, result.steps);
+            Assert.assertTrue(result.toString(), result.loadedBlocks > 0);
+            Assert.assertTrue(result.toString(), result.getMeanCoverage() > 0);
+        }
+    }
+
+    private List<View> readPath(String resourceName) throws Exception {
+        List<View> path = new ArrayList<>();
+        try (InputStream input = getClass().getResourceAsStream(resourceName)) {
+            Assert.assertNotNull(resourceName, input);
+            for (JsonNode viewNode : new ObjectMapper().readTree(input)) {
+                JsonNode focus = viewNode.get("focus");
+                JsonNode rotation = viewNode.get("rotation");
+                path.add(new View(
+                        new Vector3(focus.get(0).floatValue(), focus.get(1).floatValue(), focus.get(2).floatValue()),
+                        viewNode.get("zoom").floatValue(),
+                        new Quaternion().set(rotation.get(0).floatValue(), rotation.get(1).floatValue(),
+                                rotation.get(2).floatValue(), rotation.get(3).floatValue())));
+            }
+        }
+        return path;
+    }
+
+    private Result replay(String name, BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> chooser, List<View> path) {
+        Result result = new Result(name);
+        Map<BlockTileKey, BlockTileData> resident = new HashMap<>();
+        Vantage vantage = new Vantage(null);
+        ConstVector3 previousFocus = null;
+        for (int i = 0; i < path.size(); i++) {
+            View from = path.get(Math.max(0, i - 1));
+            View to = path.get(i);
+            int steps = i == 0 ? 1 : STEPS_PER_SEGMENT;
+            for (int step = 1; step <= steps; step++) {
+                setView(vantage, from, to, step / (float) steps);
+                ConstVector3 focus = new Vector3(vantage.getFocusPosition());
+                long startNanos = System.nanoTime();
+                List<KtxOctreeBlockTileKey> desired = chooser.chooseBlocks(source, focus, previousFocus, vantage);
+                result.chooseNanos += System.nanoTime() - startNanos;
+                previousFocus = focus;
+                ViewFrustum frustum = ViewFrustum.of(vantage, null);
+                simulateLoads(chooser, desired, resident, frustum, result);
+                result.addStep(getCoverage(resident.keySet(), frustum));
+            }
+        }
+        return result;
+    }
+
+    private static void setView(Vantage vantage, View from, View to, float alpha) {
+        vantage.setFocusPosition(new Vector3(to.focus).minus(from.focus).multiplyScalar(alpha).plus(from.focus));
+        vantage.setSceneUnitsPerViewportHeight(from.sceneUnitsPerViewportHeight
+                + alpha * (to.sceneUnitsPerViewportHeight - from.sceneUnitsPerViewportHeight));
+        Quaternion rotation = from.rotation.slerp(to.rotation, alpha);
+        vantage.setRotationInGround(new Rotation().setFromQuaternion(rotation));
+    }
+
+    /**
+     * Loads the first few wanted blocks, like BasicTileCache, and lets the chooser evict after each one.
+     */
+    private void simulateLoads(BlockChooser<KtxOctreeBlockTileKey, KtxOctreeBlockTileSource> chooser,
+                               List<KtxOctreeBlockTileKey> desired, Map<BlockTileKey, BlockTileData> resident,
+                               ViewFrustum frustum, Result result) {
+        Map<BlockTileKey, BlockTileData> queued = new LinkedHashMap<>();
+        for (KtxOctreeBlockTileKey key : desired) {
+            if (!resident.containsKey(key)) {
+                queued.put(key, SIMULATED_BLOCK);
+            }
+        }
+        for (int load = 0; load < LOADS_PER_STEP && !queued.isEmpty(); load++) {
+            KtxOctreeBlockTileKey key = (KtxOctreeBlockTileKey) queued.keySet().iterator().next();
+            queued.remove(key);
+            resident.put(key, SIMULATED_BLOCK);
+            result.loadedBlocks++;
+            if (!frustum.intersects(getBlockMin(key), getBlockMax(key))) {
+                result.offScreenBlocks++;
+            }
+            Map<BlockTileKey, BlockTileData> obsolete = chooser.chooseObsoleteTiles(resident, queued, key);
+            if (obsolete != null) {
+                resident.keySet().removeAll(obsolete.keySet());
+            }
+        }
+        result.peakResidentBlocks = Math.max(result.peakResidentBlocks, resident.size());
+    }
+
+    /**
+     * @return fraction of the screen positions in the plane of the focus, and inside the volume, which
+     * are covered by a loaded block, or -1 if the view does not show any of the volume
+     */
+    private float getCoverage(Iterable<BlockTileKey> resident, ViewFrustum frustum) {
+        KtxOctreeBlockTileKey rootKey = source.getRootKey();
+        ConstVector3 volumeMin = getBlockMin(rootKey);
+        ConstVector3 volumeMax = getBlockMax(rootKey);
+        List<ConstVector3[]> boxes = new ArrayList<>();
+        for (BlockTileKey key : resident) {
+            KtxOctreeBlockTileKey octreeKey = (KtxOctreeBlockTileKey) key;
+            boxes.add(new ConstVector3[] {getBlockMin(octreeKey), getBlockMax(octreeKey)});
+        }
+        int inside = 0;
+        int covered = 0;
+        for (int i = 0; i < COVERAGE_SAMPLES; i++) {
+            for (int j = 0; j < COVERAGE_SAMPLES; j++) {
+                Vector3 point = frustum.getFocalPlanePoint(
+                        2.0f * (i + 0.5f) / COVERAGE_SAMPLES - 1.0f,
+                        2.0f * (j + 0.5f) / COVERAGE_SAMPLES - 1.0f);
+                if (!contains(volumeMin, volumeMax, point)) {
+                    continue;
+                }
+                inside++;
+                for (ConstVector3[] box : boxes) {
+                    if (contains(box[0], box[1], point)) {
+                        covered++;
+                        break;
+                    }
+                }
+            }
+        }
+        return inside == 0 ? -1 : covered / (float) inside;
+    }
+
+    private static boolean contains(ConstVector3 boxMin, ConstVector3 boxMax, ConstVector3 point) {
+        for (int i = 0; i < 3; i++) {
+            if (point.get(i) < boxMin.get(i) || point.get(i) > boxMax.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ConstVector3 getBlockMin(KtxOctreeBlockTileKey key) {
+        return source.getBlockOrigin(key);
+    }
+
+    private ConstVector3 getBlockMax(KtxOctreeBlockTileKey key) {
+        return new Vector3(source.getBlockSize(new KtxOctreeResolution(key.getKeyDepth()))).plus(source.getBlockOrigin(key));
+    }
+
+    /**
+     * What one chooser did over the whole camera path.
+     */
+    private static class Result {
+
+        private final String name;
+        private int steps = 0;
+        private long chooseNanos = 0;
+        private int loadedBlocks = 0;
+        private int offScreenBlocks = 0;
+        private int peakResidentBlocks = 0;
+        private int coveredSteps = 0;
+        private double coverageSum = 0;
+        private float minCoverage = 1;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        private void addStep(float coverage) {
+            steps++;
+            if (coverage >= 0) {
+                coveredSteps++;
+                coverageSum += coverage;
+                minCoverage = Math.min(minCoverage, coverage);
+            }
+        }
+
+        float getMeanCoverage() {
+            return coveredSteps == 0 ? 0 : (float) (coverageSum / coveredSteps);
+        }
+
+        float getMinCoverage() {
+            return coveredSteps == 0 ? 0 : minCoverage;
+        }
+
+        double getMeanChooseMillis() {
+            return steps == 0 ? 0 : chooseNanos / 1e6 / steps;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d steps, %d blocks loaded (%d off screen), at most %d in memory, "
+                            + "%.1f%% of the view covered on average (%.1f%% at worst), %.2f ms per choice",
+                    name, steps, loadedBlocks, offScreenBlocks, peakResidentBlocks,
+                    100 * getMeanCoverage(), 100 * getMinCoverage(), getMeanChooseMillis());
+        }
+    }
+}
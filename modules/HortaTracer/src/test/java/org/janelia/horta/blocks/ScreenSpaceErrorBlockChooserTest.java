@@ -0,0 +1,204 @@
+package org.janelia.horta.blocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.horta.ktx.KtxHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ScreenSpaceErrorBlockChooser} class on a synthetic octree of four levels over a cube of
+ * 1024 scene units, with blocks of 64^3 voxels, so the voxels are 16, 8, 4 and 2 units in size. The view
+ * looks down the Z axis, with the default camera.
+ */
+public class ScreenSpaceErrorBlockChooserTest {
+
+    static final float VOLUME_SIZE = 1024;
+    private static final int LEVELS = 4;
+    private static final int BLOCK_VOXELS = 64;
+
+    private static final BlockTileData BLOCK = new BlockTileData() {};
+
+    private final KtxOctreeBlockTileSource source = createSource();
+
+    static KtxOctreeBlockTileSource createSource() {
+        KtxHeader header = new KtxHeader();
+        header.pixelWidth = BLOCK_VOXELS;
+        header.pixelHeight = BLOCK_VOXELS;
+        header.pixelDepth = BLOCK_VOXELS;
+        header.glTypeSize = 2;
+        header.keyValueMetadata.put("multiscale_total_levels", String.valueOf(LEVELS));
+        return new KtxOctreeBlockTileSource(null, null)
+                .init(header, LEVELS, new Vector3(0, 0, 0), new Vector3(VOLUME_SIZE, VOLUME_SIZE, VOLUME_SIZE));
+    }
+
+    static Vantage createVantage(float x, float y, float z, float sceneUnitsPerViewportHeight) {
+        Vantage vantage = new Vantage(null);
+        vantage.setFocusPosition(new Vector3(x, y, z));
+        vantage.setSceneUnitsPerViewportHeight(sceneUnitsPerViewportHeight);
+        return vantage;
+    }
+
+    /**
+     * @param maxBlocks how many blocks fit in the memory budget, at the size estimated from the header
+     */
+    private static ScreenSpaceErrorBlockChooser createChooser(float maxScreenSpaceError, long maxBlocks) {
+        long blockBytes = (long) BLOCK_VOXELS * BLOCK_VOXELS * BLOCK_VOXELS * 2 * 8 / 7;
+        return new ScreenSpaceErrorBlockChooser(maxScreenSpaceError, maxBlocks * blockBytes);
+    }
+
+    private KtxOctreeBlockTileKey key(Integer... octreePath) {
+        return new KtxOctreeBlockTileKey(source, Arrays.asList(octreePath));
+    }
+
+    /**
+     * Makes the root block resident, so that nothing needs a coarser stand-in.
+     */
+    private void loadRoot(ScreenSpaceErrorBlockChooser chooser) {
+        Map<BlockTileKey, BlockTileData> resident = new HashMap<>();
+        resident.put(source.getRootKey(), BLOCK);
+        chooser.chooseObsoleteTiles(resident, new HashMap<>(), source.getRootKey());
+    }
+
+    private List<KtxOctreeBlockTileKey> choose(ScreenSpaceErrorBlockChooser chooser, Vantage vantage) {
+        ConstVector3 focus = new Vector3(vantage.getFocusPosition());
+        return chooser.chooseBlocks(source, focus, null, vantage);
+    }
+
+    private static int countAtDepth(List<KtxOctreeBlockTileKey> keys, int depth) {
+        int count = 0;
+        for (KtxOctreeBlockTileKey key : keys) {
+            if (key.getKeyDepth() == depth) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void blocksOutsideTheViewAreNotChosen() {
+        ScreenSpaceErrorBlockChooser chooser = createChooser(0, 10000);
+        loadRoot(chooser);
+        // The view is about 400 units wide at the far side of the volume, around X=Y=128
+        Vantage vantage = createVantage(128, 128, 512, 256);
+        List<KtxOctreeBlockTileKey> chosen = choose(chooser, vantage);
+
+        Assert.assertTrue(countAtDepth(chosen, LEVELS - 1) > 0);
+        ViewFrustum frustum = ViewFrustum.of(vantage, null);
+        for (KtxOctreeBlockTileKey key : chosen) {
+            ConstVector3 origin = source.getBlockOrigin(key);
+            Assert.assertTrue(key.toString(), origin.getX() < 512 && origin.getY() < 512);
+            Assert.assertTrue(key.toString(), frustum.intersects(origin,
+                    new Vector3(source.getBlockSize(new KtxOctreeResolution(key.getKeyDepth()))).plus(origin)));
+        }
+    }
+
+    @Test
+    public void blocksNearestTheCameraAreRefinedFirst() {
+        // Room for the eight children of the root, and the eight children of one of them
+        ScreenSpaceErrorBlockChooser chooser = createChooser(0, 15);
+        loadRoot(chooser);
+        // The whole volume is in view, and the camera is above Z=1024
+        List<KtxOctreeBlockTileKey> chosen = choose(chooser, createVantage(512, 512, 512, 4096));
+
+        Assert.assertEquals(15, chosen.size());
+        Assert.assertEquals(7, countAtDepth(chosen, 1));
+        Assert.assertEquals(8, countAtDepth(chosen, 2));
+        for (KtxOctreeBlockTileKey key : chosen) {
+            if (key.getKeyDepth() == 2) {
+                // Octants 5 to 8 are the upper half in Z
+                Assert.assertTrue(key.toString(), key.getOctreePath().get(0) > 4);
+            }
+        }
+    }
+
+    @Test
+    public void refinementStopsAtTheBudgetOrTheThreshold() {
+        Vantage vantage = createVantage(512, 512, 512, 4096);
+
+        ScreenSpaceErrorBlockChooser rootOnly = createChooser(0, 7);
+        loadRoot(rootOnly);
+        Assert.assertEquals(Collections.singletonList(source.getRootKey()), choose(rootOnly, vantage));
+
+        ScreenSpaceErrorBlockChooser withinBudget = createChooser(0, 20);
+        loadRoot(withinBudget);
+        // One more subdivision would take 22 blocks
+        Assert.assertEquals(15, choose(withinBudget, vantage).size());
+
+        // From this far away, the root voxels are only a few pixels wide
+        ScreenSpaceErrorBlockChooser coarse = createChooser(100, 10000);
+        loadRoot(coarse);
+        Assert.assertEquals(Collections.singletonList(source.getRootKey()), choose(coarse, vantage));
+    }
+
+    @Test
+    public void coarserBlocksStandInUntilChosenBlocksArrive() {
+        ScreenSpaceErrorBlockChooser chooser = createChooser(0, 10000);
+        // Nothing is loaded, and the view is close enough for the finest blocks
+        List<KtxOctreeBlockTileKey> blocks = choose(chooser, createVantage(128, 128, 512, 256));
+
+        List<KtxOctreeBlockTileKey> fallbacks = new ArrayList<>();
+        for (KtxOctreeBlockTileKey key : blocks) {
+            if (key.getKeyDepth() < LEVELS - 1) {
+                fallbacks.add(key);
+            }
+        }
+        Assert.assertFalse(fallbacks.isEmpty());
+        // Stand-ins are two levels up from the chosen blocks, and are queued ahead of them
+        Assert.assertEquals(fallbacks, blocks.subList(0, fallbacks.size()));
+        for (KtxOctreeBlockTileKey key : blocks.subList(fallbacks.size(), blocks.size())) {
+            KtxOctreeBlockTileKey ancestor = new KtxOctreeBlockTileKey(source, key.getOctreePath().subList(0, 1));
+            Assert.assertTrue(key.toString(), fallbacks.contains(ancestor));
+        }
+        Assert.assertEquals(countAtDepth(blocks, 1), fallbacks.size());
+    }
+
+    @Test
+    public void residentBlocksStayWhileTheyCoverMissingBlocks() {
+        Vantage farView = createVantage(512, 512, 512, 4096);
+        KtxOctreeBlockTileKey root = source.getRootKey();
+        Map<BlockTileKey, BlockTileData> resident = new HashMap<>();
+
+        // Zooming in, the root and a finer block cover the chosen blocks until they are loaded
+        ScreenSpaceErrorBlockChooser chooser = createChooser(0, 8);
+        resident.put(root, BLOCK);
+        resident.put(key(1, 1), BLOCK);
+        chooser.chooseObsoleteTiles(resident, new HashMap<>(), root);
+        List<KtxOctreeBlockTileKey> children = choose(chooser, farView);
+        Assert.assertEquals(8, children.size());
+        Assert.assertTrue(chooser.chooseObsoleteTiles(resident, new HashMap<>(), root).isEmpty());
+        for (int i = 0; i < children.size(); i++) {
+            KtxOctreeBlockTileKey child = children.get(i);
+            resident.put(child, BLOCK);
+            Set<BlockTileKey> expected = new HashSet<>();
+            if (child.equals(key(1))) {
+                expected.add(key(1, 1));
+            }
+            if (i == children.size() - 1) {
+                expected.add(root);
+            }
+            Map<BlockTileKey, BlockTileData> obsolete = chooser.chooseObsoleteTiles(resident, new HashMap<>(), child);
+            Assert.assertEquals(child.toString(), expected, obsolete.keySet());
+            resident.keySet().removeAll(obsolete.keySet());
+        }
+        Assert.assertEquals(new HashSet<>(children), resident.keySet());
+
+        // Zooming out, the children cover the root until it is loaded
+        ScreenSpaceErrorBlockChooser rootOnly = createChooser(0, 1);
+        rootOnly.chooseObsoleteTiles(resident, new HashMap<>(), children.get(0));
+        Assert.assertEquals(Collections.singletonList(root), choose(rootOnly, farView));
+        Assert.assertTrue(rootOnly.chooseObsoleteTiles(resident, new HashMap<>(), children.get(0)).isEmpty());
+        resident.put(root, BLOCK);
+        Assert.assertEquals(new HashSet<>(children), rootOnly.chooseObsoleteTiles(resident, new HashMap<>(), root).keySet());
+    }
+}
@@ -0,0 +1,70 @@
+package org.janelia.horta.blocks;
+
+import org.janelia.geometry3d.Rotation;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ViewFrustum} class with the default camera, which shows 100 scene units across the
+ * viewport at the focus.
+ */
+public class ViewFrustumTest {
+
+    private static final float EPSILON = 1e-2f;
+
+    /**
+     * @return a view of the focus at 512,512,512 from the +X side, so Z runs across the screen
+     */
+    private static Vantage createSideView() {
+        Vantage vantage = ScreenSpaceErrorBlockChooserTest.createVantage(512, 512, 512, 100);
+        vantage.setRotationInGround(new Rotation().setRotationFromAngleAboutY((float) (0.5 * Math.PI)));
+        return vantage;
+    }
+
+    @Test
+    public void boxesBesideTheViewAreOutside() {
+        ViewFrustum frustum = ViewFrustum.of(ScreenSpaceErrorBlockChooserTest.createVantage(512, 512, 512, 100), null);
+        Assert.assertTrue(frustum.intersects(new Vector3(500, 500, 500), new Vector3(524, 524, 524)));
+        Assert.assertFalse(frustum.intersects(new Vector3(580, 500, 500), new Vector3(600, 524, 524)));
+        Assert.assertFalse(frustum.intersects(new Vector3(500, 420, 500), new Vector3(524, 440, 524)));
+        // Behind the camera
+        Assert.assertFalse(frustum.intersects(new Vector3(500, 500, 2000), new Vector3(524, 524, 2024)));
+    }
+
+    @Test
+    public void worldScaleShrinksTheSceneAroundTheFocus() {
+        // 80 units beside the focus along Z, out of view until Z is scaled by 0.4
+        Vector3 boxMin = new Vector3(500, 500, 587);
+        Vector3 boxMax = new Vector3(524, 524, 597);
+        Vantage vantage = createSideView();
+        Assert.assertFalse(ViewFrustum.of(vantage, null).intersects(boxMin, boxMax));
+
+        vantage.setWorldScaleHack(1, 1, 0.4f);
+        ViewFrustum frustum = ViewFrustum.of(vantage, null);
+        Assert.assertTrue(frustum.intersects(boxMin, boxMax));
+        // The edge of the screen is 50 units from the focus in view space, and 125 units in the scene
+        Vector3 edge = frustum.getFocalPlanePoint(1, 0);
+        Assert.assertEquals(512, edge.getX(), EPSILON);
+        Assert.assertEquals(512, edge.getY(), EPSILON);
+        Assert.assertEquals(125, Math.abs(edge.getZ() - 512), EPSILON);
+    }
+
+    @Test
+    public void worldScaleChangesTheSizeOnScreen() {
+        Vantage vantage = createSideView();
+        ViewFrustum frustum = ViewFrustum.of(vantage, null);
+        float depth = frustum.getNearestDepth(new Vector3(500, 500, 500), new Vector3(524, 524, 524));
+        // A pixel is 0.1 units at the focus, and the nearest side of the box is 12 units closer
+        float pixels = frustum.getSizeInPixels(1, depth);
+        Assert.assertTrue(pixels > 10);
+
+        vantage.setWorldScaleHack(2, 2, 0.4f);
+        ViewFrustum scaledFrustum = ViewFrustum.of(vantage, null);
+        float scaledDepth = scaledFrustum.getNearestDepth(new Vector3(500, 500, 500), new Vector3(524, 524, 524));
+        // The box is now twice as thick along the view axis
+        Assert.assertEquals(depth - 12, scaledDepth, EPSILON);
+        Assert.assertEquals(2 * pixels * depth / scaledDepth, scaledFrustum.getSizeInPixels(1, scaledDepth), EPSILON);
+    }
+}
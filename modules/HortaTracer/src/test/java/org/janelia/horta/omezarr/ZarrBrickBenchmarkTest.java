@@ -0,0 +1,184 @@
+package org.janelia.horta.omezarr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.sun.management.ThreadMXBean;
+import org.aind.omezarr.OmeZarrDataset;
+import org.aind.omezarr.OmeZarrGroup;
+import org.janelia.gltools.texture.Texture3d;
+import org.janelia.horta.blocks.OmeZarrBlockTileKey;
+import org.janelia.it.jacs.model.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures the time and memory it takes to load OME-Zarr bricks into textures, through raster slices and
+ * through ZarrBrickDecoder, on a synthetic zlib compressed data set.
+ */
+public class ZarrBrickBenchmarkTest {
+
+    private static final int VOLUME_SIZE = 256;
+    private static final int CHUNK_SIZE = 64;
+    private static final int PASSES = 3;
+
+    /**
+     * Writes a synthetic volume and loads every brick several times, so it only runs with the prototype tests.
+     */
+    @Test
+    @Category(TestCategories.PrototypeTests.class)
+    public void testBrickLoading() throws Exception {
+        Path directory = Files.createTempDirectory("synthetic-omezarr");
+        try {
+            writeSyntheticVolume(directory, VOLUME_SIZE, CHUNK_SIZE);
+            OmeZarrGroup group = OmeZarrGroup.open(directory);
+            OmeZarrDataset dataset = group.getAttributes().getMultiscales()[0].getDatasets().get(0);
+            ZarrBrickDecoder decoder = new ZarrBrickDecoder(new ZarrChunkCache(directory.toString(), location -> {
+                Path path = directory.resolve(location);
+                return Files.exists(path) ? Files.newInputStream(path) : null;
+            }, null));
+
+            // Bricks of one chunk, like the tile source uses, and of eight chunks
+            for (int brickSize : new int[] {CHUNK_SIZE, 2 * CHUNK_SIZE}) {
+                List<OmeZarrBlockTileKey> bricks = new ArrayList<>();
+                for (int z = 0; z + brickSize <= VOLUME_SIZE; z += brickSize) {
+                    for (int y = 0; y + brickSize <= VOLUME_SIZE; y += brickSize) {
+                        for (int x = 0; x + brickSize <= VOLUME_SIZE; x += brickSize) {
+                            bricks.add(new OmeZarrBlockTileKey(dataset, 0,
+                                    new int[] {brickSize, brickSize, brickSize}, new int[] {x, y, z},
+                                    new double[] {1, 1, 1}, 1));
+                        }
+                    }
+                }
+                System.out.println(bricks.size() + " bricks of " + brickSize + "^3 voxels in chunks of " + CHUNK_SIZE + "^3");
+                for (int pass = 1; pass <= PASSES; pass++) {
+                    // The first pass warms up the JIT, and fills the buffer pool
+                    Measurement raster = new Measurement("raster slices");
+                    Measurement direct = new Measurement("direct decode");
+                    for (OmeZarrBlockTileKey brick : bricks) {
+                        raster.start();
+                        Texture3d rasterTexture = brick.loadBrick(null);
+                        raster.stop(0);
+                        rasterTexture.deallocateRam();
+
+                        long directBytes = decoder.getBufferPool().getAllocatedBytes();
+                        direct.start();
+                        Texture3d directTexture = decoder.decode(dataset.getPath(), brick.getReadShape(), brick.getReadOffset());
+                        direct.stop(decoder.getBufferPool().getAllocatedBytes() - directBytes);
+                        Assert.assertNotNull(directTexture);
+                        directTexture.deallocateRam();
+                    }
+                    System.out.println("  pass " + pass + ": " + raster + "; " + direct);
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Writes a single channel, single time point, unsigned 16-bit volume with zlib compressed chunks, and a
+     * smooth background with noise so that it compresses like microscopy data.
+     */
+    private static void writeSyntheticVolume(Path directory, int volumeSize, int chunkSize) throws IOException {
+        Files.write(directory.resolve(".zgroup"), "{\"zarr_format\": 2}".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(".zattrs"), ("{\"multiscales\": [{\"version\": \"0.4\", \"name\": \"synthetic\", "
+                + "\"axes\": [{\"name\": \"t\", \"type\": \"time\", \"unit\": \"millisecond\"}, "
+                + "{\"name\": \"c\", \"type\": \"channel\"}, "
+                + "{\"name\": \"z\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"y\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"x\", \"type\": \"space\", \"unit\": \"micrometer\"}], "
+                + "\"datasets\": [{\"path\": \"0\", \"coordinateTransformations\": "
+                + "[{\"type\": \"scale\", \"scale\": [1.0, 1.0, 1.0, 1.0, 1.0]}]}]}]}").getBytes(StandardCharsets.UTF_8));
+        Path array = Files.createDirectories(directory.resolve("0"));
+        Files.write(array.resolve(".zarray"), String.format("{\"zarr_format\": 2, "
+                + "\"shape\": [1, 1, %d, %d, %d], \"chunks\": [1, 1, %d, %d, %d], \"dtype\": \"<u2\", "
+                + "\"compressor\": {\"id\": \"zlib\", \"level\": 1}, \"fill_value\": 0, \"order\": \"C\", \"filters\": null}",
+                volumeSize, volumeSize, volumeSize, chunkSize, chunkSize, chunkSize).getBytes(StandardCharsets.UTF_8));
+
+        Random random = new Random(1);
+        int chunkCount = (volumeSize + chunkSize - 1) / chunkSize;
+        ByteBuffer chunk = ByteBuffer.allocate(2 * chunkSize * chunkSize * chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+        for (int cz = 0; cz < chunkCount; cz++) {
+            for (int cy = 0; cy < chunkCount; cy++) {
+                for (int cx = 0; cx < chunkCount; cx++) {
+                    chunk.clear();
+                    for (int z = cz * chunkSize; z < (cz + 1) * chunkSize; z++) {
+                        for (int y = cy * chunkSize; y < (cy + 1) * chunkSize; y++) {
+                            for (int x = cx * chunkSize; x < (cx + 1) * chunkSize; x++) {
+                                double background = 1000 + 500 * Math.sin(x * 0.05) * Math.cos(y * 0.03) * Math.sin(z * 0.04);
+                                chunk.putShort((short) (background + random.nextInt(64)));
+                            }
+                        }
+                    }
+                    try (OutputStream output = new DeflaterOutputStream(
+                            Files.newOutputStream(array.resolve("0.0." + cz + "." + cy + "." + cx)), new Deflater(1))) {
+                        output.write(chunk.array());
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Measurement {
+
+        private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        private final String name;
+        private int count = 0;
+        private long nanos = 0;
+        private long heapBytes = 0;
+        private long directBytes = 0;
+        private long startNanos;
+        private long startHeapBytes;
+
+        Measurement(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            startHeapBytes = allocatedHeapBytes();
+            startNanos = System.nanoTime();
+        }
+
+        void stop(long newDirectBytes) {
+            nanos += System.nanoTime() - startNanos;
+            heapBytes += allocatedHeapBytes() - startHeapBytes;
+            directBytes += newDirectBytes;
+            count++;
+        }
+
+        /**
+         * @return bytes allocated on the heap by all threads, since loading uses worker threads
+         */
+        private static long allocatedHeapBytes() {
+            long total = 0;
+            for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                total += Math.max(0, bytes);
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.2f ms, %.2f MB heap and %.2f MB native allocated per brick",
+                    name, nanos / 1e6 / count, heapBytes / 1048576.0 / count, directBytes / 1048576.0 / count);
+        }
+    }
+}
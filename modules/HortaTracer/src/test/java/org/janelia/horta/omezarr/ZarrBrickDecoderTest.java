@@ -0,0 +1,156 @@
+package org.janelia.horta.omezarr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.aind.omezarr.OmeZarrDataset;
+import org.aind.omezarr.OmeZarrGroup;
+import org.janelia.gltools.texture.Texture3d;
+import org.janelia.horta.blocks.OmeZarrBlockTileKey;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares bricks decoded by {@link ZarrBrickDecoder} to the same bricks loaded through raster slices, voxel by
+ * voxel, on a small zlib compressed volume of 50 x 60 x 70 voxels in chunks of 32^3, so the chunks along the
+ * far sides are partly outside of the array.
+ */
+public class ZarrBrickDecoderTest {
+
+    private static final int[] VOLUME_SIZE = {50, 60, 70};
+    private static final int CHUNK_SIZE = 32;
+    private static final int BRICK_SIZE = 32;
+
+    private Path directory;
+    private OmeZarrDataset dataset;
+    private ZarrBrickDecoder decoder;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("omezarr-brick");
+        writeVolume(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void openVolume() throws IOException {
+        OmeZarrGroup group = OmeZarrGroup.open(directory);
+        dataset = group.getAttributes().getMultiscales()[0].getDatasets().get(0);
+        decoder = new ZarrBrickDecoder(new ZarrChunkCache(directory.toString(), location -> {
+            Path path = directory.resolve(location);
+            return Files.exists(path) ? Files.newInputStream(path) : null;
+        }, null));
+    }
+
+    @Test
+    public void testBrickAcrossChunks() throws Exception {
+        openVolume();
+        // Covers parts of eight chunks
+        assertSameVoxels(16, 16, 16);
+    }
+
+    @Test
+    public void testBrickAtTheEdgeOfTheArray() throws Exception {
+        openVolume();
+        // Reaches past the array in X and Z, where only the fill value is
+        assertSameVoxels(32, 16, 48);
+    }
+
+    @Test
+    public void testBrickWithMissingChunk() throws Exception {
+        // A chunk which was never written holds the fill value
+        Files.delete(directory.resolve("0").resolve("0.0.1.1.0"));
+        openVolume();
+        assertSameVoxels(16, 16, 16);
+    }
+
+    private void assertSameVoxels(int x, int y, int z) throws IOException {
+        OmeZarrBlockTileKey brick = new OmeZarrBlockTileKey(dataset, 0,
+                new int[] {BRICK_SIZE, BRICK_SIZE, BRICK_SIZE}, new int[] {x, y, z}, new double[] {1, 1, 1}, 1);
+        Texture3d expected = brick.loadBrick(null);
+        Texture3d actual = decoder.decode(dataset.getPath(), brick.getReadShape(), brick.getReadOffset());
+        Assert.assertNotNull(expected);
+        Assert.assertNotNull(actual);
+        try {
+            Assert.assertEquals(BRICK_SIZE, actual.getWidth());
+            Assert.assertEquals(expected.getWidth(), actual.getWidth());
+            Assert.assertEquals(expected.getHeight(), actual.getHeight());
+            Assert.assertEquals(expected.getDepth(), actual.getDepth());
+            Assert.assertEquals(expected.getNumberOfComponents(), actual.getNumberOfComponents());
+            Assert.assertEquals(expected.getBytesPerIntensity(), actual.getBytesPerIntensity());
+            ShortBuffer expectedVoxels = expected.getPixels().asShortBuffer();
+            ShortBuffer actualVoxels = actual.getPixels().asShortBuffer();
+            for (int vz = 0; vz < BRICK_SIZE; vz++) {
+                for (int vy = 0; vy < BRICK_SIZE; vy++) {
+                    for (int vx = 0; vx < BRICK_SIZE; vx++) {
+                        int i = (vz * BRICK_SIZE + vy) * BRICK_SIZE + vx;
+                        Assert.assertEquals("voxel " + (x + vx) + "," + (y + vy) + "," + (z + vz),
+                                expectedVoxels.get(i), actualVoxels.get(i));
+                    }
+                }
+            }
+        } finally {
+            expected.deallocateRam();
+            actual.deallocateRam();
+        }
+    }
+
+    /**
+     * Writes a single channel, single time point, unsigned 16-bit volume where each voxel is set by its location,
+     * and the fill value is 7 so that it differs from an unset texture.
+     */
+    private static void writeVolume(Path directory) throws IOException {
+        Files.write(directory.resolve(".zgroup"), "{\"zarr_format\": 2}".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(".zattrs"), ("{\"multiscales\": [{\"version\": \"0.4\", \"name\": \"synthetic\", "
+                + "\"axes\": [{\"name\": \"t\", \"type\": \"time\", \"unit\": \"millisecond\"}, "
+                + "{\"name\": \"c\", \"type\": \"channel\"}, "
+                + "{\"name\": \"z\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"y\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"x\", \"type\": \"space\", \"unit\": \"micrometer\"}], "
+                + "\"datasets\": [{\"path\": \"0\", \"coordinateTransformations\": "
+                + "[{\"type\": \"scale\", \"scale\": [1.0, 1.0, 1.0, 1.0, 1.0]}]}]}]}").getBytes(StandardCharsets.UTF_8));
+        Path array = Files.createDirectories(directory.resolve("0"));
+        Files.write(array.resolve(".zarray"), String.format("{\"zarr_format\": 2, "
+                + "\"shape\": [1, 1, %d, %d, %d], \"chunks\": [1, 1, %d, %d, %d], \"dtype\": \"<u2\", "
+                + "\"compressor\": {\"id\": \"zlib\", \"level\": 1}, \"fill_value\": 7, \"order\": \"C\", \"filters\": null}",
+                VOLUME_SIZE[2], VOLUME_SIZE[1], VOLUME_SIZE[0], CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE).getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer chunk = ByteBuffer.allocate(2 * CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int cz = 0; cz * CHUNK_SIZE < VOLUME_SIZE[2]; cz++) {
+            for (int cy = 0; cy * CHUNK_SIZE < VOLUME_SIZE[1]; cy++) {
+                for (int cx = 0; cx * CHUNK_SIZE < VOLUME_SIZE[0]; cx++) {
+                    chunk.clear();
+                    // Edge chunks are stored whole, with their parts outside of the array unused
+                    for (int z = cz * CHUNK_SIZE; z < (cz + 1) * CHUNK_SIZE; z++) {
+                        for (int y = cy * CHUNK_SIZE; y < (cy + 1) * CHUNK_SIZE; y++) {
+                            for (int x = cx * CHUNK_SIZE; x < (cx + 1) * CHUNK_SIZE; x++) {
+                                chunk.putShort((short) (1000 + x + 100 * y + 10000 * z));
+                            }
+                        }
+                    }
+                    try (OutputStream output = new DeflaterOutputStream(
+                            Files.newOutputStream(array.resolve("0.0." + cz + "." + cy + "." + cx)), new Deflater(1))) {
+                        output.write(chunk.array());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.janelia.horta.omezarr;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.google.common.io.ByteStreams;
+import org.janelia.filecacheutils.LocalFileCacheStorage;
+import org.janelia.filecacheutils.LocalFileCacheStorageBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ZarrChunkCache} class on an in-memory store with one 96^3 array in chunks of 32^3, where
+ * each chunk holds its own location.
+ */
+public class ZarrChunkCacheTest {
+
+    private static final int CHUNK_SIZE = 32;
+    private static final int CHUNK_COUNT = 3;
+
+    private final Map<String, byte[]> store = new HashMap<>();
+    private final Map<String, AtomicInteger> fetchCounts = new ConcurrentHashMap<>();
+
+    public ZarrChunkCacheTest() {
+        store.put("0/.zarray", String.format("{\"zarr_format\": 2, \"shape\": [%d, %d, %d], \"chunks\": [%d, %d, %d], "
+                        + "\"dtype\": \"<u2\", \"compressor\": null, \"fill_value\": 0, \"order\": \"C\"}",
+                CHUNK_SIZE * CHUNK_COUNT, CHUNK_SIZE * CHUNK_COUNT, CHUNK_SIZE * CHUNK_COUNT,
+                CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE).getBytes(StandardCharsets.UTF_8));
+        for (int z = 0; z < CHUNK_COUNT; z++) {
+            for (int y = 0; y < CHUNK_COUNT; y++) {
+                for (int x = 0; x < CHUNK_COUNT; x++) {
+                    String location = chunkLocation(z, y, x);
+                    store.put(location, location.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private static String chunkLocation(int z, int y, int x) {
+        return "0/" + z + "." + y + "." + x;
+    }
+
+    private InputStream fetch(String location) {
+        fetchCounts.computeIfAbsent(location, l -> new AtomicInteger()).incrementAndGet();
+        byte[] content = store.get(location);
+        return content == null ? null : new ByteArrayInputStream(content);
+    }
+
+    private static String read(ZarrChunkCache chunkCache, String location) throws IOException {
+        try (InputStream input = chunkCache.getInputStream(location)) {
+            return input == null ? null : new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads every chunk of a brick of 2^3 chunks, while the brick is prefetched.
+     */
+    private static void readBrick(ZarrChunkCache chunkCache, ZarrChunkCache.Prefetch prefetch, int firstChunk) throws IOException {
+        Assert.assertEquals(8, prefetch.getChunkCount());
+        for (int z = firstChunk; z < firstChunk + 2; z++) {
+            for (int y = firstChunk; y < firstChunk + 2; y++) {
+                for (int x = firstChunk; x < firstChunk + 2; x++) {
+                    Assert.assertEquals(chunkLocation(z, y, x), read(chunkCache, chunkLocation(z, y, x)));
+                }
+            }
+        }
+    }
+
+    private static ZarrChunkCache.Prefetch prefetchBrick(ZarrChunkCache chunkCache, int firstChunk) {
+        int offset = firstChunk * CHUNK_SIZE;
+        return chunkCache.prefetch("0", new int[] {2 * CHUNK_SIZE, 2 * CHUNK_SIZE, 2 * CHUNK_SIZE}, new int[] {offset, offset, offset});
+    }
+
+    @Test
+    public void overlappingBricksFetchSharedChunksOnce() throws Exception {
+        ZarrChunkCache chunkCache = new ZarrChunkCache("store", this::fetch, null);
+        // The bricks share chunk 1.1.1
+        try (ZarrChunkCache.Prefetch first = prefetchBrick(chunkCache, 0);
+             ZarrChunkCache.Prefetch second = prefetchBrick(chunkCache, 1)) {
+            readBrick(chunkCache, first, 0);
+            readBrick(chunkCache, second, 1);
+        }
+        Assert.assertEquals(15, chunkCache.getFetchCount());
+        Assert.assertEquals(1, fetchCounts.get(chunkLocation(1, 1, 1)).get());
+        for (Map.Entry<String, AtomicInteger> entry : fetchCounts.entrySet()) {
+            if (!entry.getKey().endsWith(".zarray")) {
+                Assert.assertEquals(entry.getKey(), 1, entry.getValue().get());
+            }
+        }
+        // Once both bricks are closed, the chunks are fetched again
+        Assert.assertEquals(chunkLocation(1, 1, 1), read(chunkCache, chunkLocation(1, 1, 1)));
+        Assert.assertEquals(2, fetchCounts.get(chunkLocation(1, 1, 1)).get());
+    }
+
+    @Test
+    public void failedFetchIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ZarrChunkCache chunkCache = new ZarrChunkCache("store", location -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("Store unavailable");
+            }
+            return fetch(location);
+        }, null);
+        try {
+            read(chunkCache, chunkLocation(0, 0, 0));
+            Assert.fail("Expected the first fetch to fail");
+        } catch (IOException e) {
+            Assert.assertEquals("Store unavailable", e.getMessage());
+        }
+        Assert.assertEquals(0, chunkCache.getFetchCount());
+        Assert.assertEquals(chunkLocation(0, 0, 0), read(chunkCache, chunkLocation(0, 0, 0)));
+        Assert.assertEquals(1, chunkCache.getFetchCount());
+    }
+
+    @Test
+    public void chunksAreReadFromTheDiskCache() throws Exception {
+        Path cacheDir = Files.createTempDirectory("zarr-chunk-cache");
+        try {
+            LocalFileCacheStorage diskStorage = new LocalFileCacheStorageBuilder()
+                    .withCacheDir(cacheDir)
+                    .withCapacityInKB(1024)
+                    .withDisabled(false)
+                    .build();
+            ZarrChunkCache chunkCache = new ZarrChunkCache("store", this::fetch, diskStorage);
+            Assert.assertEquals(chunkLocation(2, 1, 0), read(chunkCache, chunkLocation(2, 1, 0)));
+            Assert.assertEquals(1, chunkCache.getFetchCount());
+
+            // A cache over the same storage which cannot reach the store has to find the chunk on disk.
+            // Failures are not kept, so this can be tried until the chunk has been written.
+            ZarrChunkCache offlineCache = new ZarrChunkCache("store", location -> {
+                throw new IOException("Store unavailable");
+            }, diskStorage);
+            String content = null;
+            for (int attempt = 0; content == null; attempt++) {
+                try {
+                    content = read(offlineCache, chunkLocation(2, 1, 0));
+                } catch (IOException e) {
+                    Assert.assertTrue("Chunk was not written to the disk cache", attempt < 100);
+                    Thread.sleep(50);
+                }
+            }
+            Assert.assertEquals(chunkLocation(2, 1, 0), content);
+            Assert.assertEquals(1, offlineCache.getDiskHitCount());
+            Assert.assertEquals(0, offlineCache.getFetchCount());
+
+            // Other stores do not share the chunk
+            ZarrChunkCache otherCache = new ZarrChunkCache("other", this::fetch, diskStorage);
+            read(otherCache, chunkLocation(2, 1, 0));
+            Assert.assertEquals(0, otherCache.getDiskHitCount());
+            Assert.assertEquals(1, otherCache.getFetchCount());
+        } finally {
+            try (Stream<Path> paths = Files.walk(cacheDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -162,12 +162,35 @@ public class SkeletonController implements NextParentListener {
     // -------------------- neuron-level events
     @Subscribe
     public void neuronCreated(NeuronCreateEvent event) {
+        if (event.isWorkspaceLoad()) {
+            workspaceNeuronsArrived(event.getNeurons());
+            return;
+        }
         for (TmNeuronMetadata neuron: event.getNeurons()) {
             log.info("neuronCreated: {}", neuron);
             processNeuronCreated(neuron);
         }
     }
 
+    /**
+     * Adds a batch of neurons which arrived while the workspace was loading. As in
+     * loadWorkspaceNeurons, the anchors are updated once for the whole batch, and
+     * the next parent is left alone.
+     */
+    private void workspaceNeuronsArrived(Collection<TmNeuronMetadata> neurons) {
+        log.debug("Adding {} neurons loaded with the workspace", neurons.size());
+        setSkipSkeletonChange(true);
+        try {
+            for (TmNeuronMetadata neuron : neurons) {
+                processNeuronCreated(neuron, false);
+            }
+        }
+        finally {
+            setSkipSkeletonChange(false);
+        }
+        skeletonChanged(true);
+    }
+
     @Subscribe
     public void neuronDeleted(NeuronDeleteEvent event) {
         Collection<TmNeuronMetadata> neurons = event.getNeurons();
@@ -211,6 +234,10 @@ public class SkeletonController implements NextParentListener {
     }
 
     private void processNeuronCreated(TmNeuronMetadata neuron) {
+        processNeuronCreated(neuron, true);
+    }
+
+    private void processNeuronCreated(TmNeuronMetadata neuron, boolean selectNextParent) {
         List<TmGeoAnnotation> addedAnchorList = new ArrayList<>();
         List<TmAnchoredPath> annList = new ArrayList<>();
 
@@ -227,7 +254,12 @@ public class SkeletonController implements NextParentListener {
             annList.add(path);
         }
 
-        processAnchorsAdded(addedAnchorList, null);
+        if (selectNextParent) {
+            processAnchorsAdded(addedAnchorList, null);
+        }
+        else {
+            addAnchors(addedAnchorList);
+        }
         //log.info("  added {} anchors", addedAnchorList.size());
 
         processAnchoredVoxelPathsAdded(TAPlist2AVPlist(neuron.getId(), annList));
@@ -336,10 +368,7 @@ public class SkeletonController implements NextParentListener {
     }
 
     private void processAnchorsAdded(Collection<TmGeoAnnotation> vertexList, TmGeoAnnotation nextParent) {
-        List<Anchor> anchors = skeleton.addTmGeoAnchors(new ArrayList<>(vertexList));
-        for (Anchor anchor: anchors) {
-            anchor.setSkeletonAnchorListener(skeletonAnchorListener);
-        }
+        List<Anchor> anchors = addAnchors(vertexList);
         if (nextParent != null) {
             setNextParent(nextParent.getId());
         } else {
@@ -352,6 +381,14 @@ public class SkeletonController implements NextParentListener {
         skeletonChanged();
     }
 
+    private List<Anchor> addAnchors(Collection<TmGeoAnnotation> vertexList) {
+        List<Anchor> anchors = skeleton.addTmGeoAnchors(new ArrayList<>(vertexList));
+        for (Anchor anchor: anchors) {
+            anchor.setSkeletonAnchorListener(skeletonAnchorListener);
+        }
+        return anchors;
+    }
+
     @Subscribe
     public void anchorDeleted(AnnotationDeleteEvent event) {
         Collection<TmGeoAnnotation> annotations = event.getAnnotations();
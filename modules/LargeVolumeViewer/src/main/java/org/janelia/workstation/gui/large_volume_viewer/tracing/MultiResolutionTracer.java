@@ -0,0 +1,243 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.TileFormat;
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coarse-to-fine path tracing between two distant voxels.
+ *
+ * The path is first traced on a downsampled zoom level over the whole
+ * bounding box. The coarse path is then cut into short pieces, and each
+ * piece is refined at full resolution inside its own small subvolume, so
+ * only a corridor around the coarse path is ever loaded at full resolution.
+ */
+public class MultiResolutionTracer {
+
+    /**
+     * Supplies raster data for a box; corners are inclusive and share a zoom level.
+     */
+    public interface SubvolumeLoader {
+        Subvolume loadSubvolume(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(MultiResolutionTracer.class);
+
+    private static final ZoomLevel FULL_RESOLUTION = new ZoomLevel(0);
+
+    private final TileFormat tileFormat;
+    private final SubvolumeLoader loader;
+
+    private int coarseZoom = 2;
+    // padding, in coarse voxels, around the endpoints for the coarse trace
+    private int coarsePadding = 4;
+    // number of coarse path voxels refined together in one full resolution subvolume
+    private int waypointSpacing = 8;
+    // padding, in full resolution voxels, around each refined piece of the path
+    private int corridorPadding = 10;
+    private boolean bidirectional = true;
+
+    private long loadedVoxelCount = 0;
+    private long examinedVoxelCount = 0;
+
+    public MultiResolutionTracer(TileFormat tileFormat, SubvolumeLoader loader) {
+        this.tileFormat = tileFormat;
+        this.loader = loader;
+    }
+
+    public void setCoarseZoom(int coarseZoom) {
+        this.coarseZoom = coarseZoom;
+    }
+
+    public void setCoarsePadding(int coarsePadding) {
+        this.coarsePadding = coarsePadding;
+    }
+
+    public void setWaypointSpacing(int waypointSpacing) {
+        this.waypointSpacing = waypointSpacing;
+    }
+
+    public void setCorridorPadding(int corridorPadding) {
+        this.corridorPadding = corridorPadding;
+    }
+
+    public void setBidirectional(boolean bidirectional) {
+        this.bidirectional = bidirectional;
+    }
+
+    /**
+     * @return voxels loaded, at any resolution, by the most recent trace
+     */
+    public long getLoadedVoxelCount() {
+        return loadedVoxelCount;
+    }
+
+    /**
+     * @return voxels examined, at any resolution, by the most recent trace
+     */
+    public long getExaminedVoxelCount() {
+        return examinedVoxelCount;
+    }
+
+    /**
+     * @param start full resolution start voxel
+     * @param goal full resolution goal voxel
+     * @param timeout time budget in seconds, for loading and tracing together
+     * @return full resolution path from start to goal inclusive, or null on failure
+     */
+    public List<ZoomedVoxelIndex> trace(ZoomedVoxelIndex start, ZoomedVoxelIndex goal, double timeout) {
+        loadedVoxelCount = 0;
+        examinedVoxelCount = 0;
+        long deadline = System.currentTimeMillis() + (long) (timeout * 1000);
+
+        int zoom = Math.max(0, Math.min(coarseZoom, tileFormat.getZoomLevelCount() - 1));
+        if (zoom == 0) {
+            return traceFullResolution(start, goal, deadline);
+        }
+        ZoomLevel zoomLevel = new ZoomLevel(zoom);
+        ZoomedVoxelIndex coarseStart = toCoarse(start, zoomLevel);
+        ZoomedVoxelIndex coarseGoal = toCoarse(goal, zoomLevel);
+        Subvolume coarseVolume = loadBox(coarseStart, coarseGoal, coarsePadding);
+        FastAStar coarseTracer = createTracer(coarseVolume, zoomLevel);
+        List<ZoomedVoxelIndex> coarsePath = coarseTracer.trace(coarseStart, coarseGoal, secondsUntil(deadline) / 2);
+        examinedVoxelCount += coarseTracer.getExaminedVoxelCount();
+        if (coarsePath == null) {
+            log.info("Coarse trace failed; tracing at full resolution");
+            return traceFullResolution(start, goal, deadline);
+        }
+
+        List<ZoomedVoxelIndex> result = new ArrayList<>();
+        result.add(start);
+        ZoomedVoxelIndex segmentStart = start;
+        int segmentBegin = 0;
+        while (segmentBegin < coarsePath.size() - 1) {
+            int segmentEnd = Math.min(segmentBegin + waypointSpacing, coarsePath.size() - 1);
+            // The coarse path voxels of this piece, at full resolution, define the corridor
+            List<ZoomedVoxelIndex> corridor = new ArrayList<>();
+            for (int i = segmentBegin; i <= segmentEnd; ++i) {
+                corridor.add(blockCorner(coarsePath.get(i), zoomLevel, false));
+                corridor.add(blockCorner(coarsePath.get(i), zoomLevel, true));
+            }
+            corridor.add(segmentStart);
+            boolean lastSegment = segmentEnd == coarsePath.size() - 1;
+            if (lastSegment) {
+                corridor.add(goal);
+            }
+            Subvolume fineVolume = loadBox(corridor, corridorPadding);
+            ZoomedVoxelIndex segmentGoal = lastSegment
+                    ? goal
+                    : brightestVoxelInBlock(fineVolume, coarsePath.get(segmentEnd), zoomLevel);
+            FastAStar fineTracer = createTracer(fineVolume, FULL_RESOLUTION);
+            List<ZoomedVoxelIndex> piece = fineTracer.trace(segmentStart, segmentGoal, secondsUntil(deadline));
+            examinedVoxelCount += fineTracer.getExaminedVoxelCount();
+            if (piece == null) {
+                log.warn("Full resolution refinement failed near {}", segmentGoal);
+                return null;
+            }
+            // first voxel duplicates the end of the previous piece
+            result.addAll(piece.subList(1, piece.size()));
+            segmentStart = segmentGoal;
+            segmentBegin = segmentEnd;
+        }
+        log.info("Multi-resolution trace loaded {} voxels and examined {} voxels", loadedVoxelCount, examinedVoxelCount);
+        return result;
+    }
+
+    private List<ZoomedVoxelIndex> traceFullResolution(ZoomedVoxelIndex start, ZoomedVoxelIndex goal, long deadline) {
+        Subvolume volume = loadBox(start, goal, corridorPadding);
+        FastAStar tracer = createTracer(volume, FULL_RESOLUTION);
+        List<ZoomedVoxelIndex> path = tracer.trace(start, goal, secondsUntil(deadline));
+        examinedVoxelCount += tracer.getExaminedVoxelCount();
+        return path;
+    }
+
+    private FastAStar createTracer(Subvolume volume, ZoomLevel zoomLevel) {
+        FastAStar tracer = new FastAStar(volume);
+        tracer.setBidirectional(bidirectional);
+        double[] voxelSizes = tileFormat.getVoxelMicrometers();
+        int[] scale = zoomScale(zoomLevel);
+        tracer.setVoxelSizes(voxelSizes[0] * scale[0], voxelSizes[1] * scale[1], voxelSizes[2] * scale[2]);
+        return tracer;
+    }
+
+    private Subvolume loadBox(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2, int padding) {
+        List<ZoomedVoxelIndex> corners = new ArrayList<>();
+        corners.add(corner1);
+        corners.add(corner2);
+        return loadBox(corners, padding);
+    }
+
+    // Loads the padded bounding box of some voxels, which must share a zoom level
+    private Subvolume loadBox(List<ZoomedVoxelIndex> voxels, int padding) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (ZoomedVoxelIndex v : voxels) {
+            minX = Math.min(minX, v.getX());
+            minY = Math.min(minY, v.getY());
+            minZ = Math.min(minZ, v.getZ());
+            maxX = Math.max(maxX, v.getX());
+            maxY = Math.max(maxY, v.getY());
+            maxZ = Math.max(maxZ, v.getZ());
+        }
+        ZoomLevel zoomLevel = voxels.get(0).getZoomLevel();
+        Subvolume result = loader.loadSubvolume(
+                new ZoomedVoxelIndex(zoomLevel, minX - padding, minY - padding, minZ - padding),
+                new ZoomedVoxelIndex(zoomLevel, maxX + padding, maxY + padding, maxZ + padding));
+        loadedVoxelCount += (long) result.getExtent().getX() * result.getExtent().getY() * result.getExtent().getZ();
+        return result;
+    }
+
+    private ZoomedVoxelIndex toCoarse(ZoomedVoxelIndex fine, ZoomLevel zoomLevel) {
+        TileFormat.VoxelXyz voxel = tileFormat.voxelXyzForZoomedVoxelIndex(fine, CoordinateAxis.Z);
+        return tileFormat.zoomedVoxelIndexForVoxelXyz(voxel, zoomLevel, CoordinateAxis.Z);
+    }
+
+    // Full resolution corner of the block of voxels covered by one coarse voxel
+    private ZoomedVoxelIndex blockCorner(ZoomedVoxelIndex coarse, ZoomLevel zoomLevel, boolean far) {
+        TileFormat.VoxelXyz voxel = tileFormat.voxelXyzForZoomedVoxelIndex(coarse, CoordinateAxis.Z);
+        int[] scale = zoomScale(zoomLevel);
+        int offset = far ? 1 : 0;
+        return new ZoomedVoxelIndex(FULL_RESOLUTION,
+                voxel.getX() + offset * (scale[0] - 1),
+                voxel.getY() + offset * (scale[1] - 1),
+                voxel.getZ() + offset * (scale[2] - 1));
+    }
+
+    private ZoomedVoxelIndex brightestVoxelInBlock(Subvolume volume, ZoomedVoxelIndex coarse, ZoomLevel zoomLevel) {
+        ZoomedVoxelIndex near = blockCorner(coarse, zoomLevel, false);
+        ZoomedVoxelIndex far = blockCorner(coarse, zoomLevel, true);
+        ZoomedVoxelIndex result = near;
+        int maxIntensity = -1;
+        for (int z = near.getZ(); z <= far.getZ(); ++z) {
+            for (int y = near.getY(); y <= far.getY(); ++y) {
+                for (int x = near.getX(); x <= far.getX(); ++x) {
+                    int intensity = volume.getIntensityGlobal(x, y, z, 0);
+                    if (intensity > maxIntensity) {
+                        maxIntensity = intensity;
+                        result = new ZoomedVoxelIndex(FULL_RESOLUTION, x, y, z);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Full resolution voxels per zoomed voxel, along each axis
+    private int[] zoomScale(ZoomLevel zoomLevel) {
+        TileFormat.VoxelXyz unit = tileFormat.voxelXyzForZoomedVoxelIndex(
+                new ZoomedVoxelIndex(zoomLevel, 1, 1, 1), CoordinateAxis.Z);
+        return new int[] {unit.getX(), unit.getY(), unit.getZ()};
+    }
+
+    private static double secondsUntil(long deadline) {
+        return Math.max(0, deadline - System.currentTimeMillis()) / 1000.0;
+    }
+
+}
@@ -6,7 +6,9 @@ import org.janelia.workstation.octree.ZoomLevel;
 import org.janelia.workstation.octree.ZoomedVoxelIndex;
 import org.janelia.workstation.controller.tileimagery.VoxelPosition;
 import org.janelia.workstation.core.workers.BackgroundWorker;
+import org.janelia.workstation.controller.tileimagery.SharedVolumeImage;
 import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.TextureCache;
 import org.janelia.workstation.controller.tileimagery.TileFormat;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 
@@ -29,6 +31,9 @@ public class PathTraceToParentWorker extends BackgroundWorker {
     // timeout in seconds
     private double timeout = 10.0;
 
+    // anchors farther apart than this, in voxels along any axis, are traced coarse-to-fine
+    private static final int MULTI_RESOLUTION_MIN_SPAN = 100;
+
     public PathTraceToParentWorker(PathTraceToParentRequest request) {
         this.request = request;
     }
@@ -65,26 +70,31 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         ZoomedVoxelIndex zv2 = zoomedVoxelIndexForVoxelVec3(
                 vec3_2, tileFormat, zoomLevel);
 
-        // Create some padding around the neurite ends.
-        final int padPixels = 10;
-        ZoomedVoxelIndex v1pad = new ZoomedVoxelIndex(
-                zv1.getZoomLevel(),
-                Math.min(zv1.getX(), zv2.getX()) - padPixels,
-                Math.min(zv1.getY(), zv2.getY()) - padPixels,
-                Math.min(zv1.getZ(), zv2.getZ()) - padPixels);
-        ZoomedVoxelIndex v2pad = new ZoomedVoxelIndex(
-                zv2.getZoomLevel(),
-                Math.max(zv1.getX(), zv2.getX()) + padPixels,
-                Math.max(zv1.getY(), zv2.getY()) + padPixels,
-                Math.max(zv1.getZ(), zv2.getZ()) + padPixels);
-
-        Subvolume subvolume = new Subvolume(v1pad, v2pad, request.getImageVolume(),
-                request.getTextureCache());
-        AStar astar = new AStar(subvolume);
-        astar.setVoxelSizes(tileFormat.getVoxelMicrometers());
+        final SharedVolumeImage imageVolume = request.getImageVolume();
+        final TextureCache textureCache = request.getTextureCache();
+        // keep the full resolution pieces, to look up intensities along the path afterwards
+        final List<Subvolume> fullResolutionVolumes = new ArrayList<>();
+        MultiResolutionTracer.SubvolumeLoader loader = new MultiResolutionTracer.SubvolumeLoader() {
+            @Override
+            public Subvolume loadSubvolume(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+                Subvolume subvolume = new Subvolume(corner1, corner2, imageVolume, textureCache);
+                if (corner1.getZoomLevel().getLog2ZoomOutFactor() == 0) {
+                    fullResolutionVolumes.add(subvolume);
+                }
+                return subvolume;
+            }
+        };
+        MultiResolutionTracer tracer = new MultiResolutionTracer(tileFormat, loader);
+        int span = Math.max(Math.abs(zv1.getX() - zv2.getX()),
+                Math.max(Math.abs(zv1.getY() - zv2.getY()), Math.abs(zv1.getZ() - zv2.getZ())));
+        if (span < MULTI_RESOLUTION_MIN_SPAN) {
+            // nearby anchors: a single full resolution box is cheap enough
+            tracer.setCoarseZoom(0);
+            tracer.setBidirectional(false);
+        }
 
         setStatus("Tracing");
-        List<ZoomedVoxelIndex> path = astar.trace(zv1, zv2, timeout); // This is the slow part
+        List<ZoomedVoxelIndex> path = tracer.trace(zv1, zv2, timeout); // This is the slow part
         if (path == null) {
             // probably timed out; I don't see any other way it could fail
             // we don't do anything if we fail (would be nice to visually indicated it)
@@ -100,8 +110,7 @@ public class PathTraceToParentWorker extends BackgroundWorker {
             }
             List<Integer> intensities = new ArrayList<>();
             for (VoxelPosition p : reducedPath) {
-                int intensity = subvolume.getIntensityGlobal(p, 0);
-                intensities.add(intensity);
+                intensities.add(intensityAt(fullResolutionVolumes, p));
             }
 
             //DEBUG dumpFullAndSimplified( path, reducedPath );
@@ -124,6 +133,22 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         FrameworkAccess.handleException(error);
     }
 
+    private int intensityAt(List<Subvolume> subvolumes, VoxelPosition p) {
+        for (Subvolume subvolume : subvolumes) {
+            ZoomedVoxelIndex origin = subvolume.getOrigin();
+            int x = p.getX() - origin.getX();
+            int y = p.getY() - origin.getY();
+            int z = p.getZ() - origin.getZ();
+            if (x >= 0 && y >= 0 && z >= 0
+                    && x < subvolume.getExtent().getX()
+                    && y < subvolume.getExtent().getY()
+                    && z < subvolume.getExtent().getZ()) {
+                return subvolume.getIntensityGlobal(p, 0);
+            }
+        }
+        return 0;
+    }
+
     private ZoomedVoxelIndex zoomedVoxelIndexForVoxelVec3(Vec3 vec3, TileFormat tileFormat, ZoomLevel zoomLevel) {
         TileFormat.VoxelXyz vox = new TileFormat.VoxelXyz(vec3);
         ZoomedVoxelIndex zv = tileFormat.zoomedVoxelIndexForVoxelXyz(
@@ -0,0 +1,171 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.it.jacs.model.TestCategories;
+import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class TestFastAStar {
+
+    private static final ZoomLevel ZOOM = new ZoomLevel(0);
+    private static final int BACKGROUND = 100;
+    private static final int FOREGROUND = 3000;
+
+    @Test
+    @Category(TestCategories.FastTests.class)
+    public void testTraceFollowsTube() {
+        int size = 40;
+        Subvolume subvolume = createTubeVolume(size, size, size, 2.0, 0, 0L);
+        ZoomedVoxelIndex start = tubePoint(size, size, size, 2);
+        ZoomedVoxelIndex goal = tubePoint(size, size, size, size - 3);
+
+        FastAStar astar = new FastAStar(subvolume);
+        List<ZoomedVoxelIndex> path = astar.trace(start, goal, 10.0);
+        assertNotNull(path);
+        assertEquals(start, path.get(0));
+        assertEquals(goal, path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); ++i) {
+            ZoomedVoxelIndex a = path.get(i - 1);
+            ZoomedVoxelIndex b = path.get(i);
+            assertTrue(Math.abs(a.getX() - b.getX()) <= 1);
+            assertTrue(Math.abs(a.getY() - b.getY()) <= 1);
+            assertTrue(Math.abs(a.getZ() - b.getZ()) <= 1);
+            assertEquals(FOREGROUND, subvolume.getIntensityGlobal(b, 0));
+        }
+    }
+
+    @Test
+    @Category(TestCategories.FastTests.class)
+    public void testNoMoreCostlyThanAStar() {
+        int size = 30;
+        Subvolume subvolume = createTubeVolume(size, size, size, 2.0, 4, 1L);
+        ZoomedVoxelIndex start = tubePoint(size, size, size, 3);
+        ZoomedVoxelIndex goal = tubePoint(size, size, size, size - 4);
+
+        FastAStar fast = new FastAStar(subvolume);
+        List<ZoomedVoxelIndex> fastPath = fast.trace(start, goal, 10.0);
+        List<ZoomedVoxelIndex> slowPath = new AStar(subvolume).trace(start, goal, 100.0);
+        assertNotNull(fastPath);
+        assertNotNull(slowPath);
+        // Ties may be broken differently, but the fast path must be no more costly
+        double fastCost = fast.pathCost(fastPath);
+        double slowCost = fast.pathCost(slowPath);
+        assertTrue(fastCost <= slowCost * (1.0 + 1e-9));
+    }
+
+    @Test
+    @Category(TestCategories.FastTests.class)
+    public void testBidirectionalMatchesUnidirectional() {
+        int size = 40;
+        Subvolume subvolume = createTubeVolume(size, size, size, 2.0, 6, 4L);
+        ZoomedVoxelIndex start = tubePoint(size, size, size, 2);
+        ZoomedVoxelIndex goal = tubePoint(size, size, size, size - 3);
+
+        FastAStar unidirectional = new FastAStar(subvolume);
+        List<ZoomedVoxelIndex> path1 = unidirectional.trace(start, goal, 10.0);
+        FastAStar bidirectional = new FastAStar(subvolume);
+        bidirectional.setBidirectional(true);
+        List<ZoomedVoxelIndex> path2 = bidirectional.trace(start, goal, 10.0);
+        assertNotNull(path1);
+        assertNotNull(path2);
+        assertEquals(start, path2.get(0));
+        assertEquals(goal, path2.get(path2.size() - 1));
+        assertEquals(unidirectional.pathCost(path1), bidirectional.pathCost(path2),
+                1e-9 * unidirectional.pathCost(path1));
+    }
+
+    @Test
+    @Category(TestCategories.FastTests.class)
+    public void testEndpointOutsideVolume() {
+        Subvolume subvolume = createTubeVolume(10, 10, 10, 1.0, 0, 2L);
+        ZoomedVoxelIndex start = new ZoomedVoxelIndex(ZOOM, 1, 1, 1);
+        ZoomedVoxelIndex goal = new ZoomedVoxelIndex(ZOOM, 20, 1, 1);
+        assertNull(new FastAStar(subvolume).trace(start, goal, 1.0));
+    }
+
+    /**
+     * Compares voxel throughput against the original AStar on a synthetic
+     * tubular volume with a gap, which forces a broad search through the
+     * noisy background. Prints results rather than asserting on timings.
+     */
+    @Test
+    @Category(TestCategories.PrototypeTests.class)
+    public void benchmarkAgainstAStar() {
+        int sx = 160, sy = 120, sz = 80;
+        Subvolume subvolume = createTubeVolume(sx, sy, sz, 3.0, 12, 3L);
+        ZoomedVoxelIndex start = tubePoint(sx, sy, sz, 2);
+        ZoomedVoxelIndex goal = tubePoint(sx, sy, sz, sx - 3);
+
+        // warm up
+        new FastAStar(subvolume).trace(start, goal, 30.0);
+
+        FastAStar fast = new FastAStar(subvolume);
+        long t0 = System.nanoTime();
+        List<ZoomedVoxelIndex> fastPath = fast.trace(start, goal, 60.0);
+        double fastSeconds = (System.nanoTime() - t0) / 1e9;
+        assertNotNull(fastPath);
+        System.out.println(String.format("FastAStar: %d voxels in %.3f s, %.0f voxels/s",
+                fast.getExaminedVoxelCount(), fastSeconds, fast.getExaminedVoxelCount() / fastSeconds));
+
+        FastAStar both = new FastAStar(subvolume);
+        both.setBidirectional(true);
+        t0 = System.nanoTime();
+        assertNotNull(both.trace(start, goal, 60.0));
+        double bothSeconds = (System.nanoTime() - t0) / 1e9;
+        System.out.println(String.format("FastAStar bidirectional: %d voxels in %.3f s",
+                both.getExaminedVoxelCount(), bothSeconds));
+
+        AStar slow = new AStar(subvolume);
+        t0 = System.nanoTime();
+        List<ZoomedVoxelIndex> slowPath = slow.trace(start, goal, 60.0);
+        double slowSeconds = (System.nanoTime() - t0) / 1e9;
+        System.out.println(String.format("AStar: %s in %.3f s, %.1fx slower",
+                slowPath == null ? "timed out" : "finished", slowSeconds, slowSeconds / fastSeconds));
+    }
+
+    // Tube runs along x, wobbling in y and z, with noisy background and
+    // an optional gap in the middle
+    static Subvolume createTubeVolume(int sx, int sy, int sz, double radius, int gap, long seed) {
+        Random random = new Random(seed);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(2 * sx * sy * sz).order(ByteOrder.nativeOrder());
+        for (int z = 0; z < sz; ++z) {
+            for (int y = 0; y < sy; ++y) {
+                for (int x = 0; x < sx; ++x) {
+                    double dy = y - tubeY(sy, x);
+                    double dz = z - tubeZ(sz, x);
+                    int intensity = BACKGROUND + random.nextInt(50);
+                    boolean inGap = Math.abs(x - sx / 2) < gap / 2;
+                    if (dy * dy + dz * dz <= radius * radius && !inGap) {
+                        intensity = FOREGROUND;
+                    }
+                    bytes.putShort((short) intensity);
+                }
+            }
+        }
+        bytes.rewind();
+        return new Subvolume(new ZoomedVoxelIndex(ZOOM, 0, 0, 0), new VoxelIndex(sx, sy, sz), 2, bytes);
+    }
+
+    static ZoomedVoxelIndex tubePoint(int sx, int sy, int sz, int x) {
+        return new ZoomedVoxelIndex(ZOOM, x, (int) Math.round(tubeY(sy, x)), (int) Math.round(tubeZ(sz, x)));
+    }
+
+    private static double tubeY(int sy, int x) {
+        return sy / 2.0 + sy / 4.0 * Math.sin(x / 10.0);
+    }
+
+    private static double tubeZ(int sz, int x) {
+        return sz / 2.0 + sz / 4.0 * Math.cos(x / 13.0);
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.janelia.it.jacs.model.TestCategories;
+import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.TileFormat;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class TestMultiResolutionTracer {
+
+    @Test
+    @Category(TestCategories.FastTests.class)
+    public void testCoarseToFineTrace() {
+        int sx = 200, sy = 80, sz = 40;
+        final Subvolume source = TestFastAStar.createTubeVolume(sx, sy, sz, 3.0, 0, 5L);
+        ZoomedVoxelIndex start = TestFastAStar.tubePoint(sx, sy, sz, 3);
+        ZoomedVoxelIndex goal = TestFastAStar.tubePoint(sx, sy, sz, sx - 4);
+
+        TileFormat tileFormat = new TileFormat();
+        tileFormat.setZoomLevelCount(3);
+        MultiResolutionTracer tracer = new MultiResolutionTracer(tileFormat, new DownsamplingLoader(source));
+        List<ZoomedVoxelIndex> path = tracer.trace(start, goal, 30.0);
+
+        assertNotNull(path);
+        assertEquals(start, path.get(0));
+        assertEquals(goal, path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); ++i) {
+            ZoomedVoxelIndex a = path.get(i - 1);
+            ZoomedVoxelIndex b = path.get(i);
+            assertTrue(Math.abs(a.getX() - b.getX()) <= 1);
+            assertTrue(Math.abs(a.getY() - b.getY()) <= 1);
+            assertTrue(Math.abs(a.getZ() - b.getZ()) <= 1);
+        }
+        // Only a corridor around the path should have been loaded
+        assertTrue(tracer.getLoadedVoxelCount() < (long) sx * sy * sz);
+    }
+
+    /**
+     * Serves boxes of an in-memory volume at any zoom level, taking the
+     * maximum over each downsampled block. Like the quadtree tile format,
+     * only X and Y are downsampled. Voxels outside the volume read as zero.
+     */
+    private static class DownsamplingLoader implements MultiResolutionTracer.SubvolumeLoader {
+        private final Subvolume source;
+
+        DownsamplingLoader(Subvolume source) {
+            this.source = source;
+        }
+
+        @Override
+        public Subvolume loadSubvolume(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+            int factor = corner1.getZoomLevel().getZoomOutFactor();
+            int x0 = Math.min(corner1.getX(), corner2.getX());
+            int y0 = Math.min(corner1.getY(), corner2.getY());
+            int z0 = Math.min(corner1.getZ(), corner2.getZ());
+            int sx = Math.max(corner1.getX(), corner2.getX()) - x0 + 1;
+            int sy = Math.max(corner1.getY(), corner2.getY()) - y0 + 1;
+            int sz = Math.max(corner1.getZ(), corner2.getZ()) - z0 + 1;
+            ByteBuffer bytes = ByteBuffer.allocateDirect(2 * sx * sy * sz).order(ByteOrder.nativeOrder());
+            for (int z = 0; z < sz; ++z) {
+                for (int y = 0; y < sy; ++y) {
+                    for (int x = 0; x < sx; ++x) {
+                        int max = 0;
+                        for (int dy = 0; dy < factor; ++dy) {
+                            for (int dx = 0; dx < factor; ++dx) {
+                                max = Math.max(max, sourceIntensity(
+                                        (x0 + x) * factor + dx, (y0 + y) * factor + dy, z0 + z));
+                            }
+                        }
+                        bytes.putShort((short) max);
+                    }
+                }
+            }
+            bytes.rewind();
+            return new Subvolume(
+                    new ZoomedVoxelIndex(corner1.getZoomLevel(), x0, y0, z0),
+                    new VoxelIndex(sx, sy, sz), 2, bytes);
+        }
+
+        private int sourceIntensity(int x, int y, int z) {
+            VoxelIndex extent = source.getExtent();
+            if (x < 0 || y < 0 || z < 0 || x >= extent.getX() || y >= extent.getY() || z >= extent.getZ()) {
+                return 0;
+            }
+            return source.getIntensityGlobal(x, y, z, 0);
+        }
+    }
+
+}
@@ -58,6 +58,16 @@ public class FFMpegLoader
         COLOR, GRAY, RAW
     }
 
+    /**
+     * Receives decoded frames one at a time, as an alternative to collecting them all in an ImageStack.
+     */
+    public static interface FrameAcceptor {
+        /**
+         * @param frameBytes one byte per pixel; only valid during this call
+         */
+        void accept(int frameIndex, byte[] frameBytes, int width, int height) throws Exception;
+    }
+
     private String _filename;
     private AVFormatContext _format_context;
     private AVStream _video_stream;
@@ -74,6 +84,8 @@ public class FFMpegLoader
     private boolean deinterlace = false;
     private BytePointer _ibuffer;
     private int _components_per_frame;
+    // Reused for each converted frame
+    private byte[] _converted_bytes;
 
     public FFMpegLoader(String filename)
     {
@@ -370,7 +382,9 @@ public class FFMpegLoader
         }
 
         byte[] outputBytes = frameOutput.imageBytes.get(0);
-        byte[] inputBytes = new byte[width * height * 3];
+        if (_converted_bytes == null || _converted_bytes.length != width * height * 3)
+            _converted_bytes = new byte[width * height * 3];
+        byte[] inputBytes = _converted_bytes;
         imageBytesInput.get(inputBytes);
 
         int inputOffset = 0;
@@ -426,6 +440,26 @@ public class FFMpegLoader
         }
     }
 
+    /**
+     * Decodes all remaining frames, handing each to the acceptor and freeing it
+     * straight away, instead of keeping every frame in getImage().
+     *
+     * @return the number of frames decoded
+     */
+    public int grab(FrameAcceptor acceptor) throws Exception {
+        int frameIndex = 0;
+        Frame f;
+        while ((f = grabFrame()) != null) {
+            try {
+                acceptor.accept(frameIndex, f.imageBytes.get(0), _image.width(), _image.height());
+            } finally {
+                f.release();
+            }
+            frameIndex++;
+        }
+        return frameIndex;
+    }
+
     public Frame grabFrame() throws Exception {
         if (_format_context == null || _format_context.isNull()) {
             throw new Exception("Could not grab: No AVFormatContext. (Has start() been called?)");
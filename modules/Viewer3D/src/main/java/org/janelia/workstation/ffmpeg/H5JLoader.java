@@ -6,7 +6,13 @@ import ch.systemsx.cisd.hdf5.*;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class H5JLoader
 {
@@ -17,7 +23,11 @@ public class H5JLoader
     private String _filename;
     private IHDF5Reader _reader;
     private ImageStack _image;
-    
+    // -1 when absent; read once, on first use
+    private int _padding_right;
+    private int _padding_bottom;
+    private boolean _padding_read = false;
+
     public H5JLoader(String filename) {
         this._filename = filename;
         IHDF5ReaderConfigurator conf = HDF5Factory.configureForReading(filename);
@@ -37,34 +47,42 @@ public class H5JLoader
 
     public ImageStack extractAllChannels() {
         _image = new ImageStack();
+        for (ImageStack frames : extractAllChannelsAsList()) {
+            _image.merge( frames );
+        }
+        applyPadding(_image);
+        return _image;
+    }
 
+    /**
+     * Decodes the channels concurrently. Channels that fail to decode are left out.
+     */
+    public List<ImageStack> extractAllChannelsAsList() {
         List<String> channels = channelNames();
-        for (ListIterator<String> iter = channels.listIterator(); iter.hasNext(); )
-        {
-            String channel_id = iter.next();
+        List<Callable<ImageStack>> decoders = new ArrayList<>();
+        for (String channel_id : channels) {
+            final byte[] data;
             try
             {
-                ImageStack frames = extract(channel_id);
-                _image.merge( frames );
+                data = readChannel(channel_id);
             } catch (Exception e)
             {
                 e.printStackTrace();
+                continue;
             }
+            decoders.add(new Callable<ImageStack>() {
+                @Override
+                public ImageStack call() throws Exception {
+                    return decode(data);
+                }
+            });
         }
-
-        return _image;
-    }
-
-    public List<ImageStack> extractAllChannelsAsList() {
-        _image = new ImageStack();
-        List<String> channels = channelNames();
-        List<ImageStack> channelImageStackList=new ArrayList<>();
-        for (ListIterator<String> iter = channels.listIterator(); iter.hasNext(); )
-        {
-            String channel_id = iter.next();
+        List<ImageStack> channelImageStackList = new ArrayList<>();
+        for (Future<ImageStack> result : decodeInParallel(decoders)) {
             try
             {
-                ImageStack frames = extract(channel_id);
+                ImageStack frames = result.get();
+                applyPadding(frames);
                 channelImageStackList.add(frames);
             } catch (Exception e)
             {
@@ -76,37 +94,133 @@ public class H5JLoader
 
     public ImageStack extract(String channelID) throws Exception
     {
+        ImageStack stack = decode(readChannel(channelID));
+        applyPadding(stack);
+        return stack;
+    }
+
+    /**
+     * Decodes the first componentCount channels concurrently, copying each decoded
+     * frame straight into an interleaved page with componentCount bytes per pixel,
+     * then hands the pages to the acceptor in frame order. Missing channels are
+     * left zero. Unlike extractAllChannels(), no channel keeps its decoded frames.
+     */
+    public void extractInterleaved(final int componentCount, FFMPGByteAcceptor acceptor) throws Exception
+    {
+        List<String> channels = channelNames();
+        final List<byte[]> pages = new ArrayList<>();
+        final int[] pageSize = new int[2]; // width, height
+        List<Callable<Void>> decoders = new ArrayList<>();
+        for (int c = 0; c < Math.min(componentCount, channels.size()); c++) {
+            final int component = c;
+            final byte[] data = readChannel(channels.get(c));
+            decoders.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    FFMpegLoader movie = new FFMpegLoader(data);
+                    try {
+                        movie.start();
+                        movie.grab(new FFMpegLoader.FrameAcceptor() {
+                            @Override
+                            public void accept(int frameIndex, byte[] frameBytes, int width, int height) {
+                                byte[] page = getPage(pages, pageSize, frameIndex, width, height, componentCount);
+                                int pixelCount = width * height;
+                                for (int i = 0, j = component; i < pixelCount; i++, j += componentCount) {
+                                    page[j] = frameBytes[i];
+                                }
+                            }
+                        });
+                    } finally {
+                        movie.release();
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> result : decodeInParallel(decoders)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            acceptor.setPixelBytes(componentCount);
+            acceptor.setFrameNum(i);
+            acceptor.accept(pages.get(i), pageSize[0] * componentCount, pageSize[0], pageSize[1]);
+        }
+    }
+
+    private static byte[] getPage(List<byte[]> pages, int[] pageSize, int frameIndex, int width, int height, int componentCount) {
+        synchronized (pages) {
+            if (pages.isEmpty()) {
+                pageSize[0] = width;
+                pageSize[1] = height;
+            }
+            else if (pageSize[0] != width || pageSize[1] != height) {
+                throw new IllegalStateException(String.format(
+                        "Channel frame size %dx%d differs from %dx%d", width, height, pageSize[0], pageSize[1]));
+            }
+            while (pages.size() <= frameIndex) {
+                pages.add(new byte[width * height * componentCount]);
+            }
+            return pages.get(frameIndex);
+        }
+    }
+
+    private byte[] readChannel(String channelID) {
         IHDF5OpaqueReader channel = _reader.opaque();
-        byte[] data = channel.readArray(CHANNELS_QUERY_PATH + "/" + channelID);
+        return channel.readArray(CHANNELS_QUERY_PATH + "/" + channelID);
+    }
 
+    private static ImageStack decode(byte[] data) throws Exception {
         FFMpegLoader movie = new FFMpegLoader(data);
         movie.start();
         movie.grab();
-        ImageStack stack = movie.getImage();
+        return movie.getImage();
+    }
 
-        extractAttributes();
-        
-        return stack;
+    /**
+     * Runs the decoders on a pool with no more threads than channels or processors.
+     * FFMpegLoader.start() serializes codec setup; decoding itself runs concurrently.
+     */
+    private static <T> List<Future<T>> decodeInParallel(List<Callable<T>> decoders) {
+        int threadCount = Math.max(1, Math.min(decoders.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "H5J-channel-decoder-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            return pool.invokeAll(decoders);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding " + decoders.size() + " channels", e);
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
-    private void extractAttributes() {
-        IHDF5ReaderConfigurator conf = HDF5Factory.configureForReading(_filename);
-        conf.performNumericConversions();
-        IHDF5Reader ihdf5reader = conf.reader();
-        if (ihdf5reader.object().hasAttribute(CHANNELS_QUERY_PATH, PAD_BOTTOM_ATTRIB)) {
-            IHDF5LongReader ihdf5LongReader = ihdf5reader.int64();
-            final int paddingBottom = (int) ihdf5LongReader.getAttr(CHANNELS_QUERY_PATH, PAD_BOTTOM_ATTRIB);
-            _image.setPaddingBottom(paddingBottom);
-        } else {
-            _image.setPaddingBottom(-1);
+    private void applyPadding(ImageStack image) {
+        if (!_padding_read) {
+            _padding_bottom = readPaddingAttribute(PAD_BOTTOM_ATTRIB);
+            _padding_right = readPaddingAttribute(PAD_RIGHT_ATTRIB);
+            _padding_read = true;
         }
-        if (ihdf5reader.object().hasAttribute(CHANNELS_QUERY_PATH, PAD_RIGHT_ATTRIB)) {
-            IHDF5LongReader ihdf5LongReader = ihdf5reader.int64();
-            final int paddingRight = (int) ihdf5LongReader.getAttr(CHANNELS_QUERY_PATH, PAD_RIGHT_ATTRIB);
-            _image.setPaddingRight(paddingRight);
-        } else {
-            _image.setPaddingRight(-1);
+        image.setPaddingBottom(_padding_bottom);
+        image.setPaddingRight(_padding_right);
+    }
+
+    private int readPaddingAttribute(String attribute) {
+        if (_reader.object().hasAttribute(CHANNELS_QUERY_PATH, attribute)) {
+            return (int) _reader.int64().getAttr(CHANNELS_QUERY_PATH, attribute);
         }
+        return -1;
     }
 
 
@@ -118,9 +232,9 @@ public class H5JLoader
         int linesize = _image.linesize(iFrame);
         acceptor.accept(data, linesize, width, height);
     }
-    
+
     public static interface DataAcceptor {
         void accept(byte[] data, int linesize, int width, int height);
     }
 
-}
\ No newline at end of file
+}
@@ -60,33 +60,11 @@ public class H265FileLoader extends AbstractVolumeFileLoader {
     
     private void accept(H5JLoader reader, FFMPGByteAcceptor acceptor) {
         try {
-            ImageStack image = reader.extractAllChannels();
-            int maxFrames = image.getNumFrames();
-            int startingFrame = 0;
-            AcceptorAdapter acceptorAdapter = new AcceptorAdapter(acceptor);
-            int endingFrame = startingFrame + maxFrames;            
-            for (int i = startingFrame; i < endingFrame; i++) {
-                acceptor.setPixelBytes(image.getBytesPerPixel());
-                acceptor.setFrameNum(i);
-                reader.saveFrame(i, acceptorAdapter);
-            }
+            // Channels decode concurrently, straight into three-channel pages
+            reader.extractInterleaved(3, acceptor);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
-    private static class AcceptorAdapter implements H5JLoader.DataAcceptor {
-        private FFMPGByteAcceptor wrappedAcceptor;
-        public AcceptorAdapter( FFMPGByteAcceptor wrappedAcceptor) {
-            this.wrappedAcceptor = wrappedAcceptor;
-        }
-
-        @Override
-        public void accept(byte[] data, int linesize, int width, int height) {
-            wrappedAcceptor.accept(data,linesize,width,height);
-        }
-        
-        
-    }
-    
 }
@@ -144,6 +144,16 @@ public class LoaderSubsetHelper {
         this.sz = sz;
     }
     
+    /** What is the offset number of the first applicable column? */
+    public int getStartingX() {
+        return boundingBox[START_X_INX];
+    }
+    
+    /** What is the offset number of the first applicable row? */
+    public int getStartingY() {
+        return boundingBox[START_Y_INX];
+    }
+    
     /** What is the offset number of the first applicable plane? */
     public int getStartingZ() {
         return boundingBox[START_Z_INX];
@@ -12,17 +12,26 @@ import javax.media.jai.NullOpImage;
 import javax.media.jai.OpImage;
 import javax.media.jai.RenderedImageAdapter;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.janelia.workstation.img_3d_loader.AbstractVolumeFileLoader;
@@ -37,6 +46,10 @@ public class TifVolumeFileLoader extends AbstractVolumeFileLoader {
 
     private LoaderSubsetHelper subsetHelper;
     private int sheetCountFromFile;
+    private int sheetSize = SENTINAL_INT_VAL;
+    private int expectedWidth = SENTINAL_INT_VAL;
+    private int expectedHeight = SENTINAL_INT_VAL;
+    private int decodeThreadCount = Math.min(4, Runtime.getRuntime().availableProcessors());
     
     private static final Logger logger = Logger.getLogger(TifVolumeFileLoader.class);
     public static final int LOAD_SIZE = 8 * 1024 * 1024;
@@ -66,68 +79,210 @@ public class TifVolumeFileLoader extends AbstractVolumeFileLoader {
         
         final File file = new File(fileName);
         logger.debug("Loading the subset of images.");
-        Collection<BufferedImage> allImages = loadTIFF( file );
-        if ( allImages == null ) {
-            throw new Exception("Failed to read data from " + fileName + ".");
-        }
 
         // Sentinal values.
         setSx(SENTINAL_INT_VAL);
         setSy(SENTINAL_INT_VAL);
         setSz(SENTINAL_INT_VAL);
         setPixelBytes(SENTINAL_INT_VAL);
-        int sheetSize = SENTINAL_INT_VAL;
-        int expectedWidth = SENTINAL_INT_VAL;
-        int expectedHeight = SENTINAL_INT_VAL;
 
-        logger.debug("Traversing images.");
-        // Initial values.
-        int zOffset = 0;
-        int targetOffset = 0;
-        for ( BufferedImage zSlice: allImages ) {
-            if ( expectedWidth == SENTINAL_INT_VAL ) {
-                expectedWidth = zSlice.getWidth();
-                expectedHeight = zSlice.getHeight();
+        try ( TiffPageReader reader = new TiffPageReader( file ) ) {
+            int maxPage = reader.getNumPages();
+            sheetCountFromFile = maxPage;
+            if ( subsetHelper != null ) {
+                subsetHelper.setSourceDepth( sheetCountFromFile );
+                subsetHelper.calculateBoundingZ( sheetCountFromFile );
             }
-            if ( getSy() == SENTINAL_INT_VAL ) {
-                if ( subsetHelper != null ) {
-                    subsetHelper.setSourceWidth(zSlice.getWidth());
-                    subsetHelper.setSourceHeight(zSlice.getHeight());
-                    subsetHelper.calculateBoundingBox(sheetCountFromFile);
-
-                    // Apply volume characteristics 'learned' from subset helper.
-                    setSx(subsetHelper.getSx());
-                    setSy(subsetHelper.getSy());
-                    setSz(subsetHelper.getSz());
-                
-                    sheetSize = subsetHelper.initializeStorage(file.length());
-                    setPixelBytes( subsetHelper.getPixelBytes() );
-                    setArgbTextureIntArray(subsetHelper.getArgbTextureIntArray());
-                    setTextureByteArray(subsetHelper.getTextureByteArray());
-                }
-                else {
-                    setSx( zSlice.getWidth() );
-                    setSy( zSlice.getHeight() );
-                    setSz( allImages.size() );
-                    sheetSize = initializeStorage(file.length());
+            // Pages outside the subset are never decoded.
+            List<Integer> pagesToLoad = new ArrayList<>();
+            for (int page = 0; page < maxPage; page++) {
+                if ( subsetHelper == null  ||  subsetHelper.inZSubset( page ) ) {
+                    pagesToLoad.add( page );
                 }
             }
+            if ( pagesToLoad.isEmpty() ) {
+                throw new Exception("Failed to read data from " + fileName + ".");
+            }
+
+            // The first slice sets the dimensions, and so the size of the texture.
+            logger.debug("Traversing images.");
+            RenderedImage firstSlice = reader.decode( pagesToLoad.get( 0 ) );
+            expectedWidth = firstSlice.getWidth();
+            expectedHeight = firstSlice.getHeight();
+            if ( subsetHelper != null ) {
+                subsetHelper.setSourceWidth(expectedWidth);
+                subsetHelper.setSourceHeight(expectedHeight);
+                subsetHelper.calculateBoundingBox(sheetCountFromFile);
+
+                // Apply volume characteristics 'learned' from subset helper.
+                setSx(subsetHelper.getSx());
+                setSy(subsetHelper.getSy());
+                setSz(subsetHelper.getSz());
+
+                sheetSize = subsetHelper.initializeStorage(file.length());
+                setPixelBytes( subsetHelper.getPixelBytes() );
+                setArgbTextureIntArray(subsetHelper.getArgbTextureIntArray());
+                setTextureByteArray(subsetHelper.getTextureByteArray());
+            }
             else {
-                if ( expectedWidth != zSlice.getWidth()  ||  expectedHeight != zSlice.getHeight() ) {
-                    throw new IllegalStateException( "Image number " + zOffset +
-                            " with HEIGHT=" + zSlice.getHeight() + " and WIDTH=" + 
-                            zSlice.getWidth() + " has dimensions which do not match previous width * height of " + expectedWidth + " * " + expectedHeight );
+                setSx( expectedWidth );
+                setSy( expectedHeight );
+                setSz( pagesToLoad.size() );
+                sheetSize = initializeStorage(file.length());
+            }
+            storeSlice( 0, pagesToLoad.get( 0 ), firstSlice );
+            // The subset helper's ARGB path shares one scratch buffer among slices.
+            boolean concurrent = subsetHelper == null  ||  canCopyTiles( firstSlice );
+            storeRemainingSlices( file, pagesToLoad, concurrent ? decodeThreadCount : 1 );
+        } catch (IOException e) {
+            logger.error(e.toString());
+            throw new Exception("Failed to read data from " + fileName + ".", e);
+        }
+    }
+
+    /**
+     * @param threadCount how many slices may be decoded at once; 1 decodes them in order on the calling thread
+     */
+    public void setDecodeThreadCount( int threadCount ) {
+        this.decodeThreadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Decodes all slices after the first, each worker with its own decoder, pulling
+     * pages in order. Slices go to disjoint parts of the texture, and are not kept.
+     */
+    private void storeRemainingSlices( final File file, final List<Integer> pagesToLoad, int maxThreads ) throws Exception {
+        final AtomicInteger nextSlice = new AtomicInteger( 1 );
+        int threadCount = Math.min( maxThreads, pagesToLoad.size() - 1 );
+        if ( threadCount <= 1 ) {
+            try ( TiffPageReader reader = new TiffPageReader( file ) ) {
+                for (int slice = 1; slice < pagesToLoad.size(); slice++) {
+                    storeSlice( slice, pagesToLoad.get( slice ), reader.decode( pagesToLoad.get( slice ) ) );
                 }
             }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
 
-            // Store only things that are within the targetted depth.
-            if ( subsetHelper == null ) {
-                storeToBuffer(targetOffset++, sheetSize, zSlice);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Tif-slice-decoder-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
-            else {
-                subsetHelper.storeSubsetToBuffer(targetOffset++, sheetSize, zSlice);
+        });
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                workers.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try ( TiffPageReader reader = new TiffPageReader( file ) ) {
+                            int slice;
+                            while ( (slice = nextSlice.getAndIncrement()) < pagesToLoad.size() ) {
+                                int page = pagesToLoad.get( slice );
+                                storeSlice( slice, page, reader.decode( page ) );
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    nextSlice.set( pagesToLoad.size() ); // stop the other workers
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void storeSlice( int targetOffset, int page, RenderedImage zSlice ) {
+        if ( expectedWidth != zSlice.getWidth()  ||  expectedHeight != zSlice.getHeight() ) {
+            throw new IllegalStateException( "Image number " + page +
+                    " with HEIGHT=" + zSlice.getHeight() + " and WIDTH=" + 
+                    zSlice.getWidth() + " has dimensions which do not match previous width * height of " + expectedWidth + " * " + expectedHeight );
+        }
+        if ( canCopyTiles( zSlice ) ) {
+            int startX = subsetHelper == null ? 0 : subsetHelper.getStartingX();
+            int startY = subsetHelper == null ? 0 : subsetHelper.getStartingY();
+            copyTiles( zSlice, startX, startY, getSx(), getSy(),
+                    getTextureByteArray(), targetOffset * sheetSize * getPixelBytes(), getPixelBytes() );
+        }
+        // Store only things that are within the targetted depth.
+        else if ( subsetHelper == null ) {
+            storeToBuffer(targetOffset, sheetSize, renderedToBuffered(zSlice));
+        }
+        else {
+            subsetHelper.storeSubsetToBuffer(targetOffset, sheetSize, renderedToBuffered(zSlice));
+        }
+    }
+
+    /**
+     * Single channel 8 and 16 bit slices can be copied a strip or tile at a
+     * time, without first assembling the whole slice.
+     */
+    private boolean canCopyTiles( RenderedImage zSlice ) {
+        if ( getTextureByteArray() == null  ||  zSlice.getSampleModel().getNumBands() != 1 ) {
+            return false;
+        }
+        int dataType = zSlice.getSampleModel().getDataType();
+        if ( getPixelBytes() == 1 ) {
+            return dataType == DataBuffer.TYPE_BYTE;
+        }
+        if ( getPixelBytes() == 2 ) {
+            return dataType == DataBuffer.TYPE_USHORT  ||  dataType == DataBuffer.TYPE_SHORT;
+        }
+        return false;
+    }
+
+    /**
+     * Copies a width x height region starting at startX, startY out of the
+     * decoded tiles of the slice, into rows of the destination. Two byte
+     * values are stored low byte first.
+     */
+    static void copyTiles( RenderedImage zSlice, int startX, int startY, int width, int height, byte[] destination, int destinationOffset, int pixelBytes ) {
+        Rectangle region = new Rectangle( zSlice.getMinX() + startX, zSlice.getMinY() + startY, width, height );
+        byte[] byteRow = null;
+        short[] shortRow = null;
+        for (int tileY = zSlice.getMinTileY(); tileY < zSlice.getMinTileY() + zSlice.getNumYTiles(); tileY++) {
+            for (int tileX = zSlice.getMinTileX(); tileX < zSlice.getMinTileX() + zSlice.getNumXTiles(); tileX++) {
+                Rectangle tileBounds = new Rectangle(
+                        zSlice.getTileGridXOffset() + tileX * zSlice.getTileWidth(),
+                        zSlice.getTileGridYOffset() + tileY * zSlice.getTileHeight(),
+                        zSlice.getTileWidth(), zSlice.getTileHeight() );
+                Rectangle overlap = tileBounds.intersection( region );
+                if ( overlap.isEmpty() ) {
+                    continue; // tiles outside the subset are never decoded
+                }
+                Raster tile = zSlice.getTile( tileX, tileY );
+                for (int y = overlap.y; y < overlap.y + overlap.height; y++) {
+                    int rowOffset = destinationOffset
+                            + pixelBytes * ((y - region.y) * width + (overlap.x - region.x));
+                    if ( pixelBytes == 1 ) {
+                        if ( byteRow == null  ||  byteRow.length < overlap.width ) {
+                            byteRow = new byte[ overlap.width ];
+                        }
+                        tile.getDataElements( overlap.x, y, overlap.width, 1, byteRow );
+                        System.arraycopy( byteRow, 0, destination, rowOffset, overlap.width );
+                    }
+                    else {
+                        if ( shortRow == null  ||  shortRow.length < overlap.width ) {
+                            shortRow = new short[ overlap.width ];
+                        }
+                        tile.getDataElements( overlap.x, y, overlap.width, 1, shortRow );
+                        for (int i = 0; i < overlap.width; i++) {
+                            destination[ rowOffset + 2 * i ] = (byte) (shortRow[ i ] & 0xff);
+                            destination[ rowOffset + 2 * i + 1 ] = (byte) ((shortRow[ i ] >> 8) & 0xff);
+                        }
+                    }
+                }
             }
-            zOffset ++;
         }
     }
     
@@ -174,59 +329,41 @@ public class TifVolumeFileLoader extends AbstractVolumeFileLoader {
     }
 
     /**
-     * Load specified tiff page and return as buffered zSlice.
+     * Decodes one page of a TIFF file at a time.
      * From: http://opencapture.googlecode.com/svn/0.0.2/OpenCapture/src/net/filterlogic/util/imaging/ToTIFF.java
-     * 
-     * @param file
-     * @param imageToLoad Page to load
-     * @return BufferedImage
      */
-    private Collection<BufferedImage> loadTIFF(File file) {
-        Collection<BufferedImage> imageCollection = new ArrayList<>();
-        try {
-            BufferedImage wholeImage = null;
-            SeekableStream s = new FileSeekableStream(file);
+    private static class TiffPageReader implements Closeable {
+        private final SeekableStream stream;
+        private final ImageDecoder decoder;
 
+        TiffPageReader( File file ) throws IOException {
+            stream = new FileSeekableStream( file );
             TIFFDecodeParam param = null;
-            logger.debug("In loadTIFF " + file + " create codec...");
-            ImageDecoder dec = ImageCodec.createImageDecoder("tiff", s, param);
-            logger.debug("In loadTIFF " + file + " getting number of pages...");
-            int maxPage = dec.getNumPages();
-            sheetCountFromFile = maxPage;            
-            if ( subsetHelper != null ) {
-                subsetHelper.setSourceDepth( sheetCountFromFile );
-                subsetHelper.calculateBoundingZ( sheetCountFromFile );
-            }
-
-            if ( logger.isDebugEnabled() )
-                logger.debug("In loadTIFF " + file + " NullOpImage loop.");
-            for (int imageToLoad = 0; imageToLoad < maxPage; imageToLoad++) {
-                if ( subsetHelper == null  ||  subsetHelper.inZSubset( imageToLoad ) ) {
-                    RenderedImage op
-                        = new NullOpImage(dec.decodeAsRenderedImage(imageToLoad),
-                                null,
-                                OpImage.OP_IO_BOUND,
-                                null);
-                    wholeImage = renderedToBuffered(op);
-                    imageCollection.add(wholeImage);
-                }
-                if ( logger.isDebugEnabled() )
-                    logger.debug("In loadTIFF " + file + " NullOpImage completed: " + imageToLoad);
-            }
-            logger.debug("In loadTIFF " + file + " returning image collection.");
-            s.close();
-
-            return imageCollection;
-
+            logger.debug("In TiffPageReader " + file + " create codec...");
+            decoder = ImageCodec.createImageDecoder("tiff", stream, param);
+        }
 
-        } catch (IOException e) {
-            logger.error(e.toString());
+        int getNumPages() throws IOException {
+            return decoder.getNumPages();
+        }
 
-            return null;
+        RenderedImage decode( int page ) throws IOException {
+            RenderedImage op
+                = new NullOpImage(decoder.decodeAsRenderedImage(page),
+                        null,
+                        OpImage.OP_IO_BOUND,
+                        null);
+            if ( logger.isDebugEnabled() )
+                logger.debug("In TiffPageReader NullOpImage completed: " + page);
+            return op;
         }
 
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
     }
-            
+
     /**
      * Convert RenderedImage to BufferedImage
      * @param img
@@ -242,16 +379,5 @@ public class TifVolumeFileLoader extends AbstractVolumeFileLoader {
         BufferedImage bufImage = imageAdapter.getAsBufferedImage();
         return bufImage;
     }
-    
-    private void getImage( ImageDecoder dec, int imageToLoad, Collection<BufferedImage> imageCollection ) throws IOException {
-        RenderedImage op
-                = new NullOpImage(dec.decodeAsRenderedImage(imageToLoad),
-                        null,
-                        OpImage.OP_IO_BOUND,
-                        null);
-
-        BufferedImage wholeImage = renderedToBuffered(op);
-        imageCollection.add(wholeImage);
-    }
 
 }
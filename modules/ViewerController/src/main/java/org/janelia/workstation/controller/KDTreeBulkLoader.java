@@ -0,0 +1,149 @@
+package org.janelia.workstation.controller;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes an insertion order which makes an incrementally built KD-tree balanced.
+ *
+ * The KD-tree splits on coordinate (depth % dims) at each level, so inserting the
+ * median of each subset along that axis before either half gives a tree of
+ * logarithmic depth in one pass. Medians are found by quickselect over a primitive
+ * coordinate array, and the two halves of each subset are ordered in parallel.
+ */
+final class KDTreeBulkLoader {
+
+    // Subsets smaller than this are ordered on the current thread
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    private KDTreeBulkLoader() {
+    }
+
+    /**
+     * @param keys one key per point, all of the same length
+     * @return indexes into keys, in the order they should be inserted
+     */
+    static int[] balancedOrder(double[][] keys) {
+        int count = keys.length;
+        int[] order = new int[count];
+        if (count == 0) {
+            return order;
+        }
+        int dims = keys[0].length;
+        double[] coords = new double[count * dims];
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; ++i) {
+            System.arraycopy(keys[i], 0, coords, i * dims, dims);
+            indexes[i] = i;
+        }
+        ForkJoinPool.commonPool().invoke(new OrderTask(coords, dims, indexes, order, 0, count, 0, 0));
+        return order;
+    }
+
+    /**
+     * Writes the pre-order of the median tree over indexes[lo, hi) to order[outStart, ...).
+     * Each subtree owns a disjoint range of both arrays, so subtasks never share writes.
+     */
+    private static class OrderTask extends RecursiveAction {
+
+        private final double[] coords;
+        private final int dims;
+        private final int[] indexes;
+        private final int[] order;
+        private final int lo;
+        private final int hi;
+        private final int depth;
+        private final int outStart;
+
+        OrderTask(double[] coords, int dims, int[] indexes, int[] order, int lo, int hi, int depth, int outStart) {
+            this.coords = coords;
+            this.dims = dims;
+            this.indexes = indexes;
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+            this.outStart = outStart;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                orderRange(lo, hi, depth, outStart);
+                return;
+            }
+            int mid = split(lo, hi, depth % dims);
+            order[outStart] = indexes[mid];
+            invokeAll(
+                    new OrderTask(coords, dims, indexes, order, lo, mid, depth + 1, outStart + 1),
+                    new OrderTask(coords, dims, indexes, order, mid + 1, hi, depth + 1, outStart + 1 + mid - lo));
+        }
+
+        private void orderRange(int from, int to, int level, int out) {
+            while (to > from) {
+                int mid = split(from, to, level % dims);
+                order[out] = indexes[mid];
+                // recurse on the lower half, loop on the upper half
+                orderRange(from, mid, level + 1, out + 1);
+                out += 1 + mid - from;
+                from = mid + 1;
+                level++;
+            }
+        }
+
+        /**
+         * Moves the median along axis into place and returns its position. The tree sends
+         * keys equal to a node's coordinate left, so any ties are gathered before the node.
+         */
+        private int split(int from, int to, int axis) {
+            int mid = (from + to) >>> 1;
+            select(from, to, mid, axis);
+            double median = coordinate(indexes[mid], axis);
+            for (int i = mid + 1; i < to; ++i) {
+                if (coordinate(indexes[i], axis) == median) {
+                    mid++;
+                    int tmp = indexes[i];
+                    indexes[i] = indexes[mid];
+                    indexes[mid] = tmp;
+                }
+            }
+            return mid;
+        }
+
+        // Quickselect: afterwards indexes[k] holds the k-th smallest coordinate along axis in [from, to)
+        private void select(int from, int to, int k, int axis) {
+            int left = from;
+            int right = to - 1;
+            while (right > left) {
+                double pivot = coordinate(indexes[(left + right) >>> 1], axis);
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (coordinate(indexes[i], axis) < pivot) i++;
+                    while (coordinate(indexes[j], axis) > pivot) j--;
+                    if (i <= j) {
+                        int tmp = indexes[i];
+                        indexes[i] = indexes[j];
+                        indexes[j] = tmp;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                }
+                else if (k >= i) {
+                    left = i;
+                }
+                else {
+                    return;
+                }
+            }
+        }
+
+        private double coordinate(int index, int axis) {
+            return coords[index * dims + axis];
+        }
+    }
+
+}
@@ -1025,11 +1025,10 @@ public class NeuronManager implements DomainObjectSelectionSupport {
     }
 
     private TmHistoricalEvent createSerialization (List<TmNeuronMetadata> neuronList) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
         TmHistoricalEvent event = new TmHistoricalEvent();
         Map<Long, byte[]> map = new HashMap<>();
         for (TmNeuronMetadata neuron: neuronList) {
-            byte[] neuronData = mapper.writeValueAsBytes(neuron);
+            byte[] neuronData = TmHistory.serializeNeuron(neuron);
             map.put(neuron.getId(), neuronData);
         }
         event.setNeurons(map);
@@ -1,13 +1,20 @@
 package org.janelia.workstation.controller;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import edu.wlu.cs.levy.CG.*;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
@@ -19,6 +26,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Spatial index for fast access to local NeuronVertexes, given a position in micron space.
  *
+ * Queries may run concurrently from any thread. Updates take an exclusive lock, and
+ * are applied as deltas: only vertexes which were added, removed or moved since they
+ * were last indexed touch the KD-tree. Updates made while a rebuild is in progress are
+ * also journaled, and replayed onto the rebuilt tree before it is swapped in.
+ *
  * @author Christopher Bruns
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
@@ -26,21 +38,43 @@ public class NeuronVertexSpatialIndex {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final Map<TmGeoAnnotation, CacheableKey> cachedKeys = new HashMap<>();
-    
-    private KDTree<TmGeoAnnotation> index; // Cannot be final because it doesn't have a clear method
+    // The KD-tree only marks deleted nodes, so it is compacted once they outnumber live ones
+    private static final int MIN_COMPACTION_SIZE = 10000;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Converts vertex locations from voxels to micrometers
+    private final Function<TmGeoAnnotation, float[]> micronLocator;
+
+    // Everything below is guarded by the lock
+    private final Map<Long, IndexEntry> entries = new HashMap<>();
+    private final Map<Long, Set<Long>> neuronVertexIds = new HashMap<>();
+    private KDTree<TmGeoAnnotation> index = new KDTree<>(3);
+    private int deletedCount = 0;
+    // Changes made since the snapshot of a rebuild in progress, or null when there is none
+    private List<Runnable> rebuildJournal;
+
+    // Only one rebuild at a time may journal changes
+    private final Object rebuildMonitor = new Object();
 
     // Is the index currently in a valid, usable state?
     private AtomicBoolean valid = new AtomicBoolean(false);
 
     // used by key fuzzing routine
-    private Random generator = new Random();
     private static final double XY_PIXEL_MICRONS = 0.4;
     private double keyFuzzFactor = XY_PIXEL_MICRONS / 2.0 * 1.0e-3;
 
 
     public NeuronVertexSpatialIndex() {
         log.trace("Creating spatial index");
+        this.micronLocator = this::getLocationInMicrometers;
+    }
+
+    /**
+     * @param micronLocator converts vertex locations to micrometers, instead of the transform of the current sample
+     */
+    NeuronVertexSpatialIndex(Function<TmGeoAnnotation, float[]> micronLocator) {
+        this.micronLocator = micronLocator;
     }
 
     /**
@@ -49,28 +83,31 @@ public class NeuronVertexSpatialIndex {
      * @return
      */
     public TmGeoAnnotation getAnchorClosestToMicronLocation(double[] micronXYZ) {
-        if (index==null) return null;
         List<TmGeoAnnotation> nbrs = getAnchorClosestToMicronLocation(micronXYZ, 1);
-        if (nbrs.isEmpty()) return null;
+        if (nbrs == null || nbrs.isEmpty()) return null;
         return nbrs.get(0);
     }
-    
+
     /**
-     * Returns the N closest anchors to the location given in micron units. The locations are sorted in 
+     * Returns the N closest anchors to the location given in micron units. The locations are sorted in
      * order from closest to farthest.
      * @param micronXYZ
      * @param n
      * @return
      */
     public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n) {
-        if (index==null) return Collections.emptyList();
+        lock.readLock().lock();
         try {
-            return index.nearest(micronXYZ, n);
-        } 
+            if (index.size() == 0) return Collections.emptyList();
+            return index.nearest(micronXYZ, Math.min(n, index.size()));
+        }
         catch (KeySizeException ex) {
             log.warn("Exception while finding anchor in spatial index", ex);
             return null;
         }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -82,98 +119,93 @@ public class NeuronVertexSpatialIndex {
      * @return list of matching anchors
      */
     public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n, final Checker<TmGeoAnnotation> filter) {
-        if (index==null) return Collections.emptyList();
+        lock.readLock().lock();
         try {
-            return index.nearest(micronXYZ, n, filter);
+            if (index.size() == 0) return Collections.emptyList();
+            return index.nearest(micronXYZ, Math.min(n, index.size()), filter);
         }
         catch (KeySizeException ex) {
             log.warn("Exception while finding anchor in spatial index", ex);
             return null;
         }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * Returns all the anchors found in the area given by two corners points, given in micron units.  
+     * Returns all the anchors found in the area given by two corners points, given in micron units.
      * @param p1 lower corner
      * @param p2 higher corner
-     * @return list of anchors 
+     * @return list of anchors
      */
     public List<TmGeoAnnotation> getAnchorsInMicronArea(double[] p1, double[] p2) {
-        if (index==null) return Collections.emptyList();
+        lock.readLock().lock();
         try {
             log.debug("Finding anchors in area bounded by points: p1=({},{},{}) p2=({},{},{})",p1[0],p1[1],p1[2],p2[0],p2[1],p2[2]);
             return index.range(p1, p2);
-        } 
+        }
         catch (KeySizeException ex) {
             log.warn("Exception while anchors in area using spatial index", ex);
             return null;
         }
+        finally {
+            lock.readLock().unlock();
+        }
     }
-    
+
     /**
-     * Return the location of the vertex in micrometers, for indexing within the KD-tree.
-     * @param v
-     * @return
+     * Return the key of the vertex in micrometers, for indexing within the KD-tree.
+     *
+     * We originally used the exact coords as the key; that caused problems (collisions)
+     * when there were duplicate points, which happens because (a) we're actually on a
+     * discrete pixel grid, and (b) when tracers are comparing work, there's a high
+     * likelihood that they have duplicate points; the problem manifested as both inability
+     * to select visible points, and as points not even being drawn.
+     *
+     * So each key is offset by a fuzz far smaller than a pixel. The offset is derived from
+     * the vertex id rather than drawn at random, so a vertex always gets the same key, and
+     * two vertexes at the same location never do. Note that we return the original vertex,
+     * which has its location data unchanged; it's only the internal key that is fuzzed.
+     *
+     * The usual pixel size is hard-coded as a constant above; we could get it from the
+     * transform matrices, but they are loaded async with the first spatial index build,
+     * so that's inconvenient.
      */
     private double[] keyForVertex(TmGeoAnnotation v) {
-        if (cachedKeys.containsKey(v)) {
-            return cachedKeys.get(v).toArray();
-        }
-        else {
-
-            float xyz[] = getLocationInMicrometers(v); // Neuron API returns coordinates in micrometers
-
-            // we originally used the exact coords as the key; that caused
-            //  problems (collisions) when there were duplicate points, which
-            //  happens because (a) we're actually on a discrete pixel grid,
-            //  and (b) when tracers are comparing work, there's a high
-            //  likelihood that they have duplicate points; the problem
-            //  manifest as both inability to select visible points, and
-            //  as points not even being drawn
-
-            // old
-            // return new double[] { xyz[0], xyz[1], xyz[2] };
-
-            // new: add a random fuzz so the indices don't match; note that
-            //  they are all very close to each other, far closer than to any
-            //  other pixel, and that we return the original vertex, which has its
-            //  location data unchanged; it's only the internal key that is fuzzed
-            //  to prevent collisions
-
-            // I'm doing random fuzzing, but you could make a case for
-            //  generating an offset deterministically, based on some unique
-            //  ID, to prevent any possible collisions (again taking advantage
-            //  of the fact that all points are actually on a discrete grid)
-
-            // the usual pixel size is hard-coded as a constant above; we
-            //  could get it from the transform matrices, but they are loaded
-            //  async with the first spatial index build, so that's inconvenient
-            // for now, we'll use the static typical pixel size, and use a
-            //  fuzz factor that's three orders of magnitude less than the
-            //  pixel "radius"; this should behave well as long as the pixel
-            //  size doesn't drop by a couple orders of magnitude below
-            //  the hard-coded size
-
-            double dy = keyFuzzFactor * generator.nextDouble();
-            double dz = keyFuzzFactor * generator.nextDouble();
-            double dx = keyFuzzFactor * generator.nextDouble();
-            return new double[] { xyz[0] + dx, xyz[1] + dy, xyz[2] + dz };
-        }
+        float xyz[] = micronLocator.apply(v); // Neuron API returns coordinates in micrometers
+        double[] fuzz = keyFuzz(v.getId());
+        return new double[] {
+                xyz[0] + keyFuzzFactor * fuzz[0],
+                xyz[1] + keyFuzzFactor * fuzz[1],
+                xyz[2] + keyFuzzFactor * fuzz[2] };
+    }
+
+    /**
+     * Spreads the bits of an id over three fractions in [0, 1). The mixing function
+     * is a bijection on 64 bit values and all 64 mixed bits are kept (22 + 21 + 21),
+     * so distinct ids always give distinct offsets.
+     */
+    static double[] keyFuzz(long id) {
+        long h = id;
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        h = h ^ (h >>> 31);
+        return new double[] {
+                (h >>> 42) / (double) (1L << 22),
+                ((h >>> 21) & 0x1fffffL) / (double) (1L << 21),
+                (h & 0x1fffffL) / (double) (1L << 21) };
     }
 
     public boolean addToIndex(TmGeoAnnotation vertex) {
+        lock.writeLock().lock();
         try {
-            double[] key = keyForVertex(vertex);
-            // log.info("Adding key to index: ({},{},{})",key[0],key[1],key[2]);
-            index.insert(key, vertex);
-            // log.info("index size = " + index.size());
-            // Store original key, in case the old position changes
-            cachedKeys.put(vertex, cacheableKey(key));
+            journal(() -> addEntry(vertex));
+            return addEntry(vertex);
         }
-        catch (KeySizeException | KeyDuplicateException ex) {
-            return false;
+        finally {
+            lock.writeLock().unlock();
         }
-        return true;
     }
 
     public float[] getLocationInMicrometers(TmGeoAnnotation vertex) {
@@ -195,62 +227,395 @@ public class NeuronVertexSpatialIndex {
 
 
     public boolean removeFromIndex(TmGeoAnnotation vertex) {
+        lock.writeLock().lock();
         try {
-            double[] k = keyForVertex(vertex);
-            // log.info("Removing key from index: ({},{},{})",k[0],k[1],k[2]);
-            index.delete(k);
-            // log.info("index size = " + index.size());
-            cachedKeys.remove(vertex);
+            journal(() -> removeEntry(vertex.getId()));
+            return removeEntry(vertex.getId());
         }
-        catch (KeySizeException | KeyMissingException ex) {
-            return false;
+        finally {
+            lock.writeLock().unlock();
         }
-        return true;
     }
-    
+
     public boolean updateIndex(TmGeoAnnotation vertex) {
-        if (!removeFromIndex(vertex)) {
-            return false;
+        lock.writeLock().lock();
+        try {
+            journal(() -> updateEntry(vertex));
+            return updateEntry(vertex);
+        }
+        finally {
+            lock.writeLock().unlock();
         }
-        return addToIndex(vertex);
     }
 
-    private CacheableKey cacheableKey(double[] key) {
-        return new CacheableKey(key);
+    /**
+     * Brings the indexed vertexes of a neuron in line with its current annotations, touching
+     * only the vertexes which were added, removed or moved.
+     * @return number of vertexes whose index entries changed
+     */
+    public int updateNeuron(TmNeuronMetadata neuron) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> updateNeuronEntries(neuron));
+            int changed = updateNeuronEntries(neuron);
+            compactIfNeeded();
+            return changed;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all the indexed vertexes of a neuron.
+     * @return number of vertexes removed
+     */
+    public int removeNeuron(TmNeuronMetadata neuron) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> removeNeuronEntries(neuron.getId()));
+            int removed = removeNeuronEntries(neuron.getId());
+            compactIfNeeded();
+            return removed;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Brings the whole index in line with the given neurons as one batch. Neurons no longer
+     * in the list are dropped, and only the changed vertexes of the others are touched.
+     * @return number of vertexes whose index entries changed
+     */
+    public int synchronizeIndex(Collection<TmNeuronMetadata> neuronList) {
+        long start = System.currentTimeMillis();
+        int changed;
+        lock.writeLock().lock();
+        try {
+            journal(() -> synchronizeEntries(neuronList));
+            changed = synchronizeEntries(neuronList);
+            compactIfNeeded();
+            valid.set(true);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Synchronized spatial index: {} vertices changed in {} ms", changed, System.currentTimeMillis() - start);
+        return changed;
     }
-    
+
     public boolean isValid() {
         return valid.get();
     }
-    
-    public synchronized void rebuildIndex(Collection<TmNeuronMetadata> neuronList) {
-        log.info("Rebuilding spatial index");
-        valid.set(false);
-        clear();
-        for (TmNeuronMetadata neuronModel : neuronList) {
-            for (TmGeoAnnotation neuronVertex : neuronModel.getGeoAnnotationMap().values()) {
-                addToIndex(neuronVertex);
+
+    /**
+     * Replaces the contents of the index with the vertexes of the given neurons. The new
+     * tree is built in one pass, in parallel, and swapped in at the end, so queries keep
+     * using the previous contents until it is ready. Updates made while it is being built
+     * are applied to the new tree as well, before the swap.
+     * @return number of vertexes in the rebuilt index
+     */
+    public int rebuildIndex(Collection<TmNeuronMetadata> neuronList) {
+        synchronized (rebuildMonitor) {
+            log.info("Rebuilding spatial index");
+            long start = System.currentTimeMillis();
+            valid.set(false);
+
+            // Updates are excluded while taking the snapshot, and journaled from then on
+            List<TmGeoAnnotation> vertexes;
+            lock.readLock().lock();
+            try {
+                Map<Long, TmGeoAnnotation> vertexesById = new LinkedHashMap<>();
+                for (TmNeuronMetadata neuronModel : neuronList) {
+                    for (TmGeoAnnotation neuronVertex : neuronModel.getGeoAnnotationMap().values()) {
+                        if (neuronVertex.getId() != null) {
+                            vertexesById.putIfAbsent(neuronVertex.getId(), neuronVertex);
+                        }
+                    }
+                }
+                vertexes = new ArrayList<>(vertexesById.values());
+                rebuildJournal = new ArrayList<>();
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+
+            try {
+                // Keys are independent of each other, so compute them across cores
+                IndexEntry[] vertexEntries = new IndexEntry[vertexes.size()];
+                IntStream.range(0, vertexEntries.length).parallel().forEach(i -> vertexEntries[i] = createEntry(vertexes.get(i)));
+                double[][] keys = new double[vertexEntries.length][];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = vertexEntries[i].key;
+                }
+                long keyTime = System.currentTimeMillis();
+
+                // Inserting medians first gives a balanced tree without rebalancing
+                int[] order = KDTreeBulkLoader.balancedOrder(keys);
+                long orderTime = System.currentTimeMillis();
+
+                KDTree<TmGeoAnnotation> tree = new KDTree<>(3);
+                Map<Long, IndexEntry> newEntries = new HashMap<>(vertexes.size() * 2);
+                for (int i : order) {
+                    TmGeoAnnotation vertex = vertexes.get(i);
+                    try {
+                        tree.insert(keys[i], vertex);
+                        newEntries.put(vertex.getId(), vertexEntries[i]);
+                    }
+                    catch (KeySizeException | KeyDuplicateException ex) {
+                        log.warn("Could not add vertex {} to spatial index", vertex.getId(), ex);
+                    }
+                }
+
+                int journaled;
+                lock.writeLock().lock();
+                try {
+                    clearEntries();
+                    index = tree;
+                    entries.putAll(newEntries);
+                    for (Map.Entry<Long, IndexEntry> entry : newEntries.entrySet()) {
+                        Long neuronId = entry.getValue().neuronId;
+                        if (neuronId != null) {
+                            neuronVertexIds.computeIfAbsent(neuronId, k -> new HashSet<>()).add(entry.getKey());
+                        }
+                    }
+                    journaled = rebuildJournal.size();
+                    for (Runnable change : rebuildJournal) {
+                        change.run();
+                    }
+                    rebuildJournal = null;
+                    compactIfNeeded();
+                    valid.set(true);
+                }
+                finally {
+                    lock.writeLock().unlock();
+                }
+                long end = System.currentTimeMillis();
+                log.info("Added {} vertices to spatial index in {} ms (keys: {} ms, ordering: {} ms, insertion: {} ms, {} updates replayed)",
+                        newEntries.size(), end - start, keyTime - start, orderTime - keyTime, end - orderTime, journaled);
+                return newEntries.size();
+            }
+            finally {
+                if (rebuildJournal != null) {
+                    // The rebuild failed, and the current contents already have every update
+                    lock.writeLock().lock();
+                    try {
+                        rebuildJournal = null;
+                    }
+                    finally {
+                        lock.writeLock().unlock();
+                    }
+                }
             }
         }
-        valid.set(true);
-        log.info("Added {} vertices to spatial index", index.size());
     }
-    
+
     public void clear() {
+        lock.writeLock().lock();
+        try {
+            journal(this::clearEntries);
+            clearEntries();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of vertexes currently in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The methods below must be called while holding the write lock
+
+    /**
+     * Records a change, to be applied again to the tree of the rebuild in progress.
+     */
+    private void journal(Runnable change) {
+        if (rebuildJournal != null) {
+            rebuildJournal.add(change);
+        }
+    }
+
+    private boolean addEntry(TmGeoAnnotation vertex) {
+        Long id = vertex.getId();
+        if (id == null) {
+            return false;
+        }
+        if (entries.containsKey(id)) {
+            return false;
+        }
+        IndexEntry entry = createEntry(vertex);
+        try {
+            index.insert(entry.key, vertex);
+        }
+        catch (KeySizeException | KeyDuplicateException ex) {
+            log.warn("Could not add vertex {} to spatial index", id, ex);
+            return false;
+        }
+        entries.put(id, entry);
+        if (entry.neuronId != null) {
+            neuronVertexIds.computeIfAbsent(entry.neuronId, k -> new HashSet<>()).add(id);
+        }
+        return true;
+    }
+
+    private boolean removeEntry(Long id) {
+        IndexEntry entry = id == null ? null : entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.neuronId != null) {
+            Set<Long> ids = neuronVertexIds.get(entry.neuronId);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    neuronVertexIds.remove(entry.neuronId);
+                }
+            }
+        }
+        try {
+            // Always delete using the original key, in case the position has changed since
+            index.delete(entry.key);
+            deletedCount++;
+        }
+        catch (KeySizeException | KeyMissingException ex) {
+            log.warn("Vertex {} was missing from spatial index", id, ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-keys the vertex only if it moved or changed neuron, or if it is a different
+     * instance from the one indexed (the tree must hand back the current object).
+     */
+    private boolean updateEntry(TmGeoAnnotation vertex) {
+        IndexEntry entry = entries.get(vertex.getId());
+        if (entry != null && entry.vertex == vertex && entry.isUnchanged(vertex)) {
+            return false;
+        }
+        removeEntry(vertex.getId());
+        return addEntry(vertex);
+    }
+
+    /**
+     * The position is read before the key is computed from it, so if the vertex moves in between,
+     * the entry looks changed and the vertex is re-keyed by the next update.
+     */
+    private IndexEntry createEntry(TmGeoAnnotation vertex) {
+        IndexEntry entry = new IndexEntry(vertex);
+        entry.key = keyForVertex(vertex);
+        return entry;
+    }
+
+    private int updateNeuronEntries(TmNeuronMetadata neuron) {
+        int changed = 0;
+        Map<Long, TmGeoAnnotation> current = neuron.getGeoAnnotationMap();
+        Set<Long> indexed = neuronVertexIds.get(neuron.getId());
+        if (indexed != null) {
+            for (Long id : new ArrayList<>(indexed)) {
+                if (!current.containsKey(id) && removeEntry(id)) {
+                    changed++;
+                }
+            }
+        }
+        for (TmGeoAnnotation vertex : current.values()) {
+            if (updateEntry(vertex)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private int synchronizeEntries(Collection<TmNeuronMetadata> neuronList) {
+        int changed = 0;
+        Set<Long> neuronIds = new HashSet<>();
+        for (TmNeuronMetadata neuron : neuronList) {
+            neuronIds.add(neuron.getId());
+            changed += updateNeuronEntries(neuron);
+        }
+        for (Long neuronId : new ArrayList<>(neuronVertexIds.keySet())) {
+            if (!neuronIds.contains(neuronId)) {
+                changed += removeNeuronEntries(neuronId);
+            }
+        }
+        return changed;
+    }
+
+    private int removeNeuronEntries(Long neuronId) {
+        Set<Long> ids = neuronVertexIds.get(neuronId);
+        if (ids == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (Long id : new ArrayList<>(ids)) {
+            if (removeEntry(id)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount < MIN_COMPACTION_SIZE || deletedCount < entries.size()) {
+            return;
+        }
+        log.debug("Compacting spatial index with {} live and {} deleted vertices", entries.size(), deletedCount);
+        KDTree<TmGeoAnnotation> compacted = new KDTree<>(3);
+        for (IndexEntry entry : entries.values()) {
+            try {
+                compacted.insert(entry.key, entry.vertex);
+            }
+            catch (KeySizeException | KeyDuplicateException ex) {
+                log.warn("Could not reinsert vertex {} into spatial index", entry.vertex.getId(), ex);
+            }
+        }
+        index = compacted;
+        deletedCount = 0;
+    }
+
+    private void clearEntries() {
         this.index = new KDTree<>(3);
+        entries.clear();
+        neuronVertexIds.clear();
+        deletedCount = 0;
     }
-    
-    private class CacheableKey {
 
-        private final double[] data;
-        
-        public CacheableKey(double[] data) {
-            this.data = Arrays.copyOf(data, 3);
+    /**
+     * The indexed vertex with its original key, neuron and voxel position, in case
+     * the vertex is changed in place before it is removed or re-indexed.
+     */
+    private static class IndexEntry {
+
+        private final TmGeoAnnotation vertex;
+        private double[] key;
+        private final Long neuronId;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        IndexEntry(TmGeoAnnotation vertex) {
+            this.vertex = vertex;
+            this.neuronId = vertex.getNeuronId();
+            this.x = vertex.getX();
+            this.y = vertex.getY();
+            this.z = vertex.getZ();
         }
-        
-        public double[] toArray() {
-            return data;
+
+        boolean isUnchanged(TmGeoAnnotation v) {
+            return v.getX() == x && v.getY() == y && v.getZ() == z
+                    && Objects.equals(v.getNeuronId(), neuronId);
         }
-        
+
     }
 }
@@ -5,6 +5,8 @@ import edu.wlu.cs.levy.CG.Checker;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.eventbus.*;
+import org.janelia.workstation.core.activity_logging.ActivityLogHelper;
+import org.perf4j.StopWatch;
 import java.util.List;
 
 public class SpatialIndexManager {
@@ -16,7 +18,6 @@ public class SpatialIndexManager {
     }
 
     public void initialize() {
-        spatialIndex.clear();
         spatialIndex.rebuildIndex(NeuronManager.getInstance().getNeuronList());
     }
 
@@ -60,12 +61,7 @@ public class SpatialIndexManager {
     @Subscribe
     public void neuronCreated(NeuronCreateEvent event) {
         for (TmNeuronMetadata neuron : event.getNeurons()) {
-            for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
-                spatialIndex.removeFromIndex(annotation);
-            }
-            for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
-                spatialIndex.addToIndex(annotation);
-            }
+            spatialIndex.updateNeuron(neuron);
         }
     }
 
@@ -74,34 +70,28 @@ public class SpatialIndexManager {
         if (event.getNeurons()==null)
             return;
         for (TmNeuronMetadata neuron : event.getNeurons()) {
-            for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
-                spatialIndex.removeFromIndex(annotation);
-            }
-            for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
-                spatialIndex.addToIndex(annotation);
-            }
+            spatialIndex.updateNeuron(neuron);
         }
     }
 
     @Subscribe
     public void neuronDeleted(NeuronDeleteEvent event) {
         for (TmNeuronMetadata neuron : event.getNeurons()) {
-            for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
-                spatialIndex.removeFromIndex(annotation);
-            }
+            spatialIndex.removeNeuron(neuron);
         }
     }
 
     @Subscribe
     public void projectLoaded(LoadProjectEvent event) {
-        spatialIndex.clear();
-        spatialIndex.rebuildIndex(NeuronManager.getInstance().getNeuronList());
+        StopWatch w = new StopWatch();
+        int vertexCount = spatialIndex.rebuildIndex(NeuronManager.getInstance().getNeuronList());
+        ActivityLogHelper.logElapsed("SpatialIndexManager.projectLoaded", vertexCount, w);
     }
 
     @Subscribe
     public void neuronSpatialFilterUpdated(NeuronSpatialFilterUpdateEvent event) {
-        spatialIndex.clear();
-        spatialIndex.rebuildIndex(NeuronManager.getInstance().getNeuronList());
+        // Most neurons are unchanged by a filter update, so only apply the difference
+        spatialIndex.synchronizeIndex(NeuronManager.getInstance().getNeuronList());
     }
 
     @Subscribe
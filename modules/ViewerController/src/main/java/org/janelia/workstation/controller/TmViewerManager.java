@@ -263,16 +263,7 @@ public class TmViewerManager implements GlobalViewerController {
             if (neuron.getOwnerKey().equals(systemNeuron)) {
                 nFragments += 1;
             }
-            if (neuron.getColor() == null) {
-                neuron.setColor(TmViewState.generateNewColor(neuron.getId()));
-            }
-            for (TmGeoAnnotation ann : neuron.getGeoAnnotationMap().values()) {
-                if (ann.getRadius() == null) {
-                    Date modDate = ann.getModificationDate();
-                    ann.setRadius(1.0);
-                    ann.setModificationDate(modDate);
-                }
-            }
+            prepareNeuron(neuron);
         }
 
         try {
@@ -296,6 +287,18 @@ public class TmViewerManager implements GlobalViewerController {
 
         TmModelManager.getInstance().getNeuronHistory().clearHistory();
 
+        // neurons that are still downloading are shown as they arrive
+        modelManager.getNeuronModel().publishArrivingNeurons(neurons -> {
+            TmNeuronTagMap tagMap = TmModelManager.getInstance().getCurrentTagMap();
+            for (TmNeuronMetadata neuron : neurons) {
+                prepareNeuron(neuron);
+                for (String tag : neuron.getTags()) {
+                    tagMap.addTag(tag, neuron);
+                }
+            }
+            ViewerEventBus.postEvent(new NeuronCreateEvent(this, neurons, true));
+        });
+
         // this is for displaying the neurons
         LoadNeuronsEvent neuronsEvent = new LoadNeuronsEvent(this, workspace,null);
         ViewerEventBus.postEvent(neuronsEvent);
@@ -311,4 +314,17 @@ public class TmViewerManager implements GlobalViewerController {
         PostSampleLoadEvent postLoadEvent = new PostSampleLoadEvent(currProject, currProject instanceof TmSample);
         ViewerEventBus.postEvent(postLoadEvent);
     }
+
+    private void prepareNeuron(TmNeuronMetadata neuron) {
+        if (neuron.getColor() == null) {
+            neuron.setColor(TmViewState.generateNewColor(neuron.getId()));
+        }
+        for (TmGeoAnnotation ann : neuron.getGeoAnnotationMap().values()) {
+            if (ann.getRadius() == null) {
+                Date modDate = ann.getModificationDate();
+                ann.setRadius(1.0);
+                ann.setModificationDate(modDate);
+            }
+        }
+    }
 }
@@ -2,6 +2,8 @@ package org.janelia.workstation.controller.access;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.janelia.jacsstorage.clients.api.JadeStorageAttributes;
 import org.janelia.jacsstorage.clients.api.http.ClientProxy;
@@ -182,7 +184,33 @@ public class ProjectInitFacadeImpl implements ProjectInitFacade {
                 // Neurons need to be loaded en masse from raw data from server.
                 NeuronModel manager = modelManager.getNeuronModel();
                 log.info("Loading neurons for workspace {}", workspace.getId());
-                manager.loadWorkspaceNeurons(workspace);
+                final AtomicInteger loadedNeurons = new AtomicInteger();
+                if (workspace.isContainsFragments()) {
+                    // the spatial filter is initialized from all of the neurons
+                    manager.loadWorkspaceNeurons(workspace, batch ->
+                            progress2.progress("Loaded " + loadedNeurons.addAndGet(batch.size()) + " neurons"));
+                }
+                else {
+                    // open the workspace with the first batch, the viewers get the rest as it arrives
+                    final ProgressHandle neuronProgress = ProgressHandleFactory.createHandle("Loading neurons...");
+                    neuronProgress.start();
+                    neuronProgress.switchToIndeterminate();
+                    CompletableFuture<Integer> neuronsLoaded;
+                    try {
+                        neuronsLoaded = manager.streamWorkspaceNeurons(workspace, batch ->
+                                neuronProgress.progress("Loaded " + loadedNeurons.addAndGet(batch.size()) + " neurons"));
+                    } catch (Exception e) {
+                        neuronProgress.finish();
+                        throw e;
+                    }
+                    neuronsLoaded.whenComplete((count, error) -> {
+                        neuronProgress.finish();
+                        if (error != null) {
+                            log.error("neuron loader failed", error);
+                            FrameworkAccess.handleException(error);
+                        }
+                    });
+                }
 
                 // if workspace is flagged as containing fragments, get bounding boxes and init filter
                 if (workspace.isContainsFragments()) {
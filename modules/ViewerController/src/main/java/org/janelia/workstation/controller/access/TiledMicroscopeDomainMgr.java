@@ -21,9 +21,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * Singleton for managing the Tiled Microscope Domain Model and related data access.
@@ -32,6 +35,7 @@ import java.util.stream.Stream;
  */
 public class TiledMicroscopeDomainMgr {
     private static final int NUM_PARALLEL_NEURONSTREAMS = 4;
+    private static final int NEURON_PAGE_SIZE = 5000;
     private static final Logger LOG = LoggerFactory.getLogger(TiledMicroscopeDomainMgr.class);
 
     // Singleton
@@ -242,57 +246,54 @@ public class TiledMicroscopeDomainMgr {
         client.removeWorkspaces(selectedWorkspaces);
     }
 
-    class RetrieveNeuronsTask extends RecursiveTask<Stream<TmNeuronMetadata>> {
-        double defaultLength = 50000.0;
-        int start;
-        int end;
-        long workspaceId;
-
-        RetrieveNeuronsTask(long workspaceId,
-                            int start, int end) {
-            this.start = start;
-            this.end = end;
-            this.workspaceId = workspaceId;
-        }
-
-        @Override
-        public Stream<TmNeuronMetadata> compute() {
-            if ((end-start)>defaultLength) {
-                List<RetrieveNeuronsTask> tasks = new ArrayList<>();
-                // break up into defaultLength chunks
-                int numChunks = (int)Math.ceil((end-start)/defaultLength);
-                for (int i=0; i<numChunks; i++) {
-                    int newStart = i*(int)defaultLength;
-                    int newEnd = newStart + (int)defaultLength;
-                    if ((newStart+defaultLength)>end) {
-                        newEnd = end;
-                    }
-                    RetrieveNeuronsTask task = new RetrieveNeuronsTask(workspaceId, newStart,
-                            newEnd);
-                    tasks.add(task);
-                    task.fork();
-                }
-
-                return tasks.stream().flatMap(subtask -> subtask.join());
-            } else {
-                LOG.info("Retrieving results - Neuron block: {} - {}", start, end);
-                return client.getWorkspaceNeurons(workspaceId, start, end - start).stream();
-            }
-        }
-    }
-
     public List<TmNeuronMetadata> getNeurons(List<Long> neuronIds, TmWorkspace workspace) {
         LOG.debug("getNeurons(workspaceId={})",workspace.getId());
         List<TmNeuronMetadata> neurons = client.getNeuronSet(neuronIds, workspace);
         return neurons;
     }
 
-    public Stream<TmNeuronMetadata> streamWorkspaceNeurons(Long workspaceId) {
-        LOG.debug("getWorkspaceNeurons(workspaceId={})",workspaceId);
-        long neuronCount = client.getWorkspaceNeuronCount(workspaceId);
-        ForkJoinPool pool = new ForkJoinPool(NUM_PARALLEL_NEURONSTREAMS);
-        Stream<TmNeuronMetadata> neurons = pool.invoke(new RetrieveNeuronsTask(workspaceId, 0, (int)neuronCount));
-        return neurons;
+    /**
+     * Fetches the neurons of a workspace in pages, several pages at a time. Each page is
+     * parsed on a worker thread and handed to the consumer on the calling thread as soon
+     * as it arrives, so callers can use the first neurons before the last are downloaded.
+     * The consumer returns false to stop the load, which cancels the pages still in flight.
+     *
+     * @return number of neurons loaded
+     */
+    public int loadWorkspaceNeurons(Long workspaceId, Predicate<List<TmNeuronMetadata>> pageConsumer) throws Exception {
+        LOG.debug("loadWorkspaceNeurons(workspaceId={})",workspaceId);
+        final TiledMicroscopeRestClient restClient = client;
+        long neuronCount = restClient.getWorkspaceNeuronCount(workspaceId);
+        int pageCount = (int)((neuronCount + NEURON_PAGE_SIZE - 1) / NEURON_PAGE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_PARALLEL_NEURONSTREAMS);
+        List<Future<List<TmNeuronMetadata>>> futures = new ArrayList<>();
+        try {
+            CompletionService<List<TmNeuronMetadata>> pages = new ExecutorCompletionService<>(executor);
+            for (int i=0; i<pageCount; i++) {
+                final long offset = (long)i * NEURON_PAGE_SIZE;
+                final int length = (int)Math.min(NEURON_PAGE_SIZE, neuronCount - offset);
+                futures.add(pages.submit(() -> {
+                    LOG.info("Retrieving results - Neuron block: {} - {}", offset, offset + length);
+                    return restClient.getWorkspaceNeurons(workspaceId, offset, length);
+                }));
+            }
+            int loaded = 0;
+            for (int i=0; i<pageCount; i++) {
+                List<TmNeuronMetadata> page = pages.take().get();
+                loaded += page.size();
+                if (!pageConsumer.test(page)) {
+                    LOG.info("Stopped loading workspace {} after {} neurons", workspaceId, loaded);
+                    break;
+                }
+            }
+            return loaded;
+        }
+        finally {
+            for (Future<List<TmNeuronMetadata>> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
     }
 
     public TmNeuronMetadata createWithId(TmNeuronMetadata neuronMetadata) throws Exception {
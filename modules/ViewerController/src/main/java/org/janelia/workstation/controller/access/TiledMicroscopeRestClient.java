@@ -13,10 +13,9 @@ import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.io.ByteStreams;
 
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +42,9 @@ public class TiledMicroscopeRestClient extends RESTClientBase {
 
     private static final Logger LOG = LoggerFactory.getLogger(TiledMicroscopeRestClient.class);
 
+    // Readers are immutable and thread-safe, so neuron pages fetched in parallel share one
+    private static final ObjectReader NEURON_READER = new ObjectMapper().readerFor(TmNeuronMetadata.class);
+
     private final WebTarget service;
     private final String remoteApiUrl;
     private final String remoteStorageUrl;
@@ -296,22 +298,17 @@ public class TiledMicroscopeRestClient extends RESTClientBase {
         return response.readEntity(new GenericType<List<TmNeuronMetadata>>() {});
     }
 
-    Collection<TmNeuronMetadata> getWorkspaceNeurons(Long workspaceId, long offset, int length) {
-        try {
+    List<TmNeuronMetadata> getWorkspaceNeurons(Long workspaceId, long offset, int length) {
+        WebTarget target = getMouselightDataEndpoint("/workspace/neuron")
+                .queryParam("workspaceId", workspaceId)
+                .queryParam("offset", offset)
+                .queryParam("frags", true)
+                .queryParam("length", length);
+        try (InputStream is = target
+                .request("application/octet-stream")
+                .get(InputStream.class)) {
             List<TmNeuronMetadata> neuronList = new ArrayList<>();
-            WebTarget target = getMouselightDataEndpoint("/workspace/neuron")
-                    .queryParam("workspaceId", workspaceId)
-                    .queryParam("offset", offset)
-                    .queryParam("frags", true)
-                    .queryParam("length", length);
-            ObjectMapper mapper = new ObjectMapper();
-            InputStream is = target
-                    .request("application/octet-stream")
-                    .get(InputStream.class);
-            JsonFactory factory = new JsonFactory();
-            factory.setCodec(mapper);
-            JsonParser parser  = factory.createParser(is);
-            Iterator<TmNeuronMetadata> neurons = parser.readValuesAs(TmNeuronMetadata.class);
+            Iterator<TmNeuronMetadata> neurons = NEURON_READER.readValues(is);
             while (neurons.hasNext()) {
                 neuronList.add(neurons.next());
             }
@@ -323,6 +320,7 @@ public class TiledMicroscopeRestClient extends RESTClientBase {
             throw new RemoteServiceException("Client had problems processing Neuron Server Stream");
         }
     }
+
     void createBoundingBoxes (Long workspaceId, List<BoundingBox3d> boundingBoxes) {
         try {
             WebTarget target = getMouselightDataEndpoint("/workspace/boundingboxes")
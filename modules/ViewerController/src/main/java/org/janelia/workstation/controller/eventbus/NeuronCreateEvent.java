@@ -5,8 +5,25 @@ import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import java.util.Collection;
 
 public class NeuronCreateEvent extends NeuronEvent {
+    private final boolean workspaceLoad;
+
     public NeuronCreateEvent(Object source,
                              Collection<TmNeuronMetadata> neurons) {
+        this(source, neurons, false);
+    }
+
+    /**
+     * @param workspaceLoad true if the neurons are a batch of the workspace that is still loading,
+     *                      rather than neurons the user just created
+     */
+    public NeuronCreateEvent(Object source,
+                             Collection<TmNeuronMetadata> neurons,
+                             boolean workspaceLoad) {
         super(source, neurons);
+        this.workspaceLoad = workspaceLoad;
+    }
+
+    public boolean isWorkspaceLoad() {
+        return workspaceLoad;
     }
 }
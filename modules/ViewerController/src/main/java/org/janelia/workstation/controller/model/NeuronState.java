@@ -0,0 +1,95 @@
+package org.janelia.workstation.controller.model;
+
+/**
+ * One serialized neuron in the undo history, stored either in full (a checkpoint) or
+ * as a delta against the previous state of the same neuron.
+ *
+ * Consecutive saves of a neuron usually differ in one small region of the serialized
+ * bytes (a moved vertex, a changed radius, an added branch), so a delta keeps only the
+ * changed middle, plus the lengths of the prefix and suffix shared with its base.
+ */
+class NeuronState {
+
+    private NeuronState base;
+    private byte[] data;
+    private int prefixLength;
+    private int suffixLength;
+    private int chainLength;
+
+    private NeuronState(NeuronState base, byte[] data, int prefixLength, int suffixLength, int chainLength) {
+        this.base = base;
+        this.data = data;
+        this.prefixLength = prefixLength;
+        this.suffixLength = suffixLength;
+        this.chainLength = chainLength;
+    }
+
+    static NeuronState checkpoint(byte[] bytes) {
+        return new NeuronState(null, bytes, 0, 0, 0);
+    }
+
+    /**
+     * Encodes the bytes as a delta against the previous state, or as a checkpoint if there
+     * is no previous state, the chain of deltas has reached maxChainLength, or the delta
+     * would not be smaller than half of the full bytes.
+     *
+     * @param baseBytes the decoded bytes of the previous state, which the caller keeps so
+     *                  that each save does not decode the whole chain again
+     */
+    static NeuronState encode(byte[] bytes, NeuronState previous, byte[] baseBytes, int maxChainLength) {
+        if (previous == null || previous.chainLength >= maxChainLength) {
+            return checkpoint(bytes);
+        }
+        int limit = Math.min(bytes.length, baseBytes.length);
+        int prefix = 0;
+        while (prefix < limit && bytes[prefix] == baseBytes[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && bytes[bytes.length - 1 - suffix] == baseBytes[baseBytes.length - 1 - suffix]) {
+            suffix++;
+        }
+        int middleLength = bytes.length - prefix - suffix;
+        if (middleLength * 2 >= bytes.length) {
+            return checkpoint(bytes);
+        }
+        byte[] middle = new byte[middleLength];
+        System.arraycopy(bytes, prefix, middle, 0, middleLength);
+        return new NeuronState(previous, middle, prefix, suffix, previous.chainLength + 1);
+    }
+
+    byte[] decode() {
+        if (base == null) {
+            return data;
+        }
+        byte[] baseBytes = base.decode();
+        byte[] bytes = new byte[prefixLength + data.length + suffixLength];
+        System.arraycopy(baseBytes, 0, bytes, 0, prefixLength);
+        System.arraycopy(data, 0, bytes, prefixLength, data.length);
+        System.arraycopy(baseBytes, baseBytes.length - suffixLength, bytes, prefixLength + data.length, suffixLength);
+        return bytes;
+    }
+
+    boolean isDeltaOf(NeuronState state) {
+        return base == state;
+    }
+
+    /**
+     * Stores the full bytes, so this state no longer depends on the states before it.
+     */
+    void makeCheckpoint() {
+        if (base != null) {
+            data = decode();
+            base = null;
+            prefixLength = 0;
+            suffixLength = 0;
+            chainLength = 0;
+        }
+    }
+
+    long getStoredSize() {
+        return data.length;
+    }
+
+}
@@ -1,13 +1,12 @@
 package org.janelia.workstation.controller.model;
 
-import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
-
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 public class TmHistoricalEvent {
-    Map<Long, byte[]> neurons = new HashMap<>();
+    // serialized neurons; TmHistory re-encodes them as deltas once the event is recorded
+    Map<Long, NeuronState> neurons = new HashMap<>();
     public enum EVENT_TYPE {NEURON_UPDATE, NEURON_DELETE, NEURON_CREATE, NEURON_MERGE};
     EVENT_TYPE type;
     Date timestamp;
@@ -23,11 +22,22 @@ public class TmHistoricalEvent {
     }
 
     public Map<Long, byte[]> getNeurons() {
-        return neurons;
+        Map<Long, byte[]> neuronData = new HashMap<>();
+        for (Map.Entry<Long, NeuronState> entry : neurons.entrySet()) {
+            neuronData.put(entry.getKey(), entry.getValue().decode());
+        }
+        return neuronData;
     }
 
     public void setNeurons(Map<Long, byte[]> neurons) {
-        this.neurons = neurons;
+        this.neurons = new HashMap<>();
+        for (Map.Entry<Long, byte[]> entry : neurons.entrySet()) {
+            this.neurons.put(entry.getKey(), NeuronState.checkpoint(entry.getValue()));
+        }
+    }
+
+    Map<Long, NeuronState> getNeuronStates() {
+        return neurons;
     }
 
     public void addItemToSelectionState (TmSelectionState.SelectionCode key, Long itemID) {
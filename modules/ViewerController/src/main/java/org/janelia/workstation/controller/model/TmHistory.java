@@ -2,6 +2,7 @@ package org.janelia.workstation.controller.model;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.integration.util.FrameworkAccess;
@@ -11,9 +12,24 @@ import java.util.List;
 
 /**
  * stores history information for doing undo-redos
+ *
+ * Each neuron is stored as a delta against its previous state in the history, with a
+ * full checkpoint every few states. The oldest events are dropped once there are more
+ * than MAX_EVENTS of them or they take more than MAX_HISTORY_BYTES.
  */
 public class TmHistory {
+    private static final int MAX_EVENTS = 10;
+    private static final long MAX_HISTORY_BYTES = 64L * 1024 * 1024;
+    // store a full copy of a neuron at least every this many states
+    private static final int CHECKPOINT_INTERVAL = 8;
+
+    // ObjectWriter is immutable and thread-safe, unlike configuring a new mapper per save
+    private static final ObjectWriter NEURON_WRITER = new ObjectMapper().writer();
+
     List<TmHistoricalEvent> historyOperations = new ArrayList<>();
+    // most recent state of each neuron in the history, which the next state is encoded against
+    Map<Long, LatestState> latestStates = new HashMap<>();
+    long historyBytes = 0;
     int undoStep = 0;
     boolean undoMode = false;
     boolean transaction = false;
@@ -26,22 +42,48 @@ public class TmHistory {
 
     public void setHistoryOperations(List<TmHistoricalEvent> historyOperations) {
         this.historyOperations = historyOperations;
+        latestStates.clear();
+        historyBytes = 0;
+        Map<Long, NeuronState> states = new HashMap<>();
+        for (TmHistoricalEvent event : historyOperations) {
+            for (Map.Entry<Long, NeuronState> entry : event.getNeuronStates().entrySet()) {
+                states.put(entry.getKey(), entry.getValue());
+                historyBytes += entry.getValue().getStoredSize();
+            }
+        }
+        for (Map.Entry<Long, NeuronState> entry : states.entrySet()) {
+            latestStates.put(entry.getKey(), new LatestState(entry.getValue(), entry.getValue().decode()));
+        }
+    }
+
+    /**
+     * Serializes a neuron for storage in a historical event.
+     */
+    public static byte[] serializeNeuron(TmNeuronMetadata neuron) throws JsonProcessingException {
+        return NEURON_WRITER.writeValueAsBytes(neuron);
     }
 
     public TmHistoricalEvent restoreAction(int step) {
         TmHistoricalEvent event = historyOperations.get(step);
-        historyOperations.clear();
+        clearOperations();
         undoMode = false;
         return event;
     }
 
     public void clearHistory() {
-        this.historyOperations.clear();
+        clearOperations();
         neuronsLogged.clear();
         undoMode = false;
 
     }
 
+    // Events already handed out keep decoding, since deltas hold on to their own base states
+    private void clearOperations() {
+        historyOperations.clear();
+        latestStates.clear();
+        historyBytes = 0;
+    }
+
     public List<TmHistoricalEvent> undoAction() {
         if (historyOperations.size()==0)
             return null;
@@ -108,15 +150,14 @@ public class TmHistory {
 
     public void checkBackup(TmNeuronMetadata neuron) {
         if (undoMode) {
-            historyOperations.clear();
+            clearOperations();
             neuronsLogged.clear();
             undoMode = false;
         }
         if (!neuronsLogged.contains(neuron.getId())) {
             try {
                 // add historical event
-                ObjectMapper mapper = new ObjectMapper();
-                byte[] neuronData = mapper.writeValueAsBytes(neuron);
+                byte[] neuronData = serializeNeuron(neuron);
                 TmHistoricalEvent event = new TmHistoricalEvent();
                 Map<Long, byte[]> map = new HashMap<>();
                 map.put(neuron.getId(), neuronData);
@@ -162,16 +203,65 @@ public class TmHistory {
             event.setMultiAction(true);
 
         if (undoMode) {
-            historyOperations.clear();
+            clearOperations();
             neuronsLogged.clear();
             undoMode = false;
         }
 
         addCurrentSelectionsToEvent(event);
+        for (Map.Entry<Long, NeuronState> entry : event.getNeuronStates().entrySet()) {
+            // new events hold their neurons in full, so this does not decode anything
+            byte[] bytes = entry.getValue().decode();
+            LatestState latest = latestStates.get(entry.getKey());
+            NeuronState state = latest == null
+                    ? NeuronState.checkpoint(bytes)
+                    : NeuronState.encode(bytes, latest.state, latest.bytes, CHECKPOINT_INTERVAL);
+            entry.setValue(state);
+            latestStates.put(entry.getKey(), new LatestState(state, bytes));
+            historyBytes += state.getStoredSize();
+        }
         historyOperations.add(event);
         undoStep = 0;
 
-        if (historyOperations.size()>10)
-            historyOperations.remove(0);
+        while (historyOperations.size()>MAX_EVENTS
+                || (historyOperations.size()>1 && historyBytes>MAX_HISTORY_BYTES)) {
+            removeOldestEvent();
+        }
+    }
+
+    private void removeOldestEvent() {
+        TmHistoricalEvent oldest = historyOperations.remove(0);
+        for (Map.Entry<Long, NeuronState> entry : oldest.getNeuronStates().entrySet()) {
+            NeuronState removed = entry.getValue();
+            historyBytes -= removed.getStoredSize();
+            LatestState latest = latestStates.get(entry.getKey());
+            if (latest != null && latest.state == removed) {
+                latestStates.remove(entry.getKey());
+            }
+            // the next state of this neuron can no longer be a delta against the removed one
+            for (TmHistoricalEvent event : historyOperations) {
+                NeuronState state = event.getNeuronStates().get(entry.getKey());
+                if (state != null && state.isDeltaOf(removed)) {
+                    historyBytes -= state.getStoredSize();
+                    state.makeCheckpoint();
+                    historyBytes += state.getStoredSize();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The latest state of a neuron together with its decoded bytes, so the next state can be
+     * encoded against it without decoding its chain of deltas.
+     */
+    private static class LatestState {
+        final NeuronState state;
+        final byte[] bytes;
+
+        LatestState(NeuronState state, byte[] bytes) {
+            this.state = state;
+            this.bytes = bytes;
+        }
     }
 }
@@ -1,12 +1,12 @@
 package org.janelia.workstation.controller.model.annotations.neuron;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.janelia.model.domain.tiledMicroscope.*;
 import org.janelia.model.util.TmNeuronUtils;
 import org.janelia.workstation.controller.model.IdSource;
 import org.janelia.workstation.controller.model.TmHistoricalEvent;
+import org.janelia.workstation.controller.model.TmHistory;
 import org.janelia.workstation.controller.model.TmModelManager;
 import org.janelia.model.domain.tiledMicroscope.BoundingBox3d;
 import org.janelia.workstation.integration.util.FrameworkAccess;
@@ -14,10 +14,12 @@ import org.perf4j.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.swing.SwingUtilities;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class NeuronModel {
 
@@ -26,6 +28,10 @@ public class NeuronModel {
     private final IdSource idSource = new IdSource();
     private Map<Long, TmNeuronMetadata> neuronMap;
     private Set<BoundingBox3d> boundingBoxes;
+    // Guards the neuron map against batches of an older load; each load gets a new generation
+    private final Object loadLock = new Object();
+    private int loadGeneration;
+    private Consumer<Collection<TmNeuronMetadata>> arrivingNeuronsHandler;
     static NeuronModel modelInstance;
 
     static public NeuronModel getInstance() {
@@ -197,20 +203,135 @@ public class NeuronModel {
      * one which happens to be on the server.
      */
     public void loadWorkspaceNeurons(TmWorkspace workspace) throws Exception {
-        neuronMap.clear();
-        // addNeurons() must be done serially, so flatten the stream:
-        for (TmNeuronMetadata n: neuronModelAdapter.loadNeurons(workspace).collect(Collectors.toList())) {
-            addNeuron(n);
-        }
+        loadWorkspaceNeurons(workspace, null);
+    }
+
+    /**
+     * Loads the workspace's neurons as above. Pages are downloaded and parsed in parallel,
+     * and each batch is added to the model as soon as it arrives; the listener, if any, is
+     * then called with the batch, on the loading thread.
+     */
+    public void loadWorkspaceNeurons(TmWorkspace workspace, Consumer<Collection<TmNeuronMetadata>> batchListener) throws Exception {
+        final int generation = startLoad();
+        // addNeuron() must be done serially, which the adapter guarantees for its batches
+        neuronModelAdapter.loadNeurons(workspace, batch -> {
+            addNeurons(generation, batch);
+            if (batchListener != null) {
+                batchListener.accept(batch);
+            }
+            return isCurrentLoad(generation);
+        });
         LOG.info("loadWorkspaceNeurons() loaded {} neurons", neuronMap.size());
     }
 
+    /**
+     * Loads the workspace's neurons as above, but returns as soon as the first batch is in the
+     * model, so the workspace can be opened while the rest downloads in the background. Later
+     * batches are added to the model on the EDT, and once the viewers have been given the neurons
+     * loaded so far (see publishArrivingNeurons) each batch is handed to them as well. Starting
+     * another load drops whatever is still arriving from this one.
+     *
+     * @return completes with the number of neurons loaded, once the last batch has arrived
+     */
+    public CompletableFuture<Integer> streamWorkspaceNeurons(TmWorkspace workspace, Consumer<Collection<TmNeuronMetadata>> batchListener) throws Exception {
+        final int generation = startLoad();
+        CompletableFuture<Void> firstBatch = new CompletableFuture<>();
+        CompletableFuture<Integer> loaded = CompletableFuture.supplyAsync(() -> {
+            try {
+                return neuronModelAdapter.loadNeurons(workspace, batch -> {
+                    if (firstBatch.isDone()) {
+                        SwingUtilities.invokeLater(() -> addArrivingNeurons(generation, batch));
+                    }
+                    else {
+                        addNeurons(generation, batch);
+                        firstBatch.complete(null);
+                    }
+                    if (batchListener != null) {
+                        batchListener.accept(batch);
+                    }
+                    return isCurrentLoad(generation);
+                });
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "Workspace neuron loader");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        // empty workspaces and failed loads never see a first batch
+        loaded.whenComplete((count, error) -> {
+            if (error != null) {
+                firstBatch.completeExceptionally(error);
+            }
+            else {
+                firstBatch.complete(null);
+            }
+        });
+        firstBatch.get();
+        LOG.info("streamWorkspaceNeurons() loaded the first {} neurons", neuronMap.size());
+        return loaded;
+    }
+
+    /**
+     * Called on the EDT when the viewers are given the neurons in the model. Batches of the current
+     * load that arrive afterwards are added to the model and then passed to the handler, also on the EDT.
+     */
+    public void publishArrivingNeurons(Consumer<Collection<TmNeuronMetadata>> handler) {
+        synchronized (loadLock) {
+            arrivingNeuronsHandler = handler;
+        }
+    }
+
+    private int startLoad() {
+        synchronized (loadLock) {
+            arrivingNeuronsHandler = null;
+            neuronMap.clear();
+            return ++loadGeneration;
+        }
+    }
+
+    private boolean isCurrentLoad(int generation) {
+        synchronized (loadLock) {
+            return generation == loadGeneration;
+        }
+    }
+
+    private boolean addNeurons(int generation, Collection<TmNeuronMetadata> batch) {
+        synchronized (loadLock) {
+            if (generation != loadGeneration) {
+                return false;
+            }
+            for (TmNeuronMetadata n : batch) {
+                addNeuron(n);
+            }
+            return true;
+        }
+    }
+
+    private void addArrivingNeurons(int generation, Collection<TmNeuronMetadata> batch) {
+        Consumer<Collection<TmNeuronMetadata>> handler;
+        synchronized (loadLock) {
+            handler = arrivingNeuronsHandler;
+        }
+        if (handler == null) {
+            // the viewers will pick these up with the rest of the model
+            addNeurons(generation, batch);
+            return;
+        }
+        // The viewers' load event may still be waiting on the EDT, and it reads the model when it is
+        // handled, so add the batch behind it to have each neuron shown once
+        SwingUtilities.invokeLater(() -> {
+            if (addNeurons(generation, batch)) {
+                handler.accept(batch);
+            }
+        });
+    }
+
     /**
      * Fetches the precomputed bounding boxes from a workspace so a scalable index can be built to selectively
-     * download the fragments in the vicinity.
-     * TO DO: To speed up development, I'm using the existing spatial filter and just using the corners of the bounding box
-     * (6 3D points) to find close neurons.  To scale up a bit, this should really be a 3D spatial engine using r*trees
-     * for full 3D annotation support.
+     * download the fragments in the vicinity. The spatial filter bulk loads these boxes into an R*-tree
+     * (see NeuronProximitySpatialIndex).
      */
     public void loadWorkspaceBoundingBoxes (TmWorkspace workspace) throws Exception {
         LOG.info("loadWorkspaceNeurons() loaded {} neurons", neuronMap.size());
@@ -446,8 +567,7 @@ public class NeuronModel {
     }
 
     private void saveHistoricalNeuron(TmNeuronMetadata neuron) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        byte[] neuronData = mapper.writeValueAsBytes(neuron);
+        byte[] neuronData = TmHistory.serializeNeuron(neuron);
         TmHistoricalEvent event = new TmHistoricalEvent();
         Map<Long,byte[]> map = new HashMap<>();
         map.put(neuron.getId(), neuronData);
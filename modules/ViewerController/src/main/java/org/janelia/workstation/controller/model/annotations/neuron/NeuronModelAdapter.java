@@ -18,7 +18,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * Implementation of the model adapter, which pulls/pushes data through
@@ -67,20 +68,31 @@ class NeuronModelAdapter {
         workThread.start();
     }
 
-    public Stream<TmNeuronMetadata> loadNeurons(TmWorkspace workspace) {
+    /**
+     * Loads the neurons of a workspace, handing them to the consumer in batches as they
+     * arrive from the server. Batches are delivered serially, on the calling thread; the
+     * consumer returns false to stop the load.
+     * @return number of neurons loaded
+     */
+    public int loadNeurons(TmWorkspace workspace, Predicate<List<TmNeuronMetadata>> batchConsumer) throws Exception {
         log.info("Loading neurons for workspace: {}", workspace);
         StopWatch stopWatch = new StopWatch();
+        final AtomicInteger loaded = new AtomicInteger();
         try {
-            return tmDomainMgr.streamWorkspaceNeurons(workspace.getId())
-                    .limit(MAX_NEURONS)
-                    .map(neuron -> {
-                        // make sure to initialize cross-references
-                        neuron.initNeuronData();
-                        return neuron;
-                    })
-                    ;
+            tmDomainMgr.loadWorkspaceNeurons(workspace.getId(), page -> {
+                int remaining = MAX_NEURONS - loaded.get();
+                List<TmNeuronMetadata> batch = page.size() > remaining ? page.subList(0, remaining) : page;
+                for (TmNeuronMetadata neuron : batch) {
+                    // make sure to initialize cross-references
+                    neuron.initNeuronData();
+                }
+                loaded.addAndGet(batch.size());
+                // stop once the cap is reached, which cancels the pages still in flight
+                return batchConsumer.test(batch) && loaded.get() < MAX_NEURONS;
+            });
+            return loaded.get();
         } finally {
-            log.info("Getting neurons stream took {} ms", stopWatch.getElapsedTime());
+            log.info("Loading {} neurons took {} ms", loaded.get(), stopWatch.getElapsedTime());
         }
     }
 
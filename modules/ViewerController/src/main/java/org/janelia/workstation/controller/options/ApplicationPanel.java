@@ -35,6 +35,11 @@ public class ApplicationPanel extends JPanel {
     public static final String PREFERENCE_DRAG_TO_MERGE_2D = "DragToMerge2D";
     public static final String PREFERENCE_DRAG_TO_MERGE_2D_DEFAULT = "true";
     public static final String PREFERENCE_ANNOTATIONS_CLICK_MODE_DEFAULT = CLICK_MODE_SHIFT_LEFT_CLICK;
+    // 0 means a quarter of the maximum heap size
+    public static final String PREFERENCE_TEXTURE_CACHE_RAM_MB = "TextureCacheRamMB";
+    public static final String PREFERENCE_TEXTURE_CACHE_RAM_MB_DEFAULT = "0";
+    public static final String PREFERENCE_TEXTURE_CACHE_GPU_MB = "TextureCacheGpuMB";
+    public static final String PREFERENCE_TEXTURE_CACHE_GPU_MB_DEFAULT = "2048";
 
     private final ApplicationOptionsPanelController controller;
     private JCheckBox showHortaControlCenterOnStartup;
@@ -47,6 +52,8 @@ public class ApplicationPanel extends JPanel {
     private JCheckBox useNeuronQueue;
     private JCheckBox anchorsInViewportCheckbox;
     private JTextField zThicknessField;
+    private JTextField textureCacheRamField;
+    private JTextField textureCacheGpuField;
     private JComboBox<String> clickModeCombo;
     private JCheckBox dragToMergeCheckbox;
     private JLabel errorLabel;
@@ -155,6 +162,18 @@ public class ApplicationPanel extends JPanel {
         attrPanel.add(titleLabel3,"gap para");
         attrPanel.add(zThicknessField,"gap para, width 80:100:100, growx");
 
+        this.textureCacheRamField = createChangeTrackingField();
+        JLabel textureCacheRamLabel = new JLabel("2D texture cache memory (MB, 0 for automatic): ");
+        textureCacheRamLabel.setLabelFor(textureCacheRamField);
+        attrPanel.add(textureCacheRamLabel,"gap para");
+        attrPanel.add(textureCacheRamField,"gap para, width 80:100:100, growx");
+
+        this.textureCacheGpuField = createChangeTrackingField();
+        JLabel textureCacheGpuLabel = new JLabel("2D texture cache GPU memory (MB): ");
+        textureCacheGpuLabel.setLabelFor(textureCacheGpuField);
+        attrPanel.add(textureCacheGpuLabel,"gap para");
+        attrPanel.add(textureCacheGpuField,"gap para, width 80:100:100, growx");
+
         this.errorLabel = new JLabel("");
         errorLabel.setIcon(ERROR_ICON);
         errorLabel.setVisible(false);
@@ -163,6 +182,22 @@ public class ApplicationPanel extends JPanel {
         add(attrPanel, BorderLayout.CENTER);
     }
 
+    private JTextField createChangeTrackingField() {
+        JTextField field = new JTextField();
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            public void changedUpdate(DocumentEvent e) {
+                controller.changed();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                controller.changed();
+            }
+            public void insertUpdate(DocumentEvent e) {
+                controller.changed();
+            }
+        });
+        return field;
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -188,6 +223,8 @@ public class ApplicationPanel extends JPanel {
         clickModeCombo.setSelectedItem(getAnnotationClickMode());
         dragToMergeCheckbox.setSelected(isDragToMerge2D());
         zThicknessField.setText(getZThickness()+"");
+        textureCacheRamField.setText(getTextureCacheRamMBPreference());
+        textureCacheGpuField.setText(getTextureCacheGpuMB()+"");
     }
 
     void store() {
@@ -246,6 +283,16 @@ public class ApplicationPanel extends JPanel {
                 ApplicationPanel.class,
                 PREFERENCE_Z_THICKNESS,
                 zThicknessField.getText());
+
+        FrameworkAccess.setLocalPreferenceValue(
+                ApplicationPanel.class,
+                PREFERENCE_TEXTURE_CACHE_RAM_MB,
+                textureCacheRamField.getText());
+
+        FrameworkAccess.setLocalPreferenceValue(
+                ApplicationPanel.class,
+                PREFERENCE_TEXTURE_CACHE_GPU_MB,
+                textureCacheGpuField.getText());
     }
 
     boolean valid() {
@@ -257,9 +304,30 @@ public class ApplicationPanel extends JPanel {
             return false;
         }
 
+        if (parseMegabytes(textureCacheRamField.getText()) < 0) {
+            errorLabel.setText("Texture cache memory must be zero or a positive integer");
+            errorLabel.setVisible(true);
+            return false;
+        }
+
+        if (parseMegabytes(textureCacheGpuField.getText()) <= 0) {
+            errorLabel.setText("Texture cache GPU memory must be a positive integer");
+            errorLabel.setVisible(true);
+            return false;
+        }
+
         return true;
     }
 
+    private static long parseMegabytes(String text) {
+        try {
+            return Long.parseLong(text.trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     boolean isZThicknessValid() {
         try {
             int zThickness = Integer.parseInt(zThicknessField.getText());
@@ -353,4 +421,36 @@ public class ApplicationPanel extends JPanel {
         return Integer.parseInt(zThicknessStr);
     }
 
+    private static String getTextureCacheRamMBPreference() {
+        return FrameworkAccess.getLocalPreferenceValue(
+                ApplicationPanel.class,
+                ApplicationPanel.PREFERENCE_TEXTURE_CACHE_RAM_MB,
+                ApplicationPanel.PREFERENCE_TEXTURE_CACHE_RAM_MB_DEFAULT);
+    }
+
+    /**
+     * @return the RAM budget for 2D tile textures, in megabytes
+     */
+    public static long getTextureCacheRamMB() {
+        long megabytes = parseMegabytes(getTextureCacheRamMBPreference());
+        if (megabytes <= 0) {
+            megabytes = Runtime.getRuntime().maxMemory() / (4 * 1024 * 1024);
+        }
+        return megabytes;
+    }
+
+    /**
+     * @return the OpenGL texture memory budget for 2D tile textures, in megabytes
+     */
+    public static long getTextureCacheGpuMB() {
+        long megabytes = parseMegabytes(FrameworkAccess.getLocalPreferenceValue(
+                ApplicationPanel.class,
+                ApplicationPanel.PREFERENCE_TEXTURE_CACHE_GPU_MB,
+                ApplicationPanel.PREFERENCE_TEXTURE_CACHE_GPU_MB_DEFAULT));
+        if (megabytes <= 0) {
+            megabytes = Long.parseLong(PREFERENCE_TEXTURE_CACHE_GPU_MB_DEFAULT);
+        }
+        return megabytes;
+    }
+
 }
@@ -1,23 +1,24 @@
 package org.janelia.workstation.controller.scripts.spatialfilter;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import edu.wlu.cs.levy.CG.KDTree;
-import edu.wlu.cs.levy.CG.KeyDuplicateException;
-import edu.wlu.cs.levy.CG.KeyMissingException;
-import edu.wlu.cs.levy.CG.KeySizeException;
+import com.github.davidmoten.rtreemulti.Entry;
+import com.github.davidmoten.rtreemulti.RTree;
+import com.github.davidmoten.rtreemulti.geometry.Rectangle;
 import org.janelia.model.domain.tiledMicroscope.BoundingBox3d;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
-import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Spatial index for doing range searches to find fragments that are within a certain distance
- * from other neurons
+ * from other neurons. Fragment bounding boxes are kept whole in an R*-tree, so a query finds
+ * every box it overlaps, even when no corner of the box lies inside the query.
  *
  * @author David Schauder
  * @author <a href="mailto:schauderd@janelia.hhmi.org">David Schauder</a>
@@ -26,93 +27,101 @@ public class NeuronProximitySpatialIndex {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private KDTree<Long> index;
+    private RTree<Long, Rectangle> tree;
 
     // Is the index currently in a valid, usable state?
     private AtomicBoolean valid = new AtomicBoolean(false);
 
 
     public NeuronProximitySpatialIndex() {
-        this.index = new KDTree<>(3);
+        this.tree = builder().create();
         log.trace("Creating spatial index");
     }
 
+    private static RTree.Builder builder() {
+        return RTree.star().dimensions(3).maxChildren(6);
+    }
+
     /**
-     * Returns all TmGeoAnnotations within the bounding box
+     * Replaces the contents of the index with the given boxes in one pass, which is much
+     * faster than adding them one at a time and produces a better balanced tree.
+     * Boxes with min greater than max are skipped.
+     * @param boxes fragment bounding boxes
+     * @return number of boxes indexed
+     */
+    public synchronized int buildIndex(Collection<BoundingBox3d> boxes) {
+        long startTime = System.currentTimeMillis();
+        List<Entry<Long, Rectangle>> entries = new ArrayList<>(boxes.size());
+        for (BoundingBox3d box : boxes) {
+            if (isWellFormed(box)) {
+                entries.add(Entry.entry(box.getDomainId(), rectangle(box)));
+            }
+        }
+        // Sort-Tile-Recursive packing
+        tree = builder().create(entries);
+        valid.set(true);
+        log.info("Indexed {} of {} fragment bounding boxes in {} ms", entries.size(), boxes.size(),
+                System.currentTimeMillis() - startTime);
+        return entries.size();
+    }
+
+    /**
+     * Returns the ids of all fragments whose bounding boxes overlap the bounding box
      * @param minXYZ minimums for the bounding box
      * @param maxXYZ maximums for the bounding box
      * @return
      */
-    public Set<Long> getFragmentIdsInBoundingBox(double[] minXYZ, double[] maxXYZ) {
-        if (index==null) return null;
-        try {
-            List<Long> points = index.range(minXYZ, maxXYZ);
-            Set<Long> fragments = new HashSet<>();
-            if (points!=null && points.size()>0) {
-                for (Long point: points) {
-                    fragments.add(point);
-                }
-            }
-            return fragments;
-        } 
-        catch (KeySizeException ex) {
-            log.warn("Exception while finding fragments in spatial index", ex);
-            return null;
+    public synchronized Set<Long> getFragmentIdsInBoundingBox(double[] minXYZ, double[] maxXYZ) {
+        final Set<Long> fragments = new HashSet<>();
+        for (Entry<Long, Rectangle> entry : tree.search(Rectangle.create(minXYZ, maxXYZ))) {
+            fragments.add(entry.value());
         }
+        return fragments;
     }
 
     public NeuronUpdates selectVertex(TmGeoAnnotation annotation) {
         return new NeuronUpdates();
     }
 
-    public boolean addToIndex(BoundingBox3d box) {
-        try {
-            Long domainId = box.getDomainId();
-            double[] corner1 = new double[]{box.getMinX(), box.getMinY(), box.getMinZ()};
-            double[] corner2 = new double[]{box.getMinX(), box.getMaxY(), box.getMinZ()};
-            double[] corner3 = new double[]{box.getMinX(), box.getMaxY(), box.getMaxZ()};
-            double[] corner4 = new double[]{box.getMaxX(), box.getMinY(), box.getMinZ()};
-            double[] corner5 = new double[]{box.getMaxX(), box.getMaxY(), box.getMinZ()};
-            double[] corner6 = new double[]{box.getMaxX(), box.getMaxY(), box.getMaxZ()};
-            index.insert(corner1, domainId);
-            index.insert(corner2, domainId);
-            index.insert(corner3, domainId);
-            index.insert(corner4, domainId);
-            index.insert(corner5, domainId);
-            index.insert(corner6, domainId);
-        }
-        catch (KeySizeException | KeyDuplicateException ex) {
+    public synchronized boolean addToIndex(BoundingBox3d box) {
+        if (!isWellFormed(box)) {
             return false;
         }
+        tree = tree.add(box.getDomainId(), rectangle(box));
         return true;
     }
 
-    public boolean removeFromIndex(BoundingBox3d box) {
-        try {
-            double[] corner1 = new double[]{box.getMinX(), box.getMinY(), box.getMinZ()};
-            double[] corner2 = new double[]{box.getMinX(), box.getMaxY(), box.getMinZ()};
-            double[] corner3 = new double[]{box.getMinX(), box.getMaxY(), box.getMaxZ()};
-            double[] corner4 = new double[]{box.getMaxX(), box.getMinY(), box.getMinZ()};
-            double[] corner5 = new double[]{box.getMaxX(), box.getMaxY(), box.getMinZ()};
-            double[] corner6 = new double[]{box.getMaxX(), box.getMaxY(), box.getMaxZ()};
-            index.delete(corner1);
-            index.delete(corner2);
-            index.delete(corner3);
-            index.delete(corner4);
-            index.delete(corner5);
-            index.delete(corner6);
-        }
-        catch (KeySizeException | KeyMissingException ex) {
+    public synchronized boolean removeFromIndex(BoundingBox3d box) {
+        if (!isWellFormed(box)) {
             return false;
         }
-        return true;
+        int size = tree.size();
+        tree = tree.delete(box.getDomainId(), rectangle(box));
+        return tree.size() < size;
+    }
+
+    public synchronized int size() {
+        return tree.size();
     }
 
     public boolean isValid() {
         return valid.get();
     }
     
-    public void clear() {
-        this.index = new KDTree<>(3);
+    public synchronized void clear() {
+        tree = builder().create();
+    }
+
+    private static boolean isWellFormed(BoundingBox3d box) {
+        return box.getDomainId() != null
+                && box.getMinX() <= box.getMaxX()
+                && box.getMinY() <= box.getMaxY()
+                && box.getMinZ() <= box.getMaxZ();
+    }
+
+    private static Rectangle rectangle(BoundingBox3d box) {
+        return Rectangle.create(
+                new double[]{box.getMinX(), box.getMinY(), box.getMinZ()},
+                new double[]{box.getMaxX(), box.getMaxY(), box.getMaxZ()});
     }
 }
@@ -50,9 +50,9 @@ public class NeuronSelectionSpatialFilter implements NeuronSpatialFilter {
         boxes = new HashMap<>();
         for (BoundingBox3d boundingBox: boundingBoxes) {
             count++;
-            index.addToIndex(boundingBox);
             boxes.put(boundingBox.getDomainId(), boundingBox);
         }
+        index.buildIndex(boundingBoxes);
         log.info("Finished building spatial filter");
     }
 
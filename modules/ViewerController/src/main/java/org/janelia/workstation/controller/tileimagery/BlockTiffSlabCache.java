@@ -0,0 +1,261 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sun.media.jai.codec.ImageCodec;
+import com.sun.media.jai.codec.ImageDecoder;
+import com.sun.media.jai.codec.MemoryCacheSeekableStream;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of decoded slabs of octree block tiffs. A slab is a range of consecutive Z slices of one block, for all
+ * channels, which is read and decoded at once, so that the tiles of neighboring slices are served from memory
+ * instead of each costing a separate request. The cache is limited by the number of decoded bytes.
+ */
+class BlockTiffSlabCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockTiffSlabCache.class);
+
+    private static final long MB = 1024 * 1024;
+
+    private static final int DEFAULT_SLAB_DEPTH = 16;
+    // Up to 9 blocks are in view at once, and each may also have its next slab loaded while scrolling
+    private static final int VIEWPORT_SLABS = 9 * 2;
+    // A decoded slice of a typical block has 1024x1024 voxels in 2 channels of 16 bits
+    private static final long TYPICAL_SLICE_BYTES = 1024 * 1024 * 2 * 2;
+
+    // Slices per slab, or 0 to decode whole blocks
+    private static final int SLAB_DEPTH = ConsoleProperties.getInt("console.lvv.slabDepth", DEFAULT_SLAB_DEPTH);
+    // Memory budget for decoded slabs, or 0 to load each tile separately
+    private static final long MAX_SLAB_CACHE_BYTES = ConsoleProperties.getLong("console.lvv.slabCacheMegabytes",
+            VIEWPORT_SLABS * DEFAULT_SLAB_DEPTH * TYPICAL_SLICE_BYTES / MB) * MB;
+
+    /**
+     * Reads the content of a file in the volume.
+     */
+    interface ContentReader {
+
+        /**
+         * @return the content at the given path relative to the volume base, or null if there is no such file
+         */
+        InputStream open(String relativePath) throws IOException;
+    }
+
+    private final TileFormat tileFormat;
+    private final ContentReader contentReader;
+    private final int slabDepth;
+    private final LoadingCache<SlabKey, Optional<Slab>> slabCache;
+
+    static boolean isEnabled() {
+        return MAX_SLAB_CACHE_BYTES > 0;
+    }
+
+    BlockTiffSlabCache(TileFormat tileFormat, ContentReader contentReader) {
+        this(tileFormat, contentReader, SLAB_DEPTH, MAX_SLAB_CACHE_BYTES);
+    }
+
+    BlockTiffSlabCache(TileFormat tileFormat, ContentReader contentReader, int slabDepth, long maxBytes) {
+        this.tileFormat = tileFormat;
+        this.contentReader = contentReader;
+        this.slabDepth = slabDepth;
+        this.slabCache = CacheBuilder.newBuilder()
+                // The weight limit is split between segments, so one segment keeps the whole budget for any slab
+                .concurrencyLevel(1)
+                // Weights are in kilobytes, so that a single weight cannot overflow
+                .maximumWeight(Math.max(1, maxBytes / 1024))
+                .weigher((SlabKey key, Optional<Slab> slab) -> (int) Math.max(1, slab.map(Slab::getSizeInBytes).orElse(0L) / 1024))
+                .build(new CacheLoader<SlabKey, Optional<Slab>>() {
+                    @Override
+                    public Optional<Slab> load(SlabKey key) throws Exception {
+                        return loadSlab(key);
+                    }
+                });
+    }
+
+    /**
+     * Only Z slices are served from slabs, since those are what is scrolled through.
+     */
+    boolean canLoad(TileIndex tileIndex) {
+        return tileIndex.getSliceAxis() == CoordinateAxis.Z && getBlockPath(tileIndex) != null;
+    }
+
+    /**
+     * @return the tile, or null if its block does not exist
+     */
+    TextureData2d loadTile(TileIndex tileIndex) throws Exception {
+        int page = getPageInBlock(tileIndex);
+        SlabKey slabKey = new SlabKey(getBlockPath(tileIndex), getFirstSlabPage(page));
+        Optional<Slab> slab;
+        try {
+            slab = slabCache.get(slabKey);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        return slab.map(s -> s.getSlice(page - slabKey.firstPage)).orElse(null);
+    }
+
+    private String getBlockPath(TileIndex tileIndex) {
+        Path blockPath = FileBasedOctreeMetadataSniffer.getOctreeFilePath(tileIndex, tileFormat);
+        if (blockPath == null) {
+            return null;
+        }
+        List<String> pathComps = new ArrayList<>();
+        for (Path pathComp : blockPath) {
+            if (!pathComp.toString().isEmpty()) {
+                pathComps.add(pathComp.toString());
+            }
+        }
+        return String.join("/", pathComps);
+    }
+
+    /**
+     * @return index of the tiff page of the block which holds the given slice
+     */
+    private int getPageInBlock(TileIndex tileIndex) {
+        int axIx = tileIndex.getSliceAxis().index();
+        int slice = tileIndex.getCoordinate(axIx) / (int) Math.pow(2, tileIndex.getZoom());
+        return slice % tileFormat.getTileSize()[axIx];
+    }
+
+    private int getFirstSlabPage(int page) {
+        return slabDepth > 0 ? (page / slabDepth) * slabDepth : 0;
+    }
+
+    private Optional<Slab> loadSlab(SlabKey slabKey) throws Exception {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int channelCount = tileFormat.getChannelCount();
+        String tiffBase = FileBasedOctreeMetadataSniffer.getTiffBase(CoordinateAxis.Z);
+        List<ImageDecoder> decoders = new ArrayList<>();
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            for (int c = 0; c < channelCount; c++) {
+                String fileName = FileBasedOctreeMetadataSniffer.getFilenameForChannel(tiffBase, c);
+                String relativePath = slabKey.blockPath.isEmpty() ? fileName : slabKey.blockPath + "/" + fileName;
+                InputStream stream = contentReader.open(relativePath);
+                if (stream == null) {
+                    LOG.debug("No block found at {}", relativePath);
+                    return Optional.empty();
+                }
+                streams.add(stream);
+                ImageDecoder decoder = ImageCodec.createImageDecoder("tiff", new MemoryCacheSeekableStream(stream), null);
+                if (decoder == null) {
+                    throw new IOException("Cannot decode " + relativePath);
+                }
+                decoders.add(decoder);
+            }
+            int numPages = decoders.get(0).getNumPages();
+            int lastPage = slabDepth > 0 ? Math.min(numPages, slabKey.firstPage + slabDepth) : numPages;
+            List<TextureData2d> slices = new ArrayList<>();
+            Raster[] channelRasters = new Raster[channelCount];
+            for (int page = slabKey.firstPage; page < lastPage; page++) {
+                for (int c = 0; c < channelCount; c++) {
+                    channelRasters[c] = decoders.get(c).decodeAsRaster(page);
+                }
+                TextureData2d slice = new TextureData2d();
+                slice.loadChannelRasters(channelRasters, tileFormat.isSrgb());
+                slices.add(slice);
+            }
+            Slab slab = new Slab(slices);
+            LOG.debug("Loaded slab {} with {} slices ({} bytes) in {} ms",
+                    slabKey, slices.size(), slab.getSizeInBytes(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            return Optional.of(slab);
+        }
+        finally {
+            for (InputStream stream : streams) {
+                try {
+                    stream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static class Slab {
+
+        private final List<TextureData2d> slices;
+        private final long sizeInBytes;
+
+        Slab(List<TextureData2d> slices) {
+            this.slices = slices;
+            long size = 0;
+            for (TextureData2d slice : slices) {
+                size += slice.getPixels().capacity();
+            }
+            this.sizeInBytes = size;
+        }
+
+        TextureData2d getSlice(int index) {
+            if (index < 0 || index >= slices.size()) {
+                return null;
+            }
+            // Callers may release the texture, so each one gets its own
+            return slices.get(index).shallowCopy();
+        }
+
+        long getSizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+
+    private static class SlabKey {
+
+        private final String blockPath;
+        private final int firstPage;
+
+        SlabKey(String blockPath, int firstPage) {
+            this.blockPath = blockPath;
+            this.firstPage = firstPage;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SlabKey that = (SlabKey) o;
+
+            return new EqualsBuilder()
+                    .append(firstPage, that.firstPage)
+                    .append(blockPath, that.blockPath)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(blockPath)
+                    .append(firstPage)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return blockPath + "@" + firstPage;
+        }
+    }
+}
@@ -1,201 +1,278 @@
 package org.janelia.workstation.controller.tileimagery;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Least-recently-used texture cache, bounded by the bytes its textures hold in RAM
+ * and in OpenGL texture memory.
+ *
+ * Lookups do not lock: each entry carries its last access time, and the least
+ * recently used entries are found by sorting a snapshot when the cache overflows.
+ * Eviction trims the cache well below its budget, to avoid constant calls to
+ * glDeleteTextures once the cache is full.
+ */
 public class HistoryCache
-implements Map<TileIndex, TileTexture>
 {
-	private static final Logger log = LoggerFactory.getLogger(HistoryCache.class);	
-	
+	private static final Logger log = LoggerFactory.getLogger(HistoryCache.class);
+
+	// Fraction of each budget kept after an eviction pass
+	private static final double EVICTION_LOW_WATER_MARK = 0.75;
+	// Assumed texture size, for estimating capacity before anything is loaded
+	private static final long DEFAULT_TEXTURE_BYTES = 1024 * 1024;
+
 	// Store deleted opengl texture ids, for deferred disposal.
-	private Set<Integer> obsoleteGlTextures = new HashSet<Integer>();
-	private Set<Integer> removedOpenGLTexturesSinceClear = new HashSet<Integer>();
-	// Flag to help report when cache has filled.
-	// To allow lookup by index
-	private Map<TileIndex, TileTexture> map;
-	private int maxEntries;
-
-	public HistoryCache(int maxSize) {
-		this.maxEntries = maxSize;
-		// Create a synchronized, least-recently-used map container, with a size limit.
-		// Use synchronizedMap() to generate thread-safe container.
-		//map = Collections.synchronizedMap(new LinkedHashMap<TileIndex, TileTexture>(
-				map = new LinkedHashMap<TileIndex, TileTexture>(
-
-						maxSize, 0.75f, true) { // "true" for access-order, based on get()/add() calls
-			private static final long serialVersionUID = 1L;
-			@Override
-			// Fix size of LRU cache
-			protected boolean removeEldestEntry(Map.Entry<TileIndex, TileTexture> eldest) {
-				return false; // because we are handling removal ourselves
-			}
+	private final Set<Integer> obsoleteGlTextures = ConcurrentHashMap.newKeySet();
+	private final Map<TileIndex, Entry> map = new ConcurrentHashMap<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicLong ramBytes = new AtomicLong();
+	private final AtomicLong glBytes = new AtomicLong();
+	private final LongAdder evictions = new LongAdder();
+	private volatile long maxRamBytes;
+	private volatile long maxGlBytes;
+
+	public HistoryCache(long maxRamBytes, long maxGlBytes) {
+		this.maxRamBytes = maxRamBytes;
+		this.maxGlBytes = maxGlBytes;
+	}
 
-		};
-	}
-
-	@Override
-	public synchronized void clear() {
-		for (TileTexture tile : map.values()) {
-			if (tile == null)
-				continue;
-			PyramidTexture texture1 = tile.getTexture();
-			if (texture1 == null)
-				continue;
-			int id = texture1.getTextureId();
-			if (id < 1)
-				continue;
-			obsoleteGlTextures.add(id); // remember OpenGl texture IDs for later deletion.			
+	public void clear() {
+		evictionLock.lock();
+		try {
+			for (TileIndex index : new ArrayList<>(map.keySet())) {
+				Entry entry = map.remove(index);
+				if (entry != null) {
+					release(entry, true);
+				}
+			}
+		}
+		finally {
+			evictionLock.unlock();
 		}
-		obsoleteGlTextures.addAll(removedOpenGLTexturesSinceClear);
-		map.clear();
 	}
 
 	public Set<Integer> popObsoleteGlTextures() {
 		if (obsoleteGlTextures.size() > 0)
 			log.info("Popping obsolete textures.  Size {}.", obsoleteGlTextures.size());
-		Set<Integer> result = obsoleteGlTextures;
-		obsoleteGlTextures = new HashSet<Integer>();
+		Set<Integer> result = new HashSet<>();
+		for (Iterator<Integer> it = obsoleteGlTextures.iterator(); it.hasNext(); ) {
+			result.add(it.next());
+			it.remove();
+		}
 		return result;
 	}
-	
-	@Override
-	public synchronized TileTexture remove(Object item) {
-        if (! (item instanceof TileIndex)) {
-            throw new IllegalArgumentException("Wrong type of key used in remove operation.");
-        }
-		TileTexture tile = map.remove(item);
-		if (tile == null)
-			return tile;
-		// Stored OpenGL texture ID, if any.
-		PyramidTexture texture1 = tile.getTexture();
-		if (texture1 == null)
-			return tile;
-		int id = texture1.getTextureId();
-		if (id > 0)
-		    removedOpenGLTexturesSinceClear.add(id);
-		return tile;
-	}
-
-	@Override
-	public synchronized boolean containsKey(Object key) {
-		return map.containsKey(key);
-	}
 
-	@Override
-	public synchronized boolean containsValue(Object value) {
-		return map.containsValue(value);
+	/**
+	 * Removes the texture without disposing of its OpenGL texture, which now belongs to the caller.
+	 */
+	public TileTexture remove(TileIndex index) {
+		Entry entry = map.remove(index);
+		if (entry == null)
+			return null;
+		release(entry, false);
+		return entry.tile;
 	}
 
-	@Override
-	public Set<Map.Entry<TileIndex, TileTexture>> entrySet() {
-		return map.entrySet();
+	public boolean containsKey(TileIndex index) {
+		return map.containsKey(index);
 	}
 
 	/**
 	 * NOTE - get marks the retrieved item as most-recently-accessed.
-	 * @param key
+	 * @param index
 	 * @return
 	 */
-	@Override
-	public TileTexture get(Object key) {
-		return map.get(key);
+	public TileTexture get(TileIndex index) {
+		Entry entry = map.get(index);
+		if (entry == null) {
+			return null;
+		}
+		entry.lastAccess = System.nanoTime();
+		// textures are uploaded to the GPU after they are cached, so account for them on first use
+		entry.updateGlBytes();
+		return entry.tile;
+	}
+
+	/**
+	 * NOTE - put marks the value as most-recently-accessed.
+	 * @param index
+	 * @param tile
+	 * @return the texture previously cached at this index, if any
+	 */
+	public TileTexture put(TileIndex index, TileTexture tile) {
+		Entry entry = new Entry(tile);
+		Entry previous = map.put(index, entry);
+		ramBytes.addAndGet(entry.ramBytes);
+		entry.updateGlBytes();
+		if (previous != null) {
+			release(previous, previous.tile != tile);
+		}
+		if (isOverBudget()) {
+			evict();
+		}
+		return previous == null ? null : previous.tile;
 	}
 
-	public int getMaxEntries() {
-		return maxEntries;
+	public int size() {
+		return map.size();
 	}
 
-	public void setMaxEntries(int maxEntries) {
-		this.maxEntries = maxEntries;
+	public Collection<TileTexture> values() {
+		return map.values().stream().map(e -> e.tile).collect(Collectors.toList());
 	}
 
+	/**
+	 * @return approximately how many textures of the sizes seen so far fit in the RAM budget
+	 */
 	public int getMaxSize() {
-		return maxEntries;
+		int count = map.size();
+		long bytesPerTexture = count == 0 ? DEFAULT_TEXTURE_BYTES : Math.max(1, ramBytes.get() / count);
+		return (int) Math.min(Integer.MAX_VALUE, maxRamBytes / bytesPerTexture);
 	}
 
-	@Override
-	public boolean isEmpty() {
-		return map.isEmpty();
+	public long getMaxRamBytes() {
+		return maxRamBytes;
 	}
 
-	@Override
-	public Set<TileIndex> keySet() {
-		return map.keySet();
+	public long getMaxGlBytes() {
+		return maxGlBytes;
 	}
 
-	/**
-	 * NOTE - put marks the value as most-recently-accessed.
-	 * @param key
-	 * @param value
-	 * @return
-	 */
-	@Override
-	public synchronized TileTexture put(TileIndex key, TileTexture value) {
-
-		int mapSize=map.size();
-		//log.info("put() mapSize="+mapSize+" maxEntries="+maxEntries);
-		boolean result = (map.size() > (maxEntries - 1));
-		int i=0;
-
-		if (result) {
-			try {
-
-				// We will iterate over all members, and remove the earlier 50%.
-				// This will avoid constant calls to glDeleteTextureIds once we
-				// hit the ceiling.
-				int cutoff = mapSize / 2;
-				List<TileIndex> keyList=new ArrayList<>();
-				Iterator<TileIndex> it = map.keySet().iterator();
-				while (it.hasNext()) {
-					keyList.add(it.next());
+	public void setMaxBytes(long maxRamBytes, long maxGlBytes) {
+		this.maxRamBytes = maxRamBytes;
+		this.maxGlBytes = maxGlBytes;
+		if (isOverBudget()) {
+			evict();
+		}
+	}
+
+	public long getRamBytes() {
+		return ramBytes.get();
+	}
+
+	public long getGlBytes() {
+		return glBytes.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public void storeObsoleteTextureIds(int[] textureIds) {
+		for (int i : textureIds)
+			obsoleteGlTextures.add(i);
+	}
+
+	private boolean isOverBudget() {
+		return ramBytes.get() > maxRamBytes || glBytes.get() > maxGlBytes;
+	}
+
+	private void evict() {
+		// one thread evicts, the others carry on; the next put retries if still over budget
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			if (!isOverBudget()) {
+				return;
+			}
+			long ramTarget = (long) (maxRamBytes * EVICTION_LOW_WATER_MARK);
+			long glTarget = (long) (maxGlBytes * EVICTION_LOW_WATER_MARK);
+			List<Map.Entry<TileIndex, Entry>> entries = new ArrayList<>(map.entrySet());
+			// access times can change while sorting, so sort on a copy of them
+			long[] accessTimes = new long[entries.size()];
+			Integer[] order = new Integer[entries.size()];
+			for (int i = 0; i < order.length; ++i) {
+				accessTimes[i] = entries.get(i).getValue().lastAccess;
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparingLong(i -> accessTimes[i]));
+			int evicted = 0;
+			for (int i : order) {
+				if (ramBytes.get() <= ramTarget && glBytes.get() <= glTarget) {
+					break;
 				}
-				//log.info("keyList has "+keyList.size()+" entries, cutoff="+cutoff);
-				for (;(i<cutoff && i<keyList.size());i++) {
-					TileIndex tileIndex=keyList.get(i);
-					TileTexture tileTexture = map.get(tileIndex);
-					if (tileTexture.getTexture() != null) {
-						final int textureId = tileTexture.getTexture().getTextureId();
-						obsoleteGlTextures.add(textureId);
-					}
-					map.remove(tileIndex);
+				Map.Entry<TileIndex, Entry> e = entries.get(i);
+				if (map.remove(e.getKey(), e.getValue())) {
+					release(e.getValue(), true);
+					evicted++;
 				}
-			} catch (Exception ex) {
-				ex.printStackTrace();
 			}
-			//log.info("Removed " + i + " TileTextures and tagged " + obsoleteGlTextures.size() + " textureIds as obsolete");
+			evictions.add(evicted);
+			log.debug("Evicted {} textures, {} MB RAM and {} MB GL remain", evicted,
+					ramBytes.get() / (1024 * 1024), glBytes.get() / (1024 * 1024));
+		}
+		finally {
+			evictionLock.unlock();
 		}
-
-		return map.put(key, value);
 	}
 
-	@Override
-	public synchronized void putAll(Map<? extends TileIndex, ? extends TileTexture> m) {
-		map.putAll(m);
+	private void release(Entry entry, boolean disposeGl) {
+		ramBytes.addAndGet(-entry.ramBytes);
+		long entryGlBytes = entry.glBytes.getAndSet(-1);
+		if (entryGlBytes > 0)
+			glBytes.addAndGet(-entryGlBytes);
+		if (!disposeGl)
+			return;
+		PyramidTexture texture = entry.tile.getTexture();
+		if (texture != null) {
+			int id = texture.getTextureId();
+			if (id > 0)
+				obsoleteGlTextures.add(id); // remember OpenGl texture IDs for later deletion.
+		}
 	}
 
-	@Override
-	public int size() {
-		return map.size();
+	static long ramBytes(TileTexture tile) {
+		TextureData2dGL data = tile.getTextureData();
+		if (data == null)
+			return 0;
+		ByteBuffer pixels = data.getPixels();
+		return pixels == null ? 0 : pixels.capacity();
 	}
 
-	@Override
-	public Collection<TileTexture> values() {
-		return map.values();
+	static long glBytes(TileTexture tile) {
+		TextureData2dGL data = tile.getTextureData();
+		if (data == null || tile.getTexture() == null)
+			return 0;
+		return (long) data.getWidth() * data.getHeight() * data.getChannelCount() * ((data.getBitDepth() + 7) / 8);
 	}
 
-    public void storeObsoleteTextureIds(int[] textureIds) {
-        for (int i : textureIds)
-            obsoleteGlTextures.add(i);
-    }
+	private class Entry {
+		private final TileTexture tile;
+		private final long ramBytes;
+		// 0 until the texture is uploaded, -1 once the entry is released
+		private final AtomicLong glBytes = new AtomicLong();
+		private volatile long lastAccess = System.nanoTime();
+
+		Entry(TileTexture tile) {
+			this.tile = tile;
+			this.ramBytes = HistoryCache.ramBytes(tile);
+		}
+
+		void updateGlBytes() {
+			if (glBytes.get() != 0)
+				return;
+			long bytes = HistoryCache.glBytes(tile);
+			if (bytes > 0 && glBytes.compareAndSet(0, bytes)) {
+				HistoryCache.this.glBytes.addAndGet(bytes);
+			}
+		}
+	}
 
 }
@@ -4,15 +4,15 @@ import org.janelia.workstation.controller.tileimagery.TileIndex;
 import org.janelia.workstation.controller.tileimagery.TileTexture;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PersistentCache 
 {
 	private Set<Integer> obsoleteGlTextures = new HashSet<Integer>();
-	private Map<TileIndex, TileTexture> map = new HashMap<TileIndex, TileTexture>();
+	private Map<TileIndex, TileTexture> map = new ConcurrentHashMap<TileIndex, TileTexture>();
 	
 	public void clear() {
 		for (TileTexture tile : map.values()) {
@@ -49,6 +49,8 @@ public class RestServiceBasedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeL
     private final int concurrency;
     private RenderedVolumeLocation renderedVolumeLocation;
     private RenderedVolumeMetadata renderedVolumeMetadata;
+    // Serves Z tiles from whole blocks, which are read in one request each
+    private BlockTiffSlabCache slabCache;
 
     RestServiceBasedBlockTiffOctreeLoadAdapter(TileFormat tileFormat,
                                                URI volumeBaseURI,
@@ -97,6 +99,11 @@ public class RestServiceBasedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeL
                                     .setDaemon(true)
                                     .build()));
             getTileFormat().initializeFromRenderedVolumeMetadata(renderedVolumeMetadata);
+            if (BlockTiffSlabCache.isEnabled()) {
+                RenderedVolumeLocation blockLocation = renderedVolumeLocation;
+                slabCache = new BlockTiffSlabCache(getTileFormat(),
+                        relativePath -> blockLocation.getContentFromRelativePath(relativePath).getContent());
+            }
         } catch (Exception ex) {
             LOG.error("Error getting sample 2d tile from {}", url, ex);
             throw new IllegalStateException(ex);
@@ -114,6 +121,13 @@ public class RestServiceBasedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeL
                 tileInfo.getSliceAxis(),
                 tileInfo);
         LOG.trace("Loading tile {} using key {}", tileIndex, tileKey);
+        if (slabCache != null && slabCache.canLoad(tileIndex)) {
+            try {
+                return slabCache.loadTile(tileIndex);
+            } catch (Exception ex) {
+                LOG.warn("Error getting tile {} from its block, loading the slice by itself", tileIndex, ex);
+            }
+        }
         try {
             byte[] textureBytes =renderedVolumeLoader.loadSlice(renderedVolumeLocation, renderedVolumeMetadata, tileKey)
                     .getContent();
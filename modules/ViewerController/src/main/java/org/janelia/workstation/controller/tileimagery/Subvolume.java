@@ -128,6 +128,30 @@ public class Subvolume {
         initializeFor3D(center, micrometerVoxels, zoom, dimensions, wholeImage, textureCache);
     }
 
+    /**
+     * Wraps raster data that is already in memory, e.g. a synthetic volume
+     * for tests and benchmarks. Single channel, x fastest moving.
+     *
+     * @param origin upper left front corner within parent volume
+     * @param extent width, height, depth
+     * @param bytesPerIntensity 1 for ubyte, 2 for ushort data
+     * @param bytes raster data, in native byte order
+     */
+    public Subvolume(ZoomedVoxelIndex origin,
+                     VoxelIndex extent,
+                     int bytesPerIntensity,
+                     ByteBuffer bytes) {
+        this.origin = origin;
+        this.extent = extent;
+        this.bytesPerIntensity = bytesPerIntensity;
+        this.skipChannelBytes = 1;
+        this.bytes = bytes;
+        this.bytes.order(ByteOrder.nativeOrder());
+        if (bytesPerIntensity == 2) {
+            shorts = bytes.asShortBuffer();
+        }
+    }
+
     /**
      * Initializes the sub volume for 3 dimensional fetching of texture data.
      *
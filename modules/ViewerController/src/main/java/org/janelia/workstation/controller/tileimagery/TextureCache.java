@@ -1,30 +1,51 @@
 package org.janelia.workstation.controller.tileimagery;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.janelia.workstation.controller.listener.StatusUpdateListener;
+import org.janelia.workstation.controller.options.ApplicationPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
  * Wrap texture cache so indices can be interpolated for either quadtrees
  * or octrees.
+ *
+ * Prefetched textures enter the future cache, and move to the history cache
+ * once displayed, so a burst of prefetching cannot evict what the user has
+ * already looked at. Both are bounded by bytes, split between them in the
+ * same 3:2 ratio the old entry counts used.
  */
 public class TextureCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(TextureCache.class);
 
-    private HistoryCache historyCache = new HistoryCache(2000); // textures that have been displayed, ordered by LRU
-    private HistoryCache futureCache = new HistoryCache(3000); // textures we predict will be displayed
+    private static final double HISTORY_FRACTION = 0.4;
+    private static final long MB = 1024 * 1024;
+
+    private final HistoryCache historyCache; // textures that have been displayed, ordered by LRU
+    private final HistoryCache futureCache; // textures we predict will be displayed
     private PersistentCache persistentCache = new PersistentCache(); // lowest resolution textures for everything
-    private Map<TileIndex, Long> queuedTextureTime = new HashMap<>();
+    private Map<TileIndex, Long> queuedTextureTime = new ConcurrentHashMap<>();
     private StatusUpdateListener queueDrainedListener;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TextureCache() {
+        this(ApplicationPanel.getTextureCacheRamMB() * MB, ApplicationPanel.getTextureCacheGpuMB() * MB);
+    }
+
+    public TextureCache(long maxRamBytes, long maxGlBytes) {
+        historyCache = new HistoryCache((long) (maxRamBytes * HISTORY_FRACTION), (long) (maxGlBytes * HISTORY_FRACTION));
+        futureCache = new HistoryCache(maxRamBytes - historyCache.getMaxRamBytes(), maxGlBytes - historyCache.getMaxGlBytes());
+    }
 
-    public synchronized void add(TileTexture texture) {
+    public void add(TileTexture texture) {
         TileIndex index = texture.getIndex();
         if (index.getZoom() == index.getMaxZoom()) {
             persistentCache.put(texture.getIndex(), texture);
@@ -33,7 +54,7 @@ public class TextureCache {
         }
     }
 
-    synchronized public void clear() {
+    public void clear() {
         futureCache.clear();
         historyCache.clear();
         persistentCache.clear();
@@ -46,14 +67,21 @@ public class TextureCache {
                 || futureCache.containsKey(index);
     }
 
-    synchronized TileTexture get(TileIndex index) {
-        if (persistentCache.containsKey(index)) {
-            return persistentCache.get(index);
-        } else if (historyCache.containsKey(index)) {
-            return historyCache.get(index);
+    TileTexture get(TileIndex index) {
+        // one lookup per tier, since another thread may move or evict the texture in between
+        TileTexture texture = persistentCache.get(index);
+        if (texture == null) {
+            texture = historyCache.get(index);
+        }
+        if (texture == null) {
+            texture = futureCache.get(index);
+        }
+        if (texture == null) {
+            misses.increment();
         } else {
-            return futureCache.get(index);
+            hits.increment();
         }
+        return texture;
     }
 
     // Keep track of recently queued textures, to avoid redundant loads
@@ -99,15 +127,12 @@ public class TextureCache {
     }
 
     // Indicate that a particular texture has been viewed, rather than simply pre-fetched.
-    synchronized boolean markHistorical(TileTexture tile) {
+    boolean markHistorical(TileTexture tile) {
         if (tile == null) {
             return false;
         }
         // Only future cached textures need to be moved.
-        // (textures in the persistent cache should remain there)
-        if (persistentCache.containsKey(tile.getIndex())) {
-            return false;
-        }
+        // (textures in the persistent cache are never in the future cache)
         if (futureCache.remove(tile.getIndex()) != null) {
             historyCache.put(tile.getIndex(), tile); // move texture to the front of the queue
             LOG.trace("Successfully removed {} from future cache.", tile);
@@ -121,7 +146,7 @@ public class TextureCache {
         return futureCache.size() + historyCache.size() + persistentCache.size();
     }
 
-    public synchronized Collection<TileTexture> values() {
+    public Collection<TileTexture> values() {
         Set<TileTexture> result = new HashSet<>();
         result.addAll(historyCache.values());
         result.addAll(futureCache.values());
@@ -142,6 +167,28 @@ public class TextureCache {
         return historyCache;
     }
 
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return historyCache.getEvictionCount() + futureCache.getEvictionCount();
+    }
+
+    public String getStatistics() {
+        return String.format("%d textures, %d/%d MB RAM, %d/%d MB GL, %d hits, %d misses, %d evictions",
+                size(),
+                (historyCache.getRamBytes() + futureCache.getRamBytes()) / MB,
+                (historyCache.getMaxRamBytes() + futureCache.getMaxRamBytes()) / MB,
+                (historyCache.getGlBytes() + futureCache.getGlBytes()) / MB,
+                (historyCache.getMaxGlBytes() + futureCache.getMaxGlBytes()) / MB,
+                getHitCount(), getMissCount(), getEvictionCount());
+    }
+
     public int[] popObsoleteTextureIds() {
         Set<Integer> ids = historyCache.popObsoleteGlTextures();
         ids.addAll(persistentCache.popObsoleteGlTextures());
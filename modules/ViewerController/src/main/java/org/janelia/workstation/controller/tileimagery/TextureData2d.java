@@ -106,6 +106,72 @@ public class TextureData2d {
         return;
     }
 
+    /**
+     * Loads one slice whose channels are stored as separate single band rasters, such as the pages of
+     * the channel tiffs of an octree block. The pixels are laid out the same way as in loadRenderedImage.
+     */
+    void loadChannelRasters(Raster[] channelRasters, boolean srgb) {
+        Raster firstRaster = channelRasters[0];
+        this.width = this.usedWidth = firstRaster.getWidth();
+        // pad image to a multiple of 8
+        textureCoordX = 1.0f;
+        if ((this.width % 8) != 0) {
+            int dw = 8 - (this.width % 8);
+            this.width += dw;
+            textureCoordX = this.usedWidth / (float)this.width;
+        }
+        this.height = firstRaster.getHeight();
+        this.srgb = srgb;
+        this.channelCount = channelRasters.length;
+        this.bitDepth = Math.max(8, firstRaster.getSampleModel().getSampleSize(0));
+        assert((this.bitDepth == 8) || (this.bitDepth == 16));
+        int pixelByteCount = this.channelCount * this.bitDepth/8;
+        int rowByteCount = pixelByteCount * this.width;
+        byte byteArray[] = new byte[this.height * rowByteCount];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        ShortBuffer shortBuffer = byteBuffer.asShortBuffer(); // for 16-bit case
+        final boolean is16Bit = (this.bitDepth == 16);
+        int[][] rows = new int[this.channelCount][this.usedWidth];
+        for (int y = 0; y < this.height; ++y) {
+            for (int c = 0; c < this.channelCount; ++c) {
+                Raster raster = channelRasters[c];
+                raster.getSamples(raster.getMinX(), raster.getMinY() + y, this.usedWidth, 1, 0, rows[c]);
+            }
+            for (int x = 0; x < this.width; ++x) {
+                // (not zero) pad right edge with the last used pixel of the scan line
+                int sx = Math.min(x, this.usedWidth - 1);
+                for (int c = 0; c < this.channelCount; ++c) {
+                    if (is16Bit) {
+                        shortBuffer.put((short)rows[c][sx]);
+                    } else {
+                        byteBuffer.put((byte)rows[c][sx]);
+                    }
+                }
+            }
+        }
+        pixels = byteBuffer;
+        pixels.rewind();
+    }
+
+    /**
+     * Returns a texture which shares the pixels of this one, so that it can be handed out many times.
+     */
+    TextureData2d shallowCopy() {
+        TextureData2d copy = new TextureData2d();
+        copy.mipmapLevel = mipmapLevel;
+        copy.width = width;
+        copy.usedWidth = usedWidth;
+        copy.height = height;
+        copy.border = border;
+        copy.pixels = pixels.duplicate().order(pixels.order());
+        copy.srgb = srgb;
+        copy.bitDepth = bitDepth;
+        copy.channelCount = channelCount;
+        copy.textureCoordX = textureCoordX;
+        return copy;
+    }
+
     public void releaseMemory() {
         width = height = usedWidth = 0;
         pixels = null;
@@ -1,10 +1,9 @@
 package org.janelia.workstation.controller.tileimagery;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -13,12 +12,27 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Loads tiles on a thread pool, serving the queued loads in TileLoadPriority order and
+ * first come first served within a priority.
+ *
+ * Callers re-request the tiles they still want in each request pass; queued loads which
+ * are not requested again are dropped, and loads which already started are left to finish.
+ * Removing from the priority queue is linear, so dropped and re-prioritized loads are only
+ * marked as discarded and skipped when a loader thread takes them.
+ */
 class TexturePreFetcher {
 
     private static final Logger log = LoggerFactory.getLogger(TexturePreFetcher.class);
+    // Discarded loads left in the queue before they are swept out in one pass
+    private static final int MIN_DISCARDED_LOADS_TO_PURGE = 256;
 
     private final ThreadPoolExecutor textureLoadExecutor;
-    private final Map<Future<?>, TileIndex> futures = new HashMap<>();
+    private final PriorityBlockingQueue<Runnable> loadQueue = new PriorityBlockingQueue<>();
+    private final Map<TileIndex, PrioritizedLoad> queuedLoads = new HashMap<>();
+    private long requestPass = 0;
+    private long loadSequence = 0;
+    private int discardedLoads = 0;
     private TextureCache textureCache; // holds texture
     private AbstractTextureLoadAdapter loadAdapter; // knows how to load textures
 
@@ -27,7 +41,7 @@ class TexturePreFetcher {
                 coreThreadPoolSize,
                 maxThreadPoolSize,
                 0, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(),
+                loadQueue,
                 new ThreadFactoryBuilder()
                         .setNameFormat("TexturePreFetch-%03d")
                         .setDaemon(true)
@@ -35,13 +49,19 @@ class TexturePreFetcher {
         );
     }
 
+    synchronized boolean loadDisplayedTexture(TileIndex index, TileServer tileServer) {
+        return loadDisplayedTexture(index, tileServer, TileLoadPriority.VISIBLE);
+    }
+
     /**
      * Like loadTexture, but emits an update signal when complete.
+     * A tile which is already queued is moved to the given priority if that is
+     * higher, or if it was last requested in an earlier request pass.
      *
      * Returns "true" if this tile would occupy desired space in the future
      * cache.
      */
-    synchronized boolean loadDisplayedTexture(TileIndex index, TileServer tileServer) {
+    synchronized boolean loadDisplayedTexture(TileIndex index, TileServer tileServer, TileLoadPriority priority) {
         if (textureCache == null) {
             log.trace("loadDisplayedTexture - return because textureCache is null");
             return false;
@@ -59,41 +79,152 @@ class TexturePreFetcher {
             log.trace("loadDisplayedTexture - already in current cache");
             return false; // we already have this one!
         }
-        if (textureCache.isLoadQueued(index)) {
+        PrioritizedLoad queuedLoad = queuedLoads.get(index);
+        if (queuedLoad != null) {
             log.trace("loadDisplayedTexture - already queued");
+            requeue(queuedLoad, priority);
+            return (index.getZoom() != index.getMaxZoom());
+        }
+        if (textureCache.isLoadQueued(index)) {
+            log.trace("loadDisplayedTexture - already loading");
             return false;
         }
         TileTexture texture = new TileTexture(index, loadAdapter);
         TextureLoadWorker textureLoadWorker = new TextureLoadWorker(texture, textureCache, tileServer);
-        // TODO - handle MISSING textures vs. ERROR textures
-        Future<?> foo = textureLoadExecutor.submit(textureLoadWorker);
-        futures.put(foo, texture.getIndex());
+        PrioritizedLoad load = new PrioritizedLoad(index, textureLoadWorker, priority, loadSequence++, requestPass);
+        queuedLoads.put(index, load);
         textureCache.setLoadQueued(index, true);
+        TileLoadMetrics.getInstance().loadQueued();
+        // TODO - handle MISSING textures vs. ERROR textures
+        textureLoadExecutor.execute(load);
         // Lowest resolution textures are in the persistent cache, and thus
         // do not impact the future cache.
         log.debug("loadDisplayedTexture - queued for download: {}", index);
         return (index.getZoom() != index.getMaxZoom());
     }
 
+    /**
+     * Starts a new request pass. Loads queued before this call are dropped by
+     * dropStaleRequests unless they are requested again in the meantime.
+     */
+    synchronized void startRequestPass() {
+        requestPass++;
+    }
+
+    /**
+     * Drops the queued loads which were not requested in the current request pass.
+     */
+    synchronized void dropStaleRequests() {
+        Iterator<PrioritizedLoad> it = queuedLoads.values().iterator();
+        while (it.hasNext()) {
+            PrioritizedLoad load = it.next();
+            if (load.requestPass != requestPass) {
+                it.remove();
+                discard(load);
+                dropped(load);
+            }
+        }
+        purgeDiscardedLoads();
+    }
+
     synchronized void clear() {
-        if (textureCache == null) {
-            return;
+        for (PrioritizedLoad load : queuedLoads.values()) {
+            discard(load);
+            dropped(load);
+        }
+        queuedLoads.clear();
+        purgeDiscardedLoads();
+    }
+
+    private void dropped(PrioritizedLoad load) {
+        if (textureCache != null) {
+            textureCache.setLoadQueued(load.index, false);
         }
-        BlockingQueue<Runnable> blockingQueue = textureLoadExecutor.getQueue();
-        if (blockingQueue == null) {
+        TileLoadMetrics.getInstance().loadDequeued();
+    }
+
+    private void requeue(PrioritizedLoad load, TileLoadPriority priority) {
+        if (load.requestPass == requestPass && load.priority.compareTo(priority) <= 0) {
+            return; // keep the same or higher priority from this pass
+        }
+        load.requestPass = requestPass;
+        if (load.priority == priority) {
             return;
         }
-        //synchronize on it to prevent tasks from being polled
-        synchronized (blockingQueue) {
-            //clear the Queue
-            for (Runnable r : blockingQueue) {
-                if (futures.containsKey(r)) {
-                    textureCache.setLoadQueued(futures.get(r), false);
-                }
+        // the queue orders on priority and sequence, so queue a replacement rather than change them
+        discard(load);
+        PrioritizedLoad replacement = new PrioritizedLoad(load.index, load.worker, priority, loadSequence++, requestPass);
+        queuedLoads.put(load.index, replacement);
+        textureLoadExecutor.execute(replacement);
+        purgeDiscardedLoads();
+    }
+
+    private void discard(PrioritizedLoad load) {
+        load.discarded = true;
+        discardedLoads++;
+    }
+
+    /**
+     * Sweeps the discarded loads out of the queue once they outnumber the live ones,
+     * so that the linear removal is paid for by as many discards.
+     */
+    private void purgeDiscardedLoads() {
+        if (discardedLoads > Math.max(MIN_DISCARDED_LOADS_TO_PURGE, queuedLoads.size())) {
+            loadQueue.removeIf(load -> ((PrioritizedLoad) load).discarded);
+            discardedLoads = 0;
+        }
+    }
+
+    /**
+     * @return false if the load was discarded while it was queued
+     */
+    private synchronized boolean loadStarted(PrioritizedLoad load) {
+        if (load.discarded) {
+            return false;
+        }
+        if (queuedLoads.remove(load.index, load)) {
+            TileLoadMetrics.getInstance().loadDequeued();
+        }
+        return true;
+    }
+
+    private class PrioritizedLoad implements Runnable, Comparable<PrioritizedLoad> {
+
+        private final TileIndex index;
+        private final TextureLoadWorker worker;
+        private final TileLoadPriority priority;
+        private final long sequence;
+        private long requestPass;
+        private boolean discarded = false;
+
+        PrioritizedLoad(TileIndex index, TextureLoadWorker worker, TileLoadPriority priority,
+                long sequence, long requestPass) {
+            this.index = index;
+            this.worker = worker;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.requestPass = requestPass;
+        }
+
+        @Override
+        public void run() {
+            if (!loadStarted(this)) {
+                return;
+            }
+            worker.run();
+            if (priority == TileLoadPriority.VISIBLE) {
+                TileLoadMetrics.getInstance().visibleTileLoaded();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedLoad other) {
+            int result = priority.compareTo(other.priority);
+            if (result == 0) {
+                result = Long.compare(sequence, other.sequence);
             }
-            blockingQueue.clear();
+            return result;
         }
-        futures.clear();
     }
 
     void setLoadAdapter(AbstractTextureLoadAdapter loadAdapter) {
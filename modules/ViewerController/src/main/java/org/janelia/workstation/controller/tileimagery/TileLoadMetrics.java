@@ -0,0 +1,60 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tile loading statistics, shown in the TileStackCacheStatusPanel.
+ */
+public class TileLoadMetrics {
+
+    private static final TileLoadMetrics instance = new TileLoadMetrics();
+
+    public static TileLoadMetrics getInstance() {
+        return instance;
+    }
+
+    private final AtomicInteger queuedLoads = new AtomicInteger();
+    // when the view last changed, and whether a visible tile has loaded since
+    private volatile long viewChangedNanos = 0;
+    private volatile boolean awaitingVisibleTile = false;
+    private volatile long timeToFirstVisibleTileMs = -1;
+
+    private TileLoadMetrics() {
+    }
+
+    /**
+     * @return number of tile loads waiting for a loader thread
+     */
+    public int getQueueDepth() {
+        return queuedLoads.get();
+    }
+
+    /**
+     * @return milliseconds from the most recent view change to the first visible tile
+     * loaded after it, or -1 if none has loaded yet
+     */
+    public long getTimeToFirstVisibleTileMs() {
+        return timeToFirstVisibleTileMs;
+    }
+
+    void loadQueued() {
+        queuedLoads.incrementAndGet();
+    }
+
+    void loadDequeued() {
+        queuedLoads.decrementAndGet();
+    }
+
+    void viewChanged() {
+        viewChangedNanos = System.nanoTime();
+        awaitingVisibleTile = true;
+    }
+
+    void visibleTileLoaded() {
+        if (awaitingVisibleTile) {
+            awaitingVisibleTile = false;
+            timeToFirstVisibleTileMs = (System.nanoTime() - viewChangedNanos) / 1000000;
+        }
+    }
+
+}
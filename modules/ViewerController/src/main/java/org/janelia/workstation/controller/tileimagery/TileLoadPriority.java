@@ -0,0 +1,15 @@
+package org.janelia.workstation.controller.tileimagery;
+
+/**
+ * Order in which queued tile loads are served; earlier constants are loaded first.
+ */
+public enum TileLoadPriority {
+    // needed to draw the current view
+    VISIBLE,
+    // the slices directly above and below the current view
+    NEXT_SLICE,
+    // lower resolution tiles of nearby slices
+    COARSER_LOD,
+    // remaining speculative umbrella and full slice tiles
+    UMBRELLA
+}
@@ -149,6 +149,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         // Replace entire texture cache, to avoid retained textures
         int[] textureIds = null;
         if (textureCache != null) {
+            LOG.info("Texture cache statistics: {}", textureCache.getStatistics());
             textureCache.clear();
             textureIds = textureCache.popObsoleteTextureIds();
             textureCache.setQueueDrainedListener(null);
@@ -258,7 +259,8 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         }
         updateLoadStatus();
 
-        futurePreFetcher.clear();
+        futurePreFetcher.startRequestPass();
+        TileLoadMetrics.getInstance().viewChanged();
 
         Set<TileIndex> cacheableTextures = new HashSet<TileIndex>();
         int maxCacheable = (int) (0.90 * getTextureCache().getFutureCache().getMaxSize());
@@ -274,7 +276,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                 if (cacheableTextures.contains(ix)) {
                     continue; // already noted
                 }
-                if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, TileLoadPriority.VISIBLE)) {
                     cacheableTextures.add(ix);
                 }
             }
@@ -331,7 +333,8 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                         break;
                     }
 
-                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                    TileLoadPriority priority = prefetchPriority(ix, axisTiles.get(ix.getSliceAxis()));
+                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, priority)) {
                         cacheableTextures.add(ix);
                     }
                 }
@@ -345,15 +348,37 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                         break;
                     }
 
-                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, TileLoadPriority.UMBRELLA)) {
                         cacheableTextures.add(ix);
                     }
                 }
             }
         }
+        // Anything still queued from the previous view was not asked for again
+        futurePreFetcher.dropStaleRequests();
         updateLoadStatus();
     }
 
+    /**
+     * Ranks a prefetched tile against the displayed tiles on the same slice axis:
+     * the adjacent slices come first, then coarser tiles, then everything else.
+     */
+    private TileLoadPriority prefetchPriority(TileIndex index, TileSet displayedTiles) {
+        if (displayedTiles == null || displayedTiles.isEmpty()) {
+            return TileLoadPriority.UMBRELLA;
+        }
+        TileIndex displayed = displayedTiles.iterator().next().getIndex();
+        int axis = index.getSliceAxis().index();
+        int sliceDistance = Math.abs(index.getCoordinate(axis) - displayed.getCoordinate(axis));
+        if (sliceDistance <= Math.max(displayed.getDeltaSlice(), index.getDeltaSlice())) {
+            return TileLoadPriority.NEXT_SLICE;
+        }
+        if (index.getZoom() > displayed.getZoom()) {
+            return TileLoadPriority.COARSER_LOD;
+        }
+        return TileLoadPriority.UMBRELLA;
+    }
+
     public void refreshCurrentTileSet() {
         LOG.trace("refreshCurrentTileSet");
         TileSet tiles = createLatestTiles();
@@ -7,6 +7,7 @@ package org.janelia.workstation.controller.tileimagery;
 import javax.swing.JPanel;
 import javax.swing.Timer;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
@@ -42,16 +43,11 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
     @Override
     public void actionPerformed(ActionEvent e) {
         if (VolumeCache.useVolumeCache()) {
-            if (!isVisible()) {
-                setVisible(true);
-            }
             cachingMap = TileStackCacheController.getInstance().getCachingMap();
-            repaint();
         } else {
-            if (isVisible()) {
-                setVisible(false);
-            }
+            cachingMap = null;
         }
+        repaint();
     }
 
     private int[] getStatusBoxCoordinates(int[] statusArr) {
@@ -71,18 +67,25 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
 
     @Override
     public void paint(Graphics graphics) {
-        if (cachingMap==null)
-            return;
         BufferedImage image=new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
         g.setBackground(Color.BLACK);
 
-        for (int[] statusArr : cachingMap) {
-            int[] xy = getStatusBoxCoordinates(statusArr);
-            g.setColor(statusColors[statusArr[3]]);
-            g.fillRect(xy[0], xy[1], BOX_XSIZE, BOX_YSIZE);
+        if (cachingMap!=null) {
+            for (int[] statusArr : cachingMap) {
+                int[] xy = getStatusBoxCoordinates(statusArr);
+                g.setColor(statusColors[statusArr[3]]);
+                g.fillRect(xy[0], xy[1], BOX_XSIZE, BOX_YSIZE);
+            }
         }
 
+        // tile load queue depth, and time from the last view change to its first visible tile
+        TileLoadMetrics metrics = TileLoadMetrics.getInstance();
+        long firstTileMs = metrics.getTimeToFirstVisibleTileMs();
+        g.setColor(Color.WHITE);
+        g.setFont(g.getFont().deriveFont(Font.PLAIN, 10f));
+        g.drawString("Q " + metrics.getQueueDepth() + "  " + (firstTileMs < 0 ? "-" : firstTileMs + " ms"), 2, 11);
+
         graphics.drawImage(image, 0, 0, this);
     }
 
@@ -0,0 +1,107 @@
+package org.janelia.workstation.controller;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KDTreeBulkLoaderTest {
+
+    @Test
+    public void testOrderIsPermutation() {
+        double[][] keys = randomKeys(new Random(1), 50000);
+        int[] order = KDTreeBulkLoader.balancedOrder(keys);
+        boolean[] seen = new boolean[keys.length];
+        for (int i : order) {
+            Assert.assertFalse(seen[i]);
+            seen[i] = true;
+        }
+        Assert.assertEquals(keys.length, order.length);
+    }
+
+    @Test
+    public void testInsertionOrderGivesBalancedTree() {
+        int count = 100000;
+        double[][] keys = randomKeys(new Random(2), count);
+        int depth = insertionDepth(keys, KDTreeBulkLoader.balancedOrder(keys));
+        int optimal = 32 - Integer.numberOfLeadingZeros(count);
+        Assert.assertTrue("depth " + depth, depth <= optimal);
+    }
+
+    @Test
+    public void testSortedInputStaysBalanced() {
+        // Vertexes along a straight neurite arrive sorted, the worst case for plain insertion
+        int count = 20000;
+        double[][] keys = new double[count][];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = new double[]{i, i * 0.5, i * 0.25};
+        }
+        int depth = insertionDepth(keys, KDTreeBulkLoader.balancedOrder(keys));
+        Assert.assertTrue("depth " + depth, depth <= 32 - Integer.numberOfLeadingZeros(count));
+    }
+
+    @Test
+    public void testTiedCoordinatesStayShallow() {
+        // Vertexes in a single plane tie on z; ties must go left, so that level cannot split evenly
+        int count = 20000;
+        Random random = new Random(3);
+        double[][] keys = new double[count][];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = new double[]{random.nextDouble() * 10000, random.nextDouble() * 10000, 100};
+        }
+        int depth = insertionDepth(keys, KDTreeBulkLoader.balancedOrder(keys));
+        Assert.assertTrue("depth " + depth, depth <= 2 * (32 - Integer.numberOfLeadingZeros(count)));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(0, KDTreeBulkLoader.balancedOrder(new double[0][]).length);
+    }
+
+    private static double[][] randomKeys(Random random, int count) {
+        double[][] keys = new double[count][];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = new double[]{random.nextDouble() * 10000, random.nextDouble() * 10000, random.nextDouble() * 10000};
+        }
+        return keys;
+    }
+
+    /**
+     * Inserts the keys in the given order into a plain KD-tree which, like the one used by
+     * the spatial index, sends keys greater than the splitting coordinate right and all others
+     * left. Returns the depth of the deepest node.
+     */
+    private static int insertionDepth(double[][] keys, int[] order) {
+        int count = keys.length;
+        int[] left = new int[count];
+        int[] right = new int[count];
+        java.util.Arrays.fill(left, -1);
+        java.util.Arrays.fill(right, -1);
+        int root = order[0];
+        int maxDepth = 1;
+        for (int n = 1; n < count; ++n) {
+            int i = order[n];
+            int node = root;
+            int depth = 1;
+            while (true) {
+                int axis = (depth - 1) % 3;
+                boolean goRight = keys[i][axis] > keys[node][axis];
+                int next = goRight ? right[node] : left[node];
+                depth++;
+                if (next < 0) {
+                    if (goRight) {
+                        right[node] = i;
+                    }
+                    else {
+                        left[node] = i;
+                    }
+                    break;
+                }
+                node = next;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return maxDepth;
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.janelia.workstation.controller;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NeuronVertexSpatialIndex} class, with vertex locations taken as micrometers.
+ */
+public class NeuronVertexSpatialIndexTest {
+
+    private final NeuronVertexSpatialIndex index = new NeuronVertexSpatialIndex(this::locate);
+
+    // Once set, the next time this vertex is located waits until the edits are done
+    private volatile TmGeoAnnotation pausedVertex;
+    private final CountDownLatch locating = new CountDownLatch(1);
+    private final CountDownLatch edited = new CountDownLatch(1);
+
+    private float[] locate(TmGeoAnnotation vertex) {
+        float[] location = {vertex.getX().floatValue(), vertex.getY().floatValue(), vertex.getZ().floatValue()};
+        if (vertex == pausedVertex) {
+            pausedVertex = null;
+            locating.countDown();
+            try {
+                edited.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return location;
+    }
+
+    static TmNeuronMetadata createNeuron(long neuronId) {
+        TmNeuronMetadata neuron = new TmNeuronMetadata();
+        neuron.setId(neuronId);
+        return neuron;
+    }
+
+    static TmGeoAnnotation addVertex(TmNeuronMetadata neuron, long vertexId, double x, double y, double z) {
+        TmGeoAnnotation vertex = new TmGeoAnnotation();
+        vertex.setId(vertexId);
+        vertex.setNeuronId(neuron.getId());
+        vertex.setX(x);
+        vertex.setY(y);
+        vertex.setZ(z);
+        neuron.getGeoAnnotationMap().put(vertexId, vertex);
+        return vertex;
+    }
+
+    private TmGeoAnnotation nearest(double x, double y, double z) {
+        return index.getAnchorClosestToMicronLocation(new double[] {x, y, z});
+    }
+
+    private int countNear(double x, double y, double z) {
+        return index.getAnchorsInMicronArea(new double[] {x - 1, y - 1, z - 1}, new double[] {x + 1, y + 1, z + 1}).size();
+    }
+
+    @Test
+    public void testNeuronDeltasAreIndexed() {
+        TmNeuronMetadata neuron = createNeuron(1);
+        TmGeoAnnotation first = addVertex(neuron, 11, 0, 0, 0);
+        TmGeoAnnotation second = addVertex(neuron, 12, 100, 0, 0);
+        TmGeoAnnotation third = addVertex(neuron, 13, 200, 0, 0);
+        Assert.assertEquals(3, index.updateNeuron(neuron));
+        Assert.assertEquals(3, index.size());
+        Assert.assertSame(second, nearest(140, 5, 0));
+        // Nothing changed, so nothing is touched
+        Assert.assertEquals(0, index.updateNeuron(neuron));
+
+        // Moved in place, the vertex is found at its new location only
+        second.setX(500.0);
+        Assert.assertEquals(1, index.updateNeuron(neuron));
+        Assert.assertSame(third, nearest(140, 5, 0));
+        Assert.assertSame(second, nearest(480, 0, 0));
+        Assert.assertEquals(0, countNear(100, 0, 0));
+        Assert.assertEquals(1, countNear(500, 0, 0));
+
+        // Added and deleted together
+        neuron.getGeoAnnotationMap().remove(first.getId());
+        TmGeoAnnotation fourth = addVertex(neuron, 14, 0, 10, 0);
+        Assert.assertEquals(2, index.updateNeuron(neuron));
+        Assert.assertEquals(3, index.size());
+        Assert.assertSame(fourth, nearest(0, 0, 0));
+        Assert.assertEquals(0, countNear(0, 0, 0));
+
+        Assert.assertEquals(3, index.removeNeuron(neuron));
+        Assert.assertEquals(0, index.size());
+        Assert.assertNull(nearest(0, 0, 0));
+    }
+
+    @Test
+    public void testReplacedVertexIsReturned() {
+        TmNeuronMetadata neuron = createNeuron(1);
+        addVertex(neuron, 11, 10, 10, 10);
+        index.updateNeuron(neuron);
+        // A reloaded neuron has new vertex objects at the same locations, and queries must return those
+        TmNeuronMetadata reloaded = createNeuron(1);
+        TmGeoAnnotation vertex = addVertex(reloaded, 11, 10, 10, 10);
+        Assert.assertEquals(1, index.updateNeuron(reloaded));
+        Assert.assertSame(vertex, nearest(10, 10, 10));
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testSynchronizeDropsMissingNeurons() {
+        TmNeuronMetadata kept = createNeuron(1);
+        TmGeoAnnotation keptVertex = addVertex(kept, 11, 0, 0, 0);
+        TmNeuronMetadata dropped = createNeuron(2);
+        addVertex(dropped, 21, 1, 1, 1);
+        addVertex(dropped, 22, 2, 2, 2);
+        Assert.assertEquals(3, index.synchronizeIndex(Arrays.asList(kept, dropped)));
+        Assert.assertTrue(index.isValid());
+
+        Assert.assertEquals(2, index.synchronizeIndex(Collections.singletonList(kept)));
+        Assert.assertEquals(1, index.size());
+        Assert.assertSame(keptVertex, nearest(2, 2, 2));
+    }
+
+    @Test
+    public void testVertexesAtTheSameLocationAreBothIndexed() {
+        TmNeuronMetadata neuron = createNeuron(1);
+        TmGeoAnnotation first = addVertex(neuron, 11, 5, 5, 5);
+        TmGeoAnnotation second = addVertex(neuron, 12, 5, 5, 5);
+        Assert.assertTrue(index.addToIndex(first));
+        Assert.assertTrue(index.addToIndex(second));
+        Assert.assertFalse(index.addToIndex(second));
+        List<TmGeoAnnotation> found = index.getAnchorClosestToMicronLocation(new double[] {5, 5, 5}, 2);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(found));
+        Assert.assertTrue(index.removeFromIndex(first));
+        Assert.assertEquals(Collections.singletonList(second), index.getAnchorClosestToMicronLocation(new double[] {5, 5, 5}, 2));
+    }
+
+    @Test
+    public void testKeyFuzzIsDeterministicAndBounded() {
+        Set<List<Double>> offsets = new HashSet<>();
+        long[] ids = new long[] {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 42, 2758713849129385992L};
+        for (long id : ids) {
+            checkKeyFuzz(id, offsets);
+        }
+        // Ids from the same generator are close together, and must still be spread apart
+        for (long id = 1000000; id < 1100000; id++) {
+            checkKeyFuzz(id, offsets);
+        }
+        Assert.assertEquals(ids.length + 100000, offsets.size());
+    }
+
+    private static void checkKeyFuzz(long id, Set<List<Double>> offsets) {
+        double[] fuzz = NeuronVertexSpatialIndex.keyFuzz(id);
+        Assert.assertArrayEquals(fuzz, NeuronVertexSpatialIndex.keyFuzz(id), 0);
+        Assert.assertEquals(3, fuzz.length);
+        for (double f : fuzz) {
+            Assert.assertTrue("fuzz " + f + " of " + id, f >= 0 && f < 1);
+        }
+        offsets.add(Arrays.asList(fuzz[0], fuzz[1], fuzz[2]));
+    }
+
+    @Test
+    public void testEditsDuringRebuildSurviveTheSwap() throws Exception {
+        TmNeuronMetadata neuron = createNeuron(1);
+        TmGeoAnnotation moved = addVertex(neuron, 11, 0, 0, 0);
+        TmGeoAnnotation deleted = addVertex(neuron, 12, 100, 0, 0);
+        for (long id = 13; id < 1000; id++) {
+            addVertex(neuron, id, id, 1000, 1000);
+        }
+        TmNeuronMetadata removedNeuron = createNeuron(2);
+        addVertex(removedNeuron, 2001, 200, 0, 0);
+        index.synchronizeIndex(Arrays.asList(neuron, removedNeuron));
+
+        // The rebuild has its snapshot, and has read the location of the moved vertex, when the edits are made
+        pausedVertex = moved;
+        FutureTask<Integer> rebuild = new FutureTask<>(() -> index.rebuildIndex(Arrays.asList(neuron, removedNeuron)));
+        new Thread(rebuild, "SpatialIndexRebuild").start();
+        Assert.assertTrue(locating.await(10, TimeUnit.SECONDS));
+        moved.setX(500.0);
+        neuron.getGeoAnnotationMap().remove(deleted.getId());
+        TmGeoAnnotation added = addVertex(neuron, 1000, 300, 0, 0);
+        Assert.assertEquals(3, index.updateNeuron(neuron));
+        Assert.assertEquals(1, index.removeNeuron(removedNeuron));
+        edited.countDown();
+        Assert.assertEquals(990, (int) rebuild.get(10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(index.isValid());
+        Assert.assertEquals(neuron.getGeoAnnotationMap().size(), index.size());
+        Assert.assertSame(moved, nearest(490, 0, 0));
+        Assert.assertEquals(0, countNear(0, 0, 0));
+        Assert.assertEquals(0, countNear(100, 0, 0));
+        Assert.assertEquals(0, countNear(200, 0, 0));
+        Assert.assertSame(added, nearest(300, 0, 0));
+    }
+}
@@ -0,0 +1,101 @@
+package org.janelia.workstation.controller.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NeuronState} class on neurons serialized the way the undo history stores them.
+ */
+public class NeuronStateTest {
+
+    private static TmNeuronMetadata createNeuron(long neuronId, int vertexCount, double offset) {
+        TmNeuronMetadata neuron = new TmNeuronMetadata();
+        neuron.setId(neuronId);
+        for (long vertexId = 1; vertexId <= vertexCount; vertexId++) {
+            addVertex(neuron, neuronId * 1000 + vertexId, offset + vertexId, offset + 2 * vertexId, offset + 3 * vertexId);
+        }
+        return neuron;
+    }
+
+    private static TmGeoAnnotation addVertex(TmNeuronMetadata neuron, long vertexId, double x, double y, double z) {
+        TmGeoAnnotation vertex = new TmGeoAnnotation();
+        vertex.setId(vertexId);
+        vertex.setNeuronId(neuron.getId());
+        vertex.setX(x);
+        vertex.setY(y);
+        vertex.setZ(z);
+        vertex.setRadius(1.0);
+        neuron.getGeoAnnotationMap().put(vertexId, vertex);
+        return vertex;
+    }
+
+    @Test
+    public void testEditsAreStoredAsDeltas() throws Exception {
+        TmNeuronMetadata neuron = createNeuron(1, 200, 0);
+        List<byte[]> versions = new ArrayList<>();
+        List<NeuronState> states = new ArrayList<>();
+        versions.add(TmHistory.serializeNeuron(neuron));
+        states.add(NeuronState.checkpoint(versions.get(0)));
+        for (int i = 0; i < 12; ++i) {
+            switch (i % 3) {
+                case 0:
+                    addVertex(neuron, 5000 + i, 10.5 * i, 20.5 * i, 30.5 * i);
+                    break;
+                case 1:
+                    neuron.getGeoAnnotationMap().get(1000L + 10 * i).setX(-1.25 * i);
+                    break;
+                default:
+                    neuron.getGeoAnnotationMap().remove(1000L + 10 * i);
+                    break;
+            }
+            byte[] bytes = TmHistory.serializeNeuron(neuron);
+            NeuronState previous = states.get(states.size() - 1);
+            NeuronState state = NeuronState.encode(bytes, previous, versions.get(versions.size() - 1), 8);
+            // every eighth state after the first is stored in full
+            Assert.assertEquals("edit " + i, (i + 1) % 9 != 0, state.isDeltaOf(previous));
+            versions.add(bytes);
+            states.add(state);
+        }
+        long stored = 0;
+        for (int i = 0; i < states.size(); ++i) {
+            Assert.assertArrayEquals(versions.get(i), states.get(i).decode());
+            stored += states.get(i).getStoredSize();
+        }
+        Assert.assertTrue(stored < 3 * versions.get(0).length);
+    }
+
+    @Test
+    public void testMakeCheckpointKeepsContents() throws Exception {
+        TmNeuronMetadata neuron = createNeuron(1, 100, 0);
+        byte[] first = TmHistory.serializeNeuron(neuron);
+        neuron.getGeoAnnotationMap().get(1050L).setY(-7.0);
+        byte[] second = TmHistory.serializeNeuron(neuron);
+        addVertex(neuron, 1101, 5, 5, 5);
+        byte[] third = TmHistory.serializeNeuron(neuron);
+        NeuronState a = NeuronState.checkpoint(first);
+        NeuronState b = NeuronState.encode(second, a, first, 8);
+        NeuronState c = NeuronState.encode(third, b, second, 8);
+        Assert.assertTrue(b.isDeltaOf(a));
+        Assert.assertTrue(c.isDeltaOf(b));
+        b.makeCheckpoint();
+        Assert.assertFalse(b.isDeltaOf(a));
+        Assert.assertArrayEquals(second, b.decode());
+        Assert.assertArrayEquals(third, c.decode());
+    }
+
+    @Test
+    public void testUnrelatedNeuronsAreStoredInFull() throws Exception {
+        byte[] first = TmHistory.serializeNeuron(createNeuron(1, 100, 0));
+        byte[] other = TmHistory.serializeNeuron(createNeuron(2, 100, 0.5));
+        NeuronState a = NeuronState.checkpoint(first);
+        NeuronState b = NeuronState.encode(other, a, first, 8);
+        Assert.assertFalse(b.isDeltaOf(a));
+        Assert.assertArrayEquals(other, b.decode());
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.janelia.workstation.controller.scripts.spatialfilter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.janelia.it.jacs.model.TestCategories;
+import org.janelia.model.domain.tiledMicroscope.BoundingBox3d;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class NeuronProximitySpatialIndexTest {
+
+    private static final double WORLD_SIZE = 10000;
+    private static final double MAX_BOX_SIZE = 200;
+
+    @Test
+    public void testBulkLoadedSearchMatchesBruteForce() {
+        Random random = new Random(1);
+        List<BoundingBox3d> boxes = randomBoxes(random, 5000);
+        NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex();
+        Assert.assertEquals(boxes.size(), index.buildIndex(boxes));
+        Assert.assertTrue(index.isValid());
+        checkQueries(random, index, boxes, null);
+    }
+
+    @Test
+    public void testFindsBoxWithNoCornerInQuery() {
+        NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex();
+        index.addToIndex(box(7L, 0, 0, 0, 100, 100, 100));
+        Set<Long> result = index.getFragmentIdsInBoundingBox(new double[]{40, 40, 40}, new double[]{60, 60, 60});
+        Assert.assertTrue(result.contains(7L));
+    }
+
+    @Test
+    public void testSkipsMalformedBoxes() {
+        List<BoundingBox3d> boxes = new ArrayList<>();
+        boxes.add(box(1L, 0, 0, 0, 10, 10, 10));
+        boxes.add(box(2L, 10, 0, 0, 0, 10, 10));
+        boxes.add(box(null, 0, 0, 0, 10, 10, 10));
+        NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex();
+        Assert.assertEquals(1, index.buildIndex(boxes));
+        Assert.assertFalse(index.addToIndex(boxes.get(1)));
+    }
+
+    @Test
+    public void testIncrementalInsertAndDelete() {
+        Random random = new Random(2);
+        List<BoundingBox3d> boxes = randomBoxes(random, 4000);
+        NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex();
+        // bulk load half, insert the rest one at a time
+        int half = boxes.size() / 2;
+        index.buildIndex(boxes.subList(0, half));
+        for (BoundingBox3d box : boxes.subList(half, boxes.size())) {
+            Assert.assertTrue(index.addToIndex(box));
+        }
+        Assert.assertEquals(boxes.size(), index.size());
+        // delete every third box
+        Set<Long> deleted = new HashSet<>();
+        for (int i = 0; i < boxes.size(); i += 3) {
+            Assert.assertTrue(index.removeFromIndex(boxes.get(i)));
+            deleted.add(boxes.get(i).getDomainId());
+        }
+        Assert.assertFalse(index.removeFromIndex(boxes.get(0)));
+        Assert.assertEquals(boxes.size() - deleted.size(), index.size());
+        checkQueries(random, index, boxes, deleted);
+    }
+
+    /**
+     * Times bulk loading, incremental insertion and queries over a million
+     * synthetic fragment boxes. Prints results rather than asserting on timings.
+     */
+    @Test
+    @Category(TestCategories.PrototypeTests.class)
+    public void benchmarkMillionBoxes() {
+        Random random = new Random(3);
+        List<BoundingBox3d> boxes = randomBoxes(random, 1000000);
+
+        long t0 = System.nanoTime();
+        NeuronProximitySpatialIndex bulk = new NeuronProximitySpatialIndex();
+        bulk.buildIndex(boxes);
+        long bulkMillis = (System.nanoTime() - t0) / 1000000;
+
+        t0 = System.nanoTime();
+        NeuronProximitySpatialIndex incremental = new NeuronProximitySpatialIndex();
+        for (BoundingBox3d box : boxes) {
+            incremental.addToIndex(box);
+        }
+        long insertMillis = (System.nanoTime() - t0) / 1000000;
+
+        int queryCount = 10000;
+        double querySize = 900; // matches the default 450 um filter distance
+        long hits = 0;
+        t0 = System.nanoTime();
+        for (int q = 0; q < queryCount; ++q) {
+            double x = random.nextDouble() * WORLD_SIZE;
+            double y = random.nextDouble() * WORLD_SIZE;
+            double z = random.nextDouble() * WORLD_SIZE;
+            hits += bulk.getFragmentIdsInBoundingBox(new double[]{x, y, z},
+                    new double[]{x + querySize, y + querySize, z + querySize}).size();
+        }
+        double queryMicros = (System.nanoTime() - t0) / 1000.0 / queryCount;
+
+        System.out.println(String.format(
+                "%d boxes: bulk load %d ms, incremental insert %d ms, query %.1f us (%.1f hits avg)",
+                boxes.size(), bulkMillis, insertMillis, queryMicros, hits / (double) queryCount));
+        Assert.assertEquals(boxes.size(), bulk.size());
+        Assert.assertEquals(boxes.size(), incremental.size());
+    }
+
+    private static BoundingBox3d box(Long id, double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        BoundingBox3d box = new BoundingBox3d();
+        box.setDomainId(id);
+        box.setMinX(minX);
+        box.setMinY(minY);
+        box.setMinZ(minZ);
+        box.setMaxX(maxX);
+        box.setMaxY(maxY);
+        box.setMaxZ(maxZ);
+        return box;
+    }
+
+    private static List<BoundingBox3d> randomBoxes(Random random, int count) {
+        List<BoundingBox3d> boxes = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            double[] lo = new double[3];
+            double[] hi = new double[3];
+            for (int d = 0; d < 3; ++d) {
+                lo[d] = random.nextDouble() * WORLD_SIZE;
+                hi[d] = lo[d] + random.nextDouble() * MAX_BOX_SIZE;
+            }
+            boxes.add(box(1000L + i, lo[0], lo[1], lo[2], hi[0], hi[1], hi[2]));
+        }
+        return boxes;
+    }
+
+    private static void checkQueries(Random random, NeuronProximitySpatialIndex index, List<BoundingBox3d> boxes,
+            Set<Long> deleted) {
+        for (int q = 0; q < 200; ++q) {
+            double[] qmin = new double[3];
+            double[] qmax = new double[3];
+            for (int d = 0; d < 3; ++d) {
+                qmin[d] = random.nextDouble() * WORLD_SIZE;
+                qmax[d] = qmin[d] + random.nextDouble() * 1000;
+            }
+            Set<Long> expected = new HashSet<>();
+            for (BoundingBox3d box : boxes) {
+                if (deleted != null && deleted.contains(box.getDomainId())) {
+                    continue;
+                }
+                if (box.getMinX() <= qmax[0] && box.getMaxX() >= qmin[0]
+                        && box.getMinY() <= qmax[1] && box.getMaxY() >= qmin[1]
+                        && box.getMinZ() <= qmax[2] && box.getMaxZ() >= qmin[2]) {
+                    expected.add(box.getDomainId());
+                }
+            }
+            Assert.assertEquals(expected, index.getFragmentIdsInBoundingBox(qmin, qmax));
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.media.jai.codec.ImageCodec;
+import com.sun.media.jai.codec.ImageEncoder;
+import com.sun.media.jai.codec.TIFFEncodeParam;
+
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BlockTiffSlabCache} class on a two level octree of single channel blocks, whose pages are
+ * filled with a value that identifies the block and the page.
+ */
+public class BlockTiffSlabCacheTest {
+
+    private static final int TILE_SIZE = 8;
+    private static final int BLOCK_DEPTH = 40;
+    private static final int SLAB_DEPTH = 16;
+
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final List<String> openedPaths = new ArrayList<>();
+    private TileFormat tileFormat;
+
+    @Before
+    public void setUp() throws IOException {
+        tileFormat = new TileFormat();
+        tileFormat.setZoomLevelCount(2);
+        tileFormat.setTileSize(new int[] {TILE_SIZE, TILE_SIZE, BLOCK_DEPTH});
+        tileFormat.setChannelCount(1);
+        // The top block covers Z 0-79 at zoom 1, and blocks 3 and 7 cover Z 0-39 and 40-79 at zoom 0
+        files.put("default.0.tif", writeBlock(1));
+        files.put("3/default.0.tif", writeBlock(101));
+        files.put("7/default.0.tif", writeBlock(151));
+    }
+
+    private BlockTiffSlabCache createSlabCache(int slabDepth) {
+        return new BlockTiffSlabCache(tileFormat, relativePath -> {
+            openedPaths.add(relativePath);
+            byte[] content = files.get(relativePath);
+            return content == null ? null : new ByteArrayInputStream(content);
+        }, slabDepth, 1024 * 1024);
+    }
+
+    private static byte[] writeBlock(int firstValue) throws IOException {
+        List<RenderedImage> pages = new ArrayList<>();
+        for (int page = 0; page < BLOCK_DEPTH; page++) {
+            BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+            Arrays.fill(((DataBufferByte) image.getRaster().getDataBuffer()).getData(), (byte) (firstValue + page));
+            pages.add(image);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setExtraImages(pages.subList(1, pages.size()).iterator());
+        ImageEncoder encoder = ImageCodec.createImageEncoder("TIFF", output, param);
+        encoder.encode(pages.get(0));
+        return output.toByteArray();
+    }
+
+    private static TileIndex zTile(int z, int zoom) {
+        return new TileIndex(0, 0, z, zoom, 1, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+    }
+
+    private static int loadValue(BlockTiffSlabCache slabCache, TileIndex tileIndex) throws Exception {
+        TextureData2d tile = slabCache.loadTile(tileIndex);
+        Assert.assertNotNull(tile);
+        Assert.assertEquals(TILE_SIZE, tile.getWidth());
+        return tile.getPixels().get(0) & 0xff;
+    }
+
+    @Test
+    public void slicesAtLowerZoomAreHalvedIntoTheTopBlock() throws Exception {
+        BlockTiffSlabCache slabCache = createSlabCache(SLAB_DEPTH);
+        Assert.assertTrue(slabCache.canLoad(zTile(50, 1)));
+        // Z 50 and 51 are both slice 25 at zoom 1
+        Assert.assertEquals(1 + 25, loadValue(slabCache, zTile(50, 1)));
+        Assert.assertEquals(1 + 25, loadValue(slabCache, zTile(51, 1)));
+        Assert.assertEquals(Arrays.asList("default.0.tif"), openedPaths);
+    }
+
+    @Test
+    public void slicesAtFullZoomAreReadFromTheirBlock() throws Exception {
+        BlockTiffSlabCache slabCache = createSlabCache(SLAB_DEPTH);
+        Assert.assertEquals(101 + 5, loadValue(slabCache, zTile(5, 0)));
+        Assert.assertEquals(151 + 5, loadValue(slabCache, zTile(45, 0)));
+        Assert.assertEquals(Arrays.asList("3/default.0.tif", "7/default.0.tif"), openedPaths);
+    }
+
+    @Test
+    public void slabsEndAtTheirBoundaries() throws Exception {
+        BlockTiffSlabCache slabCache = createSlabCache(SLAB_DEPTH);
+        // Pages 16-31 are one slab
+        Assert.assertEquals(101 + 16, loadValue(slabCache, zTile(16, 0)));
+        Assert.assertEquals(101 + 31, loadValue(slabCache, zTile(31, 0)));
+        Assert.assertEquals(1, openedPaths.size());
+        // Page 32 starts the last slab, which is cut short at the end of the block
+        Assert.assertEquals(101 + 32, loadValue(slabCache, zTile(32, 0)));
+        Assert.assertEquals(101 + 39, loadValue(slabCache, zTile(39, 0)));
+        Assert.assertEquals(2, openedPaths.size());
+        Assert.assertEquals(101 + 15, loadValue(slabCache, zTile(15, 0)));
+        Assert.assertEquals(3, openedPaths.size());
+    }
+
+    @Test
+    public void wholeBlocksAreOneSlab() throws Exception {
+        BlockTiffSlabCache slabCache = createSlabCache(0);
+        Assert.assertEquals(101, loadValue(slabCache, zTile(0, 0)));
+        Assert.assertEquals(101 + 39, loadValue(slabCache, zTile(39, 0)));
+        Assert.assertEquals(1, openedPaths.size());
+    }
+
+    @Test
+    public void missingBlocksHaveNoTiles() throws Exception {
+        files.remove("7/default.0.tif");
+        BlockTiffSlabCache slabCache = createSlabCache(SLAB_DEPTH);
+        Assert.assertNull(slabCache.loadTile(zTile(45, 0)));
+        Assert.assertFalse(slabCache.canLoad(new TileIndex(0, 0, 5, 0, 1, TileIndex.IndexStyle.OCTREE, CoordinateAxis.X)));
+    }
+}